@@ -1,12 +1,22 @@
 package microsim;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import microsim.ui.*;
 import microsim.simulation.*;
+import microsim.simulation.component.bus.Bus;
+import microsim.simulation.component.bus.BusTracer;
+import microsim.simulation.component.device.DeviceScheduler;
 import microsim.simulation.component.device.keyboard.*;
+import microsim.simulation.component.device.network.HubLink;
+import microsim.simulation.component.device.network.NetworkSwitch;
+import microsim.simulation.component.memory.MappedRam;
+import microsim.simulation.component.processor.Cache;
+import microsim.simulation.event.*;
 import microsim.MainEnvironment.SimulationInfo;
 import microsim.file.IMG;
 
@@ -47,6 +57,11 @@ public class Main {
    */
   private static DebugShell debugShell;
 
+  /**
+   * Is standard input already typed into a simulation?
+   */
+  private static boolean stdinTaken = false;
+
   /**
    * Shows project name, version and authorship.
    */
@@ -61,7 +76,8 @@ public class Main {
    * <ol>
    * <li>Video window.</li>
    * <li>Debug shell, always attached, activated if debug mode is requested (through argument).</li>
-   * <li>Keyboard: attached and listening from video window.</li>
+   * <li>Keyboard: attached and listening from video window, and typed into from a file or standard
+   * input if requested.</li>
    * </ol>
    *
    * @param simulation simulation instance to attach interfaces to
@@ -70,11 +86,15 @@ public class Main {
     // 1. handle video window
     System.out.println("Initializing video window");
     VideoWindow window = new VideoWindow(simulation.video, env.windowScale, simulation.name);
-    simulation.addListener(window);
+
+    // window gets frames on a thread of its own, so that swing never holds up the simulation
+    AsyncListener windowListener = new AsyncListener(simulation.name + ": Window", window);
+    simulation.addListener(FrameEvent.class, windowListener);
+    simulation.addListener(HaltEvent.class, windowListener);
 
     // 2. handle debug shell. should be always attached as processor might activate it on EBREAK
     System.out.println("Attaching debug shell");
-    debugShell.attachSimulation(simulation);
+    debugShell.attachSimulation(simulation, env.recorderCapacity);
 
     // activate if requested
     if (env.debugMode) {
@@ -89,6 +109,24 @@ public class Main {
     KeyboardSource keyboardSource = new KeyboardSource(window.getPanel(), KeyboardSource.set1);
     simulation.keyboard.attachSource(keyboardSource);
 
+    // type keyboard input if requested. standard input can only be typed into one simulation
+    if (env.keysPath != null) {
+      KeyboardInjector injector = new KeyboardInjector(simulation.keyboard);
+      String name = simulation.name + ": Keyboard input";
+      if (!env.keysPath.equals(MainEnvironment.STDIN)) {
+        System.out.println("Typing keyboard input from " + env.keysPath);
+        try {
+          injector.start(Path.of(env.keysPath), name);
+        } catch (IOException e) {
+          throw new RuntimeException("Couldn't open keyboard input. " + e.getMessage());
+        }
+      } else if (!stdinTaken) {
+        System.out.println("Typing keyboard input from standard input");
+        injector.start(new InputStreamReader(System.in), name);
+        stdinTaken = true;
+      }
+    }
+
     System.out.println();
   }
 
@@ -110,7 +148,58 @@ public class Main {
     System.out.println(">> Initializing simulation: \"" + info.simulationName + "\"");
 
     // 1. initialize simulation
-    Simulation simulation = new Simulation(info.simulationName);
+    Simulation simulation = new Simulation(info.simulationName,
+            env.fastMode ? Bus.Validation.FAST : Bus.Validation.STRICT);
+
+    // step all components on every cycle if requested
+    if (env.lockstepMode) {
+      simulation.setEventScheduling(false);
+    }
+
+    // enable parallel stepping if requested
+    if (env.stepWorkers > 1) {
+      simulation.enableParallelStepping(env.stepWorkers);
+    }
+
+    // attach caches if requested
+    if (env.icacheConfig != null || env.dcacheConfig != null) {
+      try {
+        simulation.proc.attachCaches(
+                env.icacheConfig == null ? null : new Cache("icache", env.icacheConfig),
+                env.dcacheConfig == null ? null : new Cache("dcache", env.dcacheConfig));
+      } catch (RuntimeException e) {
+        System.err.println("Couldn't configure caches. " + e.getMessage());
+        System.exit(1);
+      }
+    }
+
+    // map RAM if requested
+    if (env.ramSize > 0) {
+      Path ramPath = env.ramPath == null ? null
+              : env.ramPath.resolve(info.simulationName + ".ram");
+      try {
+        simulation.memory.attachRam(new MappedRam(ramPath, env.ramSize));
+        if (ramPath != null) {
+          System.out.println("Mapping RAM from " + ramPath);
+        }
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Couldn't map RAM. " + e.getMessage());
+        System.exit(1);
+      }
+    }
+
+    // set timer resolution
+    simulation.timer.setResolution(env.timerResolution * 1000L);
+
+    // run threaded devices in virtual time if requested
+    if (env.clockFrequency > 0) {
+      simulation.setClockFrequency(env.clockFrequency * 1000L);
+    }
+
+    // set wait states if requested
+    if (!env.waitStates.isEmpty()) {
+      simulation.setWaitStates(env.waitStates);
+    }
 
     // 2. load EPROM and disk
     simulation.memory.loadEPROM(info.epromData);
@@ -118,6 +207,23 @@ public class Main {
       simulation.disk.loadDisk(info.diskImage);
     }
 
+    // start bus tracing if requested
+    if (env.tracePath != null) {
+      Path tracePath = env.tracePath.resolve(info.simulationName + ".trc");
+      try {
+        simulation.bus.attachTracer(tracePath, BusTracer.DEFAULT_CAPACITY);
+        System.out.println("Tracing bus to " + tracePath);
+      } catch (IOException e) {
+        System.err.println("Couldn't open bus trace. " + e.getMessage());
+        System.exit(1);
+      }
+    }
+
+    // start counting accesses if requested
+    if (env.heatmap) {
+      simulation.bus.attachHeatmap();
+    }
+
     // 3. initialize interfaces: video window, debug shell and keyboard
     try {
       initInterfaces(simulation);
@@ -170,14 +276,28 @@ public class Main {
     // 2. instantiate simulations from simulation infos in main environment, and attach interfaces
     debugShell = DebugShell.getInstance(); // has to be unique
 
+    // simulations share a network segment, linked to a hub if requested
+    NetworkSwitch networkSwitch = new NetworkSwitch();
+    if (env.hubPath != null) {
+      try {
+        HubLink.connect(env.hubPath, networkSwitch, env.flushLatency * 1000L);
+        System.out.println("Linked network to hub at " + env.hubPath + "\n");
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Couldn't connect to network hub. " + e.getMessage());
+        System.exit(1);
+      }
+    }
+
     List<Simulation> simulationInstances = new ArrayList<>();
     for (SimulationInfo info : env.simulationInfos) {
       Simulation simulation = initSimulation(info);
+      simulation.network.connect(networkSwitch);
       simulationInstances.add(simulation);
     }
 
 
-    // 3. begin simulations
+    // 3. begin simulations, device threads of all simulations share a scheduler
+    DeviceScheduler.getInstance().setPrecision(env.devicePrecision * 1000L);
     List<Thread> simulationThreads = new LinkedList<>();
     for (Simulation simulation : simulationInstances) {
       System.out.println(">> Simulation \"" + simulation.name + "\" powering on\n");
@@ -201,6 +321,18 @@ public class Main {
       } catch (IOException ex) {
         System.err.println("Failed to write disk image for simulation " + simulation.name);
       }
+
+      // flush bus trace
+      simulation.bus.detachTracer();
+
+      // flush persistent RAM, with dirty cache lines written back first
+      if (simulation.memory.getRam() != null) {
+        Cache dcache = simulation.proc.getDataCache();
+        if (dcache != null) {
+          dcache.flush(simulation.memory);
+        }
+        simulation.memory.getRam().flush();
+      }
     }
   }
 }
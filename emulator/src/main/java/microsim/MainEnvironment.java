@@ -5,9 +5,18 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import microsim.file.ELF;
 import microsim.file.IMG;
+import microsim.simulation.Simulation;
+import microsim.simulation.component.device.network.HubLink;
+import microsim.simulation.component.device.timer.TimerDevice;
+import microsim.simulation.component.memory.MappedRam;
+import microsim.simulation.component.processor.Cache;
+import microsim.ui.FlightRecorder;
 
 /**
  * Gets and represents info related to the main program flow, including arguments and simulation
@@ -54,6 +63,96 @@ public class MainEnvironment {
    */
   public static final String DEBUG_TAG = "-d";
 
+  /**
+   * Argument tag for fast (unchecked) bus validation.
+   */
+  public static final String FAST_TAG = "-f";
+
+  /**
+   * Argument tag for parallel stepping workers.
+   */
+  public static final String PARALLEL_TAG = "-p";
+
+  /**
+   * Argument tag for lockstep stepping of all components (disables event-driven stepping).
+   */
+  public static final String LOCKSTEP_TAG = "-l";
+
+  /**
+   * Argument tag for bus trace path.
+   */
+  public static final String TRACE_TAG = "-t";
+
+  /**
+   * Argument tag for memory access heatmaps.
+   */
+  public static final String HEATMAP_TAG = "-m";
+
+  /**
+   * Argument tag for instruction cache configuration.
+   */
+  public static final String ICACHE_TAG = "-ic";
+
+  /**
+   * Argument tag for data cache configuration.
+   */
+  public static final String DCACHE_TAG = "-dc";
+
+  /**
+   * Argument tag for wait states configuration.
+   */
+  public static final String WAIT_TAG = "-w";
+
+  /**
+   * Argument tag for mapped RAM size.
+   */
+  public static final String RAM_SIZE_TAG = "-r";
+
+  /**
+   * Argument tag for persistent RAM path.
+   */
+  public static final String RAM_PATH_TAG = "-rp";
+
+  /**
+   * Argument tag for debug shell flight recorder capacity.
+   */
+  public static final String RECORDER_TAG = "-er";
+
+  /**
+   * Argument tag for device scheduler precision.
+   */
+  public static final String PRECISION_TAG = "-dp";
+
+  /**
+   * Argument tag for timer channel resolution.
+   */
+  public static final String TIMER_RESOLUTION_TAG = "-tr";
+
+  /**
+   * Argument tag for guest clock frequency, that runs threaded devices in virtual time.
+   */
+  public static final String CLOCK_TAG = "-vc";
+
+  /**
+   * Argument tag for keyboard input file, typed into simulations. "-" stands for standard input.
+   */
+  public static final String KEYS_TAG = "-k";
+
+  /**
+   * Keyboard input file argument standing for standard input.
+   */
+  public static final String STDIN = "-";
+
+  /**
+   * Argument tag for network hub socket path.
+   */
+  public static final String HUB_TAG = "-nh";
+
+  /**
+   * Argument tag for network hub link flush latency.
+   */
+  public static final String FLUSH_TAG = "-nl";
+
   /**
    * Argument tag for window scale.
    */
@@ -74,6 +173,42 @@ public class MainEnvironment {
    */
   public boolean debugMode;
 
+  /**
+   * Should simulations skip bus validation?
+   */
+  public boolean fastMode;
+
+  /**
+   * Should simulations step all components on every cycle?
+   */
+  public boolean lockstepMode;
+
+  /**
+   * Number of workers stepping components of each simulation. 1 means sequential stepping.
+   */
+  public int stepWorkers = 1;
+
+  /**
+   * Capacity of the debug shell flight recorder of each simulation, in events.
+   */
+  public int recorderCapacity = FlightRecorder.DEFAULT_CAPACITY;
+
+  /**
+   * Precision window of the device scheduler, in microseconds. 0 means device threads are woken
+   * up by parking only.
+   */
+  public int devicePrecision = 0;
+
+  /**
+   * Resolution of timer channels, in microseconds.
+   */
+  public int timerResolution = (int) (TimerDevice.MASTER_TIME / 1000);
+
+  /**
+   * Guest clock frequency, in kilohertz. 0 means threaded devices run in wall time.
+   */
+  public int clockFrequency = 0;
+
   /**
    * Scale of video window.
    */
@@ -89,6 +224,58 @@ public class MainEnvironment {
    */
   public Path diskPath = Path.of("data/disk");
 
+  /**
+   * Bus trace path. Null means bus tracing is disabled.
+   */
+  public Path tracePath = null;
+
+  /**
+   * Keyboard input path, whose text is typed into each simulation. Null means no text is typed,
+   * {@link #STDIN} means text is read from standard input (and typed into the first simulation).
+   */
+  public String keysPath = null;
+
+  /**
+   * Network hub socket path. Null means simulations only share a network among themselves.
+   */
+  public Path hubPath = null;
+
+  /**
+   * Flush latency of the network hub link, in microseconds.
+   */
+  public int flushLatency = (int) (HubLink.DEFAULT_FLUSH_LATENCY / 1000);
+
+  /**
+   * Should simulations count memory and port accesses in heatmaps?
+   */
+  public boolean heatmap;
+
+  /**
+   * Instruction cache configuration. Null means the instruction cache is disabled.
+   */
+  public Cache.Config icacheConfig = null;
+
+  /**
+   * Data cache configuration. Null means the data cache is disabled.
+   */
+  public Cache.Config dcacheConfig = null;
+
+  /**
+   * Wait states by memory region or device name. Empty means all accesses answer with no wait
+   * states.
+   */
+  public Map<String, Integer> waitStates = new LinkedHashMap<>();
+
+  /**
+   * Size of mapped RAM, in bytes. 0 means RAM isn't mapped, unless {@link #ramPath} is set.
+   */
+  public int ramSize = 0;
+
+  /**
+   * Persistent RAM path, holding a RAM file for each simulation. Null means RAM doesn't persist.
+   */
+  public Path ramPath = null;
+
   /**
    * List of simulation info objectss for all found simulation configurations.
    */
@@ -203,6 +390,66 @@ public class MainEnvironment {
     }
   }
 
+  /**
+   * Parses a wait states configuration, in the form "name=states,name=states,...", with names
+   * from {@link microsim.simulation.Simulation#WAIT_STATE_TARGETS}. For example,
+   * "eprom=3,vram=1,network=5".
+   *
+   * @param spec wait states configuration
+   * @throws IOException if configuration is malformed
+   */
+  private void parseWaitStates(String spec) throws IOException {
+    List<String> targets = Arrays.asList(Simulation.WAIT_STATE_TARGETS);
+
+    for (String entry : spec.split(",")) {
+      String[] fields = entry.split("=");
+      if (fields.length != 2 || !targets.contains(fields[0])) {
+        throw new IOException("Invalid wait states entry \"" + entry + "\", expected name=states "
+                + "with name one of " + targets);
+      }
+
+      try {
+        int states = Integer.parseInt(fields[1]);
+        if (states < 0) {
+          throw new NumberFormatException();
+        }
+        waitStates.put(fields[0], states);
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid wait states \"" + fields[1] + "\" for " + fields[0]);
+      }
+    }
+  }
+
+  /**
+   * Parses a size in bytes, with an optional K (KiB) or M (MiB) suffix. For example, "16M".
+   *
+   * @param spec size
+   * @return size in bytes
+   * @throws IOException if size is malformed
+   */
+  private static int parseSize(String spec) throws IOException {
+    long multiplier = 1;
+    String digits = spec;
+    if (spec.endsWith("K") || spec.endsWith("k")) {
+      multiplier = 1024;
+      digits = spec.substring(0, spec.length() - 1);
+    } else if (spec.endsWith("M") || spec.endsWith("m")) {
+      multiplier = 1024 * 1024;
+      digits = spec.substring(0, spec.length() - 1);
+    }
+
+    try {
+      long size = Long.parseLong(digits) * multiplier;
+      if (size < MappedRam.BASE_SIZE || size > MappedRam.MAX_SIZE) {
+        throw new IOException("RAM size must be between " + MappedRam.BASE_SIZE + " and "
+                + MappedRam.MAX_SIZE + " bytes");
+      }
+      return (int) size;
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid RAM size \"" + spec + "\"");
+    }
+  }
+
   /**
    * Builds environment from program arguments.
    *
@@ -212,9 +459,94 @@ public class MainEnvironment {
   public MainEnvironment(String[] args) throws IOException {
     // get arguments
     debugMode = hasArgument(args, DEBUG_TAG);
+    fastMode = hasArgument(args, FAST_TAG);
+    lockstepMode = hasArgument(args, LOCKSTEP_TAG);
+    heatmap = hasArgument(args, HEATMAP_TAG);
+    stepWorkers = numArgument(args, PARALLEL_TAG, stepWorkers);
     windowScale = numArgument(args, SCALE_TAG, windowScale);
+    recorderCapacity = numArgument(args, RECORDER_TAG, recorderCapacity);
+    devicePrecision = numArgument(args, PRECISION_TAG, devicePrecision);
+    timerResolution = numArgument(args, TIMER_RESOLUTION_TAG, timerResolution);
+    clockFrequency = numArgument(args, CLOCK_TAG, clockFrequency);
+    flushLatency = numArgument(args, FLUSH_TAG, flushLatency);
     epromPath = hasArgument(args, EPROM_TAG) ? Path.of(getArgument(args, EPROM_TAG)) : epromPath;
     diskPath = hasArgument(args, DISK_TAG) ? Path.of(getArgument(args, DISK_TAG)) : diskPath;
+    tracePath = hasArgument(args, TRACE_TAG) ? Path.of(getArgument(args, TRACE_TAG)) : tracePath;
+    keysPath = hasArgument(args, KEYS_TAG) ? getArgument(args, KEYS_TAG) : keysPath;
+    hubPath = hasArgument(args, HUB_TAG) ? Path.of(getArgument(args, HUB_TAG)) : hubPath;
+
+    // check trace path
+    if (tracePath != null && !Files.isDirectory(tracePath)) {
+      throw new IOException("Given bus trace path is not a directory");
+    }
+
+    // check keyboard input file
+    if (keysPath != null && !keysPath.equals(STDIN) && !Files.isRegularFile(Path.of(keysPath))) {
+      throw new IOException("Given keyboard input file doesn't exist");
+    }
+
+    // check network hub link
+    if (hubPath != null && !Files.exists(hubPath)) {
+      throw new IOException("Given network hub socket doesn't exist");
+    }
+    if (flushLatency < 0) {
+      throw new IOException("Network flush latency can't be negative");
+    }
+
+    // check parallel stepping, that relies on bus validation to catch conflicts
+    if (stepWorkers > 1 && fastMode) {
+      throw new IOException("Parallel stepping can't be used with fast bus validation");
+    }
+
+    // check flight recorder capacity
+    if (recorderCapacity <= 0) {
+      throw new IOException("Flight recorder capacity must be positive");
+    }
+
+    // check device scheduler precision
+    if (devicePrecision < 0) {
+      throw new IOException("Device scheduler precision can't be negative");
+    }
+
+    // check timer resolution
+    if (timerResolution * 1000L < TimerDevice.MIN_RESOLUTION) {
+      throw new IOException("Timer resolution must be at least "
+              + TimerDevice.MIN_RESOLUTION / 1000 + " us");
+    }
+
+    // check guest clock frequency
+    if (clockFrequency < 0 || clockFrequency * 1000L > Simulation.MAX_CLOCK_FREQUENCY) {
+      throw new IOException("Clock frequency must be between 1 and "
+              + Simulation.MAX_CLOCK_FREQUENCY / 1000 + " kHz");
+    }
+
+    // parse cache configurations
+    try {
+      if (hasArgument(args, ICACHE_TAG)) {
+        icacheConfig = Cache.Config.parse(String.valueOf(getArgument(args, ICACHE_TAG)));
+      }
+      if (hasArgument(args, DCACHE_TAG)) {
+        dcacheConfig = Cache.Config.parse(String.valueOf(getArgument(args, DCACHE_TAG)));
+      }
+    } catch (RuntimeException e) {
+      throw new IOException(e.getMessage());
+    }
+
+    // parse mapped RAM configuration
+    ramPath = hasArgument(args, RAM_PATH_TAG) ? Path.of(getArgument(args, RAM_PATH_TAG)) : ramPath;
+    if (ramPath != null && !Files.isDirectory(ramPath)) {
+      throw new IOException("Given persistent RAM path is not a directory");
+    }
+    if (hasArgument(args, RAM_SIZE_TAG)) {
+      ramSize = parseSize(String.valueOf(getArgument(args, RAM_SIZE_TAG)));
+    } else if (ramPath != null) {
+      ramSize = MappedRam.BASE_SIZE;
+    }
+
+    // parse wait states configuration
+    if (hasArgument(args, WAIT_TAG)) {
+      parseWaitStates(String.valueOf(getArgument(args, WAIT_TAG)));
+    }
 
     // load simulation EPROMs
     System.out.println(">> Loading simulation EPROM(s) from " + epromPath);
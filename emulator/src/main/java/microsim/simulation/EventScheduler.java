@@ -0,0 +1,127 @@
+package microsim.simulation;
+
+import microsim.simulation.component.bus.Bus;
+import microsim.simulation.component.bus.BusResponder;
+import microsim.simulation.component.SimulationComponent;
+
+/**
+ * Steps the responders of a simulation cycle only when they have pending work. Responders do
+ * nothing on a cycle unless a transaction is addressed to them, or they are still serving one
+ * (driving the data line, waiting or streaming a burst). Each responder declares the next cycle it
+ * needs attention at through {@link microsim.simulation.component.bus.BusResponder#getWakeCycle()},
+ * and is otherwise only stepped on a cycle that sees read or write enable high at an address it
+ * responds to. Cycles with no transaction and no pending work don't look at responders at all.
+ * <p>
+ * Responders are stepped in the same order as in sequential stepping, so cycle-by-cycle behavior
+ * is identical.
+ */
+public class EventScheduler {
+
+  /**
+   * Bus responders are mounted on. Read to find addressed responders.
+   */
+  private final Bus bus;
+
+  /**
+   * Responders to step, in sequential stepping order.
+   */
+  private final BusResponder[] responders;
+
+  /**
+   * Responders as components, to step them.
+   */
+  private final SimulationComponent[] components;
+
+  /**
+   * Next cycle each responder needs to be stepped at.
+   */
+  private final long[] wakeCycles;
+
+  /**
+   * Earliest cycle any responder needs to be stepped at.
+   */
+  private long nextWakeCycle = Long.MAX_VALUE;
+
+  /**
+   * Number of responder steps performed.
+   */
+  private long steps;
+
+  /**
+   * Number of responder steps skipped.
+   */
+  private long skips;
+
+  /**
+   * Instantiates a scheduler over the given responders. All responders start idle.
+   *
+   * @param bus bus responders are mounted on
+   * @param components responders to step, in sequential order
+   */
+  public EventScheduler(Bus bus, SimulationComponent[] components) {
+    this.bus = bus;
+    this.components = components;
+    responders = new BusResponder[components.length];
+    wakeCycles = new long[components.length];
+
+    for (int i = 0; i < components.length; i++) {
+      if (!(components[i] instanceof BusResponder responder)) {
+        throw new RuntimeException("Component " + components[i].getClass().getSimpleName()
+                + " is not a bus responder");
+      }
+      responders[i] = responder;
+      wakeCycles[i] = Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Steps the responders that have pending work on a cycle. Must be called after the bus was
+   * stepped.
+   *
+   * @param cycle current cycle
+   */
+  public void step(long cycle) {
+    // check for a transaction
+    boolean request = bus.readEnable.readBool() || bus.writeEnable.readBool();
+
+    // nothing to do
+    if (!request && nextWakeCycle > cycle) {
+      skips += responders.length;
+      return;
+    }
+
+    int addr = bus.addressLine.read();
+    long next = Long.MAX_VALUE;
+
+    for (int i = 0; i < responders.length; i++) {
+      if (wakeCycles[i] <= cycle || request && responders[i].respondsTo(addr)) {
+        components[i].step();
+        wakeCycles[i] = responders[i].getWakeCycle();
+        steps++;
+      } else {
+        skips++;
+      }
+      next = Math.min(next, wakeCycles[i]);
+    }
+
+    nextWakeCycle = next;
+  }
+
+  /**
+   * Returns number of responder steps performed.
+   *
+   * @return steps
+   */
+  public long getSteps() {
+    return steps;
+  }
+
+  /**
+   * Returns number of responder steps skipped.
+   *
+   * @return skipped steps
+   */
+  public long getSkips() {
+    return skips;
+  }
+}
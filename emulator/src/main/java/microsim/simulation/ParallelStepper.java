@@ -0,0 +1,258 @@
+package microsim.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import microsim.simulation.component.SimulationComponent;
+import microsim.simulation.component.bus.Bus;
+import microsim.ui.DebugShell;
+
+/**
+ * Steps the components of a simulation cycle on worker threads. Within a cycle components only
+ * read committed line values and drive buffered ones, so their steps are independent until the next
+ * {@link microsim.simulation.component.bus.Bus#step()}. A cycle is then performed in two phases:
+ * <ol>
+ * <li>Components are stepped concurrently, each worker stepping a fixed share of them (the calling
+ * thread is worker 0).</li>
+ * <li>All workers meet at a barrier, after which the bus checks for lines touched by more than one
+ * component in the phase (see
+ * {@link microsim.simulation.component.bus.Bus#endParallelPhase()}).</li>
+ * </ol>
+ * Components are assigned to workers round-robin, so assignment and conflict reports don't depend
+ * on thread timing. The barrier spins, as cycles are far shorter than a park/unpark round trip, and
+ * yields after {@link #SPIN_LIMIT} spins so that it still progresses when workers outnumber host
+ * cores.
+ * <p>
+ * Stepping falls back to the sequential order while debugging is enabled, so that debug events
+ * keep their order and the debug shell keeps exact single-cycle stepping. It also does while the
+ * bus traces, counts or watches transactions, as responders on all workers share the tracer,
+ * heatmap and watchpoints, and while a component isn't parallel safe (see
+ * {@link microsim.simulation.component.SimulationComponent#isParallelSafe()}).
+ * <p>
+ * Synchronization costs a few hundred nanoseconds per cycle, which is far more than the default
+ * components take to step: parallel stepping only pays off on machines with many components doing
+ * substantial work per cycle. {@code ParallelStepperBenchmark}, among the test sources, measures
+ * where it breaks even on the host.
+ */
+public class ParallelStepper {
+
+  /**
+   * Number of spins after which waiting threads start yielding.
+   */
+  public static final int SPIN_LIMIT = 1000;
+
+  /**
+   * Bus components are mounted on. Used to open and close parallel phases.
+   */
+  private final Bus bus;
+
+  /**
+   * Components to step, in sequential stepping order.
+   */
+  private final SimulationComponent[] components;
+
+  /**
+   * Number of workers, including the calling thread.
+   */
+  private final int workers;
+
+  /**
+   * Worker threads (worker 0, the calling thread, is not included).
+   */
+  private final Thread[] threads;
+
+  /**
+   * Current phase number. Workers start a phase when they see it change.
+   */
+  private volatile long phase = 0;
+
+  /**
+   * Number of workers that have yet to finish the current phase.
+   */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /**
+   * Signals workers to terminate.
+   */
+  private volatile boolean shutdown = false;
+
+  /**
+   * First exception thrown by a worker in the current phase, rethrown by the calling thread.
+   * Exceptions thrown later in the phase are attached to it as suppressed.
+   */
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  /**
+   * Instantiates a parallel stepper over the given components and starts its worker threads.
+   *
+   * @param name name used for worker threads
+   * @param bus bus components are mounted on
+   * @param components components to step, in sequential order
+   * @param workers number of workers, including the calling thread
+   */
+  public ParallelStepper(String name, Bus bus, SimulationComponent[] components, int workers) {
+    if (workers < 1) {
+      throw new RuntimeException("Parallel stepper needs at least 1 worker");
+    }
+
+    this.bus = bus;
+    this.components = components;
+    this.workers = Math.min(workers, components.length);
+
+    // start workers past worker 0
+    threads = new Thread[this.workers - 1];
+    for (int i = 1; i < this.workers; i++) {
+      final int worker = i;
+      Thread thread = new Thread(() -> workerThread(worker));
+      thread.setName(name + ": Stepper " + i);
+      thread.setDaemon(true);
+      thread.start();
+      threads[i - 1] = thread;
+    }
+  }
+
+  /**
+   * Returns number of workers, including the calling thread.
+   *
+   * @return number of workers
+   */
+  public int getWorkers() {
+    return workers;
+  }
+
+  /**
+   * Waits a bit while spinning on a condition: spins for the first {@link #SPIN_LIMIT} calls, then
+   * yields.
+   *
+   * @param spins number of spins so far
+   * @return updated number of spins
+   */
+  private static int backoff(int spins) {
+    if (spins < SPIN_LIMIT) {
+      Thread.onSpinWait();
+      return spins + 1;
+    }
+
+    Thread.yield();
+    return spins;
+  }
+
+  /**
+   * Steps the components assigned to a worker.
+   *
+   * @param worker index of worker
+   */
+  private void stepShare(int worker) {
+    for (int i = worker; i < components.length; i += workers) {
+      components[i].step();
+    }
+  }
+
+  /**
+   * Worker thread loop: waits for a new phase, steps its share, and signals completion.
+   *
+   * @param worker index of worker
+   */
+  private void workerThread(int worker) {
+    long seen = 0;
+
+    while (true) {
+      // wait for next phase
+      int spins = 0;
+      while (phase == seen) {
+        if (shutdown) {
+          return;
+        }
+        spins = backoff(spins);
+      }
+      seen = phase;
+
+      // step share, keeping the first failure
+      try {
+        stepShare(worker);
+      } catch (Throwable t) {
+        if (!failure.compareAndSet(null, t)) {
+          failure.get().addSuppressed(t);
+        }
+      }
+
+      // signal completion
+      pending.decrementAndGet();
+    }
+  }
+
+  /**
+   * Checks if components can be stepped concurrently in the current cycle: the bus doesn't trace,
+   * count or watch transactions, and all components are parallel safe.
+   *
+   * @return can components be stepped concurrently?
+   */
+  private boolean isParallelSafe() {
+    if (bus.tracer != null || bus.heatmap != null
+            || !bus.watchpoints.getWatchpoints().isEmpty()) {
+      return false;
+    }
+    for (SimulationComponent component : components) {
+      if (!component.isParallelSafe()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Steps all components once. Returns when all of them have stepped and the phase was checked for
+   * conflicts.
+   */
+  public void step() {
+    // step sequentially while debugging, or while components share state beyond bus lines
+    if (DebugShell.isDebuggingEnabled() || workers == 1 || !isParallelSafe()) {
+      for (SimulationComponent component : components) {
+        component.step();
+      }
+      return;
+    }
+
+    // start phase
+    bus.beginParallelPhase();
+    pending.set(workers - 1);
+    phase++;
+
+    // step own share
+    Throwable ownFailure = null;
+    try {
+      stepShare(0);
+    } catch (Throwable t) {
+      ownFailure = t;
+    }
+
+    // wait at barrier
+    int spins = 0;
+    while (pending.get() != 0) {
+      spins = backoff(spins);
+    }
+
+    // check for conflicts first, as they might have caused failures
+    Throwable t = failure.getAndSet(null);
+    if (ownFailure != null) {
+      if (t != null && t != ownFailure) {
+        ownFailure.addSuppressed(t);
+      }
+      t = ownFailure;
+    }
+    bus.endParallelPhase();
+
+    // rethrow failures, own first
+    if (t instanceof RuntimeException e) {
+      throw e;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  /**
+   * Terminates worker threads. Workers finish the phase they are in before terminating.
+   */
+  public void shutdown() {
+    shutdown = true;
+  }
+}
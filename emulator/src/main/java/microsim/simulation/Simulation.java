@@ -1,7 +1,9 @@
 package microsim.simulation;
 
+import java.util.Map;
 import microsim.simulation.component.*;
 import microsim.simulation.component.bus.*;
+import microsim.simulation.component.device.IoDevice;
 import microsim.simulation.component.device.block.BlockDevice;
 import microsim.simulation.component.processor.*;
 import microsim.simulation.component.memory.*;
@@ -10,13 +12,14 @@ import microsim.simulation.component.device.keyboard.*;
 import microsim.simulation.component.device.timer.*;
 import microsim.simulation.component.device.network.*;
 import microsim.simulation.event.*;
+import microsim.simulation.jfr.*;
 import microsim.ui.DebugShell;
 
 /**
- * Represents a simulation instance by keeping references to simulated components. Pipes
- * {@link microsim.simulation.event.FrameEvent} events from
- * {@link microsim.simulation.component.SimulationComponent} components to external
- * {@link microsim.simulation.event.SimulationListener} listeners.
+ * Represents a simulation instance by keeping references to simulated components. External
+ * {@link microsim.simulation.event.SimulationListener} listeners added to a simulation are
+ * subscribed to all of its {@link microsim.simulation.component.SimulationComponent} components,
+ * and get events straight from them.
  */
 public class Simulation extends SimulationComponent implements SimulationListener {
 
@@ -91,6 +94,214 @@ public class Simulation extends SimulationComponent implements SimulationListene
   public final BlockDevice disk;
 
 
+  /**
+   * Returns all I/O devices mounted on the bus, in stepping order.
+   *
+   * @return I/O devices of this simulation
+   */
+  public IoDevice[] getDevices() {
+    return new IoDevice[]{video, keyboard, timer, network, disk};
+  }
+
+  /**
+   * Names of memory regions and devices wait states can be set for, see
+   * {@link #setWaitStates(java.util.Map)}.
+   */
+  public static final String[] WAIT_STATE_TARGETS = {
+    "eprom", "ram", "vram", "video", "keyboard", "timer", "network", "disk"
+  };
+
+  /**
+   * Sets wait states of memory regions and devices, by name (see {@link #WAIT_STATE_TARGETS}).
+   * Regions and devices that aren't named keep answering with no wait states.
+   *
+   * @param waitStates wait states by region or device name
+   */
+  public void setWaitStates(Map<String, Integer> waitStates) {
+    memory.setWaitStates(waitStates.getOrDefault("eprom", 0), waitStates.getOrDefault("ram", 0),
+            waitStates.getOrDefault("vram", 0));
+    video.setWaitStates(waitStates.getOrDefault("video", 0));
+    keyboard.setWaitStates(waitStates.getOrDefault("keyboard", 0));
+    timer.setWaitStates(waitStates.getOrDefault("timer", 0));
+    network.setWaitStates(waitStates.getOrDefault("network", 0));
+    disk.setWaitStates(waitStates.getOrDefault("disk", 0));
+  }
+
+  /**
+   * Stepper used to step components concurrently. Null means components are stepped sequentially.
+   */
+  private ParallelStepper stepper;
+
+  /**
+   * Enables stepping components concurrently on the given number of workers (including the
+   * simulation thread). See {@link microsim.simulation.ParallelStepper}. Should be called before
+   * the simulation begins. Needs a strict bus, that checks for conflicts between workers.
+   *
+   * @param workers number of workers
+   */
+  public void enableParallelStepping(int workers) {
+    if (!(bus instanceof StrictBus)) {
+      throw new RuntimeException("Parallel stepping needs strict bus validation");
+    }
+    stepper = new ParallelStepper(name, bus, new SimulationComponent[]{
+      proc, memory, video, keyboard, timer, network, disk
+    }, workers);
+  }
+
+  /**
+   * Scheduler used to step only responders with pending work. Null means all components are stepped
+   * on every cycle.
+   */
+  private EventScheduler scheduler;
+
+  /**
+   * Enables or disables event-driven stepping of bus responders. See
+   * {@link microsim.simulation.EventScheduler}. Enabled by default, disabling it steps all
+   * components on every cycle, which is slower but useful to compare against. Parallel stepping
+   * takes precedence. Should be called before the simulation begins.
+   *
+   * @param enabled should responders be stepped only when they have pending work?
+   */
+  public void setEventScheduling(boolean enabled) {
+    scheduler = enabled ? new EventScheduler(bus, new SimulationComponent[]{
+      memory, video, keyboard, timer, network, disk
+    }) : null;
+  }
+
+  /**
+   * Returns event scheduler.
+   *
+   * @return event scheduler, or null if event-driven stepping is disabled
+   */
+  public EventScheduler getEventScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Current simulation cycle.
+   */
+  private long cycle = 0;
+
+  /**
+   * Returns the current simulation cycle. Used to report where violations and events happened.
+   *
+   * @return current cycle
+   */
+  public long getCycle() {
+    return cycle;
+  }
+
+  /**
+   * Maximum guest clock frequency, in hertz. Keeps cycle and time conversions from overflowing.
+   */
+  public static final long MAX_CLOCK_FREQUENCY = 4_000_000_000L;
+
+  /**
+   * Guest clock frequency, in hertz. 0 means threaded devices run in wall time, on their own
+   * threads.
+   */
+  private long clockFrequency = 0;
+
+  /**
+   * Cycle threaded devices have work due at, in virtual time. Long.MAX_VALUE in wall time, or when
+   * no device has work due.
+   */
+  private long nextDeviceCycle = Long.MAX_VALUE;
+
+  /**
+   * Runs threaded devices (video and timer) in virtual time, at the given guest clock frequency.
+   * Devices are then driven inline by the simulation thread, at the cycles their work is due at:
+   * runs are deterministic and not bound to real time. Should be called before the simulation
+   * begins.
+   *
+   * @param clockFrequency guest clock frequency, in hertz
+   */
+  public void setClockFrequency(long clockFrequency) {
+    if (clockFrequency <= 0 || clockFrequency > MAX_CLOCK_FREQUENCY) {
+      throw new RuntimeException("Clock frequency must be between 1 and " + MAX_CLOCK_FREQUENCY
+              + " Hz");
+    }
+    this.clockFrequency = clockFrequency;
+
+    video.setVirtualTime(true);
+    timer.setVirtualTime(true);
+
+    // devices run on first cycle
+    nextDeviceCycle = 0;
+  }
+
+  /**
+   * Returns guest clock frequency.
+   *
+   * @return guest clock frequency, in hertz, 0 if threaded devices run in wall time
+   */
+  public long getClockFrequency() {
+    return clockFrequency;
+  }
+
+  /**
+   * Returns simulated time, that is time elapsed at the guest clock frequency in the cycles run so
+   * far. Only meaningful in virtual time.
+   *
+   * @return simulated time, in nanoseconds, 0 in wall time
+   */
+  public long getVirtualTime() {
+    if (clockFrequency == 0) {
+      return 0;
+    }
+
+    // split to not overflow
+    return cycle / clockFrequency * 1_000_000_000L
+            + cycle % clockFrequency * 1_000_000_000L / clockFrequency;
+  }
+
+  /**
+   * Returns the first cycle at which simulated time reaches the given time.
+   *
+   * @param time simulated time, in nanoseconds
+   * @return first cycle reaching time, Long.MAX_VALUE if out of range
+   */
+  private long cycleAt(long time) {
+    long seconds = time / 1_000_000_000L;
+    if (seconds >= Long.MAX_VALUE / clockFrequency) {
+      return Long.MAX_VALUE;
+    }
+
+    // split to not overflow, rounding up
+    long rest = time % 1_000_000_000L * clockFrequency;
+    return seconds * clockFrequency + (rest + 999_999_999L) / 1_000_000_000L;
+  }
+
+  /**
+   * Runs work threaded devices have due, in virtual time, and finds the cycle work is next due at.
+   */
+  private void advanceDevices() {
+    long now = getVirtualTime();
+    long next = Math.min(video.advance(now), timer.advance(now));
+    nextDeviceCycle = next == Long.MAX_VALUE ? Long.MAX_VALUE : cycleAt(next);
+  }
+
+  /**
+   * Has threaded devices advance after the current cycle, in virtual time. Called by devices whose
+   * state changed.
+   */
+  public void wakeDevices() {
+    if (clockFrequency != 0) {
+      nextDeviceCycle = cycle;
+    }
+  }
+
+  /**
+   * Number of cycles run between checks of simulation state when not debugging.
+   */
+  public static final int QUANTUM_CYCLES = 4096;
+
+  /**
+   * Signals that the current quantum should end early, as an event that needs the main loop's
+   * attention (a halt, break or watchpoint hit) was raised. Only touched by the simulation thread.
+   */
+  private boolean quantumBreak = false;
+
   /**
    * Is the simulation running?
    */
@@ -105,21 +316,31 @@ public class Simulation extends SimulationComponent implements SimulationListene
     return running;
   }
 
+  /**
+   * Instantiates simulation configuring devices and components, with a strict bus.
+   *
+   * @param name name of this simulation
+   */
+  public Simulation(String name) {
+    this(name, Bus.Validation.STRICT);
+  }
+
   /**
    * Instantiates simulation configuring devices and components. Sets self as listener of the
    * simulation components involved.
    *
    * @param name name of this simulation
+   * @param validation bus validation mode
    */
   @SuppressWarnings("LeakingThisInConstructor")
-  public Simulation(String name) {
+  public Simulation(String name, Bus.Validation validation) {
     // set simulation reference as self
     super(null);
     simulation = this;
     this.name = name;
 
     // init bus
-    bus = new Bus(this);
+    bus = Bus.create(this, validation);
 
     // init components on bus
     proc = new Processor(bus, this);
@@ -130,37 +351,96 @@ public class Simulation extends SimulationComponent implements SimulationListene
     network = new NetworkDevice(bus, NETWORK_BASE, this);
     disk = new BlockDevice(bus, DISK_BASE, this);
 
-    // attach memory to video
+    // register devices as bus responders, now that they are built
+    for (IoDevice device : new IoDevice[]{video, keyboard, timer, network, disk}) {
+      device.registerResponder();
+    }
+
+    // attach memory to video, and to network for packet transfers
     video.attachMemory(memory);
+    network.attachMemory(memory);
+
+    // put network device on a segment of its own
+    network.connect(new NetworkSwitch());
 
     // set self as listener: leaks a this reference but we don't expect listeners to use it just now
-    bus.addListener(this);
-    proc.addListener(this);
-    memory.addListener(this);
-    video.addListener(this);
-    keyboard.addListener(this);
-    timer.addListener(this);
-    network.addListener(this);
-    disk.addListener(this);
+    for (SimulationComponent component : getComponents()) {
+      component.addListener(HaltEvent.class, this);
+      component.addListener(BreakEvent.class, this);
+      component.addListener(WatchEvent.class, this);
+    }
+
+    // step responders only when needed
+    setEventScheduling(true);
+  }
+
+  /**
+   * Returns all components of this simulation, excluding the simulation itself.
+   *
+   * @return components of this simulation
+   */
+  private SimulationComponent[] getComponents() {
+    return new SimulationComponent[]{bus, proc, memory, video, keyboard, timer, network, disk};
+  }
+
+  /**
+   * Adds an event listener that gets events of the given type (and its subtypes) raised by this
+   * simulation or any of its components. Component subscriptions come after the one of this
+   * simulation, so that it sees halts before external listeners do.
+   *
+   * @param type type of events to get
+   * @param l listener to add
+   */
+  @Override
+  public synchronized void addListener(Class<? extends SimulationEvent> type,
+          SimulationListener l) {
+    super.addListener(type, l);
+    for (SimulationComponent component : getComponents()) {
+      component.addListener(type, l);
+    }
   }
 
   /**
-   * Pipes {@link microsim.simulation.event.FrameEvent} events from
-   * {@link microsim.simulation.component.SimulationComponent} components to external
-   * {@link microsim.simulation.event.SimulationListener} listeners. Checks for
-   * {@link microsim.simulation.event.HaltEvent} events to power off.
+   * Removes all subscriptions of an event listener, from this simulation and its components.
    *
-   * @param e event to pipe
+   * @param l listener to remove
+   */
+  @Override
+  public synchronized void removeListener(SimulationListener l) {
+    super.removeListener(l);
+    for (SimulationComponent component : getComponents()) {
+      component.removeListener(l);
+    }
+  }
+
+  /**
+   * Receives halts, breaks and watchpoint hits from components. Checks for
+   * {@link microsim.simulation.event.HaltEvent} events to power off. Halts, breaks and watchpoint
+   * hits end the current quantum, so that the main loop sees them on the next cycle.
+   *
+   * @param e event received
    */
   @Override
   public void onSimulationEvent(SimulationEvent e) {
+    // record halts and breaks
+    if (e instanceof HaltEvent || e instanceof BreakEvent) {
+      SimulationStopEvent event = new SimulationStopEvent();
+      if (event.shouldCommit()) {
+        event.simulation = name;
+        event.reason = e instanceof HaltEvent ? "halt" : "break";
+        event.cycle = cycle;
+        event.pc = proc.getPc();
+        event.commit();
+      }
+    }
+
     // power off on halt
     if (e instanceof HaltEvent) {
       poweroff();
     }
 
-    // propagate
-    raiseEvent(e);
+    // end quantum on events the main loop must see
+    quantumBreak = true;
   }
 
   /**
@@ -173,7 +453,11 @@ public class Simulation extends SimulationComponent implements SimulationListene
    * <li>Memory space.</li>
    * <li>I/O devices.</li>
    * </ol>
+   * or concurrently, if parallel stepping was enabled. If event-driven stepping is enabled, memory
+   * space and I/O devices are only stepped when they have pending work.
    * </li>
+   * <li>Increasing the cycle counter.</li>
+   * <li>Advancing threaded devices, if they have work due in virtual time.</li>
    * </ol>
    */
   @Override
@@ -182,41 +466,84 @@ public class Simulation extends SimulationComponent implements SimulationListene
     bus.step();
 
     // components read and step
-    proc.step();
-    memory.step();
-    video.step();
-    keyboard.step();
-    timer.step();
-    network.step();
-    disk.step();
+    if (stepper != null) {
+      stepper.step();
+    } else if (scheduler != null) {
+      proc.step();
+      scheduler.step(cycle);
+    } else {
+      proc.step();
+      memory.step();
+      video.step();
+      keyboard.step();
+      timer.step();
+      network.step();
+      disk.step();
+    }
+
+    // increase cycle
+    cycle++;
+
+    // run device work due in virtual time
+    if (cycle >= nextDeviceCycle) {
+      advanceDevices();
+    }
   }
 
   /**
-   * Main simulation thread.
+   * Main simulation thread. When not debugging, cycles are run in quanta of
+   * {@link #QUANTUM_CYCLES} cycles, and the running flag, debug state and world stops are only
+   * checked between quanta (see {@link #runQuantum()}). When debugging, cycles are run one at a
+   * time, each signaled by a {@link microsim.simulation.event.CycleEvent} to the debug shell.
    */
   private void mainThread() {
-    // init cycle counter
-    long cycle = 0;
-
     // enter simulation loop
     while (running) {
-      // if debugging signal cycle to show debug shell
-      raiseDebugEvent(new CycleEvent(this, cycle));
-
-      // actually perform simulation step
-      step();
-
-      // increase cycle
-      cycle++;
+      if (DebugShell.isDebuggingEnabled()) {
+        // signal cycle to show debug shell
+        raiseEvent(new CycleEvent(this, cycle));
+
+        // actually perform simulation step
+        step();
+      } else if (DebugShell.isWorldStopped()) {
+        // wait for world to start again
+        waitForWorld();
+      } else {
+        runQuantum();
+      }
     }
 
     // when this is reached, simulation is powering off
     System.out.println("\n>> Simulation: \"" + name + "\" powering off\n");
   }
 
+  /**
+   * Runs a quantum of {@link #QUANTUM_CYCLES} cycles, with no checks and no debug events. Ends
+   * early if an event sets {@link #quantumBreak}.
+   */
+  private void runQuantum() {
+    quantumBreak = false;
+    for (int i = 0; i < QUANTUM_CYCLES && !quantumBreak; i++) {
+      step();
+    }
+  }
+
+  /**
+   * Waits for the world to be started again, after another simulation (or the debug shell) stopped
+   * it.
+   */
+  private void waitForWorld() {
+    try {
+      Thread.sleep(1);
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Simulation was interrupted while waiting for world to start");
+    }
+  }
+
   /**
    * Executes simulation. All components on local bus run as fast as possible. Threaded devices
-   * (like video and timer) run on separate threads at fixed frequency.
+   * (like video and timer) run on separate threads at fixed frequency, or inline in virtual time
+   * (see {@link #setClockFrequency(long)}).
    *
    * @return thread of simulation
    */
@@ -225,6 +552,9 @@ public class Simulation extends SimulationComponent implements SimulationListene
     video.begin();
     timer.begin();
 
+    // sample throughput while recording
+    ThroughputEvent.register(this);
+
     // start main simulation thread
     Thread simulationThread = new Thread(() -> mainThread());
     simulationThread.setName(name + ": Main");
@@ -235,14 +565,29 @@ public class Simulation extends SimulationComponent implements SimulationListene
   }
 
   /**
-   * Stops execution of simulation. Threaded devices are stopped before the local bus.
+   * Stops execution of simulation. Threaded devices are stopped before the local bus, dirty cache
+   * lines are written back and shared memory pages are released.
    */
   public void poweroff() {
     // stop other threads
     video.stop();
     timer.stop();
+    if (stepper != null) {
+      stepper.shutdown();
+    }
 
     // stop this thread
     running = false;
+    ThroughputEvent.unregister(this);
+
+    // write dirty cache lines back, so that memory holds what the program wrote
+    for (Cache cache : new Cache[]{proc.getInstructionCache(), proc.getDataCache()}) {
+      if (cache != null) {
+        cache.flush(memory);
+      }
+    }
+
+    // let the page pool drop pages only this simulation mapped
+    memory.releasePages();
   }
 }
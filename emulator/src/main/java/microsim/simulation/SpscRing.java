@@ -0,0 +1,125 @@
+package microsim.simulation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Positions of a bounded lock-free ring, for a single producer thread and a single consumer
+ * thread. The ring only keeps positions: its users keep their slots in an array of their own, of
+ * any element type (primitive ones included), slot of position p being p &amp; {@link #mask}, so
+ * that queueing never locks, boxes nor allocates. Producers that aren't alone should serialize
+ * among themselves, the consumer side is never locked.
+ * <p>
+ * The producer claims room for one or more slots ({@link #claim(int)}), writes them, then
+ * publishes them at once ({@link #publish(long)}). The consumer looks for published slots
+ * ({@link #peek()}, {@link #available()}), reads them, then frees them ({@link #free(long)}).
+ * Publishing and freeing are volatile stores: the consumer sees everything written to a slot
+ * before it was published, and a side that raises a flag after publishing (or checks one after
+ * freeing) is ordered with the other side, so wake ups can't be missed.
+ */
+public final class SpscRing {
+
+  /**
+   * Mask of slot indices, as ring capacity is a power of 2.
+   */
+  public final int mask;
+
+  /**
+   * Number of slots consumed so far. Only written by the consumer.
+   */
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * Number of slots published so far. Only written by the producer.
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Instantiates ring positions.
+   *
+   * @param capacity ring capacity, in slots, must be a power of 2
+   */
+  public SpscRing(int capacity) {
+    if (!isValidCapacity(capacity)) {
+      throw new RuntimeException("Ring capacity must be a power of 2");
+    }
+
+    mask = capacity - 1;
+  }
+
+  /**
+   * Checks if a ring capacity is valid, for users that validate capacities up front.
+   *
+   * @param capacity ring capacity, in slots
+   * @return is capacity a positive power of 2?
+   */
+  public static boolean isValidCapacity(int capacity) {
+    return capacity > 0 && Integer.bitCount(capacity) == 1;
+  }
+
+  /**
+   * Returns ring capacity.
+   *
+   * @return capacity, in slots
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Claims room for slots. Only called by the producer.
+   *
+   * @param count number of slots to claim
+   * @return position of first claimed slot, or -1 if the ring doesn't have room for all of them
+   */
+  public long claim(int count) {
+    long t = tail.get();
+    return t + count - head.get() > mask + 1 ? -1 : t;
+  }
+
+  /**
+   * Publishes slots written since the last publish. Only called by the producer.
+   *
+   * @param end position past the last slot to publish
+   */
+  public void publish(long end) {
+    tail.set(end);
+  }
+
+  /**
+   * Returns position of the oldest published slot. Only called by the consumer.
+   *
+   * @return position of oldest slot, or -1 if no slot is published
+   */
+  public long peek() {
+    long h = head.get();
+    return h == tail.get() ? -1 : h;
+  }
+
+  /**
+   * Returns number of published slots not freed yet. Only exact when called by the consumer.
+   *
+   * @return published slots
+   */
+  public int available() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Frees slots read since the last free, making room for the producer. Only called by the
+   * consumer.
+   *
+   * @param end position past the last slot to free
+   */
+  public void free(long end) {
+    head.set(end);
+  }
+
+  /**
+   * Returns whether the ring has no published slots.
+   *
+   * @return is the ring empty?
+   */
+  public boolean isEmpty() {
+    return head.get() == tail.get();
+  }
+}
@@ -1,7 +1,9 @@
 package microsim.simulation.component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import microsim.simulation.Simulation;
 import microsim.simulation.event.*;
 import microsim.ui.DebugShell;
@@ -11,6 +13,9 @@ import microsim.ui.DebugShell;
  * functionality for stepping on simulation cycles, and for raising
  * {@link microsim.simulation.event.SimulationEvent} events. Components keep a reference to the
  * simulation they belong to.
+ * <p>
+ * Listeners subscribe to a type of event, and get events of that type and its subtypes. Raising
+ * an event only walks the listeners subscribed to its type, resolved once per event class.
  */
 public abstract class SimulationComponent {
 
@@ -20,9 +25,43 @@ public abstract class SimulationComponent {
   public Simulation simulation;
 
   /**
-   * Array of event listeners.
+   * Subscription of a listener to a type of event.
    */
-  private final List<SimulationListener> listeners = new ArrayList<>();
+  private static class Subscription {
+
+    /**
+     * Type of events the listener gets.
+     */
+    final Class<? extends SimulationEvent> type;
+
+    /**
+     * Subscribed listener.
+     */
+    final SimulationListener listener;
+
+    /**
+     * Instantiates subscription.
+     *
+     * @param type type of events the listener gets
+     * @param listener subscribed listener
+     */
+    Subscription(Class<? extends SimulationEvent> type, SimulationListener listener) {
+      this.type = type;
+      this.listener = listener;
+    }
+  }
+
+  /**
+   * Listener subscriptions, in subscription order.
+   */
+  private final List<Subscription> subscriptions = new ArrayList<>();
+
+  /**
+   * Listeners to notify by event class, resolved from {@link #subscriptions} when an event class
+   * is first raised. Replaced as a whole, never modified, so that events can be raised from any
+   * thread without locking.
+   */
+  private volatile Map<Class<?>, SimulationListener[]> dispatch = Map.of();
 
   /**
    * Instantiates component, taking a reference to the simulation it belongs to.
@@ -34,30 +73,86 @@ public abstract class SimulationComponent {
   }
 
   /**
-   * Adds an event listener to {@link #listeners}.
+   * Adds an event listener that gets all events.
    *
    * @param l listener to add
    */
   public void addListener(SimulationListener l) {
-    listeners.add(l);
+    addListener(SimulationEvent.class, l);
   }
 
   /**
-   * Removes an event listener from {@link #listeners}. If the listener is not present, nothing
-   * changes.
+   * Adds an event listener that gets events of the given type (and its subtypes).
    *
+   * @param type type of events to get
    * @param l listener to add
    */
-  public void removeListener(SimulationListener l) {
-    listeners.remove(l);
+  public synchronized void addListener(Class<? extends SimulationEvent> type,
+          SimulationListener l) {
+    subscriptions.add(new Subscription(type, l));
+    dispatch = Map.of();
+  }
+
+  /**
+   * Removes all subscriptions of an event listener. If the listener is not present, nothing
+   * changes.
+   *
+   * @param l listener to remove
+   */
+  public synchronized void removeListener(SimulationListener l) {
+    subscriptions.removeIf(s -> s.listener == l);
+    dispatch = Map.of();
+  }
+
+  /**
+   * Resolves the listeners to notify of events of a class, and adds them to {@link #dispatch}.
+   *
+   * @param eventClass class of events
+   * @return listeners to notify
+   */
+  private synchronized SimulationListener[] resolve(Class<?> eventClass) {
+    // might have been resolved while waiting for the lock
+    SimulationListener[] listeners = dispatch.get(eventClass);
+    if (listeners != null) {
+      return listeners;
+    }
+
+    List<SimulationListener> matching = new ArrayList<>();
+    for (Subscription s : subscriptions) {
+      if (s.type.isAssignableFrom(eventClass) && !matching.contains(s.listener)) {
+        matching.add(s.listener);
+      }
+    }
+    listeners = matching.toArray(new SimulationListener[0]);
+
+    Map<Class<?>, SimulationListener[]> resolved = new HashMap<>(dispatch);
+    resolved.put(eventClass, listeners);
+    dispatch = resolved;
+    return listeners;
+  }
+
+  /**
+   * Returns whether this component can currently be stepped concurrently with the other components
+   * of its simulation (see {@link microsim.simulation.ParallelStepper}), that is, whether its steps
+   * only touch other components through bus lines.
+   *
+   * @return can the component be stepped concurrently?
+   */
+  public boolean isParallelSafe() {
+    return true;
   }
 
   /**
-   * Raises a simulation event.
+   * Raises a simulation event, notifying the listeners subscribed to its type.
    *
    * @param e event to raise
    */
   public void raiseEvent(SimulationEvent e) {
+    SimulationListener[] listeners = dispatch.get(e.getClass());
+    if (listeners == null) {
+      listeners = resolve(e.getClass());
+    }
+
     for (SimulationListener l : listeners) {
       l.onSimulationEvent(e);
     }
@@ -65,7 +160,8 @@ public abstract class SimulationComponent {
 
   /**
    * Raises a debug event, that is an event that is only relevant when debugging is enabled.
-   * Otherwise, discard the event.
+   * Otherwise, discard the event. The event is built by the caller anyways: on hot paths, use
+   * {@link #raiseDebugEvent(String)} and its overloads, or check {@link #isDebugging()} first.
    *
    * @param e event to raise
    */
@@ -75,6 +171,55 @@ public abstract class SimulationComponent {
     }
   }
 
+  /**
+   * Raises a {@link microsim.simulation.event.DebugEvent} with a message, building it only if
+   * debugging is enabled. Allocates nothing otherwise, as long as the message is a constant.
+   *
+   * @param message debug message
+   */
+  public void raiseDebugEvent(String message) {
+    if (DebugShell.isDebuggingEnabled()) {
+      raiseEvent(new DebugEvent(this, message));
+    }
+  }
+
+  /**
+   * Raises a {@link microsim.simulation.event.DebugEvent} with a message and an int, building it
+   * only if debugging is enabled.
+   *
+   * @param message debug message
+   * @param int0 first int to concatenate to message
+   */
+  public void raiseDebugEvent(String message, int int0) {
+    if (DebugShell.isDebuggingEnabled()) {
+      raiseEvent(new DebugEvent(this, message, int0));
+    }
+  }
+
+  /**
+   * Raises a {@link microsim.simulation.event.DebugEvent} with a message and two ints, building it
+   * only if debugging is enabled.
+   *
+   * @param message debug message
+   * @param int0 first int to concatenate to message
+   * @param int1 second int to concatenate to message
+   */
+  public void raiseDebugEvent(String message, int int0, int int1) {
+    if (DebugShell.isDebuggingEnabled()) {
+      raiseEvent(new DebugEvent(this, message, int0, int1));
+    }
+  }
+
+  /**
+   * Returns whether debugging is enabled, for callers that need to build debug messages. Checking
+   * first keeps message building off the path taken when debugging is disabled.
+   *
+   * @return is debugging enabled?
+   */
+  protected static boolean isDebugging() {
+    return DebugShell.isDebuggingEnabled();
+  }
+
   /**
    * Is called on simulation steps. Simulation components perform their update logic here.
    */
@@ -0,0 +1,260 @@
+package microsim.simulation.component.bus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import microsim.simulation.component.memory.MemorySpace;
+import microsim.ui.DebugShell;
+
+/**
+ * Counts reads and writes served by bus responders: per {@link #LINE_SIZE} byte line of memory
+ * space (extended RAM excluded), and per port of each device. Counters are allocated when the
+ * heatmap is attached to the bus (see
+ * {@link microsim.simulation.component.bus.Bus#attachHeatmap()}), so counting allocates nothing.
+ */
+public class AccessHeatmap {
+
+  /**
+   * Size of a memory line in bits.
+   */
+  public static final int LINE_SHIFT = 6;
+
+  /**
+   * Size of a memory line, in bytes.
+   */
+  public static final int LINE_SIZE = 1 << LINE_SHIFT;
+
+  /**
+   * Number of memory lines.
+   */
+  public static final int LINES = MemorySpace.SIZE >>> LINE_SHIFT;
+
+  /**
+   * Number of lines in a row of the text heatmap.
+   */
+  public static final int ROW_LINES = 64;
+
+  /**
+   * Characters of the text heatmap, from no accesses to most accesses.
+   */
+  private static final String RAMP = " .:-=+*#%@";
+
+  /**
+   * Reads per memory line.
+   */
+  private final long[] memoryReads = new long[LINES];
+
+  /**
+   * Writes per memory line.
+   */
+  private final long[] memoryWrites = new long[LINES];
+
+  /**
+   * Responder names, indexed by responder index.
+   */
+  private final String[] names;
+
+  /**
+   * Base address of responder ports, indexed by responder index.
+   */
+  private final int[] bases;
+
+  /**
+   * Reads per port, indexed by responder index. Null for responders without ports.
+   */
+  private final long[][] portReads;
+
+  /**
+   * Writes per port, indexed by responder index. Null for responders without ports.
+   */
+  private final long[][] portWrites;
+
+  /**
+   * Instantiates a heatmap for the given responders.
+   *
+   * @param names responder names, indexed by responder index
+   * @param bases base address of responder ports
+   * @param ports number of responder ports, 0 for responders without ports
+   */
+  AccessHeatmap(List<String> names, List<Integer> bases, List<Integer> ports) {
+    int count = names.size();
+    this.names = names.toArray(new String[0]);
+    this.bases = new int[count];
+    portReads = new long[count][];
+    portWrites = new long[count][];
+
+    for (int i = 0; i < count; i++) {
+      this.bases[i] = bases.get(i);
+      if (ports.get(i) > 0) {
+        portReads[i] = new long[ports.get(i)];
+        portWrites[i] = new long[ports.get(i)];
+      }
+    }
+  }
+
+  /**
+   * Counts a memory access.
+   *
+   * @param addr address of access
+   * @param write is the access a write?
+   */
+  public void countMemory(int addr, boolean write) {
+    int line = (addr - MemorySpace.EPROM_START) >>> LINE_SHIFT;
+    if (line >= LINES) {
+      return;
+    }
+    if (write) {
+      memoryWrites[line]++;
+    } else {
+      memoryReads[line]++;
+    }
+  }
+
+  /**
+   * Counts a port access.
+   *
+   * @param responder responder index of device
+   * @param port index of port
+   * @param write is the access a write?
+   */
+  public void countPort(int responder, int port, boolean write) {
+    if (write) {
+      portWrites[responder][port]++;
+    } else {
+      portReads[responder][port]++;
+    }
+  }
+
+  /**
+   * Clears all counters.
+   */
+  public void reset() {
+    Arrays.fill(memoryReads, 0);
+    Arrays.fill(memoryWrites, 0);
+    for (int i = 0; i < names.length; i++) {
+      if (portReads[i] != null) {
+        Arrays.fill(portReads[i], 0);
+        Arrays.fill(portWrites[i], 0);
+      }
+    }
+  }
+
+  /**
+   * Exports counters as CSV, with a row for each memory line and port that was accessed. Columns
+   * are region (memory or device name), address, reads and writes.
+   *
+   * @param path path of CSV file
+   * @throws IOException if file can't be written
+   */
+  public void exportCsv(Path path) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+      writer.write("region,address,reads,writes\n");
+
+      for (int line = 0; line < LINES; line++) {
+        if (memoryReads[line] + memoryWrites[line] == 0) {
+          continue;
+        }
+        writer.write("memory," + DebugShell.int32ToString(lineAddress(line)) + ","
+                + memoryReads[line] + "," + memoryWrites[line] + "\n");
+      }
+
+      for (int i = 0; i < names.length; i++) {
+        if (portReads[i] == null) {
+          continue;
+        }
+        for (int port = 0; port < portReads[i].length; port++) {
+          if (portReads[i][port] + portWrites[i][port] == 0) {
+            continue;
+          }
+          writer.write(names[i] + "," + DebugShell.int32ToString(bases[i] + port * 4) + ","
+                  + portReads[i][port] + "," + portWrites[i][port] + "\n");
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns address of a memory line.
+   *
+   * @param line index of line
+   * @return line address
+   */
+  private static int lineAddress(int line) {
+    return MemorySpace.EPROM_START + (line << LINE_SHIFT);
+  }
+
+  /**
+   * Renders memory counters as a text heatmap, a row of {@link #ROW_LINES} lines at a time.
+   * Intensity is logarithmic, relative to the most accessed line.
+   *
+   * @param reads should reads be counted?
+   * @param writes should writes be counted?
+   * @return text heatmap
+   */
+  public String renderMemory(boolean reads, boolean writes) {
+    // find most accessed line
+    long max = 0;
+    for (int line = 0; line < LINES; line++) {
+      max = Math.max(max, count(line, reads, writes));
+    }
+
+    StringBuilder sb = new StringBuilder();
+    double scale = Math.log(max + 1);
+
+    for (int row = 0; row < LINES; row += ROW_LINES) {
+      sb.append(DebugShell.int32ToString(lineAddress(row))).append(" |");
+      for (int line = row; line < row + ROW_LINES && line < LINES; line++) {
+        long c = count(line, reads, writes);
+        int level = c == 0 ? 0
+                : 1 + (int) ((RAMP.length() - 2) * (Math.log(c + 1) / scale));
+        sb.append(RAMP.charAt(Math.min(level, RAMP.length() - 1)));
+      }
+      sb.append("|\n");
+    }
+
+    sb.append("(").append(LINE_SIZE).append(" bytes per character, '")
+            .append(RAMP.charAt(RAMP.length() - 1)).append("' = ").append(max).append(")");
+    return sb.toString();
+  }
+
+  /**
+   * Returns accesses to a memory line.
+   *
+   * @param line index of line
+   * @param reads should reads be counted?
+   * @param writes should writes be counted?
+   * @return accesses
+   */
+  private long count(int line, boolean reads, boolean writes) {
+    return (reads ? memoryReads[line] : 0) + (writes ? memoryWrites[line] : 0);
+  }
+
+  /**
+   * Renders port counters as a table, with a row for each port that was accessed.
+   *
+   * @return port table
+   */
+  public String renderPorts() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-16s %-10s %12s %12s", "device", "port", "reads", "writes"));
+
+    for (int i = 0; i < names.length; i++) {
+      if (portReads[i] == null) {
+        continue;
+      }
+      for (int port = 0; port < portReads[i].length; port++) {
+        if (portReads[i][port] + portWrites[i][port] == 0) {
+          continue;
+        }
+        sb.append(String.format("%n%-16s %-10s %12d %12d", names[i],
+                DebugShell.int32ToString(bases[i] + port * 4), portReads[i][port],
+                portWrites[i][port]));
+      }
+    }
+
+    return sb.toString();
+  }
+}
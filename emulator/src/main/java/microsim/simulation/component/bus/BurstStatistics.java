@@ -0,0 +1,98 @@
+package microsim.simulation.component.bus;
+
+/**
+ * Keeps burst utilization statistics for a bus responder. Counts single transfers, bursts and
+ * beats transferred in bursts, so that the fraction of bus traffic moved by bursts can be computed.
+ */
+public class BurstStatistics {
+
+  /**
+   * Number of single (non burst) transfers.
+   */
+  private long singleTransfers;
+
+  /**
+   * Number of burst transfers.
+   */
+  private long bursts;
+
+  /**
+   * Number of beats transferred in bursts.
+   */
+  private long burstBeats;
+
+  /**
+   * Default constructor.
+   */
+  public BurstStatistics() {
+  }
+
+  /**
+   * Counts a single transfer.
+   */
+  public void countSingle() {
+    singleTransfers++;
+  }
+
+  /**
+   * Counts a burst transfer.
+   *
+   * @param beats number of beats in burst
+   */
+  public void countBurst(int beats) {
+    bursts++;
+    burstBeats += beats;
+  }
+
+  /**
+   * Returns number of single transfers.
+   *
+   * @return single transfers
+   */
+  public long getSingleTransfers() {
+    return singleTransfers;
+  }
+
+  /**
+   * Returns number of burst transfers.
+   *
+   * @return burst transfers
+   */
+  public long getBursts() {
+    return bursts;
+  }
+
+  /**
+   * Returns number of beats transferred in bursts.
+   *
+   * @return burst beats
+   */
+  public long getBurstBeats() {
+    return burstBeats;
+  }
+
+  /**
+   * Returns fraction of all transferred beats that were part of a burst.
+   *
+   * @return burst utilization, from 0 to 1
+   */
+  public double getUtilization() {
+    long total = singleTransfers + burstBeats;
+    return total == 0 ? 0 : (double) burstBeats / total;
+  }
+
+  /**
+   * Resets all statistics.
+   */
+  public void reset() {
+    singleTransfers = 0;
+    bursts = 0;
+    burstBeats = 0;
+  }
+
+  @Override
+  public String toString() {
+    return "single: " + singleTransfers + ", bursts: " + bursts + ", burst beats: " + burstBeats
+            + String.format(", utilization: %.1f%%", getUtilization() * 100);
+  }
+}
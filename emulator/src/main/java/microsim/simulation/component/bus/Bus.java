@@ -1,6 +1,11 @@
 package microsim.simulation.component.bus;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import microsim.simulation.Simulation;
+import microsim.simulation.component.BusComponent;
 import microsim.simulation.component.SimulationComponent;
 
 /**
@@ -20,14 +25,48 @@ import microsim.simulation.component.SimulationComponent;
  * <li>Word.</li>
  * </ol>
  * </li>
+ * <li>A burst length line, holding the number of beats of a burst transfer.</li>
+ * <li>A burst mode line (through {@link microsim.simulation.component.bus.Bus.BurstMode}).</li>
+ * <li>A wait request line, driven by responders.</li>
  * </ul>
  * </li>
  * </ul>
  * Lines are implemented by {@link microsim.simulation.component.bus.TSLine} objects, modeling
  * 3-state logic.
+ * <p>
+ * Burst transfers are started like normal transfers, with a burst length of 2 or more. The
+ * responder then streams one beat per cycle on the data line (or takes one beat per cycle from the
+ * data line, on writes) without a new address phase. Responders that don't support bursts refuse
+ * them. The processor bursts through memory to refill its fetch and load buffers and to move cache
+ * lines, and writes out runs of buffered stores with bursts, that hit the same port when stored to
+ * a device that takes them (see {@link microsim.simulation.component.processor.BusInterface}).
+ * <p>
+ * Responders with wait states raise the wait request line when they see a transaction, and hold
+ * it for as many cycles as they need: on reads, data is driven as the line is lowered. The
+ * processor doesn't go on with bus operations while the line is high.
+ * <p>
+ * This class performs no validation of bus usage, and is used in
+ * {@link microsim.simulation.component.bus.Bus.Validation#FAST} mode. Strict validation is done by
+ * the {@link microsim.simulation.component.bus.StrictBus} subclass: buses should be obtained
+ * through {@link #create(microsim.simulation.Simulation, Validation)}.
  */
 public class Bus extends SimulationComponent {
 
+  /**
+   * Bus validation modes.
+   */
+  public static enum Validation {
+    /**
+     * Checks address alignment, read/write enable conflicts and line ownership on every cycle, and
+     * reports violations with cycle number and program counter.
+     */
+    STRICT,
+    /**
+     * Performs no checks. Meant for production runs of firmware known to be correct.
+     */
+    FAST
+  }
+
   /**
    * Byte select modes.
    */
@@ -55,6 +94,34 @@ public class Bus extends SimulationComponent {
     public final static int WORD = 2;
   }
 
+  /**
+   * Burst address increment modes.
+   */
+  public class BurstMode {
+
+    /**
+     * Hide constructor.
+     */
+    private BurstMode() {
+    }
+
+    /**
+     * Each beat targets the address following the previous one (by the byte select size).
+     */
+    public final static int INCREMENT = 0;
+
+    /**
+     * Each beat targets the same address. Used for FIFO-like device ports.
+     */
+    public final static int FIXED = 1;
+  }
+
+  /**
+   * Maximum number of beats in a burst transfer. Fits a whole disk sector read through a 16 bit
+   * data port.
+   */
+  public static final int MAX_BURST_LENGTH = 256;
+
   /**
    * 32 bit address line.
    */
@@ -81,70 +148,267 @@ public class Bus extends SimulationComponent {
    */
   public TSLine byteSelect;
 
+  /**
+   * Burst length control line. Values of 0 and 1 signal single transfers.
+   */
+  public TSLine burstLength;
+
+  /**
+   * Burst mode control line (through {@link microsim.simulation.component.bus.Bus.BurstMode}
+   * enum).
+   */
+  public TSLine burstMode;
+
+  /**
+   * Wait request control line (boolean, active high). Raised by responders that need more cycles
+   * to serve a transaction.
+   */
+  public TSLine waitRequest;
+
+  /**
+   * Names of components that respond to transactions on this bus, indexed by responder index.
+   */
+  private final List<String> responders = new ArrayList<>();
+
+  /**
+   * Base address of responder ports, indexed by responder index.
+   */
+  private final List<Integer> responderBases = new ArrayList<>();
+
+  /**
+   * Number of responder ports, indexed by responder index. 0 for responders without ports.
+   */
+  private final List<Integer> responderPorts = new ArrayList<>();
+
+  /**
+   * Signals whether responders take bursts on their ports, indexed by responder index.
+   */
+  private final List<Boolean> responderBursts = new ArrayList<>();
+
+  /**
+   * Tracer transactions are recorded to. Null means tracing is disabled.
+   */
+  public BusTracer tracer;
+
+  /**
+   * Watchpoints responders check transactions against.
+   */
+  public final Watchpoints watchpoints = new Watchpoints();
+
+  /**
+   * Heatmap accesses are counted in. Null means counting is disabled.
+   */
+  public AccessHeatmap heatmap;
+
+  /**
+   * Registers a component that responds to transactions on this bus, for tracing.
+   *
+   * @param name name of responder
+   * @return responder index, to identify the responder in trace records
+   */
+  public int registerResponder(String name) {
+    return registerResponder(name, 0, 0, false);
+  }
+
+  /**
+   * Registers a component that responds to transactions on this bus with ports, for tracing,
+   * heatmaps and {@link #findPort(int)}.
+   *
+   * @param name name of responder
+   * @param base base address of ports
+   * @param ports number of ports
+   * @param bursts does the responder take bursts on its ports?
+   * @return responder index, to identify the responder in trace records and heatmaps
+   */
+  public int registerResponder(String name, int base, int ports, boolean bursts) {
+    responders.add(name);
+    responderBases.add(base);
+    responderPorts.add(ports);
+    responderBursts.add(bursts);
+    return responders.size() - 1;
+  }
+
+  /**
+   * Finds the responder with a port at an address. Masters use it to tell port accesses, that have
+   * side effects and can't be reordered nor prefetched, from memory accesses.
+   *
+   * @param addr address to look up
+   * @return responder index, or -1 if no responder has a port at address
+   */
+  public int findPort(int addr) {
+    for (int i = 0; i < responderBases.size(); i++) {
+      int offset = addr - responderBases.get(i);
+      if (offset >= 0 && offset < responderPorts.get(i) * 4) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns whether a responder takes bursts on its ports.
+   *
+   * @param responder responder index
+   * @return does the responder take bursts?
+   */
+  public boolean takesBursts(int responder) {
+    return responderBursts.get(responder);
+  }
+
+  /**
+   * Observes a beat served by a responder: records it to the tracer, counts it in the heatmap and
+   * checks it against watchpoints. Responders call it on every beat they serve, and the processor
+   * on every access its caches and buffers serve without a transaction.
+   *
+   * @param responder component that served the beat
+   * @param responderIndex index of responder the beat is recorded and counted for
+   * @param addr address of beat
+   * @param port index of port at address, or -1 if the beat is a memory access
+   * @param data data read or written
+   * @param byteSelect byte select of beat
+   * @param flags tracer record flags, telling writes and burst beats
+   */
+  public void observe(BusComponent responder, int responderIndex, int addr, int port, int data,
+          int byteSelect, int flags) {
+    boolean write = (flags & BusTracer.FLAG_WRITE) != 0;
+
+    if (tracer != null) {
+      tracer.record(simulation.getCycle(), addr, data, byteSelect, flags, responderIndex);
+    }
+    if (heatmap != null) {
+      if (port < 0) {
+        heatmap.countMemory(addr, write);
+      } else {
+        heatmap.countPort(responderIndex, port, write);
+      }
+    }
+    if (watchpoints.isWatched(addr)) {
+      watchpoints.check(responder, addr, byteSelect, data, write);
+    }
+  }
+
+  /**
+   * Starts counting accesses in a new heatmap. See
+   * {@link microsim.simulation.component.bus.AccessHeatmap}.
+   */
+  public void attachHeatmap() {
+    heatmap = new AccessHeatmap(responders, responderBases, responderPorts);
+  }
+
+  /**
+   * Starts tracing transactions to a trace file. See
+   * {@link microsim.simulation.component.bus.BusTracer}.
+   *
+   * @param path path of trace file
+   * @param capacity ring capacity of trace file, in records
+   * @throws IOException if trace file can't be created
+   */
+  public void attachTracer(Path path, int capacity) throws IOException {
+    tracer = new BusTracer(path, capacity, responders);
+  }
+
+  /**
+   * Stops tracing transactions, flushing the trace file.
+   */
+  public void detachTracer() {
+    if (tracer != null) {
+      tracer.flush();
+      tracer = null;
+    }
+  }
+
   /**
    * Instantiates a bus by initializing address, data and control lines.
    *
    * @param simulation simulation this bus belongs to
    */
-  public Bus(Simulation simulation) {
+  @SuppressWarnings("OverridableMethodCallInConstructor")
+  protected Bus(Simulation simulation) {
     super(simulation);
 
     // init lines
-    addressLine = new TSLine(this, simulation);
-    dataLine = new TSLine(this, simulation);
-    readEnable = new TSLine(this, simulation);
-    writeEnable = new TSLine(this, simulation);
-    byteSelect = new TSLine(this, simulation);
+    addressLine = newLine();
+    dataLine = newLine();
+    readEnable = newLine();
+    writeEnable = newLine();
+    byteSelect = newLine();
+    burstLength = newLine();
+    burstMode = newLine();
+    waitRequest = newLine();
+  }
+
+  /**
+   * Instantiates a bus with the given validation mode. The mode is decided once here, so that the
+   * checks of {@link microsim.simulation.component.bus.Bus.Validation#STRICT} mode don't exist at
+   * all in the code run by a {@link microsim.simulation.component.bus.Bus.Validation#FAST} bus.
+   *
+   * @param simulation simulation this bus belongs to
+   * @param validation validation mode
+   * @return bus instance
+   */
+  public static Bus create(Simulation simulation, Validation validation) {
+    return switch (validation) {
+      case STRICT ->
+        new StrictBus(simulation);
+      case FAST ->
+        new Bus(simulation);
+    };
+  }
+
+  /**
+   * Instantiates a line of this bus. Overridden by subclasses that need checked lines.
+   *
+   * @return new line
+   */
+  protected TSLine newLine() {
+    return new TSLine(this, simulation);
   }
 
   /**
-   * Checks if an address is aligned to the word size specified by byteSelect.
+   * Returns the size in bytes of a transfer with the given byte select. Used by burst responders
+   * to increment addresses between beats.
    *
-   * @param addr address to check
-   * @param byteSelect word size
-   * @return signals whether alignment is respected
+   * @param byteSelect byte select mode
+   * @return transfer size in bytes
    */
-  private boolean checkAlignment(int addr, int byteSelect) {
+  public static int byteSelectSize(int byteSelect) {
     switch (byteSelect) {
       case ByteSelect.WORD -> {
-        return (addr & 0x3) == 0;
+        return 4;
       }
       case ByteSelect.HALF -> {
-        return (addr & 0x1) == 0;
-      }
-      case ByteSelect.BYTE -> {
-        return true;
+        return 2;
       }
     }
-    return false;
+    return 1;
+  }
+
+  /**
+   * Signals that components are about to be stepped concurrently. Does nothing on unchecked buses.
+   */
+  public void beginParallelPhase() {
+  }
+
+  /**
+   * Signals that concurrently stepped components have all finished, and checks for conflicts.
+   * Does nothing on unchecked buses.
+   */
+  public void endParallelPhase() {
   }
 
   /**
    * Steps by updating the 3-state lines.
    */
   @Override
-  public final void step() {
+  public void step() {
     // step each line
     addressLine.step();
     dataLine.step();
     readEnable.step();
     writeEnable.step();
     byteSelect.step();
-
-    // get current address and byte select
-    int addr = addressLine.read();
-    int byteSel = byteSelect.read();
-
-    // check address alignment
-    if (!checkAlignment(addr, byteSel)) {
-      throw new RuntimeException("Unaligned memory access");
-    }
-
-    // check read/write enable conflict
-    boolean readEnb = readEnable.readBool();
-    boolean writeEnb = writeEnable.readBool();
-    if (readEnb && writeEnb) {
-      throw new RuntimeException("Read Enable and Write Enable simultaneously high");
-    }
+    burstLength.step();
+    burstMode.step();
+    waitRequest.step();
   }
 }
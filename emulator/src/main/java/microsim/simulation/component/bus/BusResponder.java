@@ -0,0 +1,25 @@
+package microsim.simulation.component.bus;
+
+/**
+ * Represents a component that responds to transactions on a bus. Responders declare when they need
+ * to be stepped, so that a {@link microsim.simulation.EventScheduler} can skip them on cycles in
+ * which they would do nothing.
+ */
+public interface BusResponder {
+
+  /**
+   * Checks if a transaction at the given address is addressed to this responder.
+   *
+   * @param addr address of transaction
+   * @return does the responder answer at address?
+   */
+  boolean respondsTo(int addr);
+
+  /**
+   * Returns the next cycle this responder needs to be stepped at, even if no transaction is
+   * addressed to it. Called right after the responder was stepped.
+   *
+   * @return next cycle with pending work, or {@link Long#MAX_VALUE} if the responder is idle
+   */
+  long getWakeCycle();
+}
@@ -0,0 +1,223 @@
+package microsim.simulation.component.bus;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes every bus transaction seen by responders to a memory-mapped trace file, as fixed-size
+ * binary records, along with memory accesses the processor served from its caches and buffers.
+ * The file is a ring: once {@link #capacity} records have been written, the oldest ones get
+ * overwritten. Layout (little-endian) is:
+ * <ul>
+ * <li>Header, {@link #HEADER_SIZE} bytes:
+ * <ul>
+ * <li>magic ({@link #MAGIC}), int;</li>
+ * <li>format version ({@link #VERSION}), int;</li>
+ * <li>record size ({@link #RECORD_SIZE}), int;</li>
+ * <li>ring capacity in records, int;</li>
+ * <li>total records written, long (updated on every record);</li>
+ * <li>number of responders, int, followed by each responder name as a length-prefixed (short)
+ * UTF-8 string.</li>
+ * </ul>
+ * </li>
+ * <li>Ring of records, each {@link #RECORD_SIZE} bytes:
+ * <ul>
+ * <li>cycle, long;</li>
+ * <li>address, int;</li>
+ * <li>data, int;</li>
+ * <li>byte select, byte;</li>
+ * <li>flags ({@link #FLAG_WRITE}, {@link #FLAG_BURST}, {@link #FLAG_CACHED},
+ * {@link #FLAG_DMA}), byte;</li>
+ * <li>responder index, byte;</li>
+ * <li>padding, 5 bytes.</li>
+ * </ul>
+ * </li>
+ * </ul>
+ * Trace files are read by {@link microsim.ui.TraceReader}.
+ */
+public class BusTracer {
+
+  /**
+   * Magic number at the beginning of trace files ("MSTR").
+   */
+  public static final int MAGIC = 0x5254534d;
+
+  /**
+   * Version of trace file format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Size of trace file header, in bytes.
+   */
+  public static final int HEADER_SIZE = 4096;
+
+  /**
+   * Size of a trace record, in bytes.
+   */
+  public static final int RECORD_SIZE = 24;
+
+  /**
+   * Offset in header of total records written.
+   */
+  public static final int COUNT_OFFSET = 16;
+
+  /**
+   * Offset in header of responder table.
+   */
+  public static final int RESPONDERS_OFFSET = 24;
+
+  /**
+   * Record flag for write transactions (reads otherwise).
+   */
+  public static final int FLAG_WRITE = 0x1;
+
+  /**
+   * Record flag for beats of a burst.
+   */
+  public static final int FLAG_BURST = 0x2;
+
+  /**
+   * Record flag for accesses served by processor caches or buffers, with no bus transaction.
+   */
+  public static final int FLAG_CACHED = 0x4;
+
+  /**
+   * Record flag for accesses of devices moving data to or from memory on their own (direct memory
+   * access), with no bus transaction.
+   */
+  public static final int FLAG_DMA = 0x8;
+
+  /**
+   * Default ring capacity, in records (24 MiB of trace).
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+
+  /**
+   * Mapped trace file.
+   */
+  private final MappedByteBuffer buffer;
+
+  /**
+   * Ring capacity, in records.
+   */
+  private final int capacity;
+
+  /**
+   * Total number of records written.
+   */
+  private long count = 0;
+
+  /**
+   * Position of next record in {@link #buffer}.
+   */
+  private int position = HEADER_SIZE;
+
+  /**
+   * Position past the last record in {@link #buffer}, where writing wraps around.
+   */
+  private final int end;
+
+  /**
+   * Opens a trace file, truncating it, and writes its header.
+   *
+   * @param path path of trace file
+   * @param capacity ring capacity, in records
+   * @param responders names of bus responders, indexed by responder index
+   * @throws IOException if file can't be created or mapped
+   */
+  public BusTracer(Path path, int capacity, List<String> responders) throws IOException {
+    // check capacity fits in a single mapping
+    if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+      throw new IOException("Invalid trace capacity " + capacity);
+    }
+    this.capacity = capacity;
+    end = HEADER_SIZE + capacity * RECORD_SIZE;
+
+    // map whole file, channel can be closed right after
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, end);
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    // write header
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, RECORD_SIZE);
+    buffer.putInt(12, capacity);
+    buffer.putLong(COUNT_OFFSET, 0);
+
+    int pos = RESPONDERS_OFFSET;
+    buffer.putInt(pos, responders.size());
+    pos += 4;
+    for (String name : responders) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      if (pos + 2 + bytes.length > HEADER_SIZE) {
+        throw new IOException("Too many responders for trace header");
+      }
+      buffer.putShort(pos, (short) bytes.length);
+      buffer.put(pos + 2, bytes);
+      pos += 2 + bytes.length;
+    }
+  }
+
+  /**
+   * Writes a transaction record.
+   *
+   * @param cycle cycle the transaction was served at
+   * @param addr address of transaction
+   * @param data data read or written
+   * @param byteSelect byte select of transaction
+   * @param flags record flags
+   * @param responder index of responder that served the transaction
+   */
+  public void record(long cycle, int addr, int data, int byteSelect, int flags, int responder) {
+    buffer.putLong(position, cycle);
+    buffer.putInt(position + 8, addr);
+    buffer.putInt(position + 12, data);
+    buffer.put(position + 16, (byte) byteSelect);
+    buffer.put(position + 17, (byte) flags);
+    buffer.put(position + 18, (byte) responder);
+
+    // advance ring
+    position += RECORD_SIZE;
+    if (position == end) {
+      position = HEADER_SIZE;
+    }
+
+    buffer.putLong(COUNT_OFFSET, ++count);
+  }
+
+  /**
+   * Returns total number of records written.
+   *
+   * @return records written
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns ring capacity.
+   *
+   * @return capacity, in records
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Flushes the trace to storage.
+   */
+  public void flush() {
+    buffer.force();
+  }
+}
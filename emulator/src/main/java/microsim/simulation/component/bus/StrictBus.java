@@ -0,0 +1,195 @@
+package microsim.simulation.component.bus;
+
+import microsim.simulation.Simulation;
+import microsim.ui.DebugShell;
+
+/**
+ * A {@link microsim.simulation.component.bus.Bus} that validates its usage on every cycle. Checks
+ * are:
+ * <ul>
+ * <li>Address alignment to the size given by the byte select line.</li>
+ * <li>Read Enable and Write Enable not being simultaneously high.</li>
+ * <li>Burst length not going over {@link microsim.simulation.component.bus.Bus#MAX_BURST_LENGTH}
+ * beats.</li>
+ * <li>Line ownership on drive and release, through
+ * {@link microsim.simulation.component.bus.StrictTSLine} lines.</li>
+ * </ul>
+ * Violations are reported with the cycle number and program counter they happened at. This is the
+ * default bus, used in {@link microsim.simulation.component.bus.Bus.Validation#STRICT} mode.
+ * <p>
+ * When components are stepped concurrently by a {@link microsim.simulation.ParallelStepper}, lines
+ * also check that no more than one component touches (drives or releases) them in a phase. Checks
+ * are deferred to {@link #endParallelPhase()}, so that what gets reported doesn't depend on thread
+ * timing.
+ */
+public class StrictBus extends Bus {
+
+  /**
+   * Lines of this bus, in declaration order.
+   */
+  private final StrictTSLine[] lines;
+
+  /**
+   * Names of lines of this bus, used in conflict reports.
+   */
+  private static final String[] LINE_NAMES = {
+    "address", "data", "read enable", "write enable", "byte select", "burst length", "burst mode",
+    "wait request"
+  };
+
+  /**
+   * Signals that components are being stepped concurrently.
+   */
+  private volatile boolean parallelPhase;
+
+  /**
+   * Returns whether components are being stepped concurrently.
+   *
+   * @return is a parallel phase in progress?
+   */
+  boolean inParallelPhase() {
+    return parallelPhase;
+  }
+
+  /**
+   * Instantiates a strict bus, with checked lines.
+   *
+   * @param simulation simulation this bus belongs to
+   */
+  StrictBus(Simulation simulation) {
+    super(simulation);
+
+    lines = new StrictTSLine[]{
+      (StrictTSLine) addressLine,
+      (StrictTSLine) dataLine,
+      (StrictTSLine) readEnable,
+      (StrictTSLine) writeEnable,
+      (StrictTSLine) byteSelect,
+      (StrictTSLine) burstLength,
+      (StrictTSLine) burstMode,
+      (StrictTSLine) waitRequest
+    };
+  }
+
+  /**
+   * Opens a parallel phase: lines start tracking which component touches them.
+   */
+  @Override
+  public void beginParallelPhase() {
+    parallelPhase = true;
+  }
+
+  /**
+   * Closes a parallel phase and reports, in line order, the first line that was touched by more
+   * than one component. If no line was, reports the first deferred ownership violation.
+   */
+  @Override
+  public void endParallelPhase() {
+    parallelPhase = false;
+
+    // collect reports, then reset lines
+    String conflict = null;
+    String violation = null;
+    for (int i = 0; i < lines.length; i++) {
+      if (conflict == null) {
+        String lineConflict = lines[i].getConflict();
+        if (lineConflict != null) {
+          conflict = "Conflict on " + LINE_NAMES[i] + " line: " + lineConflict;
+        }
+      }
+      if (violation == null) {
+        violation = lines[i].getDeferredViolation();
+      }
+      lines[i].resetPhase();
+    }
+
+    if (conflict != null) {
+      throw violation(conflict);
+    }
+    if (violation != null) {
+      throw violation(violation);
+    }
+  }
+
+  /**
+   * Instantiates a checked line.
+   *
+   * @return new line
+   */
+  @Override
+  protected TSLine newLine() {
+    return new StrictTSLine(this, simulation);
+  }
+
+  /**
+   * Builds an exception reporting a bus violation, with the cycle and program counter it happened
+   * at. The program counter is not reported if the processor is not yet mounted.
+   *
+   * @param message violation message
+   * @return exception to throw
+   */
+  RuntimeException violation(String message) {
+    String where = " (cycle " + simulation.getCycle();
+    if (simulation.proc != null) {
+      where += ", pc " + DebugShell.int32ToString(simulation.proc.getPc());
+    }
+
+    return new RuntimeException(message + where + ")");
+  }
+
+  /**
+   * Checks if an address is aligned to the word size specified by byteSelect.
+   *
+   * @param addr address to check
+   * @param byteSelect word size
+   * @return signals whether alignment is respected
+   */
+  private boolean checkAlignment(int addr, int byteSelect) {
+    switch (byteSelect) {
+      case ByteSelect.WORD -> {
+        return (addr & 0x3) == 0;
+      }
+      case ByteSelect.HALF -> {
+        return (addr & 0x1) == 0;
+      }
+      case ByteSelect.BYTE -> {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Steps by updating the 3-state lines, then validates their state.
+   */
+  @Override
+  public final void step() {
+    super.step();
+
+    // get current address and byte select
+    int addr = addressLine.read();
+    int byteSel = byteSelect.read();
+
+    // check address alignment
+    if (!checkAlignment(addr, byteSel)) {
+      throw violation("Unaligned memory access at " + DebugShell.int32ToString(addr));
+    }
+
+    // check read/write enable conflict
+    boolean readEnb = readEnable.readBool();
+    boolean writeEnb = writeEnable.readBool();
+    if (readEnb && writeEnb) {
+      throw violation("Read Enable and Write Enable simultaneously high");
+    }
+
+    // check no transaction is started while a responder requests wait
+    if ((readEnb || writeEnb) && waitRequest.readBool()) {
+      throw violation("Transaction started while Wait Request high");
+    }
+
+    // check burst length
+    if ((readEnb || writeEnb) && burstLength.read() > MAX_BURST_LENGTH) {
+      throw violation("Burst length over " + MAX_BURST_LENGTH + " beats");
+    }
+  }
+}
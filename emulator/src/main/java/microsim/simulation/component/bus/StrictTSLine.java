@@ -0,0 +1,187 @@
+package microsim.simulation.component.bus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import microsim.simulation.Simulation;
+import microsim.simulation.component.BusComponent;
+
+/**
+ * A {@link microsim.simulation.component.bus.TSLine} that checks driver ownership on drive and
+ * release. Used by {@link microsim.simulation.component.bus.StrictBus}, which it reports violations
+ * through. During parallel phases, violations are deferred to the end of the phase, and the line
+ * records which components touched it.
+ */
+public class StrictTSLine extends TSLine {
+
+  /**
+   * Handle for atomic updates of {@link #phaseToucher}.
+   */
+  private static final VarHandle PHASE_TOUCHER;
+
+  static {
+    try {
+      PHASE_TOUCHER = MethodHandles.lookup().findVarHandle(StrictTSLine.class, "phaseToucher",
+              BusComponent.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Strict bus this line is part of.
+   */
+  private final StrictBus strictBus;
+
+  /**
+   * First component that touched this line in the current parallel phase.
+   */
+  @SuppressWarnings("unused")
+  private volatile BusComponent phaseToucher;
+
+  /**
+   * Signals that more than one component touched this line in the current parallel phase.
+   */
+  private volatile boolean conflict;
+
+  /**
+   * Names of the conflicting components, sorted so that reports don't depend on which touched the
+   * line first.
+   */
+  private volatile String conflictNames;
+
+  /**
+   * First ownership violation seen in the current parallel phase.
+   */
+  private volatile String deferredViolation;
+
+  /**
+   * Constructs a checked TSLine taking a reference to the strict bus it makes up.
+   *
+   * @param bus bus this line is part of
+   * @param simulation simulation this bus belongs to
+   */
+  StrictTSLine(StrictBus bus, Simulation simulation) {
+    super(bus, simulation);
+    this.strictBus = bus;
+  }
+
+  /**
+   * Records that a component touched this line in the current parallel phase.
+   *
+   * @param component component that touched the line
+   * @return false if another component already touched the line in this phase
+   */
+  private boolean touch(BusComponent component) {
+    BusComponent first = (BusComponent) PHASE_TOUCHER.compareAndExchange(this, null, component);
+    if (first == null || first == component) {
+      return true;
+    }
+
+    // sort names for a deterministic report
+    String a = first.getClass().getSimpleName();
+    String b = component.getClass().getSimpleName();
+    conflictNames = a.compareTo(b) <= 0 ? a + " and " + b : b + " and " + a;
+    conflict = true;
+    return false;
+  }
+
+  /**
+   * Reports an ownership violation, or defers it if in a parallel phase.
+   *
+   * @param message violation message
+   */
+  private void fail(String message) {
+    if (!strictBus.inParallelPhase()) {
+      throw strictBus.violation(message);
+    }
+
+    if (deferredViolation == null) {
+      deferredViolation = message;
+    }
+  }
+
+  /**
+   * Returns a description of the conflict in the last parallel phase, if any.
+   *
+   * @return conflicting components, or null
+   */
+  String getConflict() {
+    return conflict ? conflictNames + " touched line in the same cycle" : null;
+  }
+
+  /**
+   * Returns the ownership violation deferred in the last parallel phase, if any.
+   *
+   * @return violation message, or null
+   */
+  String getDeferredViolation() {
+    return deferredViolation;
+  }
+
+  /**
+   * Clears parallel phase tracking.
+   */
+  void resetPhase() {
+    phaseToucher = null;
+    conflict = false;
+    conflictNames = null;
+    deferredViolation = null;
+  }
+
+  /**
+   * Drives this line after checking that driver is not null and that the line is not already
+   * driven by another component.
+   *
+   * @param driver component requesting to become driver
+   * @param data data to drive line with
+   */
+  @Override
+  public void drive(BusComponent driver, int data) {
+    // driver can't be null
+    if (driver == null) {
+      throw strictBus.violation("Null driver cannot drive TSLine");
+    }
+
+    // track parallel phase, skipping ownership checks on conflicts as they would be racy
+    if (strictBus.inParallelPhase() && !touch(driver)) {
+      super.drive(driver, data);
+      return;
+    }
+
+    // trying to drive already driven line
+    BusComponent owner = this.driver;
+    if (owner != null && driver != owner) {
+      fail(driver.getClass().getName() + " trying to drive TSLine already driven by "
+              + owner.getClass().getName());
+    }
+
+    super.drive(driver, data);
+  }
+
+  /**
+   * Releases this line after checking that driver is not null and owns the line.
+   *
+   * @param driver driver requesting release
+   */
+  @Override
+  public void release(BusComponent driver) {
+    if (driver == null) {
+      throw strictBus.violation("Null driver cannot release TSLine");
+    }
+
+    // track parallel phase, skipping ownership checks on conflicts as they would be racy
+    if (strictBus.inParallelPhase() && !touch(driver)) {
+      super.release(driver);
+      return;
+    }
+
+    // trying to release line not owned
+    BusComponent owner = this.driver;
+    if (driver != owner) {
+      fail(driver.getClass().getName() + " trying to release TSLine driven by "
+              + (owner == null ? "nobody" : owner.getClass().getName()));
+    }
+
+    super.release(driver);
+  }
+}
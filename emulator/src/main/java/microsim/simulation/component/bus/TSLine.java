@@ -8,13 +8,16 @@ import microsim.simulation.component.BusComponent;
  * and step-synced buffering for received data. Only int lines are defined for performance reasons.
  * Byte selection is done through an enum class. Booleans use the usual 0 = false, 1 = true
  * convention. Helpers are defined to handle booleans accordingly.
+ * <p>
+ * This class doesn't check driver ownership: checks are done by the
+ * {@link microsim.simulation.component.bus.StrictTSLine} subclass, used by strict buses.
  */
 public class TSLine extends BusComponent {
 
   /**
    * Component that is currently driving this line.
    */
-  private BusComponent driver;
+  BusComponent driver;
 
   /**
    * Committed data (visible from reads), gets {@link #bufferedData}'s value when component is
@@ -33,7 +36,7 @@ public class TSLine extends BusComponent {
    * @param bus bus this line is part of
    * @param simulation name of simulation this bus belongs to
    */
-  public TSLine(Bus bus, Simulation simulation) {
+  TSLine(Bus bus, Simulation simulation) {
     super(bus, simulation);
   }
 
@@ -47,24 +50,14 @@ public class TSLine extends BusComponent {
 
   /**
    * Used by components to drive this line. Driver cannot be null, and cannot attempt to drive an
-   * already driven line. Driving a line means setting its {@link #bufferedData}. This doesn't mean
-   * {@link #committedData} will update: that will happen at the next line update.
+   * already driven line (this is only enforced on strict buses). Driving a line means setting its
+   * {@link #bufferedData}. This doesn't mean {@link #committedData} will update: that will happen
+   * at the next line update.
    *
    * @param driver component requesting to become driver
    * @param data data to drive line with
    */
   public void drive(BusComponent driver, int data) {
-    // driver can't be null
-    if (driver == null) {
-      throw new RuntimeException("Null driver cannot drive TSLine");
-    }
-
-    // trying to drive already driven line
-    if (this.driver != null && driver != this.driver) {
-      throw new RuntimeException(driver.getClass().getName()
-              + " trying to drive TSLine already driven by " + this.driver.getClass().getName());
-    }
-
     this.driver = driver; // reassert if already driving
     this.bufferedData = data;
   }
@@ -81,22 +74,12 @@ public class TSLine extends BusComponent {
 
   /**
    * Used by drivers to release line. Null drivers and drivers who don't own the line cannot release
-   * it. Releasing a line means doesn't clear it's {@link #bufferedData}. This means
-   * {@link #committedData} floats: that is expected behavior.
+   * it (this is only enforced on strict buses). Releasing a line means doesn't clear it's
+   * {@link #bufferedData}. This means {@link #committedData} floats: that is expected behavior.
    *
    * @param driver driver requesting release
    */
   public void release(BusComponent driver) {
-    if (driver == null) {
-      throw new RuntimeException("Null driver cannot release TSLine");
-    }
-
-    // trying to release line not owned
-    if (driver != this.driver) {
-      throw new RuntimeException(driver.getClass().getName()
-              + " trying to release TSLine already driven by " + this.driver.getClass().getName());
-    }
-
     // release line
     this.driver = null;
   }
@@ -0,0 +1,287 @@
+package microsim.simulation.component.bus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import microsim.simulation.component.BusComponent;
+import microsim.simulation.event.WatchEvent;
+
+/**
+ * Keeps the watchpoints set on a bus, and checks transactions against them. Every beat observed
+ * through {@link microsim.simulation.component.bus.Bus#observe} is checked with
+ * {@link #isWatched(int)}, which only loads a flag from a page table: the precise check in
+ * {@link #check(BusComponent, int, int, int, boolean)} is only done on pages that have a
+ * watchpoint. Page flags are indexed by address modulo {@link #PAGES} pages, so distant addresses
+ * may share a flag: the precise check sorts them out.
+ * <p>
+ * A hit raises a {@link microsim.simulation.event.WatchEvent}, which stops the world just like a
+ * {@link microsim.simulation.event.BreakEvent}.
+ */
+public class Watchpoints {
+
+  /**
+   * Watchpoint types.
+   */
+  public static enum Type {
+    /**
+     * Hits on reads.
+     */
+    READ,
+    /**
+     * Hits on writes.
+     */
+    WRITE,
+    /**
+     * Hits on reads or writes that see watched bytes differ from the last value seen. Watches at
+     * most 4 bytes.
+     */
+    CHANGE
+  }
+
+  /**
+   * Represents a single watchpoint over an address range.
+   */
+  public static class Watchpoint {
+
+    /**
+     * Identifier of watchpoint, used to remove it.
+     */
+    public final int id;
+
+    /**
+     * Type of watchpoint.
+     */
+    public final Type type;
+
+    /**
+     * First watched address.
+     */
+    public final int addr;
+
+    /**
+     * Number of watched bytes.
+     */
+    public final int size;
+
+    /**
+     * Last value seen, for change watchpoints. Byte n holds the byte at {@link #addr} + n.
+     */
+    private int lastValue;
+
+    /**
+     * Mask of the bytes of {@link #lastValue} that are known, as they were seen or given.
+     */
+    private int knownMask;
+
+    /**
+     * Number of times this watchpoint was hit.
+     */
+    private long hits;
+
+    /**
+     * Instantiates a watchpoint.
+     *
+     * @param id identifier
+     * @param type type
+     * @param addr first watched address
+     * @param size number of watched bytes
+     */
+    private Watchpoint(int id, Type type, int addr, int size) {
+      this.id = id;
+      this.type = type;
+      this.addr = addr;
+      this.size = size;
+    }
+
+    /**
+     * Returns number of times this watchpoint was hit.
+     *
+     * @return hits
+     */
+    public long getHits() {
+      return hits;
+    }
+
+    /**
+     * Checks if an access overlaps the watched range.
+     *
+     * @param accessAddr address of access
+     * @param accessSize size of access, in bytes
+     * @return does the access overlap?
+     */
+    private boolean overlaps(int accessAddr, int accessSize) {
+      return Integer.compareUnsigned(accessAddr, addr + size - 1) <= 0
+              && Integer.compareUnsigned(addr, accessAddr + accessSize - 1) <= 0;
+    }
+
+    /**
+     * Checks an overlapping access against the watched value, for change watchpoints. Only the
+     * bytes of the access that fall in the watched range are compared, then remembered.
+     *
+     * @param accessAddr address of access
+     * @param accessSize size of access, in bytes
+     * @param value value of access
+     * @return did a known watched byte change?
+     */
+    private boolean changed(int accessAddr, int accessSize, int value) {
+      // align access bytes to watched bytes
+      int shift = accessAddr - addr;
+      long bits = value & 0xffffffffL;
+      long mask = accessSize == 4 ? 0xffffffffL : (1L << (accessSize * 8)) - 1;
+      if (shift >= 0) {
+        bits <<= 8 * shift;
+        mask <<= 8 * shift;
+      } else {
+        bits >>>= 8 * -shift;
+        mask >>>= 8 * -shift;
+      }
+      mask &= size == 4 ? 0xffffffffL : (1L << (size * 8)) - 1;
+
+      boolean hit = ((lastValue ^ bits) & mask & knownMask) != 0;
+      lastValue = (int) ((lastValue & ~mask) | (bits & mask));
+      knownMask |= (int) mask;
+      return hit;
+    }
+  }
+
+  /**
+   * Size of a page in bits.
+   */
+  public static final int PAGE_SHIFT = 8;
+
+  /**
+   * Number of page flags.
+   */
+  public static final int PAGES = 1 << 12;
+
+  /**
+   * Page flags: non zero if a watchpoint covers a page with the same index.
+   */
+  private volatile byte[] pageFlags = new byte[PAGES];
+
+  /**
+   * Watchpoints currently set.
+   */
+  private final List<Watchpoint> watchpoints = new CopyOnWriteArrayList<>();
+
+  /**
+   * Identifier for next watchpoint.
+   */
+  private int nextId = 0;
+
+  /**
+   * Default constructor.
+   */
+  public Watchpoints() {
+  }
+
+  /**
+   * Rebuilds page flags from current watchpoints.
+   */
+  private void rebuildFlags() {
+    byte[] flags = new byte[PAGES];
+    for (Watchpoint w : watchpoints) {
+      long first = (w.addr & 0xffffffffL) >>> PAGE_SHIFT;
+      long last = ((w.addr & 0xffffffffL) + w.size - 1) >>> PAGE_SHIFT;
+      for (long page = first; page <= last && page - first < PAGES; page++) {
+        flags[(int) (page & (PAGES - 1))] = 1;
+      }
+    }
+    pageFlags = flags;
+  }
+
+  /**
+   * Adds a watchpoint.
+   *
+   * @param type type of watchpoint
+   * @param addr first watched address
+   * @param size number of watched bytes
+   * @param initialValue value currently at address (little-endian), for change watchpoints, or
+   * null if unknown
+   * @return added watchpoint
+   */
+  public synchronized Watchpoint add(Type type, int addr, int size, Integer initialValue) {
+    if (size <= 0) {
+      throw new RuntimeException("Invalid watchpoint size");
+    }
+    if (type == Type.CHANGE && size > 4) {
+      throw new RuntimeException("Change watchpoints watch at most 4 bytes");
+    }
+
+    Watchpoint w = new Watchpoint(nextId++, type, addr, size);
+    if (initialValue != null && type == Type.CHANGE) {
+      w.lastValue = initialValue;
+      w.knownMask = size == 4 ? -1 : (1 << (size * 8)) - 1;
+    }
+
+    watchpoints.add(w);
+    rebuildFlags();
+    return w;
+  }
+
+  /**
+   * Removes a watchpoint.
+   *
+   * @param id identifier of watchpoint
+   * @return was a watchpoint removed?
+   */
+  public synchronized boolean remove(int id) {
+    boolean removed = watchpoints.removeIf(w -> w.id == id);
+    rebuildFlags();
+    return removed;
+  }
+
+  /**
+   * Returns watchpoints currently set.
+   *
+   * @return watchpoints
+   */
+  public List<Watchpoint> getWatchpoints() {
+    return watchpoints;
+  }
+
+  /**
+   * Checks whether an address lies in a page that might be watched. Responders should call
+   * {@link #check(BusComponent, int, int, int, boolean)} only when this returns true.
+   *
+   * @param addr address to check
+   * @return might the address be watched?
+   */
+  public boolean isWatched(int addr) {
+    return pageFlags[(addr >>> PAGE_SHIFT) & (PAGES - 1)] != 0;
+  }
+
+  /**
+   * Checks a transaction against watchpoints, raising a
+   * {@link microsim.simulation.event.WatchEvent} on the responder for each hit.
+   *
+   * @param responder component that served the transaction
+   * @param addr address of transaction
+   * @param byteSelect byte select of transaction
+   * @param data data read or written
+   * @param write is the transaction a write?
+   */
+  public void check(BusComponent responder, int addr, int byteSelect, int data, boolean write) {
+    int size = Bus.byteSelectSize(byteSelect);
+    int value = size == 4 ? data : data & ((1 << (size * 8)) - 1);
+
+    for (Watchpoint w : watchpoints) {
+      if (!w.overlaps(addr, size)) {
+        continue;
+      }
+
+      boolean hit = switch (w.type) {
+        case READ ->
+          !write;
+        case WRITE ->
+          write;
+        case CHANGE ->
+          w.changed(addr, size, value);
+      };
+
+      if (hit) {
+        w.hits++;
+        responder.raiseEvent(new WatchEvent(responder, w, addr, value, write));
+      }
+    }
+  }
+}
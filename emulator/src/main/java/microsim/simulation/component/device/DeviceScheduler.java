@@ -0,0 +1,287 @@
+package microsim.simulation.component.device;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wakes up sleeping device threads at their deadlines, for all
+ * {@link microsim.simulation.component.device.ThreadedIoDevice} devices in the JVM. Is a
+ * singleton.
+ * <p>
+ * Device threads are virtual threads: a device thread that sleeps (through
+ * {@link microsim.simulation.component.device.ThreadedIoDevice#smartSpin(long)}) queues its
+ * deadline here and parks, freeing its carrier thread. A single scheduler thread parks until the
+ * earliest deadline and unparks threads whose deadline has passed. With a precision window set,
+ * the scheduler thread spins (instead of parking) for the last part of each wait, trading CPU time
+ * for lower lateness. Only this thread ever spins, however many devices are running.
+ * <p>
+ * Each wake up is measured against its deadline, and wake ups later than {@link #LATE_THRESHOLD}
+ * are counted as late ticks.
+ */
+public class DeviceScheduler {
+
+  /**
+   * Lateness past which a wake up is counted as a late tick, in nanoseconds.
+   */
+  public static final long LATE_THRESHOLD = 100_000;
+
+  /**
+   * Deadline of a sleeping device thread.
+   */
+  private static class Deadline implements Comparable<Deadline> {
+
+    /**
+     * Time of deadline, as given by {@link System#nanoTime()}.
+     */
+    final long time;
+
+    /**
+     * Thread to wake up.
+     */
+    final Thread thread;
+
+    /**
+     * Has the deadline passed?
+     */
+    volatile boolean fired = false;
+
+    /**
+     * Instantiates deadline for the current thread.
+     *
+     * @param time time of deadline
+     */
+    Deadline(long time) {
+      this.time = time;
+      thread = Thread.currentThread();
+    }
+
+    /**
+     * Orders deadlines by time.
+     *
+     * @param other deadline to compare with
+     * @return comparison of deadline times
+     */
+    @Override
+    public int compareTo(Deadline other) {
+      return Long.compare(time - other.time, 0);
+    }
+  }
+
+  /**
+   * The only allowed instance of this class.
+   */
+  private static DeviceScheduler singleton;
+
+  /**
+   * Returns the singleton scheduler, starting its thread on first use.
+   *
+   * @return singleton scheduler
+   */
+  public static synchronized DeviceScheduler getInstance() {
+    if (singleton == null) {
+      singleton = new DeviceScheduler();
+    }
+
+    return singleton;
+  }
+
+  /**
+   * Queue of pending deadlines, earliest first. Guarded by itself.
+   */
+  private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+
+  /**
+   * Scheduler thread.
+   */
+  private final Thread thread;
+
+  /**
+   * Precision window, in nanoseconds: the scheduler thread spins for this long before each
+   * deadline. 0 means it only parks.
+   */
+  private volatile long precision = 0;
+
+  /**
+   * Number of wake ups.
+   */
+  private final AtomicLong ticks = new AtomicLong();
+
+  /**
+   * Number of wake ups later than {@link #LATE_THRESHOLD}.
+   */
+  private final AtomicLong lateTicks = new AtomicLong();
+
+  /**
+   * Total lateness of wake ups, in nanoseconds.
+   */
+  private final AtomicLong totalLateness = new AtomicLong();
+
+  /**
+   * Maximum lateness of a wake up, in nanoseconds.
+   */
+  private final AtomicLong maxLateness = new AtomicLong();
+
+  /**
+   * Instantiates scheduler, starting its thread.
+   */
+  private DeviceScheduler() {
+    thread = new Thread(this::schedulerThread);
+    thread.setName("Device scheduler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sets precision window.
+   *
+   * @param precision time the scheduler thread spins for before each deadline, in nanoseconds
+   */
+  public void setPrecision(long precision) {
+    if (precision < 0) {
+      throw new RuntimeException("Device scheduler precision can't be negative");
+    }
+    this.precision = precision;
+    LockSupport.unpark(thread);
+  }
+
+  /**
+   * Returns precision window.
+   *
+   * @return time the scheduler thread spins for before each deadline, in nanoseconds
+   */
+  public long getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Parks the calling thread until the given time, and records how late it woke up.
+   *
+   * @param time time to wake up at, as given by {@link System#nanoTime()}
+   */
+  public void sleepUntil(long time) {
+    sleepUntil(time, null);
+  }
+
+  /**
+   * Parks the calling thread until the given time, or until a wake up is requested through a flag
+   * (and the thread is unparked). Records how late the thread woke up, if it slept until the
+   * deadline.
+   *
+   * @param time time to wake up at, as given by {@link System#nanoTime()}
+   * @param wake flag that requests an early wake up, null if sleep can't be cut short. Not cleared
+   * @return true if the deadline passed, false if woken up early
+   */
+  public boolean sleepUntil(long time, AtomicBoolean wake) {
+    Deadline deadline = new Deadline(time);
+
+    // queue deadline, waking scheduler up if it comes first
+    synchronized (deadlines) {
+      deadlines.add(deadline);
+      if (deadlines.peek() == deadline) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    // wait, parks can return spuriously
+    while (!deadline.fired) {
+      if (wake != null && wake.get()) {
+        // give deadline up, unless it passed in the meantime
+        synchronized (deadlines) {
+          if (deadlines.remove(deadline)) {
+            return false;
+          }
+        }
+        continue;
+      }
+      LockSupport.park(this);
+    }
+
+    // record lateness
+    long lateness = System.nanoTime() - time;
+    ticks.incrementAndGet();
+    totalLateness.addAndGet(lateness);
+    maxLateness.accumulateAndGet(lateness, Math::max);
+    if (lateness > LATE_THRESHOLD) {
+      lateTicks.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * Implements the scheduler thread, that waits for the earliest deadline and wakes up threads
+   * whose deadline has passed.
+   */
+  private void schedulerThread() {
+    while (true) {
+      // get earliest deadline
+      Deadline next;
+      synchronized (deadlines) {
+        next = deadlines.peek();
+      }
+      if (next == null) {
+        LockSupport.park(this);
+        continue;
+      }
+
+      // park or spin until it passes. checked again after parking, as earlier deadlines might
+      // have been queued in the meantime
+      long remaining = next.time - System.nanoTime();
+      if (remaining > precision) {
+        LockSupport.parkNanos(this, remaining - precision);
+        continue;
+      }
+      if (remaining > 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+
+      // wake up all threads with passed deadlines
+      long now = System.nanoTime();
+      synchronized (deadlines) {
+        while (!deadlines.isEmpty() && deadlines.peek().time - now <= 0) {
+          Deadline passed = deadlines.poll();
+          passed.fired = true;
+          LockSupport.unpark(passed.thread);
+        }
+      }
+    }
+  }
+
+  /**
+   * Clears wake up statistics.
+   */
+  public void resetStatistics() {
+    ticks.set(0);
+    lateTicks.set(0);
+    totalLateness.set(0);
+    maxLateness.set(0);
+  }
+
+  /**
+   * Returns wake up statistics.
+   *
+   * @return statistics string
+   */
+  @Override
+  public String toString() {
+    long count = ticks.get();
+    return String.format("device scheduler (precision %d us): ticks: %d, late ticks (> %d us): %d, "
+            + "mean lateness: %.1f us, max lateness: %.1f us, pending deadlines: %d",
+            precision / 1000, count, LATE_THRESHOLD / 1000, lateTicks.get(),
+            count == 0 ? 0.0 : totalLateness.get() / 1000.0 / count, maxLateness.get() / 1000.0,
+            pendingDeadlines());
+  }
+
+  /**
+   * Returns number of sleeping device threads.
+   *
+   * @return pending deadlines
+   */
+  private int pendingDeadlines() {
+    synchronized (deadlines) {
+      return deadlines.size();
+    }
+  }
+}
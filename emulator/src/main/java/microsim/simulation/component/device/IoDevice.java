@@ -3,13 +3,12 @@ package microsim.simulation.component.device;
 import microsim.simulation.Simulation;
 import microsim.simulation.component.BusComponent;
 import microsim.simulation.component.bus.*;
-import microsim.simulation.event.DebugEvent;
 
 /**
  * Implements a device that exposes ports on the bus from a certain address. Memory and devices are
  * expected to share the same addressing space.
  */
-public abstract class IoDevice extends BusComponent {
+public abstract class IoDevice extends BusComponent implements BusResponder {
 
   /**
    * Base address of IO device.
@@ -26,6 +25,100 @@ public abstract class IoDevice extends BusComponent {
    */
   private boolean driving;
 
+  /**
+   * Index of this device as a bus responder, used in trace records and heatmaps. -1 until the
+   * device is registered with {@link #registerResponder()}.
+   */
+  private int responderIndex = -1;
+
+  /**
+   * Burst statistics of this device.
+   */
+  private final BurstStatistics burstStatistics = new BurstStatistics();
+
+  /**
+   * Returns burst statistics of this device.
+   *
+   * @return burst statistics
+   */
+  public BurstStatistics getBurstStatistics() {
+    return burstStatistics;
+  }
+
+  /**
+   * Number of beats left in the current burst. 0 signals no burst is in progress.
+   */
+  private int burstRemaining;
+
+  /**
+   * Port index of the next beat of the current burst.
+   */
+  private int burstPort;
+
+  /**
+   * Port increment between beats of the current burst.
+   */
+  private int burstStride;
+
+  /**
+   * Byte select of the current burst.
+   */
+  private int burstByteSelect;
+
+  /**
+   * Signals whether the current burst is a read (true) or a write (false).
+   */
+  private boolean burstRead;
+
+  /**
+   * Wait states of port accesses.
+   */
+  private int waitStates;
+
+  /**
+   * Sets wait states of port accesses, the number of cycles the device holds
+   * {@link microsim.simulation.component.bus.Bus#waitRequest} high before answering a transaction.
+   * Bursts only wait before the first beat.
+   *
+   * @param waitStates wait states of port accesses
+   */
+  public void setWaitStates(int waitStates) {
+    if (waitStates < 0) {
+      throw new RuntimeException("Wait states can't be negative");
+    }
+
+    this.waitStates = waitStates;
+  }
+
+  /**
+   * Number of wait states left in the current transaction. 0 signals no wait is in progress.
+   */
+  private int waitRemaining;
+
+  /**
+   * Data to drive when the current wait ends, if the transaction is a read.
+   */
+  private int waitData;
+
+  /**
+   * Signals whether the transaction being waited on is a read (true) or a write (false).
+   */
+  private boolean waitRead;
+
+  /**
+   * Total number of wait states inserted by this device.
+   */
+  private long waitCycles;
+
+  /**
+   * Returns total number of wait states inserted by this device.
+   *
+   * @return wait states
+   */
+  public long getWaitCycles() {
+    return waitCycles;
+  }
+
   /**
    * Instantiates device, taking a reference to the bus it's mounted on, the base address it should
    * respond from and the number of ports it offers.
@@ -41,6 +134,19 @@ public abstract class IoDevice extends BusComponent {
     this.ports = ports;
   }
 
+  /**
+   * Registers this device as a responder of its bus, with its name, port range and burst support
+   * (see {@link #supportsBurst()}). Must be called once the device is built, before the simulation
+   * begins: the name and burst support come from the concrete class.
+   */
+  public void registerResponder() {
+    if (responderIndex >= 0) {
+      throw new RuntimeException("Device " + getDeviceName() + " is already registered");
+    }
+
+    responderIndex = bus.registerResponder(getDeviceName(), base, ports, supportsBurst());
+  }
+
   /**
    * Utility for returning device name through reflection.
    *
@@ -50,6 +156,18 @@ public abstract class IoDevice extends BusComponent {
     return this.getClass().getSimpleName();
   }
 
+  /**
+   * Returns whether this device accepts burst transfers. Devices opt in by overriding this method.
+   * Bursts on devices in {@link microsim.simulation.component.bus.Bus.BurstMode#INCREMENT} mode
+   * step through consecutive ports, bursts in
+   * {@link microsim.simulation.component.bus.Bus.BurstMode#FIXED} mode hit the same port.
+   *
+   * @return does the device support bursts?
+   */
+  protected boolean supportsBurst() {
+    return false;
+  }
+
   /**
    * Checks if given address is in device space bounds.
    *
@@ -60,6 +178,29 @@ public abstract class IoDevice extends BusComponent {
     return addr >= base && addr < base + ports * 4;
   }
 
+  /**
+   * Checks if a transaction at the given address is addressed to this device.
+   *
+   * @param addr address of transaction
+   * @return is address in bounds?
+   */
+  @Override
+  public boolean respondsTo(int addr) {
+    return inBounds(addr);
+  }
+
+  /**
+   * Returns the next cycle this device needs to be stepped at: the next one if it's still driving
+   * the data line, waiting or in a burst.
+   *
+   * @return next cycle with pending work, or {@link Long#MAX_VALUE} if idle
+   */
+  @Override
+  public long getWakeCycle() {
+    return driving || waitRemaining > 0 || burstRemaining > 0 ? simulation.getCycle() + 1
+            : Long.MAX_VALUE;
+  }
+
   /**
    * Gets port at index.
    *
@@ -76,12 +217,38 @@ public abstract class IoDevice extends BusComponent {
    */
   public abstract void setPort(int index, int data);
 
+  /**
+   * Steps work the device does on its own, apart from transactions. Called first on every step.
+   * Does nothing by default: devices with such work override it, along with
+   * {@link #getWakeCycle()} so that they are stepped when the work is due.
+   */
+  protected void stepDevice() {
+  }
+
   /**
    * Steps by handling port read/write operations seen on bus and calling {@link #getPort(int)} and
-   * {@link #setPort(int, int)}.
+   * {@link #setPort(int, int)}. Burst operations are refused unless {@link #supportsBurst()} is
+   * overridden, and are then continued by {@link #stepBurst()}. Transactions are answered after
+   * the wait states set by {@link #setWaitStates(int)}, see {@link #stepWait()}. Work of the
+   * device's own is stepped first, by {@link #stepDevice()}.
    */
   @Override
   public final void step() {
+    // step work of the device's own
+    stepDevice();
+
+    // keep waiting if in a wait
+    if (waitRemaining > 0) {
+      stepWait();
+      return;
+    }
+
+    // keep streaming if in a burst
+    if (burstRemaining > 0) {
+      stepBurst();
+      return;
+    }
+
     // release if driving
     if (driving) {
       bus.dataLine.release(this);
@@ -100,24 +267,44 @@ public abstract class IoDevice extends BusComponent {
     // read control lines
     boolean readEnable = bus.readEnable.readBool();
     boolean writeEnable = bus.writeEnable.readBool();
+    int burstLength = bus.burstLength.read();
+
+    // check burst support
+    if ((readEnable || writeEnable) && burstLength > 1 && !supportsBurst()) {
+      throw new RuntimeException("Device " + getDeviceName() + " doesn't support bursts");
+    }
 
     // if someone is reading, offer data
     if (readEnable) {
       // log that read operation was seen
-      raiseDebugEvent(new DebugEvent(this, "Device " + getDeviceName()
-              + " saw read operation at address ", addr));
-
+      if (isDebugging()) {
+        raiseDebugEvent("Device " + getDeviceName() + " saw read operation at address ", addr);
+      }
 
       // read at port
       int portValue = getPort(portIdx);
 
       // log result of read operation
-      raiseDebugEvent(new DebugEvent(this, "Device " + getDeviceName()
-              + " read operation gave data ", portValue));
+      if (isDebugging()) {
+        raiseDebugEvent("Device " + getDeviceName() + " read operation gave data ", portValue);
+      }
+      bus.observe(this, responderIndex, addr, portIdx, portValue, bus.byteSelect.read(),
+              burstLength > 1 ? BusTracer.FLAG_BURST : 0);
 
-      // drive data line with word
-      bus.dataLine.drive(this, portValue);
-      driving = true;
+      // drive data line with word, or wait first
+      if (waitStates > 0) {
+        beginWait(true, portValue);
+      } else {
+        bus.dataLine.drive(this, portValue);
+        driving = true;
+      }
+
+      // set up burst if requested
+      if (burstLength > 1) {
+        beginBurst(portIdx, burstLength, true);
+      } else {
+        burstStatistics.countSingle();
+      }
     }
 
     // if someone is writing, execute write operation
@@ -126,15 +313,110 @@ public abstract class IoDevice extends BusComponent {
       int data = bus.dataLine.read();
 
       // log that write operation was seen
-      raiseDebugEvent(new DebugEvent(this, "Device " + getDeviceName()
-              + " saw write operation at address of data ", addr, data));
+      if (isDebugging()) {
+        raiseDebugEvent("Device " + getDeviceName() + " saw write operation at address of data ",
+                addr, data);
+      }
 
       // write at port
       setPort(portIdx, data);
 
       // log result of write operation
-      raiseDebugEvent(new DebugEvent(this, "Device " + getDeviceName()
-              + " write operation finished"));
+      if (isDebugging()) {
+        raiseDebugEvent("Device " + getDeviceName() + " write operation finished");
+      }
+      bus.observe(this, responderIndex, addr, portIdx, data, bus.byteSelect.read(),
+              BusTracer.FLAG_WRITE | (burstLength > 1 ? BusTracer.FLAG_BURST : 0));
+
+      // wait before taking further transactions or beats
+      if (waitStates > 0) {
+        beginWait(false, 0);
+      }
+
+      // set up burst if requested
+      if (burstLength > 1) {
+        beginBurst(portIdx, burstLength, false);
+      } else {
+        burstStatistics.countSingle();
+      }
+    }
+  }
+
+  /**
+   * Raises the wait request line for a transaction that was just seen.
+   *
+   * @param read is the transaction a read?
+   * @param data data to drive when the wait ends, if a read
+   */
+  private void beginWait(boolean read, int data) {
+    bus.waitRequest.driveBool(this, true);
+    waitRemaining = waitStates;
+    waitRead = read;
+    waitData = data;
+  }
+
+  /**
+   * Counts a wait state, and lowers the wait request line on the last one. Reads drive their data
+   * as the line is lowered.
+   */
+  private void stepWait() {
+    waitCycles++;
+    if (--waitRemaining > 0) {
+      return;
     }
+
+    // answer read
+    if (waitRead) {
+      bus.dataLine.drive(this, waitData);
+      driving = true;
+    }
+
+    // lower and release wait request line
+    bus.waitRequest.driveBool(this, false);
+    bus.waitRequest.release(this);
+  }
+
+  /**
+   * Sets up a burst whose first beat has just been transferred.
+   *
+   * @param portIdx port of first beat
+   * @param burstLength number of beats
+   * @param read is the burst a read?
+   */
+  private void beginBurst(int portIdx, int burstLength, boolean read) {
+    burstByteSelect = bus.byteSelect.read();
+    burstStride = bus.burstMode.read() == Bus.BurstMode.FIXED ? 0 : 1;
+    burstPort = portIdx + burstStride;
+    burstRemaining = burstLength - 1;
+    burstRead = read;
+
+    burstStatistics.countBurst(burstLength);
+  }
+
+  /**
+   * Transfers the next beat of the current burst.
+   */
+  private void stepBurst() {
+    // check burst didn't run past device ports
+    if (burstPort >= ports) {
+      throw new RuntimeException("Device " + getDeviceName() + " burst out of bounds");
+    }
+
+    int data;
+    if (burstRead) {
+      // drive next beat
+      data = getPort(burstPort);
+      bus.dataLine.drive(this, data);
+    } else {
+      // take next beat
+      data = bus.dataLine.read();
+      setPort(burstPort, data);
+    }
+
+    bus.observe(this, responderIndex, base + burstPort * 4, burstPort, data, burstByteSelect,
+            BusTracer.FLAG_BURST | (burstRead ? 0 : BusTracer.FLAG_WRITE));
+
+    burstPort += burstStride;
+    burstRemaining--;
   }
 }
@@ -1,5 +1,6 @@
 package microsim.simulation.component.device;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.LockSupport;
 import microsim.simulation.Simulation;
 import microsim.simulation.component.bus.*;
@@ -10,6 +11,15 @@ import microsim.ui.DebugShell;
  * is done via a Runnable subclass which gets instantiated by the constructor and kept private. This
  * class just hooks into the abstract method {@link #deviceThread()}. All the device implementations
  * need to do is implement this method, and it will be run on its own thread.
+ * <p>
+ * Device threads are virtual threads, and sleep through the shared
+ * {@link microsim.simulation.component.device.DeviceScheduler}: sleeping devices take up neither
+ * a platform thread nor CPU time.
+ * <p>
+ * Devices can also be driven in virtual time, when the simulation runs at a guest clock frequency
+ * (see {@link microsim.simulation.Simulation#setClockFrequency(long)}). No thread is started then:
+ * the simulation calls {@link #advance(long)} inline, at the cycle work is due, and {@link #now()}
+ * follows the cycle counter instead of the wall clock.
  */
 public abstract class ThreadedIoDevice extends IoDevice {
 
@@ -43,6 +53,27 @@ public abstract class ThreadedIoDevice extends IoDevice {
    */
   protected volatile boolean running = true;
 
+  /**
+   * Device thread. Null until the device begins.
+   */
+  private volatile Thread thread;
+
+  /**
+   * Is a wake up of the device thread requested? Cuts short its current (or next) sleep.
+   */
+  private final AtomicBoolean wakeRequest = new AtomicBoolean();
+
+  /**
+   * Time device time is relative to, as given by {@link System#nanoTime()}. Only used in wall
+   * time.
+   */
+  private final long epoch = System.nanoTime();
+
+  /**
+   * Is the device driven in virtual time?
+   */
+  private boolean virtualTime = false;
+
   /**
    * Instantiates device, taking a reference to the bus it's mounted on, the base address it should
    * respond from and the number of ports it offers.
@@ -67,14 +98,70 @@ public abstract class ThreadedIoDevice extends IoDevice {
   protected abstract void deviceThread();
 
   /**
-   * Spins the thread for the given time, parking it if remaining time is over a millisecond.
-   * Threads that want to obey the debugger's "stop the world" policy should use this method to
-   * sleep.
+   * Method that runs the work the device has due at the given time, when driven in virtual time.
+   * To be implemented by subclass. Called by the simulation thread at the time returned by the
+   * previous call, or earlier if {@link #wake()} was called meanwhile: implementations should only
+   * do the work that is actually due.
+   *
+   * @param now current device time, in nanoseconds
+   * @return device time work is next due at, in nanoseconds, Long.MAX_VALUE if none is
+   */
+  public abstract long advance(long now);
+
+  /**
+   * Sets whether the device is driven in virtual time. Should be set before the device begins.
+   *
+   * @param virtualTime should the device be driven in virtual time?
+   */
+  public void setVirtualTime(boolean virtualTime) {
+    this.virtualTime = virtualTime;
+  }
+
+  /**
+   * Returns whether the device is driven in virtual time.
+   *
+   * @return is the device driven in virtual time?
+   */
+  public boolean isVirtualTime() {
+    return virtualTime;
+  }
+
+  /**
+   * Returns current device time: time since the device was instantiated in wall time, simulated
+   * time (see {@link microsim.simulation.Simulation#getVirtualTime()}) in virtual time.
+   *
+   * @return device time, in nanoseconds
+   */
+  protected long now() {
+    return virtualTime ? simulation.getVirtualTime() : System.nanoTime() - epoch;
+  }
+
+  /**
+   * Sleeps the thread for the given time, waking it up through the
+   * {@link microsim.simulation.component.device.DeviceScheduler}. Threads that want to obey the
+   * debugger's "stop the world" policy should use this method to sleep.
    *
    * @param time time to wait for, in nanoseconds
    */
   protected void smartSpin(long time) {
     // sleep if world is stopped
+    waitForWorld();
+
+    // wait for time
+    DeviceScheduler.getInstance().sleepUntil(System.nanoTime() + time);
+  }
+
+  /**
+   * Sleeps while the world is stopped.
+   *
+   * @return time the world was stopped for, in nanoseconds
+   */
+  protected long waitForWorld() {
+    long start = System.nanoTime();
+    if (!DebugShell.isWorldStopped()) {
+      return 0;
+    }
+
     while (DebugShell.isWorldStopped()) {
       try {
         Thread.sleep(1);
@@ -82,38 +169,76 @@ public abstract class ThreadedIoDevice extends IoDevice {
         throw new RuntimeException("Sleeping thread was interrupted while world was stopped.");
       }
     }
+    return System.nanoTime() - start;
+  }
 
-    // calculate target time
-    long target = System.nanoTime() + time;
+  /**
+   * Sleeps the thread until the given time, or until {@link #wake()} is called. Doesn't check
+   * whether the world is stopped.
+   *
+   * @param time device time to wake up at (see {@link #now()}), in nanoseconds
+   * @return true if the time was reached, false if woken up early
+   */
+  protected boolean sleepUntil(long time) {
+    if (wakeRequest.getAndSet(false)) {
+      return false;
+    }
 
-    // wait for time
-    while (true) {
-      long remaining = target - System.nanoTime();
-      if (remaining <= 0) {
-        return;
-      }
+    boolean reached = DeviceScheduler.getInstance().sleepUntil(epoch + time, wakeRequest);
+    if (!reached) {
+      wakeRequest.set(false);
+    }
+    return reached;
+  }
 
-      if (remaining > 1_000_000) {
-        LockSupport.parkNanos(remaining - 500_000);
-      } else {
-        Thread.onSpinWait();
-      }
+  /**
+   * Sleeps the thread until {@link #wake()} is called, taking no CPU time meanwhile. Doesn't check
+   * whether the world is stopped.
+   */
+  protected void sleepUntilWoken() {
+    while (!wakeRequest.getAndSet(false)) {
+      LockSupport.park(this);
     }
   }
 
   /**
-   * Begins executing device thread.
+   * Wakes the device thread up from {@link #sleepUntil(long)} or {@link #sleepUntilWoken()}. If it
+   * isn't sleeping, its next sleep returns right away. Meant to be called by other threads, when
+   * device state changes. In virtual time, has the simulation call {@link #advance(long)} after
+   * the current cycle instead.
+   */
+  protected void wake() {
+    if (virtualTime) {
+      simulation.wakeDevices();
+      return;
+    }
+
+    wakeRequest.set(true);
+
+    Thread t = thread;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  /**
+   * Begins executing device thread, as a virtual thread. Does nothing in virtual time.
    */
   public void begin() {
-    Thread deviceThread = new Thread(runnableInstance);
-    deviceThread.setName(simulation.name + ": " + getDeviceName());
-    deviceThread.start();
+    if (virtualTime) {
+      return;
+    }
+
+    thread = Thread.ofVirtual().name(simulation.name + ": " + getDeviceName())
+            .unstarted(runnableInstance);
+    thread.start();
   }
 
   /**
-   * Stops executing device thread.
+   * Stops executing device thread, waking it up if it's sleeping.
    */
   public void stop() {
     running = false;
+    wake();
   }
 }
@@ -3,6 +3,7 @@ package microsim.simulation.component.device.block;
 import microsim.simulation.Simulation;
 import microsim.simulation.component.bus.Bus;
 import microsim.simulation.component.device.IoDevice;
+import microsim.simulation.jfr.DiskOperationEvent;
 
 /**
  * Implements a block/disk device, based on Parallel ATA, with 28 bit LBA addressing of 512 byte
@@ -101,6 +102,12 @@ public class BlockDevice extends IoDevice {
      * The index of the next byte to read in storage.
      */
     private int byteIndex = 0;
+
+    /**
+     * JFR event of operation, committed on completion. Null if the event wasn't enabled when the
+     * operation began.
+     */
+    private DiskOperationEvent event;
   }
 
   /**
@@ -127,6 +134,9 @@ public class BlockDevice extends IoDevice {
 
     // check if operation was completed
     if (currentOp.byteIndex >= BLOCK_SIZE * currentOp.blockNumber) {
+      if (currentOp.event != null) {
+        currentOp.event.commit();
+      }
       currentOp = null;
     }
 
@@ -154,6 +164,18 @@ public class BlockDevice extends IoDevice {
     // begin operation by inserting it into current operation
     currentOp = nextOp;
     nextOp = new DiskOp();
+
+    // time operation if recording
+    DiskOperationEvent event = new DiskOperationEvent();
+    if (event.isEnabled()) {
+      event.simulation = simulation.name;
+      event.operation = currentOp.type == DiskOpType.READ ? "read" : "write";
+      event.blockAddress = currentOp.blockAddress;
+      event.blocks = currentOp.blockNumber;
+      event.size = (long) currentOp.blockNumber * BLOCK_SIZE;
+      event.begin();
+      currentOp.event = event;
+    }
   }
 
   /**
@@ -182,6 +204,17 @@ public class BlockDevice extends IoDevice {
     super(bus, simulation, base, 5);
   }
 
+  /**
+   * Block devices accept bursts, so that whole sectors can be streamed through the data port with
+   * {@link microsim.simulation.component.bus.Bus.BurstMode#FIXED} bursts.
+   *
+   * @return always true
+   */
+  @Override
+  protected boolean supportsBurst() {
+    return true;
+  }
+
   /**
    * Gets block device ports.
    *
@@ -1,8 +1,9 @@
 package microsim.simulation.component.device.keyboard;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import microsim.simulation.Simulation;
+import microsim.simulation.SpscRing;
 import microsim.simulation.component.bus.*;
 import microsim.simulation.component.device.IoDevice;
 
@@ -13,22 +14,108 @@ import microsim.simulation.component.device.IoDevice;
  * <li>Data: next key make/break code.</li>
  * </ul>
  * Key make/break code mapping is based on IBM PS/2 PC scan sets, with translation performed by an
- * attached {@link microsim.simulation.component.device.keyboard.KeyboardSource}.
+ * attached {@link microsim.simulation.component.device.keyboard.KeyboardSource}, or injected
+ * through a {@link microsim.simulation.component.device.keyboard.KeyboardInjector}.
+ * <p>
+ * Key codes are queued in a bounded lock-free ring ({@link microsim.simulation.SpscRing}), read by
+ * the simulation thread.
+ * Threads pushing key codes (the Swing event thread, injectors) are serialized among themselves,
+ * so the ring only ever sees a single producer.
  */
 public class KeyboardDevice extends IoDevice {
 
   /**
-   * Queue of received key codes.
+   * Capacity of the key code queue, in key codes.
    */
-  private final Queue<Byte> keyCodes = new LinkedList<>();
+  public static final int QUEUE_CAPACITY = 256;
 
   /**
-   * Pushes a key code to the key code queue.
+   * Time an injecting thread waits for room in a full queue before checking again, in
+   * nanoseconds.
+   */
+  private static final long INJECT_WAIT = 100_000;
+
+  /**
+   * Positions of the queue of received key codes.
+   */
+  private final SpscRing keyRing = new SpscRing(QUEUE_CAPACITY);
+
+  /**
+   * Slots of the queue of received key codes.
+   */
+  private final byte[] keyCodes = new byte[QUEUE_CAPACITY];
+
+  /**
+   * Lock serializing threads that push key codes.
+   */
+  private final Object producerLock = new Object();
+
+  /**
+   * Number of key codes dropped because the queue was full.
+   */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Pushes a key code to the key code queue. If the queue is full the code is dropped, as a real
+   * keyboard buffer would.
    *
    * @param code key code to add
+   * @return was the code queued?
    */
-  public void accept(Byte code) {
-    keyCodes.add(code);
+  public boolean accept(byte code) {
+    boolean queued = offer(code);
+    if (!queued) {
+      dropped.incrementAndGet();
+    }
+    return queued;
+  }
+
+  /**
+   * Pushes key codes to the key code queue, waiting for the simulation to read them if the queue
+   * is full. Codes are never dropped, but pushing stops if the simulation powers off. The lock is
+   * released while waiting, so other sources aren't held up.
+   *
+   * @param codes key codes to add
+   * @return were all codes queued? False if the simulation powered off first
+   */
+  public boolean inject(byte[] codes) {
+    for (byte code : codes) {
+      while (!offer(code)) {
+        if (!simulation.isRunning()) {
+          return false;
+        }
+        LockSupport.parkNanos(INJECT_WAIT);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Queues a key code, serialized with other producers.
+   *
+   * @param code key code to queue
+   * @return was the code queued? False if the queue is full
+   */
+  private boolean offer(byte code) {
+    synchronized (producerLock) {
+      long position = keyRing.claim(1);
+      if (position < 0) {
+        return false;
+      }
+
+      keyCodes[(int) position & keyRing.mask] = code;
+      keyRing.publish(position + 1);
+      return true;
+    }
+  }
+
+  /**
+   * Returns number of key codes dropped because the queue was full.
+   *
+   * @return dropped key codes
+   */
+  public long getDropped() {
+    return dropped.get();
   }
 
   /**
@@ -64,11 +151,18 @@ public class KeyboardDevice extends IoDevice {
     switch (index) {
       case 0 -> {
         // status port
-        return keyCodes.isEmpty() ? 0 : 1;
+        return keyRing.isEmpty() ? 0 : 1;
       }
       case 1 -> {
-        // data port
-        return keyCodes.isEmpty() ? 0 : keyCodes.remove();
+        // data port, sign extended as a byte
+        long position = keyRing.peek();
+        if (position < 0) {
+          return 0;
+        }
+
+        byte code = keyCodes[(int) position & keyRing.mask];
+        keyRing.free(position + 1);
+        return code;
       }
     }
 
@@ -0,0 +1,195 @@
+package microsim.simulation.component.device.keyboard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Injects key codes into a {@link microsim.simulation.component.device.keyboard.KeyboardDevice}
+ * from code, files or streams (such as standard input), with no window needed. Text is typed by
+ * translating each character to the make/break codes of its key, pressing shift around it if
+ * needed. Injection waits for the simulation to read queued codes, so no key is lost however fast
+ * text is typed.
+ * <p>
+ * Translation mirrors the keyboard library of the EPROM (kyb::trans_table), so that typed text
+ * reads back as the same characters on the guest.
+ */
+public class KeyboardInjector {
+
+  /**
+   * Make code of the shift key.
+   */
+  private static final int SHIFT = 0x2A;
+
+  /**
+   * Flag marking translations that need shift to be pressed.
+   */
+  private static final int SHIFTED = 0x100;
+
+  /**
+   * Character to make code translation, or'ed with {@link #SHIFTED} if shift is needed.
+   */
+  private static final Map<Character, Integer> translations = new HashMap<>();
+
+  /**
+   * Number of characters read at a time from streams.
+   */
+  private static final int READ_CHUNK = 256;
+
+  // build translation from (make code, lowercase, uppercase) triples
+  static {
+    Object[] table = {
+      // letters
+      0x1E, 'a', 'A', 0x30, 'b', 'B', 0x2E, 'c', 'C', 0x20, 'd', 'D', 0x12, 'e', 'E',
+      0x21, 'f', 'F', 0x22, 'g', 'G', 0x23, 'h', 'H', 0x17, 'i', 'I', 0x24, 'j', 'J',
+      0x25, 'k', 'K', 0x26, 'l', 'L', 0x32, 'm', 'M', 0x31, 'n', 'N', 0x18, 'o', 'O',
+      0x19, 'p', 'P', 0x10, 'q', 'Q', 0x13, 'r', 'R', 0x1F, 's', 'S', 0x14, 't', 'T',
+      0x16, 'u', 'U', 0x2F, 'v', 'V', 0x11, 'w', 'W', 0x2D, 'x', 'X', 0x15, 'y', 'Y',
+      0x2C, 'z', 'Z',
+      // numbers
+      0x02, '1', '!', 0x03, '2', '"', 0x04, '3', '@', 0x05, '4', '$', 0x06, '5', '%',
+      0x07, '6', '&', 0x08, '7', '/', 0x09, '8', '(', 0x0A, '9', ')', 0x0B, '0', '=',
+      // whitespace
+      0x1C, '\n', '\n', 0x01, '\u001b', '\u001b', 0x0E, '\b', '\b', 0x0F, '\t', '\t',
+      0x39, ' ', ' ',
+      // symbols
+      0x2B, '\\', '|', 0x28, '\'', '?', 0x4E, '+', '*', 0x33, ',', ';', 0x34, '.', ':',
+      0x0C, '-', '_'
+    };
+
+    for (int i = 0; i < table.length; i += 3) {
+      int code = (Integer) table[i];
+      translations.putIfAbsent((Character) table[i + 2], code | SHIFTED);
+      translations.put((Character) table[i + 1], code);
+    }
+  }
+
+  /**
+   * Keyboard device codes are injected into.
+   */
+  private final KeyboardDevice keyboard;
+
+  /**
+   * Instantiates injector for a keyboard device.
+   *
+   * @param keyboard keyboard device to inject codes into
+   */
+  public KeyboardInjector(KeyboardDevice keyboard) {
+    this.keyboard = keyboard;
+  }
+
+  /**
+   * Translates text to the make/break codes that type it. Carriage returns are skipped, so that
+   * text with CRLF line endings types the same.
+   *
+   * @param text text to translate
+   * @return make/break codes
+   */
+  public static byte[] translate(CharSequence text) {
+    byte[] codes = new byte[text.length() * 4];
+    int n = 0;
+
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\r') {
+        continue;
+      }
+
+      Integer translation = translations.get(c);
+      if (translation == null) {
+        throw new RuntimeException("Character 0x" + Integer.toHexString(c) + " has no key code");
+      }
+
+      // press shift around key if needed
+      boolean shifted = (translation & SHIFTED) != 0;
+      byte code = (byte) translation.intValue();
+      if (shifted) {
+        codes[n++] = (byte) SHIFT;
+      }
+      codes[n++] = code;
+      codes[n++] = (byte) (code | 0x80);
+      if (shifted) {
+        codes[n++] = (byte) (SHIFT | 0x80);
+      }
+    }
+
+    byte[] result = new byte[n];
+    System.arraycopy(codes, 0, result, 0, n);
+    return result;
+  }
+
+  /**
+   * Injects raw make/break codes, waiting for the simulation to read them if the queue is full.
+   *
+   * @param codes make/break codes to inject
+   * @return were all codes injected? False if the simulation powered off first
+   */
+  public boolean inject(byte... codes) {
+    return keyboard.inject(codes);
+  }
+
+  /**
+   * Types text, waiting for the simulation to read it if the queue is full.
+   *
+   * @param text text to type
+   * @return was all text typed? False if the simulation powered off first
+   */
+  public boolean type(CharSequence text) {
+    return inject(translate(text));
+  }
+
+  /**
+   * Types text read from a reader, as it becomes available, until the reader ends.
+   *
+   * @param reader reader to read text from
+   * @return was all text typed? False if the simulation powered off first
+   * @throws IOException if reading fails
+   */
+  public boolean type(Reader reader) throws IOException {
+    char[] buffer = new char[READ_CHUNK];
+    int read;
+    while ((read = reader.read(buffer)) != -1) {
+      if (!type(new String(buffer, 0, read))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Types text read from a reader on a thread of its own. The reader is closed when it ends.
+   *
+   * @param reader reader to read text from
+   * @param name name of injector thread
+   * @return injector thread
+   */
+  public Thread start(Reader reader, String name) {
+    Thread thread = new Thread(() -> {
+      try (reader) {
+        type(reader);
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Keyboard injection stopped. " + e.getMessage());
+      }
+    });
+    thread.setName(name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Types the contents of a text file on a thread of its own.
+   *
+   * @param path path of text file
+   * @param name name of injector thread
+   * @return injector thread
+   * @throws IOException if the file can't be opened
+   */
+  public Thread start(Path path, String name) throws IOException {
+    return start(Files.newBufferedReader(path, StandardCharsets.UTF_8), name);
+  }
+}
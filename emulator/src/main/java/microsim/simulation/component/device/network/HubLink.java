@@ -0,0 +1,420 @@
+package microsim.simulation.component.device.network;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Links a {@link microsim.simulation.component.device.network.NetworkSwitch} to a
+ * {@link microsim.simulation.component.device.network.NetworkHub} process, over a Unix domain
+ * socket, so that simulations in different processes share a network. The link is a port of the
+ * switch: frames the switch forwards to it are sent to the hub, and frames from the hub are
+ * forwarded into the switch.
+ * <p>
+ * Outgoing frames are batched: a batch is sent once its oldest frame waited for the flush latency,
+ * or once it's full. A flush latency of 0 sends every frame right away. Batches are written to the
+ * socket by a sender thread, so threads forwarding frames never block on the socket: a batch is
+ * filled while the previous one is sent, and frames that find both full are dropped.
+ * <p>
+ * On connection, the hub hands the link a block of addresses, that the switch then hands out to
+ * its devices, so that addresses never clash across processes.
+ */
+public class HubLink implements NetworkPort {
+
+  /**
+   * Default flush latency, in nanoseconds.
+   */
+  public static final long DEFAULT_FLUSH_LATENCY = 100_000;
+
+  /**
+   * Capacity of a batch, in bytes, including its length field.
+   */
+  public static final int BATCH_CAPACITY = 64 * 1024;
+
+  /**
+   * Switch the link is a port of.
+   */
+  private final NetworkSwitch segment;
+
+  /**
+   * Socket connected to the hub.
+   */
+  private final SocketChannel channel;
+
+  /**
+   * Time frames wait in a batch before it's sent, in nanoseconds.
+   */
+  private final long flushLatency;
+
+  /**
+   * Lock guarding batches.
+   */
+  private final Object lock = new Object();
+
+  /**
+   * Batch being filled, past the length field.
+   */
+  private ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_CAPACITY);
+
+  /**
+   * Batch handed to the sender and not taken yet, null if none is.
+   */
+  private ByteBuffer pending = null;
+
+  /**
+   * Batch free to be filled next, null while the sender holds it.
+   */
+  private ByteBuffer spare = ByteBuffer.allocateDirect(BATCH_CAPACITY);
+
+  /**
+   * Time the oldest frame of the batch was queued at, as given by {@link System#nanoTime()}.
+   */
+  private long batchStart;
+
+  /**
+   * Thread sending batches handed to it, and batches whose flush latency expired.
+   */
+  private final Thread sender;
+
+  /**
+   * Thread receiving frames from the hub.
+   */
+  private final Thread reader;
+
+  /**
+   * Is the link open?
+   */
+  private volatile boolean open = true;
+
+  /**
+   * Number of frames sent to the hub.
+   */
+  private final AtomicLong framesSent = new AtomicLong();
+
+  /**
+   * Number of batches sent to the hub.
+   */
+  private final AtomicLong batchesSent = new AtomicLong();
+
+  /**
+   * Number of frames dropped, as both batches were full.
+   */
+  private final AtomicLong framesDropped = new AtomicLong();
+
+  /**
+   * Number of frames received from the hub.
+   */
+  private final AtomicLong framesReceived = new AtomicLong();
+
+  /**
+   * Connects a switch to the hub listening on a socket. The switch gets its address block from the
+   * hub, so no address should have been handed out yet.
+   *
+   * @param socket path of hub socket
+   * @param segment switch to link
+   * @param flushLatency time frames wait in a batch before it's sent, in nanoseconds
+   * @return link, attached to the switch
+   * @throws IOException if connecting to the hub fails
+   */
+  public static HubLink connect(Path socket, NetworkSwitch segment, long flushLatency)
+          throws IOException {
+    if (flushLatency < 0) {
+      throw new RuntimeException("Flush latency can't be negative");
+    }
+
+    SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      channel.connect(UnixDomainSocketAddress.of(socket));
+
+      // handshake, getting address block
+      ByteBuffer hello = ByteBuffer.allocate(8);
+      hello.putInt(NetworkHub.MAGIC).flip();
+      while (hello.hasRemaining()) {
+        channel.write(hello);
+      }
+      hello.clear();
+      readFully(channel, hello);
+      if (hello.getInt(0) != NetworkHub.MAGIC) {
+        throw new IOException("Socket " + socket + " isn't a network hub");
+      }
+      segment.setAddressBase(hello.getInt(4));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+
+    HubLink link = new HubLink(segment, channel, flushLatency);
+    segment.attach(link);
+    return link;
+  }
+
+  /**
+   * Instantiates link over a connected socket, and starts its threads.
+   *
+   * @param segment switch to link
+   * @param channel socket connected to the hub, past handshake
+   * @param flushLatency time frames wait in a batch before it's sent, in nanoseconds
+   */
+  private HubLink(NetworkSwitch segment, SocketChannel channel, long flushLatency) {
+    this.segment = segment;
+    this.channel = channel;
+    this.flushLatency = flushLatency;
+    batch.position(Integer.BYTES);
+
+    reader = new Thread(this::readerThread);
+    reader.setName("Network hub link: Reader");
+    reader.setDaemon(true);
+    reader.start();
+
+    sender = new Thread(this::senderThread);
+    sender.setName("Network hub link: Sender");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  /**
+   * Queues a frame forwarded by the switch for the hub. Hands the batch to the sender first if the
+   * frame doesn't fit, or right after if there's no flush latency. Never blocks on the socket.
+   *
+   * @param from port that sent the frame
+   * @param frame array holding frame words
+   * @param length number of words in frame
+   * @param source source address of frame
+   * @param destination destination address of frame
+   * @return was the frame queued? False if the link is closed, or both batches are full
+   */
+  @Override
+  public boolean receive(NetworkPort from, int[] frame, int length, int source,
+          int destination) {
+    if (!open) {
+      return false;
+    }
+
+    synchronized (lock) {
+      if (batch.remaining() < NetworkHub.recordSize(length) && !handOff()) {
+        framesDropped.incrementAndGet();
+        return false;
+      }
+
+      // first frame of batch starts latency, and wakes sender up
+      if (batch.position() == Integer.BYTES) {
+        batchStart = System.nanoTime();
+        LockSupport.unpark(sender);
+      }
+
+      batch.putInt(length).putInt(source).putInt(destination);
+      for (int i = 0; i < length; i++) {
+        batch.putInt(frame[i]);
+      }
+      framesSent.incrementAndGet();
+
+      // if the sender is busy, the batch goes once it's done
+      if (flushLatency == 0) {
+        handOff();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Hands the batch to the sender, if it holds frames and the sender is done with the previous
+   * one, and starts filling the spare batch. Called with the batch lock held.
+   *
+   * @return was the batch handed off?
+   */
+  private boolean handOff() {
+    if (spare == null || batch.position() == Integer.BYTES) {
+      return false;
+    }
+
+    batch.putInt(0, batch.position() - Integer.BYTES);
+    batch.flip();
+    pending = batch;
+    batch = spare;
+    spare = null;
+    batch.clear().position(Integer.BYTES);
+    LockSupport.unpark(sender);
+    return true;
+  }
+
+  /**
+   * Implements the sender thread, that writes batches handed to it to the socket, and hands off
+   * batches once their oldest frame waited for the flush latency.
+   */
+  private void senderThread() {
+    while (open) {
+      ByteBuffer send;
+      long wait = -1;
+      synchronized (lock) {
+        if (pending == null && batch.position() > Integer.BYTES) {
+          wait = batchStart + flushLatency - System.nanoTime();
+          if (wait <= 0) {
+            handOff();
+          }
+        }
+        send = pending;
+        pending = null;
+      }
+
+      if (send != null) {
+        try {
+          while (send.hasRemaining()) {
+            channel.write(send);
+          }
+        } catch (IOException e) {
+          close();
+          return;
+        }
+        batchesSent.incrementAndGet();
+
+        synchronized (lock) {
+          spare = send;
+        }
+        continue;
+      }
+
+      // wait for a batch, or for its latency to expire
+      if (wait < 0) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, wait);
+      }
+    }
+  }
+
+  /**
+   * Implements the reader thread, that forwards frames received from the hub into the switch.
+   */
+  private void readerThread() {
+    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    ByteBuffer in = ByteBuffer.allocateDirect(NetworkHub.MAX_BATCH);
+    int[] frame = new int[NetworkHub.MAX_FRAME_WORDS];
+
+    try {
+      while (open) {
+        // read whole batch
+        length.clear();
+        readFully(channel, length);
+        int size = length.getInt(0);
+        if (size < 0 || size > NetworkHub.MAX_BATCH) {
+          throw new IOException("Invalid batch size " + size);
+        }
+        in.clear().limit(size);
+        readFully(channel, in);
+        in.flip();
+
+        // forward frames
+        while (in.hasRemaining()) {
+          int words = in.getInt();
+          int source = in.getInt();
+          int destination = in.getInt();
+          if (words < 0 || words > frame.length) {
+            throw new IOException("Invalid frame length " + words);
+          }
+          for (int i = 0; i < words; i++) {
+            frame[i] = in.getInt();
+          }
+
+          framesReceived.incrementAndGet();
+          segment.forward(this, frame, words, source, destination);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      if (open) {
+        System.err.println("Network hub link closed. " + e.getMessage());
+      }
+    }
+    close();
+  }
+
+  /**
+   * Reads from a socket until a buffer is full.
+   *
+   * @param channel socket to read from
+   * @param buffer buffer to fill
+   * @throws IOException if reading fails or the socket is closed
+   */
+  private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Hub closed connection");
+      }
+    }
+  }
+
+  /**
+   * Closes the link, detaching it from the switch. Queued frames that weren't sent are lost.
+   */
+  public void close() {
+    if (!open) {
+      return;
+    }
+    open = false;
+
+    segment.detach(this);
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // closing anyway
+    }
+    LockSupport.unpark(sender);
+  }
+
+  /**
+   * Returns no address, as the link carries the frames of all addresses behind the hub: the switch
+   * learns them from the source field of their frames.
+   *
+   * @return {@link NetworkPort#NO_ADDRESS}
+   */
+  @Override
+  public int getAddress() {
+    return NO_ADDRESS;
+  }
+
+  /**
+   * Returns number of frames sent to the hub, including those still queued in a batch.
+   *
+   * @return frames sent
+   */
+  public long getFramesSent() {
+    return framesSent.get();
+  }
+
+  /**
+   * Returns number of batches sent to the hub.
+   *
+   * @return batches sent
+   */
+  public long getBatchesSent() {
+    return batchesSent.get();
+  }
+
+  /**
+   * Returns number of frames received from the hub.
+   *
+   * @return frames received
+   */
+  public long getFramesReceived() {
+    return framesReceived.get();
+  }
+
+  /**
+   * Returns link statistics.
+   *
+   * @return statistics string
+   */
+  @Override
+  public String toString() {
+    long batches = batchesSent.get();
+    return String.format("hub link (%s, flush latency %d us): frames sent: %d, batches sent: %d, "
+            + "frames per batch: %.1f, dropped: %d, frames received: %d", open ? "open" : "closed",
+            flushLatency / 1000, framesSent.get(), batches,
+            batches == 0 ? 0.0 : framesSent.get() / (double) batches, framesDropped.get(),
+            framesReceived.get());
+  }
+}
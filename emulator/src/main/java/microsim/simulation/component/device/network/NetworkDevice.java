@@ -1,103 +1,1092 @@
 package microsim.simulation.component.device.network;
 
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 import microsim.simulation.Simulation;
+import microsim.simulation.SpscRing;
 import microsim.simulation.component.bus.*;
 import microsim.simulation.component.device.IoDevice;
+import microsim.simulation.component.memory.MemorySpace;
+import microsim.simulation.component.processor.Cache;
+import microsim.simulation.jfr.NetworkSendEvent;
 
 /**
- * Implements a network device that offers communication, through a hub, of words (32 bit) to all
- * other devices. Ports are same as an UART serial device (except ADDR):
+ * Implements a network device that offers communication of words (32 bit) with other devices on
+ * its network segment, through a
+ * {@link microsim.simulation.component.device.network.NetworkSwitch}. Ports are same as an UART
+ * serial device (except ADDR), followed by packet mode ports:
  * <ol>
  * <li>TX (transmit buffer)</li>
  * <li>TXRDY (transmit buffer ready, that is empty)</li>
  * <li>RX (receive buffer)</li>
  * <li>RXRDY (receive buffer read, that is full)</li>
  * <li>ADDR (returns address of this device)</li>
+ * <li>CTRL (control, bit 0 enables packet mode)</li>
+ * <li>TXRING (address of transmit descriptor ring)</li>
+ * <li>RXRING (address of receive descriptor ring)</li>
+ * <li>RINGLEN (number of descriptors in each ring)</li>
+ * <li>TXKICK (starts transmission on write, returns transmit ring head on read)</li>
+ * <li>STATUS (completion status, bits written as 1 are cleared)</li>
+ * <li>RXHEAD (returns receive ring head)</li>
  * </ol>
  * All buffers are 32 bit.
+ * <p>
+ * Words written to TX are gathered into frames, as laid out by the EPROM network library
+ * (net::packet): a header of source address, destination address and payload length, then the
+ * payload. Each header field and payload element takes 4 words, one byte (the low byte) each,
+ * least significant first. Complete frames are handed to the switch, that delivers them whole.
+ * Received frames are filtered on their destination address: only frames to this device or
+ * broadcast reach RX, so firmware never sees traffic meant for others. They are queued whole in
+ * bounded lock-free rings ({@link microsim.simulation.SpscRing}), one per sending port, so that
+ * senders never wait for each other. The simulation thread takes frames from the rings in turn,
+ * reading all words of a frame before taking the next one.
+ * <p>
+ * In packet mode, firmware moves whole packets through descriptor rings in memory instead of
+ * words through TX and RX, which are then inactive. A descriptor is 2 words: the address of a
+ * buffer holding a packet laid out as net::packet in memory (header fields as 32 bit words, then
+ * one byte per payload element), and a control word of buffer size in bytes (bits 0 to 15),
+ * {@link #DESC_ERR} and {@link #DESC_OWN}. Firmware hands descriptors to the device by setting
+ * their OWN bit, and the device clears it once done with them. Descriptors are handled one at a
+ * time, as the device is stepped:
+ * <ul>
+ * <li>Once TXKICK is written, the device reads the packets of all owned descriptors from the
+ * transmit ring head on, and sends them as frames.</li>
+ * <li>While frames are received, the device writes them into the buffers of owned descriptors
+ * from the receive ring head on, setting their size to that of the packet. The device looks for
+ * received frames every {@link #RX_POLL_CYCLES} cycles while idle.</li>
+ * </ul>
+ * Packets are copied to and from memory by the device on its own (direct memory access), a word at
+ * a time, and are the same frames on the network as those sent through TX, so devices in either
+ * mode talk to each other. Copies aren't bus transactions, but are traced, counted and checked
+ * against watchpoints as memory accesses (see
+ * {@link microsim.simulation.component.memory.MemorySpace#readDirect(int, int)}), and each
+ * descriptor completes after as many cycles as its accesses would take with the wait states of
+ * memory. The processor is kept coherent with these copies: data cache lines over memory the
+ * device reads are flushed first, and lines over memory it writes are flushed and dropped, along
+ * with instruction cache lines and the fetch and load buffers. Completion is signaled by the
+ * {@link #STATUS_TXDONE} and {@link #STATUS_RXDONE} bits of STATUS, and descriptors that can't be
+ * written back (say, in EPROM) complete with {@link #STATUS_ERR} only, as do writes of RINGLEN out
+ * of range.
+ * <p>
+ * Devices are connected to the switch of a segment with
+ * {@link #connect(microsim.simulation.component.device.network.NetworkSwitch)}: each simulation
+ * puts its device on a segment of its own once built, and may move it to a shared switch.
  */
-public class NetworkDevice extends IoDevice {
+public class NetworkDevice extends IoDevice implements NetworkPort {
 
   /**
-   * Capacity of receive buffer.
+   * Capacity of receive buffer, in words.
    */
   public static final int BUF_CAPACITY = 4096;
 
   /**
-   * Size of assigned address pool.
+   * Number of words in a frame header: source, destination and length fields, 4 words each.
    */
-  public static final int ADDR_POOL_SIZE = 100;
+  public static final int HEADER_WORDS = 12;
 
   /**
-   * List of all network device instances that need to receive what this device sends.
+   * Maximum payload length of a frame, in elements (4 words each).
    */
-  private static final List<NetworkDevice> instances = new CopyOnWriteArrayList<>();
+  public static final int MAX_PAYLOAD = 256;
 
   /**
-   * Buffer of words (32 bit) this device is receiving.
+   * Size of a packet header in memory, in bytes: source, destination and length fields.
    */
-  private final Queue<Integer> inBuf = new ArrayBlockingQueue<>(BUF_CAPACITY);
+  public static final int PACKET_HEADER = 12;
 
   /**
-   * Random pool of addresses to select from.
+   * Size of a descriptor in memory, in bytes: buffer address and control word.
    */
-  private final static int[] addressPool;
+  public static final int DESC_SIZE = 8;
 
-  static {
-    // initialize static address pool with integers 1 to ADDR_POOL_SIZE
-    addressPool = new int[ADDR_POOL_SIZE];
-    for (int i = 0; i < ADDR_POOL_SIZE; i++) {
-      addressPool[i] = i + 1;
+  /**
+   * Maximum number of descriptors in a ring.
+   */
+  public static final int MAX_RING = 256;
+
+  /**
+   * Number of cycles between looks for received frames, in packet mode, while the device has no
+   * descriptor to complete.
+   */
+  public static final int RX_POLL_CYCLES = 16;
+
+  /**
+   * Descriptor control bit, set when the descriptor is owned by the device.
+   */
+  public static final int DESC_OWN = 1 << 31;
+
+  /**
+   * Descriptor control bit, set by the device when the packet couldn't be transferred.
+   */
+  public static final int DESC_ERR = 1 << 30;
+
+  /**
+   * Mask of descriptor control word holding buffer size.
+   */
+  public static final int DESC_SIZE_MASK = 0xffff;
+
+  /**
+   * Control bit enabling packet mode.
+   */
+  public static final int CTRL_PACKET = 1;
+
+  /**
+   * Status bit, set when transmit descriptors were completed.
+   */
+  public static final int STATUS_TXDONE = 1;
+
+  /**
+   * Status bit, set when receive descriptors were completed.
+   */
+  public static final int STATUS_RXDONE = 2;
+
+  /**
+   * Status bit, set when received frames wait for receive descriptors. Not cleared by writes.
+   */
+  public static final int STATUS_RXWAIT = 4;
+
+  /**
+   * Status bit, set when a descriptor was completed with {@link #DESC_ERR}.
+   */
+  public static final int STATUS_ERR = 8;
+
+  /**
+   * Switch of the segment this device is attached to.
+   */
+  private NetworkSwitch segment;
+
+  /**
+   * Address of this network device.
+   */
+  private int address;
+
+  /**
+   * Receive buffer of the frames of a sending port.
+   */
+  private static class SenderRing {
+
+    /**
+     * Port sending frames to the ring.
+     */
+    final NetworkPort sender;
+
+    /**
+     * Positions of ring. Frames are published whole.
+     */
+    final SpscRing ring = new SpscRing(BUF_CAPACITY);
+
+    /**
+     * Slots of ring, a word (32 bit) each.
+     */
+    private final int[] words = new int[BUF_CAPACITY];
+
+    /**
+     * Instantiates the ring of a sending port.
+     *
+     * @param sender sending port
+     */
+    SenderRing(NetworkPort sender) {
+      this.sender = sender;
+    }
+
+    /**
+     * Queues a whole frame. Only called by the thread sending for the port.
+     *
+     * @param frame array holding frame words
+     * @param length number of words in frame
+     * @return was the frame queued? False if the ring doesn't have room for it
+     */
+    boolean offer(int[] frame, int length) {
+      long position = ring.claim(length);
+      if (position < 0) {
+        return false;
+      }
+
+      for (int i = 0; i < length; i++) {
+        words[(int) (position + i) & ring.mask] = frame[i];
+      }
+      ring.publish(position + length);
+      return true;
+    }
+
+    /**
+     * Returns the number of words of the oldest frame, from the length field of its header. Only
+     * called by the simulation thread, when the ring isn't empty.
+     *
+     * @return words in frame
+     */
+    int frameWords() {
+      long position = ring.peek();
+      int length = 0;
+      for (int i = 0; i < 4; i++) {
+        length |= (words[(int) (position + 8 + i) & ring.mask] & 0xff) << (8 * i);
+      }
+      return HEADER_WORDS + 4 * length;
     }
 
-    // shuffle
-    for (int src = 0; src < ADDR_POOL_SIZE; src++) {
-      int dest = (int) (ADDR_POOL_SIZE * Math.random());
-      int temp = addressPool[dest];
-      addressPool[dest] = addressPool[src];
-      addressPool[src] = temp;
+    /**
+     * Dequeues a word. Only called by the simulation thread, when the ring isn't empty.
+     *
+     * @return oldest word
+     */
+    int poll() {
+      long position = ring.peek();
+      int word = words[(int) position & ring.mask];
+      ring.free(position + 1);
+      return word;
+    }
+
+    /**
+     * Dequeues a whole frame. Only called by the simulation thread, when the ring isn't empty.
+     *
+     * @param frame array to copy frame words to
+     * @return words in frame
+     */
+    int take(int[] frame) {
+      int length = frameWords();
+      long position = ring.peek();
+      for (int i = 0; i < length; i++) {
+        frame[i] = words[(int) (position + i) & ring.mask];
+      }
+      ring.free(position + length);
+      return length;
+    }
+
+    /**
+     * Discards all queued words. Only called by the simulation thread.
+     */
+    void drain() {
+      long position = ring.peek();
+      if (position >= 0) {
+        ring.free(position + ring.available());
+      }
     }
   }
 
   /**
-   * Address of this network device.
+   * Receive buffers of sending ports. Replaced as a whole when a ring is added or dropped.
+   */
+  private volatile SenderRing[] inRings = new SenderRing[0];
+
+  /**
+   * Ring of the frame being read through RX. Only used by the simulation thread.
+   */
+  private SenderRing inCurrent;
+
+  /**
+   * Number of words of the frame being read through RX not read yet.
+   */
+  private int inRemaining = 0;
+
+  /**
+   * Index of the ring to look for frames in first, so that rings are taken in turn.
+   */
+  private int inNext = 0;
+
+  /**
+   * Frame being transmitted. Only used by the simulation thread.
+   */
+  private final int[] outFrame = new int[HEADER_WORDS + 4 * MAX_PAYLOAD];
+
+  /**
+   * Number of words of the frame being transmitted written so far.
+   */
+  private int outLength = 0;
+
+  /**
+   * Frame being received into memory, in packet mode. Only used by the simulation thread.
+   */
+  private final int[] inFrame = new int[HEADER_WORDS + 4 * MAX_PAYLOAD];
+
+  /**
+   * Memory space descriptor rings and packet buffers are in.
+   */
+  private MemorySpace memory;
+
+  /**
+   * Control register, see {@link #CTRL_PACKET}.
+   */
+  private int control = 0;
+
+  /**
+   * Address of transmit descriptor ring.
+   */
+  private int txRing = 0;
+
+  /**
+   * Address of receive descriptor ring.
+   */
+  private int rxRing = 0;
+
+  /**
+   * Number of descriptors in each ring.
+   */
+  private int ringLength = 1;
+
+  /**
+   * Index of next transmit descriptor to be handled.
+   */
+  private int txHead = 0;
+
+  /**
+   * Index of next receive descriptor to be handled.
+   */
+  private int rxHead = 0;
+
+  /**
+   * Status register, see {@link #STATUS_TXDONE}, {@link #STATUS_RXDONE} and {@link #STATUS_ERR}.
+   */
+  private int status = 0;
+
+  /**
+   * Signals that TXKICK was written, and owned transmit descriptors may be left.
+   */
+  private boolean txKicked = false;
+
+  /**
+   * Signals that a descriptor is being completed, see {@link #dmaEnd}.
+   */
+  private boolean dmaBusy = false;
+
+  /**
+   * Address of the descriptor being completed.
+   */
+  private int dmaDesc;
+
+  /**
+   * Control word written back to the descriptor being completed.
+   */
+  private int dmaControl;
+
+  /**
+   * Signals whether the descriptor being completed is a transmit (true) or receive (false) one.
+   */
+  private boolean dmaTransmit;
+
+  /**
+   * Cycle the descriptor being completed is written back at.
+   */
+  private long dmaEnd;
+
+  /**
+   * Number of cycles taken by the memory accesses of the descriptor being handled so far.
+   */
+  private int dmaCost;
+
+  /**
+   * Cycle to look for received frames at next, while the device is idle.
+   */
+  private long nextPoll = 0;
+
+  /**
+   * Total number of cycles taken by memory accesses of the device.
+   */
+  private long dmaCycles = 0;
+
+  /**
+   * Number of frames sent.
+   */
+  private long framesSent = 0;
+
+  /**
+   * Number of frames sent from transmit descriptors.
+   */
+  private long packetsSent = 0;
+
+  /**
+   * Number of frames received into receive descriptors.
+   */
+  private long packetsReceived = 0;
+
+  /**
+   * Number of frames dropped as malformed: on transmit, as their payload length exceeded
+   * {@link #MAX_PAYLOAD} or their descriptor was invalid, on receive, as their length didn't match
+   * their header.
+   */
+  private final AtomicLong framesMalformed = new AtomicLong();
+
+  /**
+   * Number of frames received.
+   */
+  private final AtomicLong framesReceived = new AtomicLong();
+
+  /**
+   * Number of frames filtered out, as they were meant for another device.
+   */
+  private final AtomicLong framesFiltered = new AtomicLong();
+
+  /**
+   * Number of frames dropped, as the receive buffer was full.
+   */
+  private final AtomicLong framesDropped = new AtomicLong();
+
+  /**
+   * Instantiates network device, taking a reference to the bus it's mounted on. The device isn't on
+   * any network segment until connected.
+   *
+   * @param bus bus the network device is mounted on
+   * @param base base address of network device
+   * @param simulation simulation this network device belongs to
+   */
+  public NetworkDevice(Bus bus, int base, Simulation simulation) {
+    super(bus, simulation, base, 12);
+  }
+
+  /**
+   * Connects device to the segment of a switch, leaving its current segment, if any. The device
+   * gets a new address from the switch. Should be called before the simulation begins.
+   *
+   * @param segment switch of segment to connect to
+   */
+  public void connect(NetworkSwitch segment) {
+    if (this.segment != null) {
+      this.segment.detach(this);
+    }
+
+    this.segment = segment;
+    address = segment.nextAddress();
+    segment.attach(this);
+  }
+
+  /**
+   * Attaches the memory space packets are transferred to and from in packet mode. Used to defer
+   * memory attachment after the device has been built.
+   *
+   * @param memory memory to attach
    */
-  private final int address;
+  public void attachMemory(MemorySpace memory) {
+    this.memory = memory;
+  }
 
   /**
-   * Sends a data word (32 bit) to all network device instances.
+   * Returns switch of the segment this device is attached to.
+   *
+   * @return switch of segment
+   */
+  public NetworkSwitch getSegment() {
+    return segment;
+  }
+
+  /**
+   * Returns address of this device.
+   *
+   * @return address
+   */
+  @Override
+  public int getAddress() {
+    return address;
+  }
+
+  /**
+   * Sends a data word (32 bit), as part of the frame being transmitted. Once the frame is complete
+   * it's handed to the switch.
    *
    * @param data data word to send
    */
   private void send(int data) {
-    for (NetworkDevice net : instances) {
-      if (net == this) {
-        continue;
+    outFrame[outLength++] = data;
+    if (outLength < HEADER_WORDS) {
+      return;
+    }
+
+    // drop frames too long to buffer, restarting with the next word
+    int length = headerField(outFrame, 2);
+    if (length < 0 || length > MAX_PAYLOAD) {
+      framesMalformed.incrementAndGet();
+      outLength = 0;
+      return;
+    }
+    if (outLength < HEADER_WORDS + 4 * length) {
+      return;
+    }
+
+    // frame complete, forward
+    forward(false);
+    outLength = 0;
+  }
+
+  /**
+   * Hands the frame being transmitted to the switch.
+   *
+   * @param packet was the frame read from a transmit descriptor?
+   */
+  private void forward(boolean packet) {
+    int source = headerField(outFrame, 0);
+    int destination = headerField(outFrame, 1);
+    int receivers = segment.forward(this, outFrame, outLength, source, destination);
+    framesSent++;
+
+    NetworkSendEvent event = new NetworkSendEvent();
+    if (event.shouldCommit()) {
+      event.simulation = simulation.name;
+      event.source = source;
+      event.destination = destination;
+      event.words = outLength;
+      event.receivers = receivers;
+      event.packet = packet;
+      event.commit();
+    }
+  }
+
+  /**
+   * Steps the descriptor rings in packet mode: writes back the descriptor being completed once its
+   * accesses are over, then starts on the next owned transmit descriptor if TXKICK was written, or
+   * else on the next owned receive descriptor if frames were received.
+   */
+  @Override
+  protected void stepDevice() {
+    if (!isPacketMode()) {
+      return;
+    }
+
+    long cycle = simulation.getCycle();
+    if (dmaBusy) {
+      if (cycle < dmaEnd) {
+        return;
       }
+      completeDescriptor();
+    }
 
-      // offer, overflows get discarded
-      net.inBuf.offer(data);
+    if (txKicked) {
+      txKicked = transmitPacket();
+      if (txKicked) {
+        return;
+      }
+    }
+    if (cycle >= nextPoll && !(hasReceived() && receivePacket())) {
+      nextPoll = cycle + RX_POLL_CYCLES;
     }
   }
 
   /**
-   * Instantiates network device, taking a reference to the bus it's mounted on.
+   * Returns the next cycle this device needs to be stepped at. In packet mode, that is the cycle
+   * the descriptor being completed is written back at, the next one if TXKICK was written, or the
+   * next cycle to look for received frames at.
    *
-   * @param bus bus the network device is mounted on
-   * @param base base address of network device
-   * @param simulation simulation this network device belongs to
+   * @return next cycle with pending work, or {@link Long#MAX_VALUE} if idle
    */
-  @SuppressWarnings("LeakingThisInConstructor")
-  public NetworkDevice(Bus bus, int base, Simulation simulation) {
-    super(bus, simulation, base, 5);
-    instances.add(this);
+  @Override
+  public long getWakeCycle() {
+    long wake = super.getWakeCycle();
+    if (!isPacketMode()) {
+      return wake;
+    }
+
+    long next = simulation.getCycle() + 1;
+    if (dmaBusy) {
+      next = Math.max(next, dmaEnd);
+    } else if (!txKicked) {
+      next = Math.max(next, nextPoll);
+    }
+    return Math.min(wake, next);
+  }
+
+  /**
+   * Sends the packet of the transmit descriptor at the ring head, if owned. The packet is read from
+   * memory and expanded to a frame, then handed to the switch, and the descriptor is completed once
+   * the accesses are over.
+   *
+   * @return was the descriptor owned?
+   */
+  private boolean transmitPacket() {
+    dmaCost = 0;
+    int desc = txRing + txHead * DESC_SIZE;
+    int ctrl = readWord(desc + 4);
+    if ((ctrl & DESC_OWN) == 0) {
+      return false;
+    }
+
+    int buffer = readWord(desc);
+    int size = ctrl & DESC_SIZE_MASK;
+    if (isWritable(desc, DESC_SIZE) && readPacket(buffer, size)) {
+      forward(true);
+      packetsSent++;
+      beginCompletion(desc, size, true);
+    } else {
+      framesMalformed.incrementAndGet();
+      beginCompletion(desc, size | DESC_ERR, true);
+    }
+    outLength = 0;
+    return true;
+  }
+
+  /**
+   * Reads a packet from memory into the frame being transmitted, one word per header byte and 4
+   * words per payload element (the element, then 3 zero words), as TX would have received it.
+   *
+   * @param buffer address of packet
+   * @param size size of buffer, in bytes
+   * @return was the packet valid, and in memory bounds?
+   */
+  private boolean readPacket(int buffer, int size) {
+    if (size < PACKET_HEADER || !inBounds(buffer, PACKET_HEADER)) {
+      return false;
+    }
+    int length = readWord(buffer + 8);
+    if (length < 0 || length > MAX_PAYLOAD || size < PACKET_HEADER + length
+            || !inBounds(buffer, PACKET_HEADER + length)) {
+      return false;
+    }
+
+    flushDataCache(buffer, PACKET_HEADER + length);
+    outLength = 0;
+    for (int i = 0; i < PACKET_HEADER; i += 4) {
+      int data = readBytes(buffer + i, 4);
+      for (int j = 0; j < 4; j++) {
+        outFrame[outLength++] = (data >>> (8 * j)) & 0xff;
+      }
+    }
+    for (int i = 0; i < length; i += 4) {
+      int count = Math.min(4, length - i);
+      int data = readBytes(buffer + PACKET_HEADER + i, count);
+      for (int j = 0; j < count; j++) {
+        outFrame[outLength++] = (data >>> (8 * j)) & 0xff;
+        outFrame[outLength++] = 0;
+        outFrame[outLength++] = 0;
+        outFrame[outLength++] = 0;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the next received frame into the buffer of the receive descriptor at the ring head, if
+   * owned, as a packet laid out as in memory. Frames that don't fit their buffer are dropped,
+   * completing their descriptor with {@link #DESC_ERR} and the size they needed. The descriptor is
+   * completed once the accesses are over.
+   *
+   * @return was the descriptor owned?
+   */
+  private boolean receivePacket() {
+    dmaCost = 0;
+    int desc = rxRing + rxHead * DESC_SIZE;
+    int ctrl = readWord(desc + 4);
+    if ((ctrl & DESC_OWN) == 0) {
+      return false;
+    }
+
+    // take whole frame, checked on receive
+    int words = nextFrame().take(inFrame);
+
+    int buffer = readWord(desc);
+    int size = PACKET_HEADER + (words - HEADER_WORDS) / 4;
+    if (size <= (ctrl & DESC_SIZE_MASK) && isWritable(desc, DESC_SIZE)
+            && isWritable(buffer, size)) {
+      evictCaches(buffer, size);
+      for (int i = 0; i < size; i += 4) {
+        int count = Math.min(4, size - i);
+        int data = 0;
+        for (int j = 0; j < count; j++) {
+          data |= packetByte(i + j) << (8 * j);
+        }
+        writeBytes(buffer + i, count, data);
+      }
+      packetsReceived++;
+      beginCompletion(desc, size, false);
+    } else {
+      framesDropped.incrementAndGet();
+      beginCompletion(desc, size | DESC_ERR, false);
+    }
+    return true;
+  }
+
+  /**
+   * Returns a byte of the frame being received into memory, as laid out in its packet: header
+   * bytes are a word each, payload elements 4 words each.
+   *
+   * @param index index of byte in packet
+   * @return byte value
+   */
+  private int packetByte(int index) {
+    int word = index < PACKET_HEADER ? index : HEADER_WORDS + 4 * (index - PACKET_HEADER);
+    return inFrame[word] & 0xff;
+  }
+
+  /**
+   * Starts completing a descriptor, whose write back is due once the accesses of the descriptor
+   * are over.
+   *
+   * @param desc address of descriptor
+   * @param ctrl control word to write back
+   * @param transmit is the descriptor a transmit one?
+   */
+  private void beginCompletion(int desc, int ctrl, boolean transmit) {
+    if (isWritable(desc + 4, 4)) {
+      dmaCost += memory.getAccessCycles(desc + 4);
+    }
+    dmaCycles += dmaCost;
+
+    dmaBusy = true;
+    dmaDesc = desc;
+    dmaControl = ctrl;
+    dmaTransmit = transmit;
+    dmaEnd = simulation.getCycle() + Math.max(dmaCost, 1);
+  }
+
+  /**
+   * Writes back the descriptor being completed, signals its completion in STATUS and moves its ring
+   * head on.
+   */
+  private void completeDescriptor() {
+    dmaBusy = false;
+    writeWord(dmaDesc + 4, dmaControl);
+    if ((dmaControl & DESC_ERR) != 0) {
+      status |= STATUS_ERR;
+    }
+
+    if (dmaTransmit) {
+      status |= STATUS_TXDONE;
+      txHead = (txHead + 1) % ringLength;
+    } else {
+      status |= STATUS_RXDONE;
+      rxHead = (rxHead + 1) % ringLength;
+    }
+  }
+
+  /**
+   * Checks if a memory range lies within a single region of memory space.
+   *
+   * @param addr first address of range
+   * @param size size of range, in bytes
+   * @return is range in bounds?
+   */
+  private boolean inBounds(int addr, int size) {
+    int last = addr + size - 1;
+    return memory.inBounds(addr) && memory.inBounds(last) && last >= addr
+            && (addr < MemorySpace.XRAM_START) == (last < MemorySpace.XRAM_START);
+  }
+
+  /**
+   * Checks if a memory range lies within a single writable region of memory space, that is not in
+   * EPROM.
+   *
+   * @param addr first address of range
+   * @param size size of range, in bytes
+   * @return is range writable?
+   */
+  private boolean isWritable(int addr, int size) {
+    return inBounds(addr, size) && addr > MemorySpace.EPROM_END;
+  }
 
-    // get device address from pool
-    address = addressPool[instances.size() - 1];
+  /**
+   * Writes back the data cache lines over a memory range the device is about to read, so that it
+   * sees what the processor wrote.
+   *
+   * @param addr first address of range
+   * @param size size of range, in bytes
+   */
+  private void flushDataCache(int addr, int size) {
+    Cache dcache = simulation.proc.getDataCache();
+    if (dcache != null) {
+      dcache.flush(memory, addr, size);
+    }
+  }
+
+  /**
+   * Writes back then drops the data cache lines over a memory range the device is about to write,
+   * and drops the instruction cache lines and the fetch and load buffers holding it, so that the
+   * processor reads what the device wrote.
+   *
+   * @param addr first address of range
+   * @param size size of range, in bytes
+   */
+  private void evictCaches(int addr, int size) {
+    Cache dcache = simulation.proc.getDataCache();
+    if (dcache != null) {
+      dcache.flush(memory, addr, size);
+      dcache.invalidate(addr, size);
+    }
+    Cache icache = simulation.proc.getInstructionCache();
+    if (icache != null) {
+      icache.invalidate(addr, size);
+    }
+    simulation.proc.invalidateBuffers(addr, size);
+  }
+
+  /**
+   * Reads up to 4 little-endian bytes from memory: a word access for 4 bytes, byte accesses
+   * otherwise. The cycles the accesses take are added to {@link #dmaCost}.
+   *
+   * @param addr address of first byte
+   * @param count number of bytes
+   * @return bytes read
+   */
+  private int readBytes(int addr, int count) {
+    if (count == 4) {
+      dmaCost += memory.getAccessCycles(addr);
+      return memory.readDirect(addr, Bus.ByteSelect.WORD);
+    }
+
+    int data = 0;
+    for (int i = 0; i < count; i++) {
+      dmaCost += memory.getAccessCycles(addr + i);
+      data |= memory.readDirect(addr + i, Bus.ByteSelect.BYTE) << (8 * i);
+    }
+    return data;
+  }
+
+  /**
+   * Writes up to 4 little-endian bytes to memory, as {@link #readBytes(int, int)} reads them.
+   *
+   * @param addr address of first byte
+   * @param count number of bytes
+   * @param data bytes to write
+   */
+  private void writeBytes(int addr, int count, int data) {
+    if (count == 4) {
+      dmaCost += memory.getAccessCycles(addr);
+      memory.writeDirect(addr, Bus.ByteSelect.WORD, data);
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      dmaCost += memory.getAccessCycles(addr + i);
+      memory.writeDirect(addr + i, Bus.ByteSelect.BYTE, data >>> (8 * i));
+    }
+  }
+
+  /**
+   * Reads a little-endian word from memory. Descriptors out of memory bounds read as 0, that is not
+   * owned.
+   *
+   * @param addr address of word
+   * @return word read
+   */
+  private int readWord(int addr) {
+    if (!inBounds(addr, 4)) {
+      return 0;
+    }
+
+    flushDataCache(addr, 4);
+    return readBytes(addr, 4);
+  }
+
+  /**
+   * Writes a little-endian word to memory. Writes out of memory bounds or to EPROM are ignored,
+   * setting {@link #STATUS_ERR}.
+   *
+   * @param addr address of word
+   * @param data word to write
+   */
+  private void writeWord(int addr, int data) {
+    if (!isWritable(addr, 4)) {
+      status |= STATUS_ERR;
+      return;
+    }
+
+    evictCaches(addr, 4);
+    writeBytes(addr, 4, data);
+  }
+
+  /**
+   * Sets control register. Enabling or disabling packet mode resets both rings to their first
+   * descriptor, clears status, drops any pending kick and descriptor completion, discards any
+   * partially transmitted frame and drains the receive buffer, as words of a frame may have been
+   * read already.
+   *
+   * @param data control value
+   */
+  private void setControl(int data) {
+    if (((control ^ data) & CTRL_PACKET) != 0) {
+      txHead = 0;
+      rxHead = 0;
+      status = 0;
+      txKicked = false;
+      dmaBusy = false;
+      outLength = 0;
+      drainReceived();
+    }
+    control = data;
+  }
+
+  /**
+   * Discards all words in the receive buffers, along with the frame being read through RX. Frames
+   * published later are read whole.
+   */
+  private void drainReceived() {
+    for (SenderRing in : inRings) {
+      in.drain();
+    }
+    inCurrent = null;
+    inRemaining = 0;
+  }
+
+  /**
+   * Returns the ring holding the next frame to read, taking rings in turn. Only called by the
+   * simulation thread, when no frame is being read through RX.
+   *
+   * @return ring whose oldest frame is next, or null if all rings are empty
+   */
+  private SenderRing nextFrame() {
+    SenderRing[] rings = inRings;
+    for (int i = 0; i < rings.length; i++) {
+      int index = (inNext + i) % rings.length;
+      if (!rings[index].ring.isEmpty()) {
+        inNext = index + 1;
+        return rings[index];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks if there are received words left to read.
+   *
+   * @return are words pending?
+   */
+  private boolean hasReceived() {
+    if (inRemaining > 0) {
+      return true;
+    }
+    for (SenderRing in : inRings) {
+      if (!in.ring.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the ring of a sending port, adding one to {@link #inRings} if it has none yet. Rings of
+   * ports that left the segment are dropped once drained.
+   *
+   * @param sender sending port
+   * @return ring of port
+   */
+  private SenderRing ring(NetworkPort sender) {
+    for (SenderRing in : inRings) {
+      if (in.sender == sender) {
+        return in;
+      }
+    }
+
+    synchronized (this) {
+      // might have been added while waiting for the lock
+      SenderRing[] rings = inRings;
+      for (SenderRing in : rings) {
+        if (in.sender == sender) {
+          return in;
+        }
+      }
+
+      NetworkPort[] attached = segment.getPorts();
+      SenderRing[] kept = new SenderRing[rings.length + 1];
+      int count = 0;
+      for (SenderRing in : rings) {
+        if (!in.ring.isEmpty() || Arrays.asList(attached).contains(in.sender)) {
+          kept[count++] = in;
+        }
+      }
+      SenderRing newRing = new SenderRing(sender);
+      kept[count++] = newRing;
+      inRings = Arrays.copyOf(kept, count);
+      return newRing;
+    }
+  }
+
+  /**
+   * Returns whether the device is in packet mode.
+   *
+   * @return is packet mode enabled?
+   */
+  public boolean isPacketMode() {
+    return (control & CTRL_PACKET) != 0;
+  }
+
+  /**
+   * Returns whether the device can be stepped concurrently: not in packet mode, where it copies
+   * packets to and from memory and drops processor cache lines and buffers.
+   *
+   * @return can the device be stepped concurrently?
+   */
+  @Override
+  public boolean isParallelSafe() {
+    return !isPacketMode();
+  }
+
+  /**
+   * Dequeues a word from the receive buffers, reading the rest of the frame being read before
+   * taking the next one.
+   *
+   * @return oldest word of frame being read, 0 if the buffers are empty
+   */
+  private int pollWord() {
+    if (inRemaining == 0) {
+      inCurrent = nextFrame();
+      if (inCurrent == null) {
+        return 0;
+      }
+      inRemaining = inCurrent.frameWords();
+    }
+
+    inRemaining--;
+    return inCurrent.poll();
+  }
+
+  /**
+   * Assembles a header field of a frame from the low bytes of its 4 words.
+   *
+   * @param frame array holding frame words
+   * @param index index of field (0 source, 1 destination, 2 length)
+   * @return field value
+   */
+  private static int headerField(int[] frame, int index) {
+    int field = 0;
+    for (int i = 0; i < 4; i++) {
+      field |= (frame[4 * index + i] & 0xff) << (8 * i);
+    }
+    return field;
+  }
+
+  /**
+   * Receives a frame from the switch, unless it's meant for another device or the receive buffer of
+   * its sending port has no room for it. Called by the thread of the sending simulation (or link).
+   *
+   * @param from port that sent the frame
+   * @param frame array holding frame words
+   * @param length number of words in frame
+   * @param source source address of frame
+   * @param destination destination address of frame
+   * @return was the frame accepted?
+   */
+  @Override
+  public boolean receive(NetworkPort from, int[] frame, int length, int source,
+          int destination) {
+    // hardware address filter
+    if (destination != address && destination != NetworkSwitch.BROADCAST) {
+      framesFiltered.incrementAndGet();
+      return false;
+    }
+
+    // length should match header, frames are taken whole in packet mode
+    if (length < HEADER_WORDS || length != HEADER_WORDS + 4 * headerField(frame, 2)
+            || length > HEADER_WORDS + 4 * MAX_PAYLOAD) {
+      framesMalformed.incrementAndGet();
+      return false;
+    }
+
+    // queue whole frame, or none of it
+    if (!ring(from).offer(frame, length)) {
+      framesDropped.incrementAndGet();
+      return false;
+    }
+    framesReceived.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Returns network statistics of this device and its segment.
+   *
+   * @return statistics string
+   */
+  @Override
+  public String toString() {
+    return String.format("network device (address %d, %s mode): frames sent: %d, malformed: %d, "
+            + "received: %d, filtered: %d, dropped: %d, packets sent: %d, packets received: %d, "
+            + "DMA cycles: %d, segment devices: %d, learned addresses: %d", address,
+            isPacketMode() ? "packet" : "word", framesSent, framesMalformed.get(),
+            framesReceived.get(), framesFiltered.get(), framesDropped.get(), packetsSent,
+            packetsReceived, dmaCycles, segment.getPortCount(), segment.getLearnedCount());
   }
 
   /**
@@ -108,13 +1097,19 @@ public class NetworkDevice extends IoDevice {
    * <li>RX</li>
    * <li>RXRDY</li>
    * <li>ADDR</li>
+   * <li>CTRL</li>
+   * <li>TXRING</li>
+   * <li>RXRING</li>
+   * <li>RINGLEN</li>
+   * <li>TXKICK (transmit ring head)</li>
+   * <li>STATUS</li>
+   * <li>RXHEAD</li>
    * </ol>
    *
    * @param index index of port
    * @return value port should return
    */
   @Override
-  @SuppressWarnings("null")
   public int getPort(int index) {
     switch (index) {
       case 0 -> {
@@ -126,18 +1121,48 @@ public class NetworkDevice extends IoDevice {
         return 1;
       }
       case 2 -> {
-        // rx
-        Integer dat = inBuf.poll();
-        return dat == null ? 0 : dat;
+        // rx, inactive in packet mode
+        return isPacketMode() ? 0 : pollWord();
       }
       case 3 -> {
         // rx ready (full)
-        return inBuf.peek() == null ? 0 : 1;
+        return isPacketMode() || !hasReceived() ? 0 : 1;
       }
       case 4 -> {
         // address
         return address;
       }
+      case 5 -> {
+        // control
+        return control;
+      }
+      case 6 -> {
+        // transmit ring
+        return txRing;
+      }
+      case 7 -> {
+        // receive ring
+        return rxRing;
+      }
+      case 8 -> {
+        // ring length
+        return ringLength;
+      }
+      case 9 -> {
+        // transmit ring head
+        return txHead;
+      }
+      case 10 -> {
+        // status
+        if (!isPacketMode()) {
+          return 0;
+        }
+        return status | (hasReceived() ? STATUS_RXWAIT : 0);
+      }
+      case 11 -> {
+        // receive ring head
+        return rxHead;
+      }
     }
 
     return 0;
@@ -151,17 +1176,26 @@ public class NetworkDevice extends IoDevice {
    * <li>RX</li>
    * <li>RXRDY</li>
    * <li>ADDR</li>
+   * <li>CTRL</li>
+   * <li>TXRING</li>
+   * <li>RXRING</li>
+   * <li>RINGLEN</li>
+   * <li>TXKICK</li>
+   * <li>STATUS</li>
+   * <li>RXHEAD</li>
    * </ol>
    *
-   * @param index not significant
-   * @param data not significant
+   * @param index index of port
+   * @param data data to set port to
    */
   @Override
   public void setPort(int index, int data) {
     switch (index) {
       case 0 -> {
-        // tx
-        send(data);
+        // tx, inactive in packet mode
+        if (!isPacketMode()) {
+          send(data);
+        }
       }
       case 1 -> {
         // shouldn't set tx ready
@@ -175,6 +1209,41 @@ public class NetworkDevice extends IoDevice {
       case 4 -> {
         // shouldn't set address
       }
+      case 5 -> {
+        // control
+        setControl(data);
+      }
+      case 6 -> {
+        // transmit ring
+        txRing = data;
+      }
+      case 7 -> {
+        // receive ring
+        rxRing = data;
+      }
+      case 8 -> {
+        // ring length, heads wrap to new length, out of range lengths are ignored
+        if (data < 1 || data > MAX_RING) {
+          status |= STATUS_ERR;
+          return;
+        }
+        ringLength = data;
+        txHead %= ringLength;
+        rxHead %= ringLength;
+      }
+      case 9 -> {
+        // transmit kick, descriptors are sent as the device is stepped
+        if (isPacketMode()) {
+          txKicked = true;
+        }
+      }
+      case 10 -> {
+        // clear status bits written as 1
+        status &= ~data;
+      }
+      case 11 -> {
+        // shouldn't set receive ring head
+      }
     }
   }
 }
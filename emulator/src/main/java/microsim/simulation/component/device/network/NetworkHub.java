@@ -0,0 +1,492 @@
+package microsim.simulation.component.device.network;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Network hub process, that bridges the network segments of simulations running in different
+ * processes on the same host. Each process connects its
+ * {@link microsim.simulation.component.device.network.NetworkSwitch} to the hub through a
+ * {@link microsim.simulation.component.device.network.HubLink}, over a Unix domain socket. The hub
+ * is itself a learning switch between links: frames to an address learned from a link are sent to
+ * that link only, broadcast and unknown frames to all other links. Usage is:
+ * <pre>
+ * java -cp micro-sim-app.jar microsim.simulation.component.device.network.NetworkHub &lt;socket&gt;
+ * </pre>
+ * Emulators then join with the -nh &lt;socket&gt; argument.
+ * <p>
+ * On the socket, a link first sends {@link #MAGIC}, and the hub answers with {@link #MAGIC} and
+ * the first address of the block the link's switch hands addresses out from. Blocks are
+ * {@link microsim.simulation.component.device.network.NetworkSwitch#ADDR_POOL_SIZE} addresses
+ * wide, and never handed out twice. Frames are only forwarded to a link once the hub's answer was
+ * written, so that it never sees a batch first. Then both sides send batches: a length in bytes,
+ * then frame records of word count, source address, destination address and words. All values are
+ * 32 bit.
+ * <p>
+ * The hub runs on a single thread, waiting on all sockets at once. Frames received together are
+ * sent on together, in a batch per link. Frames to a link that can't keep up are dropped once its
+ * send buffer is full.
+ */
+public class NetworkHub {
+
+  /**
+   * Handshake word, "mnet".
+   */
+  public static final int MAGIC = 0x6d6e6574;
+
+  /**
+   * Maximum number of words in a frame.
+   */
+  static final int MAX_FRAME_WORDS = NetworkDevice.HEADER_WORDS + 4 * NetworkDevice.MAX_PAYLOAD;
+
+  /**
+   * Maximum size of a batch, in bytes, past its length field.
+   */
+  static final int MAX_BATCH = HubLink.BATCH_CAPACITY - Integer.BYTES;
+
+  /**
+   * Capacity of the send buffer of each link, in bytes.
+   */
+  private static final int SEND_CAPACITY = 4 * HubLink.BATCH_CAPACITY;
+
+  /**
+   * Returns size of a frame record.
+   *
+   * @param words number of words in frame
+   * @return size of record, in bytes
+   */
+  static int recordSize(int words) {
+    return (3 + words) * Integer.BYTES;
+  }
+
+  /**
+   * Link of a process connected to the hub.
+   */
+  private static class Link {
+
+    /**
+     * Socket connected to the process.
+     */
+    final SocketChannel channel;
+
+    /**
+     * First address of the block handed out to the link.
+     */
+    final int base;
+
+    /**
+     * Did the link send its handshake?
+     */
+    boolean greeted = false;
+
+    /**
+     * Was the link registered for forwarding, once the answer to its handshake was written?
+     */
+    boolean registered = false;
+
+    /**
+     * Bytes received and not parsed yet.
+     */
+    final ByteBuffer in = ByteBuffer.allocateDirect(Integer.BYTES + MAX_BATCH);
+
+    /**
+     * Bytes to send.
+     */
+    final ByteBuffer out = ByteBuffer.allocateDirect(SEND_CAPACITY);
+
+    /**
+     * Position of the length field of the batch being filled in {@link #out}, -1 if none is.
+     */
+    int batchStart = -1;
+
+    /**
+     * Number of frames received from the link.
+     */
+    long framesIn = 0;
+
+    /**
+     * Number of frames sent to the link.
+     */
+    long framesOut = 0;
+
+    /**
+     * Number of frames to the link dropped, as its send buffer was full.
+     */
+    long framesDropped = 0;
+
+    /**
+     * Instantiates link.
+     *
+     * @param channel socket connected to the process
+     * @param base first address of block handed out to the link
+     */
+    Link(SocketChannel channel, int base) {
+      this.channel = channel;
+      this.base = base;
+    }
+  }
+
+  /**
+   * Path of hub socket.
+   */
+  private final Path socket;
+
+  /**
+   * Selector waiting on all sockets.
+   */
+  private final Selector selector;
+
+  /**
+   * Socket accepting links.
+   */
+  private final ServerSocketChannel server;
+
+  /**
+   * Connected links, registered for forwarding.
+   */
+  private final List<Link> links = new ArrayList<>();
+
+  /**
+   * Learned link of each source address.
+   */
+  private final Map<Integer, Link> table = new HashMap<>();
+
+  /**
+   * Number of address blocks handed out.
+   */
+  private int blocks = 0;
+
+  /**
+   * Is the hub running?
+   */
+  private volatile boolean running = true;
+
+  /**
+   * Instantiates hub, listening on a socket. A stale socket file is replaced.
+   *
+   * @param socket path of hub socket
+   * @throws IOException if the socket can't be bound
+   */
+  public NetworkHub(Path socket) throws IOException {
+    this.socket = socket;
+    Files.deleteIfExists(socket);
+
+    selector = Selector.open();
+    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socket));
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  /**
+   * Runs the hub, until closed. Then closes all sockets, and deletes the socket file.
+   *
+   * @throws IOException if waiting on sockets fails
+   */
+  public void run() throws IOException {
+    try {
+      loop();
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        try {
+          key.channel().close();
+        } catch (IOException e) {
+          // closing anyway
+        }
+      }
+      selector.close();
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  /**
+   * Closes the hub, making {@link #run()} return.
+   */
+  public void close() {
+    running = false;
+    selector.wakeup();
+  }
+
+  /**
+   * Waits on all sockets and serves them, until the hub is closed.
+   *
+   * @throws IOException if waiting on sockets fails
+   */
+  private void loop() throws IOException {
+    while (running) {
+      selector.select();
+
+      for (SelectionKey key : selector.selectedKeys()) {
+        if (!key.isValid()) {
+          continue;
+        }
+
+        if (key.isAcceptable()) {
+          accept();
+          continue;
+        }
+
+        Link link = (Link) key.attachment();
+        try {
+          if (key.isReadable()) {
+            read(link);
+          }
+          if (key.isValid() && key.isWritable()) {
+            write(link);
+          }
+        } catch (IOException e) {
+          disconnect(link);
+        }
+      }
+      selector.selectedKeys().clear();
+
+      // send batches filled this round
+      for (Link link : new ArrayList<>(links)) {
+        try {
+          write(link);
+        } catch (IOException e) {
+          disconnect(link);
+        }
+      }
+    }
+  }
+
+  /**
+   * Accepts a new link, handing out its address block.
+   *
+   * @throws IOException if accepting fails
+   */
+  private void accept() throws IOException {
+    SocketChannel channel = server.accept();
+    if (channel == null) {
+      return;
+    }
+
+    Link link = new Link(channel, 1 + blocks++ * NetworkSwitch.ADDR_POOL_SIZE);
+    channel.configureBlocking(false);
+    channel.register(selector, SelectionKey.OP_READ, link);
+    System.out.println("Link connected, addresses from " + link.base);
+  }
+
+  /**
+   * Disconnects a link, forgetting addresses learned from it.
+   *
+   * @param link link to disconnect
+   */
+  private void disconnect(Link link) {
+    links.remove(link);
+    table.values().removeIf(l -> l == link);
+    try {
+      link.channel.close();
+    } catch (IOException e) {
+      // closing anyway
+    }
+    System.out.println("Link disconnected, addresses from " + link.base + ": frames in: "
+            + link.framesIn + ", frames out: " + link.framesOut + ", dropped: "
+            + link.framesDropped);
+  }
+
+  /**
+   * Reads from a link, handling its handshake and forwarding frames of complete batches.
+   *
+   * @param link link to read from
+   * @throws IOException if reading fails, the link closed or sent malformed data
+   */
+  private void read(Link link) throws IOException {
+    if (link.channel.read(link.in) < 0) {
+      throw new IOException("Link closed");
+    }
+    link.in.flip();
+
+    // handshake
+    if (!link.greeted) {
+      if (link.in.remaining() < Integer.BYTES) {
+        link.in.compact();
+        return;
+      }
+      if (link.in.getInt() != MAGIC) {
+        throw new IOException("Link sent invalid handshake");
+      }
+      link.out.putInt(MAGIC).putInt(link.base);
+      link.greeted = true;
+      write(link);
+    }
+
+    // complete batches
+    while (link.in.remaining() >= Integer.BYTES) {
+      int size = link.in.getInt(link.in.position());
+      if (size < 0 || size > MAX_BATCH) {
+        throw new IOException("Link sent invalid batch size " + size);
+      }
+      if (link.in.remaining() < Integer.BYTES + size) {
+        break;
+      }
+
+      link.in.position(link.in.position() + Integer.BYTES);
+      int end = link.in.position() + size;
+      while (link.in.position() < end) {
+        int start = link.in.position();
+        if (end - start < recordSize(0)) {
+          throw new IOException("Link sent truncated frame record");
+        }
+        int words = link.in.getInt();
+        int source = link.in.getInt();
+        int destination = link.in.getInt();
+        if (words < 0 || words > MAX_FRAME_WORDS || start + recordSize(words) > end) {
+          throw new IOException("Link sent invalid frame length " + words);
+        }
+        link.in.position(start + recordSize(words));
+
+        link.framesIn++;
+        forward(link, start, recordSize(words), source, destination);
+      }
+    }
+    link.in.compact();
+  }
+
+  /**
+   * Forwards a frame record from a link. Learns the source address, then sends to the learned link
+   * of the destination address, or to all other links if it's broadcast or unknown.
+   *
+   * @param from sending link
+   * @param start position of record in the receive buffer of the sending link
+   * @param size size of record, in bytes
+   * @param source source address of frame
+   * @param destination destination address of frame
+   */
+  private void forward(Link from, int start, int size, int source, int destination) {
+    table.put(source, from);
+
+    if (destination != NetworkSwitch.BROADCAST) {
+      Link to = table.get(destination);
+      if (to != null) {
+        if (to != from) {
+          append(to, from.in, start, size);
+        }
+        return;
+      }
+    }
+
+    for (Link to : links) {
+      if (to != from) {
+        append(to, from.in, start, size);
+      }
+    }
+  }
+
+  /**
+   * Appends a frame record to the batch being filled for a link, dropping it if the send buffer of
+   * the link is full.
+   *
+   * @param to link to send to
+   * @param record buffer holding record
+   * @param start position of record
+   * @param size size of record, in bytes
+   */
+  private void append(Link to, ByteBuffer record, int start, int size) {
+    // close batch if record doesn't fit
+    if (to.batchStart >= 0
+            && to.out.position() - to.batchStart - Integer.BYTES + size > MAX_BATCH) {
+      closeBatch(to);
+    }
+
+    int needed = size + (to.batchStart < 0 ? Integer.BYTES : 0);
+    if (to.out.remaining() < needed) {
+      to.framesDropped++;
+      return;
+    }
+
+    // open batch if needed
+    if (to.batchStart < 0) {
+      to.batchStart = to.out.position();
+      to.out.putInt(0);
+    }
+
+    to.out.put(to.out.position(), record, start, size);
+    to.out.position(to.out.position() + size);
+    to.framesOut++;
+  }
+
+  /**
+   * Closes the batch being filled for a link, writing its length field.
+   *
+   * @param link link to close batch of
+   */
+  private void closeBatch(Link link) {
+    link.out.putInt(link.batchStart, link.out.position() - link.batchStart - Integer.BYTES);
+    link.batchStart = -1;
+  }
+
+  /**
+   * Sends as much as possible of what is queued for a link, closing its batch first. Waits to be
+   * writable again if not all of it could be sent. Registers a greeted link for forwarding once
+   * the answer to its handshake was all sent.
+   *
+   * @param link link to send to
+   * @throws IOException if writing fails
+   */
+  private void write(Link link) throws IOException {
+    if (link.batchStart >= 0) {
+      closeBatch(link);
+    }
+    if (link.out.position() == 0) {
+      return;
+    }
+
+    link.out.flip();
+    link.channel.write(link.out);
+    link.out.compact();
+
+    // handshake answered, frames can follow
+    if (!link.registered && link.out.position() == 0) {
+      link.registered = true;
+      links.add(link);
+    }
+
+    SelectionKey key = link.channel.keyFor(selector);
+    key.interestOps(link.out.position() > 0
+            ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+            : SelectionKey.OP_READ);
+  }
+
+  /**
+   * Hub entry point. Listens on the given socket, forever.
+   *
+   * @param args hub arguments, the socket path
+   */
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      System.err.println("Usage: NetworkHub <socket>");
+      System.exit(1);
+    }
+
+    try {
+      NetworkHub hub = new NetworkHub(Path.of(args[0]));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          Files.deleteIfExists(hub.socket);
+        } catch (IOException e) {
+          // exiting anyway
+        }
+      }));
+
+      System.out.println("Network hub listening on " + args[0]);
+      hub.run();
+    } catch (IOException e) {
+      System.err.println("Network hub failed. " + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
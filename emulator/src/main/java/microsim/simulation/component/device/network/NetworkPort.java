@@ -0,0 +1,37 @@
+package microsim.simulation.component.device.network;
+
+/**
+ * Port of a {@link microsim.simulation.component.device.network.NetworkSwitch}, that frames are
+ * delivered to. Ports are network devices, or links bridging the switch to other segments.
+ * <p>
+ * Frames sent by a port are forwarded by one thread at a time, each send ordered after the
+ * previous one: receivers may keep a single-producer queue per sending port.
+ */
+public interface NetworkPort {
+
+  /**
+   * Address of ports that weren't assigned one, as they carry frames of many addresses (links).
+   */
+  int NO_ADDRESS = 0;
+
+  /**
+   * Returns the address the switch assigned to this port. Switches learn it as the source of the
+   * frames the port sends, whatever their source field says.
+   *
+   * @return assigned address, or {@link #NO_ADDRESS} if the port carries frames of many addresses
+   */
+  int getAddress();
+
+  /**
+   * Receives a frame from the switch. Called by whichever thread forwards the frame, possibly by
+   * many threads at once.
+   *
+   * @param from port that sent the frame
+   * @param frame array holding frame words, only valid for the duration of the call
+   * @param length number of words in frame
+   * @param source source address of frame
+   * @param destination destination address of frame
+   * @return was the frame accepted?
+   */
+  boolean receive(NetworkPort from, int[] frame, int length, int source, int destination);
+}
@@ -0,0 +1,353 @@
+package microsim.simulation.component.device.network;
+
+import java.util.Arrays;
+
+/**
+ * Implements a learning switch, that forwards frames between the ports attached to it (a network
+ * segment): {@link microsim.simulation.component.device.network.NetworkDevice} devices, and links
+ * to other segments such as {@link microsim.simulation.component.device.network.HubLink}. The
+ * switch learns which port each source address sends from, taking the address it assigned to the
+ * sending port over the source field the guest wrote, so that a device can't claim the address of
+ * another one (only links, that carry many addresses, are trusted with the source field). Frames
+ * to a learned address are
+ * delivered to that port only, frames to {@link #BROADCAST} are delivered to all other ports, and
+ * frames to unknown addresses are flooded (and filtered by receiving devices). Frames are
+ * forwarded inline by the sending thread, no switch thread is needed. Learned addresses are kept
+ * as primitive ints in tables that are replaced as a whole, as addresses seldom move: forwarding
+ * never locks, boxes nor allocates.
+ * <p>
+ * Each switch hands out addresses to its devices from a pool of its own, so separate segments
+ * (say, simulations in different tests) never see each other's traffic. Segments bridged together
+ * should draw addresses from disjoint blocks (see {@link #setAddressBase(int)}).
+ */
+public class NetworkSwitch {
+
+  /**
+   * Table of learned ports, keyed by address, with open addressing. Never changed once published:
+   * learning or forgetting addresses builds a new table.
+   */
+  private static class AddressTable {
+
+    /**
+     * Initial capacity in bits.
+     */
+    static final int INITIAL_SHIFT = 4;
+
+    /**
+     * Capacity in bits.
+     */
+    private final int shift;
+
+    /**
+     * Addresses of slots.
+     */
+    private final int[] addresses;
+
+    /**
+     * Ports of slots. Slots with a null port are free.
+     */
+    private final NetworkPort[] ports;
+
+    /**
+     * Number of used slots.
+     */
+    private int size = 0;
+
+    /**
+     * Instantiates an empty table.
+     *
+     * @param shift capacity in bits
+     */
+    AddressTable(int shift) {
+      this.shift = shift;
+      addresses = new int[1 << shift];
+      ports = new NetworkPort[1 << shift];
+    }
+
+    /**
+     * Returns the home slot of an address. Addresses are mixed by a multiplicative hash and the
+     * high bits are kept.
+     *
+     * @param address address to hash
+     * @return slot index
+     */
+    private int slotOf(int address) {
+      return (address * 0x9e3779b9) >>> (32 - shift);
+    }
+
+    /**
+     * Puts an entry in a free slot, while the table is being built.
+     *
+     * @param address address of entry
+     * @param port port of entry
+     */
+    private void insert(int address, NetworkPort port) {
+      int mask = ports.length - 1;
+      int slot = slotOf(address);
+      while (ports[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+
+      addresses[slot] = address;
+      ports[slot] = port;
+      size++;
+    }
+
+    /**
+     * Returns the learned port of an address.
+     *
+     * @param address address to look up
+     * @return learned port, or null if the address is unknown
+     */
+    NetworkPort get(int address) {
+      int mask = ports.length - 1;
+      int slot = slotOf(address);
+      NetworkPort port;
+      while ((port = ports[slot]) != null) {
+        if (addresses[slot] == address) {
+          return port;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    /**
+     * Returns a copy of the table with an address learned on a port, grown as needed to stay at
+     * most half full.
+     *
+     * @param address learned address
+     * @param port port the address was learned on
+     * @return new table
+     */
+    AddressTable with(int address, NetworkPort port) {
+      AddressTable table = new AddressTable((size + 1) * 2 > ports.length ? shift + 1 : shift);
+      for (int i = 0; i < ports.length; i++) {
+        if (ports[i] != null && addresses[i] != address) {
+          table.insert(addresses[i], ports[i]);
+        }
+      }
+      table.insert(address, port);
+      return table;
+    }
+
+    /**
+     * Returns a copy of the table without the addresses learned on a port.
+     *
+     * @param port port to forget
+     * @return new table
+     */
+    AddressTable without(NetworkPort port) {
+      AddressTable table = new AddressTable(shift);
+      for (int i = 0; i < ports.length; i++) {
+        if (ports[i] != null && ports[i] != port) {
+          table.insert(addresses[i], ports[i]);
+        }
+      }
+      return table;
+    }
+
+    /**
+     * Returns number of learned addresses.
+     *
+     * @return learned addresses
+     */
+    int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Destination address of frames delivered to all devices.
+   */
+  public static final int BROADCAST = 0xffffffff;
+
+  /**
+   * Size of assigned address pool.
+   */
+  public static final int ADDR_POOL_SIZE = 100;
+
+  /**
+   * Random pool of addresses to select from.
+   */
+  private final int[] addressPool = new int[ADDR_POOL_SIZE];
+
+  /**
+   * First address of the pool block.
+   */
+  private int addressBase = 1;
+
+  /**
+   * Number of addresses handed out from {@link #addressPool}.
+   */
+  private int assigned = 0;
+
+  /**
+   * Ports attached to the switch. Replaced as a whole when ports attach or detach.
+   */
+  private volatile NetworkPort[] ports = new NetworkPort[0];
+
+  /**
+   * Learned port of each source address. Replaced as a whole when addresses are learned or
+   * forgotten.
+   */
+  private volatile AddressTable table = new AddressTable(AddressTable.INITIAL_SHIFT);
+
+  /**
+   * Instantiates switch with no attached ports, handing out addresses 1 to
+   * {@link #ADDR_POOL_SIZE}.
+   */
+  public NetworkSwitch() {
+    fillAddressPool();
+  }
+
+  /**
+   * Moves the address pool to the block starting at the given address. Should be called before any
+   * address is handed out.
+   *
+   * @param base first address of block
+   */
+  public synchronized void setAddressBase(int base) {
+    if (assigned > 0) {
+      throw new RuntimeException("Network segment already handed out addresses");
+    }
+    if (base <= 0 || base > Integer.MAX_VALUE - ADDR_POOL_SIZE) {
+      throw new RuntimeException("Invalid address block base " + base);
+    }
+
+    addressBase = base;
+    fillAddressPool();
+  }
+
+  /**
+   * Fills the address pool with the integers of its block, in random order.
+   */
+  private void fillAddressPool() {
+    // initialize address pool with integers of block
+    for (int i = 0; i < ADDR_POOL_SIZE; i++) {
+      addressPool[i] = addressBase + i;
+    }
+
+    // shuffle
+    for (int src = 0; src < ADDR_POOL_SIZE; src++) {
+      int dest = (int) (ADDR_POOL_SIZE * Math.random());
+      int temp = addressPool[dest];
+      addressPool[dest] = addressPool[src];
+      addressPool[src] = temp;
+    }
+  }
+
+  /**
+   * Hands out an address from the pool. Addresses aren't handed out again.
+   *
+   * @return address
+   */
+  synchronized int nextAddress() {
+    if (assigned == ADDR_POOL_SIZE) {
+      throw new RuntimeException("Network segment is full, at most " + ADDR_POOL_SIZE
+              + " devices can be attached");
+    }
+
+    return addressPool[assigned++];
+  }
+
+  /**
+   * Attaches a port to the switch.
+   *
+   * @param port port to attach
+   */
+  public synchronized void attach(NetworkPort port) {
+    NetworkPort[] newPorts = Arrays.copyOf(ports, ports.length + 1);
+    newPorts[ports.length] = port;
+    ports = newPorts;
+  }
+
+  /**
+   * Detaches a port from the switch, forgetting addresses learned from it.
+   *
+   * @param port port to detach
+   */
+  public synchronized void detach(NetworkPort port) {
+    ports = Arrays.stream(ports).filter(p -> p != port).toArray(NetworkPort[]::new);
+    table = table.without(port);
+  }
+
+  /**
+   * Learns the port a source address sends from.
+   *
+   * @param source source address
+   * @param port sending port
+   */
+  private synchronized void learn(int source, NetworkPort port) {
+    table = table.with(source, port);
+  }
+
+  /**
+   * Returns ports attached to the switch.
+   *
+   * @return attached ports
+   */
+  public NetworkPort[] getPorts() {
+    return ports.clone();
+  }
+
+  /**
+   * Forwards a frame from a port. Learns the source address, then delivers to the learned port of
+   * the destination address, or to all other ports if it's broadcast or unknown. The source is the
+   * address assigned to the sending port, or the given one if the port has none.
+   *
+   * @param from sending port
+   * @param frame array holding frame words
+   * @param length number of words in frame
+   * @param source source address of frame, as given by its header
+   * @param destination destination address of frame
+   * @return number of ports that accepted the frame
+   */
+  public int forward(NetworkPort from, int[] frame, int length, int source, int destination) {
+    // trust the address assigned to the port over the header
+    int assigned = from.getAddress();
+    if (assigned != NetworkPort.NO_ADDRESS) {
+      source = assigned;
+    }
+
+    // learn source, only written when it moves
+    if (table.get(source) != from) {
+      learn(source, from);
+    }
+
+    // unicast to learned port
+    if (destination != BROADCAST) {
+      NetworkPort to = table.get(destination);
+      if (to != null) {
+        return to != from && to.receive(from, frame, length, source, destination) ? 1 : 0;
+      }
+    }
+
+    // broadcast, or flood unknown destination
+    int receivers = 0;
+    for (NetworkPort to : ports) {
+      if (to != from && to.receive(from, frame, length, source, destination)) {
+        receivers++;
+      }
+    }
+    return receivers;
+  }
+
+  /**
+   * Returns number of attached ports.
+   *
+   * @return attached ports
+   */
+  public int getPortCount() {
+    return ports.length;
+  }
+
+  /**
+   * Returns number of learned addresses.
+   *
+   * @return learned addresses
+   */
+  public int getLearnedCount() {
+    return table.size();
+  }
+}
@@ -1,5 +1,6 @@
 package microsim.simulation.component.device.timer;
 
+import java.util.concurrent.atomic.AtomicLongArray;
 import microsim.simulation.Simulation;
 import microsim.simulation.component.bus.*;
 import microsim.simulation.component.device.ThreadedIoDevice;
@@ -15,7 +16,14 @@ import microsim.simulation.component.device.ThreadedIoDevice;
  * <li>Timer 2 configuration;</li>
  * </ul>
  * Timer configuration is done with a control word where the most significant bit is a periodic
- * flag, and the rest of the word is the max value of the counter.
+ * flag, and the rest of the word is the max value of the counter, in units of the channel
+ * resolution (see {@link #setResolution(long)}).
+ * <p>
+ * The timer is tickless: arming a channel computes its expiry deadline, and the device thread
+ * sleeps until the earliest deadline of armed channels, or until a channel is armed if none is.
+ * Each channel state is a single atomic word (a deadline, {@link #TICKED} or {@link #DISARMED}),
+ * so ticks are set and taken without locks. In virtual time, channels are ticked inline by the
+ * simulation thread instead, at the cycle their deadline falls on.
  */
 public class TimerDevice extends ThreadedIoDevice {
 
@@ -25,51 +33,56 @@ public class TimerDevice extends ThreadedIoDevice {
   public static final int NUM_CHANNELS = 3;
 
   /**
-   * Frequency of timer clock.
+   * Default frequency of timer clock.
    */
   public static final int MASTER_FREQ = 1000; // in hz
 
   /**
-   * Period of timer clock.
+   * Default period of timer clock, that is the default channel resolution.
    */
   public static final long MASTER_TIME = 1_000_000_000 / MASTER_FREQ; // in ns
 
   /**
-   * Represents state of a timer channel.
+   * Minimum channel resolution.
    */
-  private class TimerInfo {
+  public static final long MIN_RESOLUTION = 1_000; // in ns
 
-    /**
-     * Default constructor.
-     */
-    public TimerInfo() {
-    }
+  /**
+   * Channel state of channels that aren't counting.
+   */
+  private static final long DISARMED = Long.MAX_VALUE;
 
-    /**
-     * Signals if the timer has ticked.
-     */
-    private boolean ticked = false;
-
-    /**
-     * Current timer counter.
-     */
-    private int counter = 0;
-
-    /**
-     * Max value of counter.
-     */
-    private int max = 0;
-
-    /**
-     * Should the timer be periodic?
-     */
-    private boolean periodic = false;
-  }
+  /**
+   * Channel state of channels that reached their max value and weren't read since.
+   */
+  private static final long TICKED = -1;
+
+  /**
+   * State of each channel: deadline of armed channels, in device time (see {@link #now()}), or
+   * {@link #TICKED} or {@link #DISARMED}.
+   */
+  private final AtomicLongArray states = new AtomicLongArray(NUM_CHANNELS);
+
+  /**
+   * Max value of each channel counter. Only used by the simulation thread.
+   */
+  private final int[] max = new int[NUM_CHANNELS];
+
+  /**
+   * Is each channel periodic? Only used by the simulation thread.
+   */
+  private final boolean[] periodic = new boolean[NUM_CHANNELS];
+
+  /**
+   * Channel resolution, that is the period of a counter unit, in nanoseconds.
+   */
+  private volatile long resolution = MASTER_TIME;
 
   /**
-   * Timer info for each channel.
+   * Deadline the device thread sleeps until, in device time. Arming a channel only wakes the thread
+   * up if it expires before this.
    */
-  private final TimerInfo[] timerInfos = new TimerInfo[NUM_CHANNELS];
+  private volatile long sleepDeadline = DISARMED;
 
   /**
    * Instantiates timer device, taking a reference to the bus it's mounted on and the base address
@@ -82,9 +95,49 @@ public class TimerDevice extends ThreadedIoDevice {
   public TimerDevice(Bus bus, int base, Simulation simulation) {
     super(bus, simulation, base, 2 * NUM_CHANNELS);
 
-    // initialize timer infos
+    // all channels start disarmed
     for (int i = 0; i < NUM_CHANNELS; i++) {
-      timerInfos[i] = new TimerInfo();
+      states.set(i, DISARMED);
+    }
+  }
+
+  /**
+   * Sets channel resolution. Applies to channels armed from now on.
+   *
+   * @param resolution period of a counter unit, in nanoseconds
+   */
+  public void setResolution(long resolution) {
+    if (resolution < MIN_RESOLUTION) {
+      throw new RuntimeException("Timer resolution must be at least " + MIN_RESOLUTION + " ns");
+    }
+    this.resolution = resolution;
+  }
+
+  /**
+   * Returns channel resolution.
+   *
+   * @return period of a counter unit, in nanoseconds
+   */
+  public long getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Arms a channel to expire after its max value, or disarms it if max value is 0. Wakes the
+   * device thread up if the channel expires before it would wake up.
+   *
+   * @param index index of channel
+   */
+  private void arm(int index) {
+    if (max[index] == 0) {
+      states.set(index, DISARMED);
+      return;
+    }
+
+    long deadline = now() + max[index] * resolution;
+    states.set(index, deadline);
+    if (deadline < sleepDeadline) {
+      wake();
     }
   }
 
@@ -101,31 +154,24 @@ public class TimerDevice extends ThreadedIoDevice {
       return 0;
     }
 
-    // get timer info
-    TimerInfo info = timerInfos[index];
-
-    // return if ticked
-    synchronized (info) {
-      if (info.ticked) {
-        // if periodic, reset counter
-        if (info.periodic) {
-          info.counter = 0;
-        }
-
-        // reset
-        info.ticked = false;
-        return 1;
+    // return if ticked, taking the tick
+    if (states.compareAndSet(index, TICKED, DISARMED)) {
+      // if periodic, count again
+      if (periodic[index]) {
+        arm(index);
       }
+
+      return 1;
     }
 
     return 0;
   }
 
   /**
-   * Sets ports (doesn't do anything for timer device).
+   * Sets timer ports, that is channel configurations. Configuring a channel (re)starts it.
    *
-   * @param index not significant
-   * @param data not significant
+   * @param index index of port
+   * @param data control word
    */
   @Override
   public void setPort(int index, int data) {
@@ -135,47 +181,90 @@ public class TimerDevice extends ThreadedIoDevice {
       return;
     }
 
-    // get timer info
-    TimerInfo info = timerInfos[index];
-
-    synchronized (info) {
-      // set up with given control word
-      info.max = data & 0x7fffffff;
-      info.periodic = (data & 0x80000000) != 0;
+    // set up with given control word
+    max[index] = data & 0x7fffffff;
+    periodic[index] = (data & 0x80000000) != 0;
 
-      // start timer
-      info.ticked = false;
-      info.counter = 0;
-    }
+    // start timer
+    arm(index);
   }
 
   /**
-   * Implements the thread that refreshes the timer.
+   * Implements the thread that ticks the timer channels. Expired channels are ticked, then the
+   * thread sleeps until the earliest deadline of armed channels. With no armed channels, it sleeps
+   * until one is armed. Deadlines are pushed back by the time the world was stopped for.
    */
   @Override
   protected void deviceThread() {
     while (running) {
-      // increment each timer
-      for (int i = 0; i < NUM_CHANNELS; i++) {
-        // get timer info
-        TimerInfo info = timerInfos[i];
-
-        // increment
-        synchronized (info) {
-          if (info.counter < info.max) {
-            info.counter++;
-
-            // if reached max, tick
-            if (info.counter == info.max) {
-
-              info.ticked = true;
-            }
-          }
-        }
+      // channels don't count while the world is stopped
+      long stopped = waitForWorld();
+      if (stopped > 0) {
+        postpone(stopped);
+      }
+
+      // sleep until earliest deadline, or until armed
+      long earliest = tick(now());
+      if (earliest == DISARMED) {
+        sleepUntilWoken();
+      } else {
+        sleepUntil(earliest);
       }
+    }
+  }
+
+  /**
+   * Ticks the channels that expired by the given time, in virtual time.
+   *
+   * @param now current device time, in nanoseconds
+   * @return earliest deadline of armed channels, Long.MAX_VALUE if none is armed
+   */
+  @Override
+  public long advance(long now) {
+    return tick(now);
+  }
 
-      // wait for master clock
-      smartSpin(MASTER_TIME);
+  /**
+   * Ticks expired channels and finds the earliest deadline of armed channels, publishing it as
+   * {@link #sleepDeadline}.
+   *
+   * @param now current device time, in nanoseconds
+   * @return earliest deadline of armed channels, {@link #DISARMED} if none is armed
+   */
+  private long tick(long now) {
+    // channels armed while scanning wake the thread up, so that they're scanned again
+    sleepDeadline = DISARMED;
+
+    long earliest = DISARMED;
+    for (int i = 0; i < NUM_CHANNELS; i++) {
+      long state = states.get(i);
+      if (state == TICKED || state == DISARMED) {
+        continue;
+      }
+
+      if (state <= now) {
+        // fails if the channel was armed again meanwhile, it's then checked on next wake up
+        states.compareAndSet(i, state, TICKED);
+      } else {
+        earliest = Math.min(earliest, state);
+      }
+    }
+
+    sleepDeadline = earliest;
+    return earliest;
+  }
+
+  /**
+   * Pushes deadlines of armed channels back.
+   *
+   * @param time time to push deadlines back by, in nanoseconds
+   */
+  private void postpone(long time) {
+    for (int i = 0; i < NUM_CHANNELS; i++) {
+      long state = states.get(i);
+      if (state != TICKED && state != DISARMED) {
+        states.compareAndSet(i, state, state + time);
+      }
     }
   }
 }
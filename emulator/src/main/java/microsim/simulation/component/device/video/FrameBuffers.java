@@ -0,0 +1,82 @@
+package microsim.simulation.component.device.video;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple buffer handing rendered frames from a
+ * {@link microsim.simulation.component.device.video.VideoDevice} to a single consumer on another
+ * thread (e.g. a window painting on the Swing thread). The producer copies each frame into a back
+ * buffer and publishes it, the consumer takes the latest published frame and owns it until it
+ * takes another one. Neither side ever waits for the other nor allocates, and the consumer never
+ * sees a frame being drawn. Frames published while the consumer doesn't take any are skipped.
+ */
+public class FrameBuffers {
+
+  /**
+   * Flag of {@link #middle} signaling a frame was published and not taken yet.
+   */
+  private static final int FRESH = 0x4;
+
+  /**
+   * Frame buffers.
+   */
+  private final BufferedImage[] buffers = new BufferedImage[3];
+
+  /**
+   * Pixels of frame buffers, in the same order as {@link #buffers}.
+   */
+  private final int[][] pixels = new int[3][];
+
+  /**
+   * Index of the buffer the producer copies to. Only used by the producer.
+   */
+  private int back = 0;
+
+  /**
+   * Index of the buffer held by the consumer. Only used by the consumer.
+   */
+  private int front = 1;
+
+  /**
+   * Index of the buffer in between, ORed with {@link #FRESH} if it holds a frame not taken yet.
+   */
+  private final AtomicInteger middle = new AtomicInteger(2);
+
+  /**
+   * Instantiates buffers for frames of the given size. Buffers start black.
+   *
+   * @param width width of frames
+   * @param height height of frames
+   */
+  public FrameBuffers(int width, int height) {
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      pixels[i] = ((DataBufferInt) buffers[i].getRaster().getDataBuffer()).getData();
+    }
+  }
+
+  /**
+   * Copies a frame to the back buffer and publishes it. Only called by the producer.
+   *
+   * @param frame pixels of frame, as many as in a buffer
+   */
+  public void publish(int[] frame) {
+    System.arraycopy(frame, 0, pixels[back], 0, pixels[back].length);
+    back = middle.getAndSet(back | FRESH) & ~FRESH;
+  }
+
+  /**
+   * Takes the latest published frame. Only called by the consumer. The frame is left untouched
+   * until the next call.
+   *
+   * @return latest frame, or the one taken last if none was published since
+   */
+  public BufferedImage take() {
+    if ((middle.get() & FRESH) != 0) {
+      front = middle.getAndSet(front) & ~FRESH;
+    }
+    return buffers[front];
+  }
+}
@@ -5,6 +5,7 @@ import microsim.simulation.component.bus.*;
 import microsim.simulation.component.memory.*;
 import microsim.simulation.event.*;
 import microsim.simulation.component.device.ThreadedIoDevice;
+import microsim.simulation.jfr.FrameRenderEvent;
 
 /**
  * Implements a video device that renders a frame buffer by reading from VRAM. Actual rendering is
@@ -32,6 +33,16 @@ public class VideoDevice extends ThreadedIoDevice {
    */
   private final VideoRenderer renderer;
 
+  /**
+   * Buffers handing rendered frames to frame event consumers.
+   */
+  private final FrameBuffers frames;
+
+  /**
+   * Device time the next frame is due at, in virtual time. Only used by the simulation thread.
+   */
+  private long nextFrame = 0;
+
   /**
    * Attaches a memory space to the owned renderer. Used to defer memory attachment after renderer
    * has been built.
@@ -64,6 +75,7 @@ public class VideoDevice extends ThreadedIoDevice {
 
     // init renderer
     renderer = new VideoRenderer();
+    frames = new FrameBuffers(renderer.getFrameWidth(), renderer.getFrameHeight());
   }
 
   /**
@@ -110,14 +122,46 @@ public class VideoDevice extends ThreadedIoDevice {
     }
   }
 
+  /**
+   * Renders a frame if one is due, in virtual time. Frames missed (as the device was woken up late)
+   * are skipped rather than rendered back to back.
+   *
+   * @param now current device time, in nanoseconds
+   * @return device time the next frame is due at, Long.MAX_VALUE once the device is stopped
+   */
+  @Override
+  public long advance(long now) {
+    if (!running) {
+      return Long.MAX_VALUE;
+    }
+
+    if (now >= nextFrame) {
+      render();
+
+      // schedule next frame, skipping missed ones
+      nextFrame += FRAME_TIME;
+      if (nextFrame <= now) {
+        nextFrame = now + FRAME_TIME;
+      }
+    }
+    return nextFrame;
+  }
+
   /**
    * Queries the video render to render a frame and signals it to interfaces. This is meant to be
    * called by the device thread, and by the debug shell to force frame renders.
    */
   public void render() {
+    FrameRenderEvent event = new FrameRenderEvent();
+    event.begin();
     renderer.render();
+    if (event.shouldCommit()) {
+      event.simulation = simulation.name;
+      event.commit();
+    }
 
-    // raise frame event to notify interfaces
-    raiseEvent(new FrameEvent(this, renderer.getFrame()));
+    // publish a copy of the frame, as the renderer keeps drawing on its own, then notify interfaces
+    frames.publish(renderer.getPixels());
+    raiseEvent(new FrameEvent(this, frames));
   }
 }
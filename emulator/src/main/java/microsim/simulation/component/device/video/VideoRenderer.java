@@ -1,6 +1,7 @@
 package microsim.simulation.component.device.video;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import javax.imageio.ImageIO;
@@ -11,6 +12,10 @@ import microsim.simulation.component.memory.*;
  * {@link microsim.simulation.component.device.video.VideoDevice} device, responsible of keeping a
  * frame buffer and rendering to it. Functions in text mode, with bitmap characters read from a file
  * and loaded into a buffered image cache. Also handles cursor drawing and blinking.
+ * <p>
+ * Rendering is incremental: only rows whose VRAM changed since the last frame, as told by the
+ * memory space's {@link microsim.simulation.component.memory.DirtyPageTracker}, and rows where the
+ * cursor changed, are painted again.
  */
 public final class VideoRenderer {
 
@@ -77,18 +82,24 @@ public final class VideoRenderer {
 
   /**
    * Reference to memory space. Used to directly access VRAM via the
-   * {@link microsim.simulation.component.memory.MemorySpace#getVRAM()} method.
+   * {@link microsim.simulation.component.memory.MemorySpace#readVRAM(int)} method.
    */
   private MemorySpace memory;
 
+  /**
+   * Consumer of the memory space's dirty pages, reset at every frame.
+   */
+  private DirtyPageTracker.Consumer dirtyPages;
+
   /**
    * Attaches a memory space to this renderer. Used to defer memory attachment after renderer has
-   * been built.
+   * been built. The whole frame is painted at the next render.
    *
    * @param memory memory to attach
    */
   public void attachMemory(MemorySpace memory) {
     this.memory = memory;
+    dirtyPages = memory.getDirtyPages().newConsumer();
   }
 
   /**
@@ -105,6 +116,20 @@ public final class VideoRenderer {
     return frame;
   }
 
+  /**
+   * Pixels of frame buffer, row by row.
+   */
+  private final int[] pixels;
+
+  /**
+   * Gets the pixels of the held frame buffer, row by row, as RGB ints.
+   *
+   * @return frame buffer pixels
+   */
+  public int[] getPixels() {
+    return pixels;
+  }
+
   /**
    * Calculates and returns frame buffer width.
    *
@@ -166,6 +191,26 @@ public final class VideoRenderer {
    */
   private static final int BLINK_TIME = 10;
 
+  /**
+   * Row the cursor was drawn at in the last frame.
+   */
+  private int drawnCursorRow = -1;
+
+  /**
+   * Column the cursor was drawn at in the last frame.
+   */
+  private int drawnCursorColumn = -1;
+
+  /**
+   * Blink state the cursor was drawn with in the last frame.
+   */
+  private boolean drawnBlink;
+
+  /**
+   * Rows to paint in the current frame.
+   */
+  private final boolean[] dirtyRows = new boolean[ROWS];
+
   /**
    * Instantiates video renderer.
    */
@@ -176,12 +221,14 @@ public final class VideoRenderer {
             getFrameHeight(),
             BufferedImage.TYPE_INT_RGB
     );
+    pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
   }
 
   /**
    * Renders frame buffer from read VRAM. Characters in VRAM are comprised of a bytes representing
    * extended ASCII code points. If the cursor coordinates are within the frame buffer, it is drawn
-   * or not depending on the current blink timer.
+   * or not depending on the current blink timer. Only rows that changed since the last frame are
+   * painted.
    */
   public void render() {
     // memory must be attached
@@ -196,16 +243,40 @@ public final class VideoRenderer {
       blink = !blink;
     }
 
-    // directly read VRAM
-    byte[] vram = memory.getVRAM();
+    // find rows whose VRAM changed, before reset so that later writes show in the next frame
+    int vramOffset = MemorySpace.VRAM_START - MemorySpace.EPROM_START;
+    for (int r = 0; r < ROWS; r++) {
+      int first = (vramOffset + r * COLS) >>> DirtyPageTracker.PAGE_SHIFT;
+      int last = (vramOffset + r * COLS + COLS - 1) >>> DirtyPageTracker.PAGE_SHIFT;
+      dirtyRows[r] = dirtyPages.isDirty(first) || dirtyPages.isDirty(last);
+    }
+    dirtyPages.reset();
+
+    // rows where the cursor moved or blinked
+    if (cursorRow != drawnCursorRow || cursorColumn != drawnCursorColumn || blink != drawnBlink) {
+      if (drawnCursorRow >= 0 && drawnCursorRow < ROWS) {
+        dirtyRows[drawnCursorRow] = true;
+      }
+      if (cursorRow >= 0 && cursorRow < ROWS) {
+        dirtyRows[cursorRow] = true;
+      }
+      drawnCursorRow = cursorRow;
+      drawnCursorColumn = cursorColumn;
+      drawnBlink = blink;
+    }
 
-    // get frame buffer Graphics and clear
     var g = frame.getGraphics();
     g.setColor(java.awt.Color.BLACK);
-    g.fillRect(0, 0, frame.getWidth(), frame.getHeight());
 
-    // step through VRAM and paint characters
+    // step through dirty rows of VRAM and paint characters
     for (int r = 0; r < ROWS; r++) {
+      if (!dirtyRows[r]) {
+        continue;
+      }
+
+      // clear row
+      g.fillRect(0, r * CHAR_HEIGHT, frame.getWidth(), CHAR_HEIGHT);
+
       for (int c = 0; c < COLS; c++) {
         int addr = r * COLS + c;
 
@@ -215,11 +286,11 @@ public final class VideoRenderer {
         if (r == cursorRow && c == cursorColumn) {
           // blink
           if (blink) {
-            ch = vram[addr];
+            ch = memory.readVRAM(addr);
           }
         } else {
           // don't blink
-          ch = vram[addr];
+          ch = memory.readVRAM(addr);
         }
 
         // get character and paint
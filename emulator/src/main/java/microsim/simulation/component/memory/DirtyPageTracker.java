@@ -0,0 +1,154 @@
+package microsim.simulation.component.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks which pages of a memory changed, for any number of independent consumers (incremental
+ * rendering, snapshots, cache invalidation...). Instead of a bitmap per consumer, each page keeps
+ * the epoch it was last written in, and each consumer keeps the epoch it last reset at: a page is
+ * dirty for a consumer if it was written in or after that epoch. Marking a write is then a single
+ * store, and doesn't depend on the number of consumers.
+ * <p>
+ * Consumers start a new epoch when they reset. Consumers that reset from a thread other than the
+ * simulation one may see a write racing with the reset as clean, so they should reset with the
+ * world stopped or tolerate it.
+ */
+public class DirtyPageTracker {
+
+  /**
+   * Size of a tracked page in bits.
+   */
+  public static final int PAGE_SHIFT = 8;
+
+  /**
+   * Size of a tracked page, in bytes.
+   */
+  public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+  /**
+   * Represents a consumer of dirty page information, with its own reset point.
+   */
+  public class Consumer {
+
+    /**
+     * Epoch started by last reset. Pages written in this epoch or later are dirty.
+     */
+    private long since = 0;
+
+    /**
+     * Instantiates a consumer. All pages start as dirty.
+     */
+    private Consumer() {
+    }
+
+    /**
+     * Checks if a page was written since last reset.
+     *
+     * @param page index of page
+     * @return is page dirty?
+     */
+    public boolean isDirty(int page) {
+      return pageEpochs[page] >= since;
+    }
+
+    /**
+     * Fills a bitmap with the pages written since last reset, bit n of word n / 64 standing for
+     * page n. Doesn't allocate.
+     *
+     * @param bitmap bitmap to fill, at least {@link #getBitmapWords()} words long
+     * @return number of dirty pages
+     */
+    public int collect(long[] bitmap) {
+      int count = 0;
+
+      for (int w = 0; w < bitmapWords; w++) {
+        long word = 0;
+        int base = w << 6;
+        int end = Math.min(64, pages - base);
+        for (int b = 0; b < end; b++) {
+          if (pageEpochs[base + b] >= since) {
+            word |= 1L << b;
+          }
+        }
+        bitmap[w] = word;
+        count += Long.bitCount(word);
+      }
+
+      return count;
+    }
+
+    /**
+     * Resets this consumer, marking all pages as clean for it. Other consumers are not affected.
+     */
+    public void reset() {
+      since = epoch.incrementAndGet();
+    }
+  }
+
+  /**
+   * Number of tracked pages.
+   */
+  private final int pages;
+
+  /**
+   * Number of words in a dirty page bitmap.
+   */
+  private final int bitmapWords;
+
+  /**
+   * Epoch each page was last written in.
+   */
+  private final long[] pageEpochs;
+
+  /**
+   * Current epoch. Pages never written are in epoch 0.
+   */
+  private final AtomicLong epoch = new AtomicLong(0);
+
+  /**
+   * Instantiates a tracker over a memory of the given size.
+   *
+   * @param size size of memory, in bytes
+   */
+  public DirtyPageTracker(int size) {
+    pages = (size + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+    bitmapWords = (pages + 63) >>> 6;
+    pageEpochs = new long[pages];
+  }
+
+  /**
+   * Marks the page holding an offset as written.
+   *
+   * @param offset offset in memory
+   */
+  public void mark(int offset) {
+    pageEpochs[offset >>> PAGE_SHIFT] = epoch.get();
+  }
+
+  /**
+   * Registers a new consumer. All pages start as dirty for it.
+   *
+   * @return new consumer
+   */
+  public Consumer newConsumer() {
+    return new Consumer();
+  }
+
+  /**
+   * Returns number of tracked pages.
+   *
+   * @return number of pages
+   */
+  public int getPages() {
+    return pages;
+  }
+
+  /**
+   * Returns number of words needed for a dirty page bitmap.
+   *
+   * @return bitmap words
+   */
+  public int getBitmapWords() {
+    return bitmapWords;
+  }
+}
@@ -0,0 +1,118 @@
+package microsim.simulation.component.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RAM backed by a memory-mapped host file. The first {@link #BASE_SIZE} bytes back the RAM region
+ * of a {@link microsim.simulation.component.memory.MemorySpace}, the rest back its extended RAM
+ * region. Host pages are only allocated by the operating system when the guest first touches them,
+ * so large sizes are cheap.
+ * <p>
+ * With a file, RAM contents persist across runs: writes land in the file as the operating system
+ * writes mapped pages back, with no explicit save step ({@link #flush()} only forces them out).
+ * Without a file, RAM is backed by a sparse temporary file that is deleted right away, and
+ * contents are lost.
+ */
+public class MappedRam {
+
+  /**
+   * Size of the RAM region, in bytes.
+   */
+  public static final int BASE_SIZE = MemorySpace.RAM_END - MemorySpace.RAM_START + 1;
+
+  /**
+   * Maximum size of mapped RAM, in bytes.
+   */
+  public static final int MAX_SIZE = BASE_SIZE + MemorySpace.MAX_XRAM_SIZE;
+
+  /**
+   * Mapped file contents.
+   */
+  private final MappedByteBuffer buffer;
+
+  /**
+   * Size of mapped RAM, in bytes.
+   */
+  private final int size;
+
+  /**
+   * Path of backing file. Null means RAM is backed by a temporary file.
+   */
+  private final Path path;
+
+  /**
+   * Maps RAM of the given size from a file, creating it if it doesn't exist. Files shorter than
+   * size are extended with zeros.
+   *
+   * @param path path of backing file, or null for a temporary file
+   * @param size size of RAM, in bytes
+   * @throws IOException if file can't be mapped
+   */
+  public MappedRam(Path path, int size) throws IOException {
+    if (size < BASE_SIZE || size > MAX_SIZE || size % MemorySpace.PAGE_SIZE != 0) {
+      throw new RuntimeException("RAM size must be a multiple of " + MemorySpace.PAGE_SIZE
+              + " bytes between " + BASE_SIZE + " and " + MAX_SIZE + " bytes");
+    }
+
+    this.size = size;
+    this.path = path;
+
+    // temporary files are unlinked as soon as the channel closes, the mapping stays valid
+    FileChannel channel;
+    if (path == null) {
+      channel = FileChannel.open(Files.createTempFile("micro-sim-ram", ".bin"),
+              StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.SPARSE,
+              StandardOpenOption.DELETE_ON_CLOSE);
+    } else {
+      channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+              StandardOpenOption.CREATE, StandardOpenOption.SPARSE);
+    }
+
+    try (channel) {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  /**
+   * Returns a little-endian view of a range of mapped RAM. Views share memory with the mapping.
+   *
+   * @param offset offset of range
+   * @param length length of range
+   * @return view of range
+   */
+  ByteBuffer slice(int offset, int length) {
+    return buffer.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Returns size of mapped RAM.
+   *
+   * @return size in bytes
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns path of backing file.
+   *
+   * @return path of backing file, or null if RAM isn't persistent
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Forces RAM contents out to the backing file.
+   */
+  public void flush() {
+    buffer.force();
+  }
+}
@@ -1,24 +1,31 @@
 package microsim.simulation.component.memory;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import microsim.simulation.Simulation;
 import microsim.simulation.component.*;
 import microsim.simulation.component.bus.*;
 import microsim.simulation.component.bus.Bus.ByteSelect;
-import microsim.simulation.event.*;
 
 /**
  * Implements a memory space as a (to outside users) contiguous array of byte locations. Memory is
- * divided in three regions:
+ * divided in three regions, plus an optional fourth:
  * <ol>
  * <li>EPROM: contains program code and data at startup.</li>
  * <li>RAM: for general access.</li>
  * <li>VRAM: gets rendered to video on
  * {@link microsim.simulation.component.device.video.VideoRenderer#render()} calls.</li>
+ * <li>Extended RAM: continues RAM from {@link #XRAM_START}, when RAM is backed by a
+ * {@link microsim.simulation.component.memory.MappedRam} larger than the RAM region.</li>
  * </ol>
  * Regions are defined by begin/end address pairs. End addresses are inclusive (0x000 to 0x0ff means
- * 0x0ff is in the region and 0x100 isn't).
+ * 0x0ff is in the region and 0x100 isn't). Regions are contiguous, and are held in off-heap pages
+ * of {@link #PAGE_SIZE} bytes. Pages that hold the same EPROM data, or that were never written, are
+ * shared between memory spaces, and are copied on first write. Extended RAM isn't paged: it lies
+ * outside the contiguous regions, and is never shared.
  */
-public class MemorySpace extends BusComponent {
+public class MemorySpace extends BusComponent implements BusResponder {
 
   /**
    * Beginning of EPROM region.
@@ -49,6 +56,16 @@ public class MemorySpace extends BusComponent {
    */
   public static final int VRAM_END = 0x0002ffff;
 
+  /**
+   * Beginning of extended RAM region. The region ends where mapped RAM does.
+   */
+  public static final int XRAM_START = 0x01000000;
+
+  /**
+   * Maximum size of extended RAM region, in bytes.
+   */
+  public static final int MAX_XRAM_SIZE = 0x40000000;
+
   /**
    * Should EPROM writes be allowed?
    */
@@ -60,19 +77,69 @@ public class MemorySpace extends BusComponent {
   public static final boolean ALLOW_VRAM_READS = true;
 
   /**
-   * Holds EPROM data.
+   * Size of memory space, in bytes. Regions are contiguous, from {@link #EPROM_START} to
+   * {@link #VRAM_END}.
+   */
+  public static final int SIZE = VRAM_END - EPROM_START + 1;
+
+  /**
+   * Size of a memory page in bits.
+   */
+  public static final int PAGE_SHIFT = 12;
+
+  /**
+   * Size of a memory page, in bytes.
+   */
+  public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+  /**
+   * Number of pages in memory space.
+   */
+  public static final int PAGES = SIZE >>> PAGE_SHIFT;
+
+  /**
+   * Holds data of all regions as off-heap, little-endian pages. Page n holds offsets (addresses
+   * minus {@link #EPROM_START}) from n * {@link #PAGE_SIZE}. Pages can be shared with other memory
+   * spaces through {@link microsim.simulation.component.memory.PagePool}. Pages are replaced with
+   * volatile writes, so that threads reading them through {@link #readVRAM(int)} and
+   * {@link #getPage(int)} see replacement pages whole. The simulation thread, that replaces them,
+   * reads them with plain loads.
+   */
+  private final AtomicReferenceArray<ByteBuffer> pages = new AtomicReferenceArray<>(PAGES);
+
+  /**
+   * Signals which pages are shared, and should be copied on first write.
+   */
+  private final boolean[] shared = new boolean[PAGES];
+
+  /**
+   * Signals that references to shared pages were dropped, see {@link #releasePages()}.
    */
-  private final byte[] eprom;
+  private boolean released;
 
   /**
-   * Holds RAM data.
+   * Tracks which pages were written, see
+   * {@link microsim.simulation.component.memory.DirtyPageTracker}.
    */
-  private final byte[] ram;
+  private final DirtyPageTracker dirtyPages = new DirtyPageTracker(SIZE);
 
   /**
-   * Holds VRAM data.
+   * Mapped RAM backing the RAM and extended RAM regions. Null means RAM is held in pages like the
+   * other regions, and there is no extended RAM.
    */
-  private final byte[] vram;
+  private MappedRam ram;
+
+  /**
+   * Extended RAM, a little-endian view of mapped RAM past the RAM region. Null means there is no
+   * extended RAM.
+   */
+  private ByteBuffer xram;
+
+  /**
+   * End of extended RAM region (exclusive). Equal to {@link #XRAM_START} if there is no extended
+   * RAM.
+   */
+  private int xramEnd = XRAM_START;
 
   /**
    * Signals that the memory space is driving the bus, and should release it at the next simulation
@@ -88,11 +155,45 @@ public class MemorySpace extends BusComponent {
    */
   public MemorySpace(Bus bus, Simulation simulation) {
     super(bus, simulation);
+    responderIndex = bus.registerResponder("memory");
 
-    // setup memory arrays
-    eprom = new byte[EPROM_END - EPROM_START + 1];
-    ram = new byte[RAM_END - RAM_START + 1];
-    vram = new byte[VRAM_END - VRAM_START + 1];
+    // all pages start as the shared zero page
+    byte[] zeroContent = new byte[PAGE_SIZE];
+    for (int i = 0; i < PAGES; i++) {
+      pages.set(i, PagePool.intern(zeroContent));
+      shared[i] = true;
+    }
+  }
+
+  /**
+   * Stops sharing a page, dropping its reference to the page pool. Pages keep their buffer, which
+   * the caller should replace.
+   *
+   * @param page index of page
+   */
+  private void unshare(int page) {
+    if (shared[page] && !released) {
+      PagePool.release(pages.getPlain(page));
+    }
+    shared[page] = false;
+  }
+
+  /**
+   * Drops references to shared pages, so the page pool can let go of pages no other memory space
+   * maps. Pages stay readable, and are still copied on first write. Called when the simulation
+   * powers off.
+   */
+  public void releasePages() {
+    if (released) {
+      return;
+    }
+
+    for (int i = 0; i < PAGES; i++) {
+      if (shared[i]) {
+        PagePool.release(pages.getPlain(i));
+      }
+    }
+    released = true;
   }
 
   /**
@@ -108,24 +209,290 @@ public class MemorySpace extends BusComponent {
       return true;
     } else if (addr >= VRAM_START && addr <= VRAM_END) {
       return true;
+    } else if (addr >= XRAM_START && addr < xramEnd) {
+      return true;
     }
 
     return false;
   }
 
   /**
-   * Loads EPROM data into memory.
+   * Checks if a transaction at the given address is addressed to this memory space.
+   *
+   * @param addr address of transaction
+   * @return is address in bounds?
+   */
+  @Override
+  public boolean respondsTo(int addr) {
+    return inBounds(addr);
+  }
+
+  /**
+   * Returns the next cycle this memory space needs to be stepped at: the next one if it's still
+   * driving the data line, waiting or in a burst.
+   *
+   * @return next cycle with pending work, or {@link Long#MAX_VALUE} if idle
+   */
+  @Override
+  public long getWakeCycle() {
+    return driving || waitRemaining > 0 || burstRemaining > 0 ? simulation.getCycle() + 1
+            : Long.MAX_VALUE;
+  }
+
+  /**
+   * Backs RAM with mapped RAM. The RAM region is replaced by the first
+   * {@link microsim.simulation.component.memory.MappedRam#BASE_SIZE} bytes, which are private to
+   * this memory space, and the rest become the extended RAM region. Should be called before the
+   * simulation begins.
+   *
+   * @param ram mapped RAM
+   */
+  public void attachRam(MappedRam ram) {
+    this.ram = ram;
+
+    // RAM region pages are views of mapped RAM
+    for (int off = 0; off < MappedRam.BASE_SIZE; off += PAGE_SIZE) {
+      int page = (RAM_START - EPROM_START + off) >>> PAGE_SHIFT;
+      unshare(page);
+      pages.set(page, ram.slice(off, PAGE_SIZE));
+    }
+    for (int off = 0; off < MappedRam.BASE_SIZE; off += DirtyPageTracker.PAGE_SIZE) {
+      dirtyPages.mark(RAM_START - EPROM_START + off);
+    }
+
+    // the rest is extended RAM
+    int xramSize = ram.getSize() - MappedRam.BASE_SIZE;
+    xram = xramSize > 0 ? ram.slice(MappedRam.BASE_SIZE, xramSize) : null;
+    xramEnd = XRAM_START + xramSize;
+  }
+
+  /**
+   * Returns end of extended RAM region (exclusive).
+   *
+   * @return end of extended RAM, {@link #XRAM_START} if there is no extended RAM
+   */
+  public int getXramEnd() {
+    return xramEnd;
+  }
+
+  /**
+   * Returns mapped RAM backing RAM.
+   *
+   * @return mapped RAM, or null if RAM isn't mapped
+   */
+  public MappedRam getRam() {
+    return ram;
+  }
+
+  /**
+   * Loads EPROM data into memory. EPROM pages are shared with memory spaces that loaded the same
+   * data.
    *
    * @param epromData data to load
    */
   public void loadEPROM(byte[] epromData) {
     // check if EPROM data fits
-    if (epromData.length > eprom.length) {
+    if (epromData.length > EPROM_END - EPROM_START + 1) {
       throw new RuntimeException("Given EPROM data doesn't fit in EPROM");
     }
+    if (released) {
+      throw new RuntimeException("Can't load EPROM data after pages were released");
+    }
+
+    // load EPROM data, a page at a time
+    for (int off = 0; off < epromData.length; off += PAGE_SIZE) {
+      byte[] content = new byte[PAGE_SIZE];
+      System.arraycopy(epromData, off, content, 0, Math.min(PAGE_SIZE, epromData.length - off));
+
+      int page = off >>> PAGE_SHIFT;
+      ByteBuffer interned = PagePool.intern(content);
+      unshare(page);
+      pages.set(page, interned);
+      shared[page] = true;
+    }
+
+    for (int off = 0; off < epromData.length; off += DirtyPageTracker.PAGE_SIZE) {
+      dirtyPages.mark(off);
+    }
+  }
+
+  /**
+   * Returns dirty page tracker of this memory space. Tracked pages are indexed by address minus
+   * {@link #EPROM_START}. Extended RAM isn't tracked.
+   *
+   * @return dirty page tracker
+   */
+  public DirtyPageTracker getDirtyPages() {
+    return dirtyPages;
+  }
+
+  /**
+   * Returns the page holding an offset, ready to be written: shared pages are copied to a private
+   * page first.
+   *
+   * @param offset offset in memory space
+   * @return writable page
+   */
+  private ByteBuffer writablePage(int offset) {
+    int page = offset >>> PAGE_SHIFT;
+
+    if (shared[page]) {
+      // copy on write, publishing the copy whole
+      ByteBuffer copy = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      copy.put(0, pages.getPlain(page), 0, PAGE_SIZE);
+      unshare(page);
+      pages.set(page, copy);
+      return copy;
+    }
+
+    return pages.getPlain(page);
+  }
+
+  /**
+   * Returns number of pages shared with other memory spaces (or not written yet).
+   *
+   * @return shared pages
+   */
+  public int getSharedPages() {
+    int count = 0;
+    for (boolean s : shared) {
+      if (s) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns number of pages private to this memory space.
+   *
+   * @return private pages
+   */
+  public int getPrivatePages() {
+    return PAGES - getSharedPages();
+  }
+
+  /**
+   * Index of this memory space as a bus responder, used in trace records.
+   */
+  private final int responderIndex;
+
+  /**
+   * Burst statistics of this memory space.
+   */
+  private final BurstStatistics burstStatistics = new BurstStatistics();
+
+  /**
+   * Returns burst statistics of this memory space.
+   *
+   * @return burst statistics
+   */
+  public BurstStatistics getBurstStatistics() {
+    return burstStatistics;
+  }
+
+  /**
+   * Number of beats left in the current burst. 0 signals no burst is in progress.
+   */
+  private int burstRemaining;
+
+  /**
+   * Address of the next beat of the current burst.
+   */
+  private int burstAddr;
+
+  /**
+   * Address increment between beats of the current burst.
+   */
+  private int burstStride;
+
+  /**
+   * Byte select of the current burst.
+   */
+  private int burstByteSelect;
+
+  /**
+   * Signals whether the current burst is a read (true) or a write (false).
+   */
+  private boolean burstRead;
+
+  /**
+   * Wait states of EPROM accesses.
+   */
+  private int epromWaitStates;
+
+  /**
+   * Wait states of RAM accesses.
+   */
+  private int ramWaitStates;
+
+  /**
+   * Wait states of VRAM accesses.
+   */
+  private int vramWaitStates;
+
+  /**
+   * Sets wait states of each region, the number of cycles the memory space holds
+   * {@link microsim.simulation.component.bus.Bus#waitRequest} high before answering a transaction.
+   * Bursts only wait before the first beat. Extended RAM has the wait states of RAM.
+   *
+   * @param eprom wait states of EPROM accesses
+   * @param ram wait states of RAM accesses
+   * @param vram wait states of VRAM accesses
+   */
+  public void setWaitStates(int eprom, int ram, int vram) {
+    if (eprom < 0 || ram < 0 || vram < 0) {
+      throw new RuntimeException("Wait states can't be negative");
+    }
+
+    epromWaitStates = eprom;
+    ramWaitStates = ram;
+    vramWaitStates = vram;
+  }
+
+  /**
+   * Returns wait states of the region holding an address.
+   *
+   * @param addr address of access
+   * @return wait states
+   */
+  private int getWaitStates(int addr) {
+    if (addr <= EPROM_END) {
+      return epromWaitStates;
+    }
+    if (addr >= VRAM_START && addr <= VRAM_END) {
+      return vramWaitStates;
+    }
+    return ramWaitStates;
+  }
+
+  /**
+   * Number of wait states left in the current transaction. 0 signals no wait is in progress.
+   */
+  private int waitRemaining;
+
+  /**
+   * Data to drive when the current wait ends, if the transaction is a read.
+   */
+  private int waitData;
+
+  /**
+   * Signals whether the transaction being waited on is a read (true) or a write (false).
+   */
+  private boolean waitRead;
+
+  /**
+   * Total number of wait states inserted by this memory space.
+   */
+  private long waitCycles;
 
-    // load EPROM data
-    System.arraycopy(epromData, 0, eprom, 0, epromData.length);
+  /**
+   * Returns total number of wait states inserted by this memory space.
+   *
+   * @return wait states
+   */
+  public long getWaitCycles() {
+    return waitCycles;
   }
 
   /**
@@ -148,10 +515,31 @@ public class MemorySpace extends BusComponent {
    * </ol>
    * </li>
    * </ul>
+   * If {@link microsim.simulation.component.bus.Bus#burstLength} is 2 or more, the operation is a
+   * burst: the remaining beats are read (driven on the data line) or written (taken from the data
+   * line) one per step, with no further address phase, as handled by {@link #stepBurst()}.
+   * <p>
+   * If the region has wait states (see {@link #setWaitStates(int, int, int)}),
+   * {@link microsim.simulation.component.bus.Bus#waitRequest} is held high for as many steps
+   * before the data is driven (on reads) or the next beat is taken (on burst writes), as handled by
+   * {@link #stepWait()}.
+   * <p>
    * If requested address is out of bounds, assume it to be a I/O operation and ignore.
    */
   @Override
   public final void step() {
+    // keep waiting if in a wait
+    if (waitRemaining > 0) {
+      stepWait();
+      return;
+    }
+
+    // keep streaming if in a burst
+    if (burstRemaining > 0) {
+      stepBurst();
+      return;
+    }
+
     // release if driving
     if (driving) {
       bus.dataLine.release(this);
@@ -168,32 +556,36 @@ public class MemorySpace extends BusComponent {
     boolean readEnable = bus.readEnable.readBool();
     boolean writeEnable = bus.writeEnable.readBool();
     int byteSelect = bus.byteSelect.read();
+    int burstLength = bus.burstLength.read();
 
     // if someone is reading, offer data
     if (readEnable) {
-      // read operation
-      int data = 0x0;
-
       // log that read operation was seen
-      raiseDebugEvent(new DebugEvent(this, "Memory saw read operation at addr ", addr));
+      raiseDebugEvent("Memory saw read operation at addr ", addr);
 
-      // read word in (max) four byte reads
-      switch (byteSelect) {
-        case ByteSelect.WORD:
-          data |= (readMemory(addr + 3) & 0xff) << 24;
-          data |= (readMemory(addr + 2) & 0xff) << 16;
-        case ByteSelect.HALF:
-          data |= (readMemory(addr + 1) & 0xff) << 8;
-        case ByteSelect.BYTE:
-          data |= (readMemory(addr) & 0xff);
-      }
+      // read first (or only) beat
+      int data = readData(addr, byteSelect);
 
       // log result of read operation
-      raiseDebugEvent(new DebugEvent(this, "Memory read operation gave data ", data));
+      raiseDebugEvent("Memory read operation gave data ", data);
+      bus.observe(this, responderIndex, addr, -1, data, byteSelect,
+              burstLength > 1 ? BusTracer.FLAG_BURST : 0);
+
+      // drive data line with word, or wait first
+      int waitStates = getWaitStates(addr);
+      if (waitStates > 0) {
+        beginWait(waitStates, true, data);
+      } else {
+        bus.dataLine.drive(this, data);
+        driving = true;
+      }
 
-      // drive data line with word
-      bus.dataLine.drive(this, data);
-      driving = true;
+      // set up burst if requested
+      if (burstLength > 1) {
+        beginBurst(addr, byteSelect, burstLength, true);
+      } else {
+        burstStatistics.countSingle();
+      }
     }
 
     // if someone is writing, execute write operation
@@ -202,22 +594,288 @@ public class MemorySpace extends BusComponent {
       int data = bus.dataLine.read();
 
       // log that write operation was seen
-      raiseDebugEvent(new DebugEvent(this, "Memory saw write operation at address of data", addr,
-              data));
+      raiseDebugEvent("Memory saw write operation at address of data", addr, data);
 
-      // write word in (max) four byte writes
+      // write first (or only) beat
+      writeData(addr, byteSelect, data);
+
+      // log result of write operation
+      raiseDebugEvent("Memory write operation finished");
+      bus.observe(this, responderIndex, addr, -1, data, byteSelect,
+              BusTracer.FLAG_WRITE | (burstLength > 1 ? BusTracer.FLAG_BURST : 0));
+
+      // wait before taking further transactions or beats
+      int waitStates = getWaitStates(addr);
+      if (waitStates > 0) {
+        beginWait(waitStates, false, 0);
+      }
+
+      // set up burst if requested
+      if (burstLength > 1) {
+        beginBurst(addr, byteSelect, burstLength, false);
+      } else {
+        burstStatistics.countSingle();
+      }
+    }
+  }
+
+  /**
+   * Raises the wait request line for a transaction that was just seen.
+   *
+   * @param waitStates number of wait states
+   * @param read is the transaction a read?
+   * @param data data to drive when the wait ends, if a read
+   */
+  private void beginWait(int waitStates, boolean read, int data) {
+    // log wait
+    raiseDebugEvent("Memory started wait of cycles ", waitStates);
+
+    bus.waitRequest.driveBool(this, true);
+    waitRemaining = waitStates;
+    waitRead = read;
+    waitData = data;
+  }
+
+  /**
+   * Counts a wait state, and lowers the wait request line on the last one. Reads drive their data
+   * as the line is lowered.
+   */
+  private void stepWait() {
+    waitCycles++;
+    if (--waitRemaining > 0) {
+      return;
+    }
+
+    // answer read
+    if (waitRead) {
+      bus.dataLine.drive(this, waitData);
+      driving = true;
+    }
+
+    // lower and release wait request line
+    bus.waitRequest.driveBool(this, false);
+    bus.waitRequest.release(this);
+  }
+
+  /**
+   * Sets up a burst whose first beat has just been transferred.
+   *
+   * @param addr address of first beat
+   * @param byteSelect byte select of each beat
+   * @param burstLength number of beats
+   * @param read is the burst a read?
+   */
+  private void beginBurst(int addr, int byteSelect, int burstLength, boolean read) {
+    // log burst
+    raiseDebugEvent("Memory started burst of beats ", burstLength);
+
+    burstStride = bus.burstMode.read() == Bus.BurstMode.FIXED ? 0 : Bus.byteSelectSize(byteSelect);
+    burstAddr = addr + burstStride;
+    burstByteSelect = byteSelect;
+    burstRemaining = burstLength - 1;
+    burstRead = read;
+
+    burstStatistics.countBurst(burstLength);
+  }
+
+  /**
+   * Transfers the next beat of the current burst.
+   */
+  private void stepBurst() {
+    // check burst didn't run past memory bounds
+    if (!inBounds(burstAddr)) {
+      throw new RuntimeException("Memory burst out of bounds");
+    }
+
+    int data;
+    if (burstRead) {
+      // drive next beat
+      data = readData(burstAddr, burstByteSelect);
+      bus.dataLine.drive(this, data);
+    } else {
+      // take next beat
+      data = bus.dataLine.read();
+      writeData(burstAddr, burstByteSelect, data);
+    }
+
+    bus.observe(this, responderIndex, burstAddr, -1, data, burstByteSelect,
+            BusTracer.FLAG_BURST | (burstRead ? 0 : BusTracer.FLAG_WRITE));
+
+    burstAddr += burstStride;
+    burstRemaining--;
+  }
+
+  /**
+   * Observes an access to memory that the processor served from its caches or buffers, with no
+   * transaction: it is traced with {@link microsim.simulation.component.bus.BusTracer#FLAG_CACHED},
+   * counted and checked against watchpoints like a transaction served by memory (see
+   * {@link microsim.simulation.component.bus.Bus#observe}). Writes mark their pages dirty, as the
+   * cached data is what the program sees.
+   *
+   * @param addr address of access
+   * @param byteSelect size of access
+   * @param data data read or written
+   * @param write is the access a write?
+   */
+  public void observeCached(int addr, int byteSelect, int data, boolean write) {
+    bus.observe(this, responderIndex, addr, -1, data, byteSelect,
+            BusTracer.FLAG_CACHED | (write ? BusTracer.FLAG_WRITE : 0));
+
+    int last = addr + Bus.byteSelectSize(byteSelect) - 1;
+    if (write && addr >= EPROM_START && last <= VRAM_END) {
+      dirtyPages.mark(addr - EPROM_START);
+      dirtyPages.mark(last - EPROM_START);
+    }
+  }
+
+  /**
+   * Reads memory for a device that moves data on its own (direct memory access), with no bus
+   * transaction. The access is traced with
+   * {@link microsim.simulation.component.bus.BusTracer#FLAG_DMA}, counted and checked against
+   * watchpoints like a transaction served by memory. Devices account for its duration with
+   * {@link #getAccessCycles(int)}.
+   *
+   * @param addr address to read from
+   * @param byteSelect size of data
+   * @return data read
+   */
+  public int readDirect(int addr, int byteSelect) {
+    int data = readData(addr, byteSelect);
+    bus.observe(this, responderIndex, addr, -1, data, byteSelect, BusTracer.FLAG_DMA);
+    return data;
+  }
+
+  /**
+   * Writes memory for a device that moves data on its own (direct memory access), with no bus
+   * transaction, as {@link #readDirect(int, int)} reads it. The processor's caches and buffers
+   * aren't updated: devices drop what they hold of the written range.
+   *
+   * @param addr address to write to
+   * @param byteSelect size of data
+   * @param data data to write
+   */
+  public void writeDirect(int addr, int byteSelect, int data) {
+    writeData(addr, byteSelect, data);
+    bus.observe(this, responderIndex, addr, -1, data, byteSelect,
+            BusTracer.FLAG_DMA | BusTracer.FLAG_WRITE);
+  }
+
+  /**
+   * Returns the number of cycles an access takes at an address: one, plus the wait states of its
+   * region (see {@link #setWaitStates(int, int, int)}).
+   *
+   * @param addr address of access
+   * @return cycles of access
+   */
+  public int getAccessCycles(int addr) {
+    return 1 + getWaitStates(addr);
+  }
+
+  /**
+   * Reads data of the given size from memory space. Accesses that lie within a page are a single
+   * little-endian load, with region rules checked once. Accesses that cross pages or memory bounds
+   * are done a byte at a time, reading 0 out of bounds.
+   *
+   * @param addr address to read from
+   * @param byteSelect size of data
+   * @return data read
+   */
+  private int readData(int addr, int byteSelect) {
+    int last = addr + Bus.byteSelectSize(byteSelect) - 1;
+
+    if (addr >= EPROM_START && last <= VRAM_END && (addr ^ last) >>> PAGE_SHIFT == 0) {
+      // check region rules once
+      if (!ALLOW_VRAM_READS && last >= VRAM_START) {
+        throw new RuntimeException("VRAM reads are forbidden.");
+      }
+
+      int offset = addr - EPROM_START;
+      ByteBuffer page = pages.getPlain(offset >>> PAGE_SHIFT);
+      int pageOffset = offset & (PAGE_SIZE - 1);
+      return switch (byteSelect) {
+        case ByteSelect.WORD ->
+          page.getInt(pageOffset);
+        case ByteSelect.HALF ->
+          page.getShort(pageOffset) & 0xffff;
+        default ->
+          page.get(pageOffset) & 0xff;
+      };
+    }
+
+    if (addr >= XRAM_START && last < xramEnd) {
+      // extended RAM is a single buffer
+      int offset = addr - XRAM_START;
+      return switch (byteSelect) {
+        case ByteSelect.WORD ->
+          xram.getInt(offset);
+        case ByteSelect.HALF ->
+          xram.getShort(offset) & 0xffff;
+        default ->
+          xram.get(offset) & 0xff;
+      };
+    }
+
+    // crosses pages or memory bounds, read a byte at a time
+    int data = 0x0;
+    for (int a = last; a >= addr; a--) {
+      data = (data << 8) | (inBounds(a) ? readMemory(a) & 0xff : 0);
+    }
+    return data;
+  }
+
+  /**
+   * Writes data of the given size to memory space. Accesses that lie within a page are a single
+   * little-endian store, with region rules checked once. Accesses that cross pages or memory bounds
+   * are done a byte at a time, ignoring bytes out of bounds.
+   *
+   * @param addr address to write to
+   * @param byteSelect size of data
+   * @param data data to write
+   */
+  private void writeData(int addr, int byteSelect, int data) {
+    int last = addr + Bus.byteSelectSize(byteSelect) - 1;
+
+    if (addr >= EPROM_START && last <= VRAM_END && (addr ^ last) >>> PAGE_SHIFT == 0) {
+      // check region rules once
+      if (!ALLOW_EPROM_WRITES && addr <= EPROM_END) {
+        throw new RuntimeException("EPROM writes are forbidden.");
+      }
+
+      int offset = addr - EPROM_START;
+      ByteBuffer page = writablePage(offset);
+      int pageOffset = offset & (PAGE_SIZE - 1);
+      dirtyPages.mark(offset);
+      dirtyPages.mark(last - EPROM_START);
       switch (byteSelect) {
-        case ByteSelect.WORD:
-          writeMemory(addr + 3, (byte) (data >>> 24));
-          writeMemory(addr + 2, (byte) (data >>> 16));
-        case ByteSelect.HALF:
-          writeMemory(addr + 1, (byte) (data >>> 8));
-        case ByteSelect.BYTE:
-          writeMemory(addr, (byte) data);
+        case ByteSelect.WORD ->
+          page.putInt(pageOffset, data);
+        case ByteSelect.HALF ->
+          page.putShort(pageOffset, (short) data);
+        default ->
+          page.put(pageOffset, (byte) data);
       }
+      return;
+    }
 
-      // log result of write operation
-      raiseDebugEvent(new DebugEvent(this, "Memory write operation finished"));
+    if (addr >= XRAM_START && last < xramEnd) {
+      // extended RAM is a single buffer, and isn't tracked
+      int offset = addr - XRAM_START;
+      switch (byteSelect) {
+        case ByteSelect.WORD ->
+          xram.putInt(offset, data);
+        case ByteSelect.HALF ->
+          xram.putShort(offset, (short) data);
+        default ->
+          xram.put(offset, (byte) data);
+      }
+      return;
+    }
+
+    // crosses pages or memory bounds, write a byte at a time
+    for (int a = addr; a <= last; a++) {
+      if (inBounds(a)) {
+        writeMemory(a, (byte) (data >>> ((a - addr) * 8)));
+      }
     }
   }
 
@@ -242,18 +900,17 @@ public class MemorySpace extends BusComponent {
    * @return data read
    */
   public byte readMemory(int addr, boolean debugMode) {
-    if (addr >= EPROM_START && addr <= EPROM_END) {
-      return eprom[addr - EPROM_START];
-    } else if (addr >= RAM_START && addr <= RAM_END) {
-      return ram[addr - RAM_START];
-    } else if (addr >= VRAM_START && addr <= VRAM_END) {
+    if (addr >= VRAM_START && addr <= VRAM_END) {
       if (!ALLOW_VRAM_READS && !debugMode) {
         throw new RuntimeException("VRAM reads are forbidden.");
       }
-      return vram[addr - VRAM_START];
+    }
+    if (addr >= XRAM_START && addr < xramEnd) {
+      return xram.get(addr - XRAM_START);
     }
 
-    return 0; // never reached
+    int offset = addr - EPROM_START;
+    return pages.get(offset >>> PAGE_SHIFT).get(offset & (PAGE_SIZE - 1));
   }
 
   /**
@@ -281,22 +938,39 @@ public class MemorySpace extends BusComponent {
       if (!ALLOW_EPROM_WRITES && !debugMode) {
         throw new RuntimeException("EPROM writes are forbidden.");
       }
-      eprom[addr - EPROM_START] = data;
-    } else if (addr >= RAM_START && addr <= RAM_END) {
-      ram[addr - RAM_START] = data;
-    } else if (addr >= VRAM_START && addr <= VRAM_END) {
-      vram[addr - VRAM_START] = data;
     }
+    if (addr >= XRAM_START && addr < xramEnd) {
+      xram.put(addr - XRAM_START, data);
+      return;
+    }
+
+    int offset = addr - EPROM_START;
+    writablePage(offset).put(offset & (PAGE_SIZE - 1), data);
+    dirtyPages.mark(offset);
   }
 
   /**
-   * Returns VRAM byte array. Used by
+   * Reads a byte of VRAM. Used by
    * {@link microsim.simulation.component.device.video.VideoRenderer} for direct VRAM accesses when
    * rendering to frame buffer.
    *
-   * @return VRAM byte array
+   * @param index index of byte, from {@link #VRAM_START}
+   * @return byte read
+   */
+  public byte readVRAM(int index) {
+    int offset = VRAM_START - EPROM_START + index;
+    return pages.get(offset >>> PAGE_SHIFT).get(offset & (PAGE_SIZE - 1));
+  }
+
+  /**
+   * Returns a read-only, little-endian view of a page of memory space. Views share memory with the
+   * memory space, so no copies are made, but a shared page gets replaced (not changed) when first
+   * written.
+   *
+   * @param page index of page
+   * @return page view
    */
-  public byte[] getVRAM() {
-    return vram;
+  public ByteBuffer getPage(int page) {
+    return pages.get(page).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
   }
 }
@@ -0,0 +1,101 @@
+package microsim.simulation.component.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of read-only memory pages shared between memory spaces. Pages are matched by content, so
+ * that memory spaces loading the same EPROM image, or with RAM pages that were never written, all
+ * map the same page. Shared pages are handed out as read-only views: memory spaces copy them to a
+ * private page on first write (see {@link microsim.simulation.component.memory.MemorySpace}).
+ * <p>
+ * Pages are reference counted: each {@link #intern(byte[])} takes a reference, and each
+ * {@link #release(ByteBuffer)} drops one. A page leaves the pool when its last reference is
+ * dropped, so the pool only holds pages some memory space still maps.
+ */
+public class PagePool {
+
+  /**
+   * Hide constructor.
+   */
+  private PagePool() {
+  }
+
+  /**
+   * Page in the pool, with its reference count.
+   */
+  private static class Entry {
+
+    /**
+     * Read-only, little-endian view of page.
+     */
+    final ByteBuffer page;
+
+    /**
+     * Number of references taken and not dropped.
+     */
+    int references = 0;
+
+    /**
+     * Instantiates entry.
+     *
+     * @param page read-only view of page
+     */
+    Entry(ByteBuffer page) {
+      this.page = page;
+    }
+  }
+
+  /**
+   * Shared pages, keyed by content. Byte buffers hash and compare by content. Guarded by the class.
+   */
+  private static final Map<ByteBuffer, Entry> pages = new HashMap<>();
+
+  /**
+   * Returns the shared page with the given content, adding it to the pool if not there yet, and
+   * takes a reference to it.
+   *
+   * @param content content of page, copied if added
+   * @return shared page, read-only and little-endian
+   */
+  public static synchronized ByteBuffer intern(byte[] content) {
+    Entry entry = pages.get(ByteBuffer.wrap(content));
+    if (entry == null) {
+      ByteBuffer page = ByteBuffer.allocateDirect(content.length);
+      page.put(0, content);
+      entry = new Entry(page.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+      pages.put(ByteBuffer.wrap(content.clone()), entry);
+    }
+
+    entry.references++;
+    return entry.page;
+  }
+
+  /**
+   * Drops a reference to a shared page, removing it from the pool if it was the last one. The
+   * page itself stays valid for whoever still holds it.
+   *
+   * @param page shared page, as returned by {@link #intern(byte[])}
+   */
+  public static synchronized void release(ByteBuffer page) {
+    Entry entry = pages.get(page);
+    if (entry == null || entry.page != page) {
+      throw new RuntimeException("Released page isn't in the page pool");
+    }
+
+    if (--entry.references == 0) {
+      pages.remove(page);
+    }
+  }
+
+  /**
+   * Returns number of distinct pages in the pool.
+   *
+   * @return number of pages
+   */
+  public static synchronized int size() {
+    return pages.size();
+  }
+}
@@ -1,11 +1,34 @@
 package microsim.simulation.component.processor;
 
+import microsim.simulation.component.bus.Bus;
 import microsim.simulation.component.processor.MicroOp.OpType;
-import microsim.simulation.event.*;
 
 /**
  * Implements an interface a {@link microsim.simulation.component.processor.Processor} instance can
  * use to read and write from the bus it's mounted on.
+ * <p>
+ * Besides single transfers, the processor issues bursts (see
+ * {@link microsim.simulation.component.bus.Bus}) through a few buffers that stand between it and
+ * the bus when there are no caches. Fetches refill a fetch buffer and loads refill a load buffer,
+ * each an aligned block of memory read with one
+ * {@link microsim.simulation.component.bus.Bus.BurstMode#INCREMENT} burst. Stores are gathered in a
+ * write buffer, that holds a run of stores of the same size to consecutive memory addresses, or to
+ * the same port of a device that takes bursts, and is written out with one
+ * {@link microsim.simulation.component.bus.Bus.BurstMode#INCREMENT} or
+ * {@link microsim.simulation.component.bus.Bus.BurstMode#FIXED} burst. So the byte copy loops of
+ * the firmware, and sector transfers through the block device data port, move blocks rather than
+ * single bytes or halfwords.
+ * <p>
+ * Device ports have side effects: they are never read ahead, buffered port stores are written out
+ * before any read of a port, and all buffered stores before a store to a device that doesn't take
+ * bursts (that may start reading memory), so that devices see accesses in program order. Buffered
+ * stores are also written out before reads of memory they overlap, before fetches from them, before
+ * environment calls, and once no store was buffered for {@link Processor#WRITE_BUFFER_IDLE}
+ * instructions.
+ * <p>
+ * Accesses served by the buffers or by caches, with no transaction, are still traced, counted and
+ * checked against watchpoints through
+ * {@link microsim.simulation.component.memory.MemorySpace#observeCached}.
  */
 public class BusInterface {
 
@@ -40,6 +63,51 @@ public class BusInterface {
      * Step 1 of write routine
      */
     static final MicroOp MEM_WRITE1 = new MicroOp(OpType.MEM_WRITE1);
+
+    /**
+     * Step 1 of burst read routine
+     */
+    static final MicroOp BURST_READ1 = new MicroOp(OpType.BURST_READ1);
+
+    /**
+     * Beat of burst read routine
+     */
+    static final MicroOp BURST_READ_BEAT = new MicroOp(OpType.BURST_READ_BEAT);
+
+    /**
+     * Beat of burst write routine
+     */
+    static final MicroOp BURST_WRITE_BEAT = new MicroOp(OpType.BURST_WRITE_BEAT);
+
+    /**
+     * Start of cache line fill after a write back
+     */
+    static final MicroOp CACHE_FILL_START = new MicroOp(OpType.CACHE_FILL_START);
+
+    /**
+     * End of cache line fill
+     */
+    static final MicroOp CACHE_FILL = new MicroOp(OpType.CACHE_FILL);
+
+    /**
+     * Start of next bus burst of burst read routine
+     */
+    static final MicroOp BURST_READ_NEXT = new MicroOp(OpType.BURST_READ_NEXT);
+
+    /**
+     * Start of next bus burst of burst write routine
+     */
+    static final MicroOp BURST_WRITE_NEXT = new MicroOp(OpType.BURST_WRITE_NEXT);
+
+    /**
+     * End of fetch buffer fill
+     */
+    static final MicroOp FETCH_FILL = new MicroOp(OpType.FETCH_FILL);
+
+    /**
+     * End of load buffer fill
+     */
+    static final MicroOp LOAD_FILL = new MicroOp(OpType.LOAD_FILL);
   }
 
   /**
@@ -51,7 +119,7 @@ public class BusInterface {
    */
   public static void doReadRoutine(Processor proc, int addr, int byteSelect) {
     // log beginning of read routine
-    proc.raiseDebugEvent(new DebugEvent(proc, "Processor started read routine at address ", addr));
+    proc.raiseDebugEvent("Processor started read routine at address ", addr);
 
     // keep track of byte select
     proc.byteSelect = byteSelect;
@@ -85,12 +153,14 @@ public class BusInterface {
    */
   public static void doWriteRoutine(Processor proc, int addr, int data, int byteSelect) {
     // log beginning of write routine
-    proc.raiseDebugEvent(new DebugEvent(proc, "Processor started write routine at address of data ",
-            addr, data));
+    proc.raiseDebugEvent("Processor started write routine at address of data ", addr, data);
 
     // keep track of byte select
     proc.byteSelect = byteSelect;
 
+    // drop fetched and loaded data being overwritten
+    proc.invalidateBuffers(addr, Bus.byteSelectSize(byteSelect));
+
     // start driving data, address and control lines
     proc.bus.dataLine.drive(proc, data);
     proc.bus.addressLine.drive(proc, addr);
@@ -109,4 +179,531 @@ public class BusInterface {
   private static void writeRoutine(Processor proc) {
     proc.opQueue.addFirst(BusMicroOps.MEM_WRITE1);
   }
+
+  /**
+   * Starts a burst read routine. Beats are stored in the processor burst buffer, one per cycle,
+   * after a single address phase. The responder must support bursts. Routines of a single beat are
+   * single transfers, and routines longer than
+   * {@link microsim.simulation.component.bus.Bus#MAX_BURST_LENGTH} beats are split in several bus
+   * bursts.
+   *
+   * @param proc processor instance that reads
+   * @param addr address of first beat
+   * @param beats number of beats, up to the burst buffer size
+   * @param burstMode address increment mode (see
+   * {@link microsim.simulation.component.bus.Bus.BurstMode})
+   * @param byteSelect format of each beat
+   */
+  public static void doBurstReadRoutine(Processor proc, int addr, int beats, int burstMode,
+          int byteSelect) {
+    // log beginning of burst read routine
+    proc.raiseDebugEvent("Processor started burst read routine at address "
+            + "of beats ", addr, beats);
+
+    // keep track of byte select, beats and addressing
+    proc.byteSelect = byteSelect;
+    proc.burstAddr = addr;
+    proc.burstMode = burstMode;
+    proc.burstBeats = beats;
+    proc.burstIndex = 0;
+
+    burstReadChunk(proc);
+  }
+
+  /**
+   * Starts the next bus burst of the current burst read routine.
+   *
+   * @param proc processor instance that reads
+   */
+  static void burstReadChunk(Processor proc) {
+    int count = nextChunk(proc);
+
+    // start driving address and control lines
+    proc.bus.addressLine.drive(proc, chunkAddress(proc));
+    proc.bus.byteSelect.drive(proc, proc.byteSelect);
+    proc.bus.burstLength.drive(proc, count);
+    proc.bus.burstMode.drive(proc, proc.burstMode);
+    proc.bus.readEnable.driveBool(proc, true);
+
+    // emit microops, beats are read after the first step
+    if (proc.burstChunkEnd < proc.burstBeats) {
+      proc.opQueue.addFirst(BusMicroOps.BURST_READ_NEXT);
+    }
+    for (int i = 0; i < count; i++) {
+      proc.opQueue.addFirst(BusMicroOps.BURST_READ_BEAT);
+    }
+    proc.opQueue.addFirst(BusMicroOps.BURST_READ1);
+  }
+
+  /**
+   * Starts a burst write routine. Beats are taken from the processor burst buffer, which the caller
+   * is expected to have filled, and are driven one per cycle after a single address phase. The
+   * responder must support bursts. Routines of a single beat are single transfers, and routines
+   * longer than {@link microsim.simulation.component.bus.Bus#MAX_BURST_LENGTH} beats are split in
+   * several bus bursts.
+   *
+   * @param proc processor instance that writes
+   * @param addr address of first beat
+   * @param beats number of beats, up to the burst buffer size
+   * @param burstMode address increment mode (see
+   * {@link microsim.simulation.component.bus.Bus.BurstMode})
+   * @param byteSelect format of each beat
+   */
+  public static void doBurstWriteRoutine(Processor proc, int addr, int beats, int burstMode,
+          int byteSelect) {
+    // log beginning of burst write routine
+    proc.raiseDebugEvent("Processor started burst write routine at address "
+            + "of beats ", addr, beats);
+
+    // keep track of byte select, beats and addressing
+    proc.byteSelect = byteSelect;
+    proc.burstAddr = addr;
+    proc.burstMode = burstMode;
+    proc.burstBeats = beats;
+    proc.burstIndex = 0;
+
+    // drop fetched and loaded data being overwritten
+    proc.invalidateBuffers(addr, Bus.byteSelectSize(byteSelect)
+            * (burstMode == Bus.BurstMode.FIXED ? 1 : beats));
+
+    burstWriteChunk(proc);
+  }
+
+  /**
+   * Starts the next bus burst of the current burst write routine.
+   *
+   * @param proc processor instance that writes
+   */
+  static void burstWriteChunk(Processor proc) {
+    int count = nextChunk(proc);
+    int addr = chunkAddress(proc);
+
+    // start driving data, address and control lines, first beat goes with the address phase
+    proc.bus.dataLine.drive(proc, proc.burstBuffer[proc.burstIndex++]);
+    proc.bus.addressLine.drive(proc, addr);
+    proc.bus.byteSelect.drive(proc, proc.byteSelect);
+    proc.bus.burstLength.drive(proc, count);
+    proc.bus.burstMode.drive(proc, proc.burstMode);
+    proc.bus.writeEnable.driveBool(proc, true);
+
+    // emit microops, one for each remaining beat
+    if (proc.burstChunkEnd < proc.burstBeats) {
+      proc.opQueue.addFirst(BusMicroOps.BURST_WRITE_NEXT);
+    }
+    if (count == 1) {
+      writeRoutine(proc);
+    }
+    for (int i = 1; i < count; i++) {
+      proc.opQueue.addFirst(BusMicroOps.BURST_WRITE_BEAT);
+    }
+  }
+
+  /**
+   * Sizes the next bus burst of the current burst routine, up to
+   * {@link microsim.simulation.component.bus.Bus#MAX_BURST_LENGTH} beats.
+   *
+   * @param proc processor instance in a burst routine
+   * @return number of beats of next bus burst
+   */
+  private static int nextChunk(Processor proc) {
+    int count = Math.min(proc.burstBeats - proc.burstIndex, Bus.MAX_BURST_LENGTH);
+    proc.burstChunkStart = proc.burstIndex;
+    proc.burstChunkEnd = proc.burstIndex + count;
+    return count;
+  }
+
+  /**
+   * Returns the address of the next bus burst of the current burst routine.
+   *
+   * @param proc processor instance in a burst routine
+   * @return address of first beat of next bus burst
+   */
+  private static int chunkAddress(Processor proc) {
+    return proc.burstMode == Bus.BurstMode.FIXED ? proc.burstAddr
+            : proc.burstAddr + proc.burstIndex * Bus.byteSelectSize(proc.byteSelect);
+  }
+
+  /**
+   * Starts an instruction fetch through the fetch buffer. Fetches inside the buffered block
+   * complete right away, leaving the instruction in the processor temp register with no bus
+   * transaction. Fetches outside it read the aligned block holding the instruction with a single
+   * burst, then complete with a
+   * {@link microsim.simulation.component.processor.MicroOp.OpType#FETCH_FILL} microop. Misaligned
+   * fetches fall back to {@link #doReadRoutine(Processor, int, int)}.
+   *
+   * @param proc processor instance that fetches
+   * @param addr address of instruction
+   */
+  public static void doFetchRoutine(Processor proc, int addr) {
+    if ((addr & 3) != 0) {
+      doReadRoutine(proc, addr, Bus.ByteSelect.WORD);
+      return;
+    }
+
+    int base = addr & -Processor.FETCH_BUFFER_SIZE;
+    if (proc.fetchValid && proc.fetchBase == base) {
+      // hit, no bus transaction
+      proc.byteSelect = Bus.ByteSelect.WORD;
+      proc.temp = proc.fetchBuffer[(addr - base) >>> 2];
+
+      proc.simulation.memory.observeCached(addr, Bus.ByteSelect.WORD, proc.temp, false);
+      proc.raiseDebugEvent("Processor hit fetch buffer at address of data ", addr, proc.temp);
+      return;
+    }
+
+    // refill buffer with block
+    proc.fetchValid = false;
+    proc.fetchBase = base;
+    proc.opQueue.addFirst(BusMicroOps.FETCH_FILL);
+    doBurstReadRoutine(proc, base, Processor.FETCH_BUFFER_WORDS, Bus.BurstMode.INCREMENT,
+            Bus.ByteSelect.WORD);
+  }
+
+  /**
+   * Starts a load through the load buffer. Loads inside the buffered block complete right away,
+   * leaving data in the processor temp register with no bus transaction. Loads outside it read the
+   * aligned block holding the data with a single burst, then complete with a
+   * {@link microsim.simulation.component.processor.MicroOp.OpType#LOAD_FILL} microop. Misaligned
+   * loads and loads of device ports fall back to {@link #doReadRoutine(Processor, int, int)}.
+   *
+   * @param proc processor instance that loads
+   * @param addr address to load at
+   * @param byteSelect format to load
+   */
+  public static void doLoadRoutine(Processor proc, int addr, int byteSelect) {
+    if ((addr & (Bus.byteSelectSize(byteSelect) - 1)) != 0 || proc.bus.findPort(addr) >= 0) {
+      doReadRoutine(proc, addr, byteSelect);
+      return;
+    }
+
+    int base = addr & -Processor.LOAD_BUFFER_SIZE;
+    if (proc.loadValid && proc.loadBase == base) {
+      // hit, no bus transaction
+      proc.byteSelect = byteSelect;
+      proc.temp = loadBufferData(proc, addr, byteSelect);
+
+      proc.simulation.memory.observeCached(addr, byteSelect, proc.temp, false);
+      proc.raiseDebugEvent("Processor hit load buffer at address of data ", addr, proc.temp);
+      return;
+    }
+
+    // refill buffer with block
+    proc.loadValid = false;
+    proc.loadBase = base;
+    proc.fillAddr = addr;
+    proc.fillByteSelect = byteSelect;
+    proc.opQueue.addFirst(BusMicroOps.LOAD_FILL);
+    doBurstReadRoutine(proc, base, Processor.LOAD_BUFFER_WORDS, Bus.BurstMode.INCREMENT,
+            Bus.ByteSelect.WORD);
+  }
+
+  /**
+   * Extracts data from the load buffer, zero extended as the bus would drive it.
+   *
+   * @param proc processor instance that loads
+   * @param addr address of data, inside the buffered block
+   * @param byteSelect format of data
+   * @return data
+   */
+  static int loadBufferData(Processor proc, int addr, int byteSelect) {
+    int word = proc.loadBuffer[(addr - proc.loadBase) >>> 2] >>> ((addr & 3) * 8);
+    return switch (byteSelect) {
+      case Bus.ByteSelect.WORD ->
+        word;
+      case Bus.ByteSelect.HALF ->
+        word & 0xffff;
+      default ->
+        word & 0xff;
+    };
+  }
+
+  /**
+   * Starts a store through the write buffer. Stores that carry on the buffered run are added to it,
+   * other ones write the run out first and start a new one. Full runs are written out right away.
+   * Misaligned stores and stores to ports of devices that don't take bursts fall back to
+   * {@link #doWriteRoutine(Processor, int, int, int)}, once the run was written out (see
+   * {@link #mustDrain(Processor, int, int, boolean)}).
+   *
+   * @param proc processor instance that stores
+   * @param addr address to store at
+   * @param data data to store
+   * @param byteSelect format to store
+   */
+  public static void doStoreRoutine(Processor proc, int addr, int data, int byteSelect) {
+    int size = Bus.byteSelectSize(byteSelect);
+    int port = proc.bus.findPort(addr);
+    if ((addr & (size - 1)) != 0 || port >= 0 && !proc.bus.takesBursts(port)) {
+      doWriteRoutine(proc, addr, data, byteSelect);
+      return;
+    }
+
+    // drop fetched and loaded data being overwritten
+    proc.invalidateBuffers(addr, size);
+
+    // write run out if the store doesn't carry on with it
+    int mode = port >= 0 ? Bus.BurstMode.FIXED : Bus.BurstMode.INCREMENT;
+    if (proc.writeBeats > 0 && !carriesRun(proc, addr, byteSelect, mode)) {
+      drainRoutine(proc);
+    }
+
+    // buffer store
+    if (proc.writeBeats == 0) {
+      proc.writeAddr = addr;
+      proc.writeByteSelect = byteSelect;
+      proc.writeMode = mode;
+    }
+    proc.writeBuffer[proc.writeBeats++] = data;
+    proc.writeInstruction = proc.getInstructions();
+
+    proc.raiseDebugEvent("Processor buffered store at address of data ", addr, data);
+
+    // write full runs out
+    if (proc.writeBeats == Processor.WRITE_BUFFER_BEATS) {
+      drainRoutine(proc);
+    }
+  }
+
+  /**
+   * Checks if a store carries on the run in the write buffer: it has the same size, and hits the
+   * same port or the memory address following the run, within the same aligned block.
+   *
+   * @param proc processor instance that stores
+   * @param addr address of store
+   * @param byteSelect format of store
+   * @param mode address increment mode the store would be buffered with
+   * @return does the store carry on the run?
+   */
+  private static boolean carriesRun(Processor proc, int addr, int byteSelect, int mode) {
+    if (byteSelect != proc.writeByteSelect || mode != proc.writeMode) {
+      return false;
+    }
+    if (mode == Bus.BurstMode.FIXED) {
+      return addr == proc.writeAddr;
+    }
+
+    int block = -Processor.WRITE_BUFFER_SIZE;
+    return addr == writeEnd(proc) && (addr & block) == (proc.writeAddr & block);
+  }
+
+  /**
+   * Returns the address past the run of memory stores in the write buffer.
+   *
+   * @param proc processor instance
+   * @return end of run
+   */
+  private static int writeEnd(Processor proc) {
+    return proc.writeAddr + proc.writeBeats * Bus.byteSelectSize(proc.writeByteSelect);
+  }
+
+  /**
+   * Writes the run in the write buffer out, with a burst if it has more than one store.
+   *
+   * @param proc processor instance with buffered stores
+   */
+  static void drainRoutine(Processor proc) {
+    int beats = proc.writeBeats;
+    proc.writeBeats = 0;
+
+    // log write out
+    proc.raiseDebugEvent("Processor wrote out buffered stores at address of beats ",
+            proc.writeAddr, beats);
+
+    System.arraycopy(proc.writeBuffer, 0, proc.burstBuffer, 0, beats);
+    doBurstWriteRoutine(proc, proc.writeAddr, beats, proc.writeMode, proc.writeByteSelect);
+  }
+
+  /**
+   * Checks if buffered stores must be written out before a load or store. They must before stores
+   * to ports of devices that don't take bursts and misaligned stores, that bypass the buffer;
+   * before reads of ports, if they are port stores; and before reads of memory they overlap,
+   * including the whole block or cache line the read may fetch.
+   *
+   * @param proc processor instance that accesses
+   * @param addr address of access
+   * @param byteSelect format of access
+   * @param store is the access a store?
+   * @return must buffered stores be written out first?
+   */
+  static boolean mustDrain(Processor proc, int addr, int byteSelect, boolean store) {
+    if (proc.writeBeats == 0) {
+      return false;
+    }
+
+    int port = proc.bus.findPort(addr);
+    boolean misaligned = (addr & (Bus.byteSelectSize(byteSelect) - 1)) != 0;
+    if (port >= 0) {
+      // port reads come after buffered port stores
+      return store ? misaligned || !proc.bus.takesBursts(port)
+              : proc.writeMode == Bus.BurstMode.FIXED;
+    }
+
+    Cache cache = proc.dcache;
+    boolean cached = cache != null && cache.isCacheable(addr, byteSelect, store);
+    if (store && !cached) {
+      return misaligned;
+    }
+
+    // reads take a whole block or line
+    int block = cached ? cache.config.lineSize : Processor.LOAD_BUFFER_SIZE;
+    return overlapsRun(proc, addr & -block, block);
+  }
+
+  /**
+   * Checks if buffered stores must be written out before the next fetch: if the fetch reads them,
+   * or if no store was buffered for {@link Processor#WRITE_BUFFER_IDLE} instructions.
+   *
+   * @param proc processor instance that fetches
+   * @return must buffered stores be written out first?
+   */
+  static boolean mustDrainBeforeFetch(Processor proc) {
+    if (proc.writeBeats == 0) {
+      return false;
+    }
+    if (proc.getInstructions() - proc.writeInstruction >= Processor.WRITE_BUFFER_IDLE) {
+      return true;
+    }
+
+    int block = proc.icache != null ? proc.icache.config.lineSize : Processor.FETCH_BUFFER_SIZE;
+    return overlapsRun(proc, proc.pc & -block, block);
+  }
+
+  /**
+   * Checks if the run of memory stores in the write buffer overlaps a block of memory.
+   *
+   * @param proc processor instance with buffered stores
+   * @param base start of block
+   * @param size size of block, in bytes
+   * @return does the run overlap the block?
+   */
+  private static boolean overlapsRun(Processor proc, int base, int size) {
+    return proc.writeMode == Bus.BurstMode.INCREMENT && proc.writeAddr < base + size
+            && base < writeEnd(proc);
+  }
+
+  /**
+   * Starts a read through a cache. Hits complete right away, leaving data in the processor temp
+   * register with no bus transaction. Misses fill a line first (see
+   * {@link #startFill(Processor, Cache, int, int, boolean, int)}). Uncacheable accesses, or any
+   * access when the cache is null, fall back to {@link #doLoadRoutine(Processor, int, int)}.
+   *
+   * @param proc processor instance that reads
+   * @param cache cache to read through, can be null
+   * @param addr address to read at
+   * @param byteSelect format to read
+   */
+  public static void doCachedReadRoutine(Processor proc, Cache cache, int addr, int byteSelect) {
+    if (cache == null || !cache.isCacheable(addr, byteSelect, false)) {
+      doLoadRoutine(proc, addr, byteSelect);
+      return;
+    }
+
+    int slot = cache.lookup(addr);
+    if (slot >= 0) {
+      // hit, no bus transaction
+      proc.byteSelect = byteSelect;
+      proc.temp = cache.read(slot, addr, byteSelect);
+
+      proc.simulation.memory.observeCached(addr, byteSelect, proc.temp, false);
+      proc.raiseDebugEvent("Processor hit cache at address of data ", addr, proc.temp);
+      return;
+    }
+
+    cache.recordMiss(proc.pc, addr);
+    startFill(proc, cache, addr, byteSelect, false, 0);
+  }
+
+  /**
+   * Starts a write through a cache. Write-through caches update the line on hits and always write
+   * through the write buffer. Write-back caches update the line on hits with no bus transaction,
+   * and fill the line first on misses. Uncacheable accesses, or any access when the cache is null,
+   * fall back to {@link #doStoreRoutine(Processor, int, int, int)}.
+   *
+   * @param proc processor instance that writes
+   * @param cache cache to write through, can be null
+   * @param addr address to write at
+   * @param data data to write
+   * @param byteSelect format to write
+   */
+  public static void doCachedWriteRoutine(Processor proc, Cache cache, int addr, int data,
+          int byteSelect) {
+    if (cache == null || !cache.isCacheable(addr, byteSelect, true)) {
+      doStoreRoutine(proc, addr, data, byteSelect);
+      return;
+    }
+
+    int slot = cache.lookup(addr);
+
+    if (cache.config.writePolicy == Cache.WritePolicy.WRITE_THROUGH) {
+      // update line on hits, no allocation on misses
+      if (slot >= 0) {
+        cache.write(slot, addr, byteSelect, data);
+      } else {
+        cache.recordMiss(proc.pc, addr);
+      }
+      doStoreRoutine(proc, addr, data, byteSelect);
+      return;
+    }
+
+    if (slot >= 0) {
+      // write back hit, no bus transaction
+      proc.byteSelect = byteSelect;
+      cache.write(slot, addr, byteSelect, data);
+
+      proc.simulation.memory.observeCached(addr, byteSelect, data, true);
+      proc.raiseDebugEvent("Processor hit cache at address of data ", addr, data);
+      return;
+    }
+
+    cache.recordMiss(proc.pc, addr);
+    startFill(proc, cache, addr, byteSelect, true, data);
+  }
+
+  /**
+   * Starts a line fill after a miss. If the victim line is dirty it is written back with a burst
+   * first, then the line is read with a burst, and finally the access that missed is completed by
+   * a {@link microsim.simulation.component.processor.MicroOp.OpType#CACHE_FILL} microop.
+   *
+   * @param proc processor instance that missed
+   * @param cache cache that missed
+   * @param addr address of access
+   * @param byteSelect format of access
+   * @param store is the access a store?
+   * @param data data to store, if a store
+   */
+  private static void startFill(Processor proc, Cache cache, int addr, int byteSelect,
+          boolean store, int data) {
+    // log miss
+    proc.raiseDebugEvent("Processor missed cache at address ", addr);
+
+    // remember access
+    proc.fillCache = cache;
+    proc.fillSlot = cache.victim(addr);
+    proc.fillAddr = addr;
+    proc.fillByteSelect = byteSelect;
+    proc.fillStore = store;
+    proc.fillData = data;
+
+    proc.opQueue.addFirst(BusMicroOps.CACHE_FILL);
+
+    if (cache.isDirty(proc.fillSlot)) {
+      // write victim back first, then fill
+      proc.opQueue.addFirst(BusMicroOps.CACHE_FILL_START);
+      int victimAddr = cache.evict(proc.fillSlot, proc.burstBuffer);
+      doBurstWriteRoutine(proc, victimAddr, cache.lineWords, Bus.BurstMode.INCREMENT,
+              Bus.ByteSelect.WORD);
+    } else {
+      fillRoutine(proc);
+    }
+  }
+
+  /**
+   * Starts the burst read of the line being filled.
+   *
+   * @param proc processor instance that fills
+   */
+  static void fillRoutine(Processor proc) {
+    Cache cache = proc.fillCache;
+    doBurstReadRoutine(proc, cache.lineAddress(proc.fillAddr), cache.lineWords,
+            Bus.BurstMode.INCREMENT, Bus.ByteSelect.WORD);
+  }
 }
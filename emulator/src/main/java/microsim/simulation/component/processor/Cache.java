@@ -0,0 +1,816 @@
+package microsim.simulation.component.processor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import microsim.simulation.component.bus.Bus;
+import microsim.simulation.component.memory.MemorySpace;
+import microsim.ui.DebugShell;
+
+/**
+ * Models a set-associative L1 cache sitting between a
+ * {@link microsim.simulation.component.processor.Processor} and the bus. Only EPROM and RAM
+ * (mapped extended RAM included) are cacheable: VRAM and device ports are always accessed on the
+ * bus, so that the renderer and devices see every access. Stores to EPROM aren't cacheable either,
+ * so that they fail on the bus as they would without a cache. Hits are served without a bus
+ * transaction, misses fill a whole line with a burst (see
+ * {@link microsim.simulation.component.processor.BusInterface}).
+ * <p>
+ * The cache is not coherent with other bus masters: code that reads or writes memory behind its
+ * back should {@link #flush(MemorySpace)} or {@link #invalidate()} it first, or just the lines
+ * over the memory it touches ({@link #flush(MemorySpace, int, int)},
+ * {@link #invalidate(int, int)}). Dirty lines of write-back caches are written to memory when
+ * evicted, and flushed when the simulation powers off.
+ */
+public class Cache {
+
+  /**
+   * Write policies.
+   */
+  public static enum WritePolicy {
+    /**
+     * Writes go to the bus, and update the line on hits. Misses don't allocate.
+     */
+    WRITE_THROUGH,
+    /**
+     * Writes only update the line, which is written back when evicted. Misses allocate.
+     */
+    WRITE_BACK
+  }
+
+  /**
+   * Replacement policies.
+   */
+  public static enum Replacement {
+    /**
+     * Evicts the least recently used line.
+     */
+    LRU,
+    /**
+     * Evicts the line filled first.
+     */
+    FIFO,
+    /**
+     * Evicts a pseudo-random line (deterministic across runs).
+     */
+    RANDOM
+  }
+
+  /**
+   * Cache configuration.
+   */
+  public static class Config {
+
+    /**
+     * Total size, in bytes.
+     */
+    public int size;
+
+    /**
+     * Number of ways per set.
+     */
+    public int ways;
+
+    /**
+     * Size of a line, in bytes.
+     */
+    public int lineSize;
+
+    /**
+     * Write policy.
+     */
+    public WritePolicy writePolicy;
+
+    /**
+     * Replacement policy.
+     */
+    public Replacement replacement;
+
+    /**
+     * Constructs a cache configuration.
+     *
+     * @param size total size, in bytes
+     * @param ways number of ways per set
+     * @param lineSize size of a line, in bytes
+     * @param writePolicy write policy
+     * @param replacement replacement policy
+     */
+    public Config(int size, int ways, int lineSize, WritePolicy writePolicy,
+            Replacement replacement) {
+      this.size = size;
+      this.ways = ways;
+      this.lineSize = lineSize;
+      this.writePolicy = writePolicy;
+      this.replacement = replacement;
+    }
+
+    /**
+     * Parses a cache configuration from a string of the form
+     * <code>size:ways:line[:wt|wb][:lru|fifo|random]</code>, sizes in bytes. Write policy defaults
+     * to write-back and replacement to LRU.
+     *
+     * @param spec configuration string
+     * @return parsed configuration
+     */
+    public static Config parse(String spec) {
+      String[] fields = spec.split(":");
+      if (fields.length < 3 || fields.length > 5) {
+        throw new RuntimeException("Invalid cache configuration " + spec);
+      }
+
+      WritePolicy writePolicy = WritePolicy.WRITE_BACK;
+      Replacement replacement = Replacement.LRU;
+
+      try {
+        int size = Integer.parseInt(fields[0]);
+        int ways = Integer.parseInt(fields[1]);
+        int lineSize = Integer.parseInt(fields[2]);
+
+        for (int i = 3; i < fields.length; i++) {
+          switch (fields[i]) {
+            case "wt" ->
+              writePolicy = WritePolicy.WRITE_THROUGH;
+            case "wb" ->
+              writePolicy = WritePolicy.WRITE_BACK;
+            case "lru" ->
+              replacement = Replacement.LRU;
+            case "fifo" ->
+              replacement = Replacement.FIFO;
+            case "random" ->
+              replacement = Replacement.RANDOM;
+            default ->
+              throw new RuntimeException("Unknown cache option " + fields[i]);
+          }
+        }
+
+        return new Config(size, ways, lineSize, writePolicy, replacement);
+      } catch (NumberFormatException e) {
+        throw new RuntimeException("Invalid cache configuration " + spec + ". " + e.getMessage());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return size + " bytes, " + ways + "-way, " + lineSize + " byte lines, "
+              + writePolicy.name().toLowerCase() + ", " + replacement.name().toLowerCase();
+    }
+  }
+
+  /**
+   * Name of cache, used in statistics.
+   */
+  public final String name;
+
+  /**
+   * Configuration of cache.
+   */
+  public final Config config;
+
+  /**
+   * Number of sets.
+   */
+  private final int sets;
+
+  /**
+   * Number of ways per set.
+   */
+  private final int ways;
+
+  /**
+   * Line size in bits.
+   */
+  private final int lineShift;
+
+  /**
+   * Number of words in a line.
+   */
+  final int lineWords;
+
+  /**
+   * Tag of each line slot, slots of set s being s * ways to s * ways + ways - 1.
+   */
+  private final int[] tags;
+
+  /**
+   * Signals which line slots hold a line.
+   */
+  private final boolean[] valid;
+
+  /**
+   * Signals which line slots were written and not written back.
+   */
+  private final boolean[] dirty;
+
+  /**
+   * Replacement stamp of each line slot: time of last use for LRU, time of fill for FIFO.
+   */
+  private final long[] stamps;
+
+  /**
+   * Data of each line slot, {@link #lineWords} words per slot.
+   */
+  private final int[] data;
+
+  /**
+   * Clock for replacement stamps.
+   */
+  private long clock = 0;
+
+  /**
+   * State of pseudo-random replacement.
+   */
+  private int randomState = 0x2545f491;
+
+  /**
+   * Number of hits.
+   */
+  private long hits = 0;
+
+  /**
+   * Number of misses.
+   */
+  private long misses = 0;
+
+  /**
+   * Number of dirty lines written back.
+   */
+  private long writebacks = 0;
+
+  /**
+   * Memory space behind the cache, used to tell how much extended RAM is mapped. Null means no
+   * extended RAM is cacheable.
+   */
+  private MemorySpace memory;
+
+  /**
+   * Counters indexed by int keys, with open addressing on primitive arrays so that counting doesn't
+   * box keys. Only allocates when growing.
+   */
+  private static class Counters {
+
+    /**
+     * Initial capacity in bits.
+     */
+    private static final int INITIAL_SHIFT = 6;
+
+    /**
+     * Initial capacity, in keys.
+     */
+    private static final int INITIAL_CAPACITY = 1 << INITIAL_SHIFT;
+
+    /**
+     * Capacity in bits.
+     */
+    private int shift = INITIAL_SHIFT;
+
+    /**
+     * Keys of slots.
+     */
+    private int[] keys = new int[INITIAL_CAPACITY];
+
+    /**
+     * Counts of slots. Slots with a count of 0 are free.
+     */
+    private long[] counts = new long[INITIAL_CAPACITY];
+
+    /**
+     * Number of used slots.
+     */
+    private int size = 0;
+
+    /**
+     * Returns the home slot of a key. Keys are mixed by a multiplicative hash and the high bits are
+     * kept, as the low bits of aligned addresses are all equal.
+     *
+     * @param key key to hash
+     * @return slot index
+     */
+    private int slotOf(int key) {
+      return (key * 0x9e3779b9) >>> (32 - shift);
+    }
+
+    /**
+     * Increments the counter of a key.
+     *
+     * @param key key of counter
+     */
+    void increment(int key) {
+      int mask = keys.length - 1;
+      int slot = slotOf(key);
+      while (counts[slot] != 0 && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+
+      if (counts[slot] == 0) {
+        keys[slot] = key;
+        if (++size * 2 > keys.length) {
+          counts[slot] = 1;
+          grow();
+          return;
+        }
+      }
+      counts[slot]++;
+    }
+
+    /**
+     * Doubles capacity, rehashing all counters.
+     */
+    private void grow() {
+      int[] oldKeys = keys;
+      long[] oldCounts = counts;
+      keys = new int[oldKeys.length * 2];
+      counts = new long[oldKeys.length * 2];
+      shift++;
+
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldCounts[i] == 0) {
+          continue;
+        }
+        int slot = slotOf(oldKeys[i]);
+        while (counts[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+
+    /**
+     * Returns counters as a map, for reporting.
+     *
+     * @return map from key to count
+     */
+    Map<Integer, long[]> toMap() {
+      Map<Integer, long[]> map = new HashMap<>();
+      for (int i = 0; i < keys.length; i++) {
+        if (counts[i] != 0) {
+          map.put(keys[i], new long[]{counts[i]});
+        }
+      }
+      return map;
+    }
+  }
+
+  /**
+   * Misses by program counter of the instruction that missed.
+   */
+  private final Counters pcMisses = new Counters();
+
+  /**
+   * Misses by line address.
+   */
+  private final Counters lineMisses = new Counters();
+
+  /**
+   * Instantiates a cache from a configuration. Sizes must be powers of 2, and lines must be 2 to
+   * {@link microsim.simulation.component.bus.Bus#MAX_BURST_LENGTH} words long so that they can be
+   * filled by a single burst.
+   *
+   * @param name name of cache
+   * @param config configuration
+   */
+  public Cache(String name, Config config) {
+    if (Integer.bitCount(config.size) != 1 || Integer.bitCount(config.lineSize) != 1
+            || Integer.bitCount(config.ways) != 1) {
+      throw new RuntimeException("Cache sizes and ways must be powers of 2");
+    }
+    if (config.lineSize < 8 || config.lineSize / 4 > Bus.MAX_BURST_LENGTH) {
+      throw new RuntimeException("Cache line size must be between 8 and "
+              + Bus.MAX_BURST_LENGTH * 4 + " bytes");
+    }
+    if (config.size < config.lineSize * config.ways) {
+      throw new RuntimeException("Cache too small for " + config.ways + " ways");
+    }
+
+    this.name = name;
+    this.config = config;
+
+    ways = config.ways;
+    sets = config.size / (config.lineSize * ways);
+    lineShift = Integer.numberOfTrailingZeros(config.lineSize);
+    lineWords = config.lineSize / 4;
+
+    tags = new int[sets * ways];
+    valid = new boolean[sets * ways];
+    dirty = new boolean[sets * ways];
+    stamps = new long[sets * ways];
+    data = new int[sets * ways * lineWords];
+  }
+
+  /**
+   * Attaches the memory space behind the cache. Extended RAM is only cacheable as far as the
+   * memory space maps it.
+   *
+   * @param memory memory space behind the cache
+   */
+  public void attachMemory(MemorySpace memory) {
+    this.memory = memory;
+  }
+
+  /**
+   * Checks if an access can go through the cache: it must be to EPROM, RAM or mapped extended RAM,
+   * and not cross lines. Stores to EPROM are only cacheable if
+   * {@link microsim.simulation.component.memory.MemorySpace#ALLOW_EPROM_WRITES} is set.
+   *
+   * @param addr address of access
+   * @param byteSelect byte select of access
+   * @param store is the access a store?
+   * @return is the access cacheable?
+   */
+  public boolean isCacheable(int addr, int byteSelect, boolean store) {
+    int last = addr + Bus.byteSelectSize(byteSelect) - 1;
+    int first = store && !MemorySpace.ALLOW_EPROM_WRITES ? MemorySpace.RAM_START
+            : MemorySpace.EPROM_START;
+    boolean inRegion = addr >= first && last <= MemorySpace.RAM_END
+            || memory != null && addr >= MemorySpace.XRAM_START && last < memory.getXramEnd();
+    return inRegion && (addr ^ last) >>> lineShift == 0;
+  }
+
+  /**
+   * Returns address of the line holding an address.
+   *
+   * @param addr address
+   * @return line address
+   */
+  public int lineAddress(int addr) {
+    return addr & ~(config.lineSize - 1);
+  }
+
+  /**
+   * Returns set index of an address.
+   *
+   * @param addr address
+   * @return set index
+   */
+  private int setOf(int addr) {
+    return (addr >>> lineShift) & (sets - 1);
+  }
+
+  /**
+   * Looks an address up, counting a hit or a miss.
+   *
+   * @param addr address to look up
+   * @return slot holding the line, or -1 on misses
+   */
+  int lookup(int addr) {
+    int slot = find(addr);
+    if (slot < 0) {
+      misses++;
+      return -1;
+    }
+
+    hits++;
+    if (config.replacement == Replacement.LRU) {
+      stamps[slot] = ++clock;
+    }
+    return slot;
+  }
+
+  /**
+   * Records a miss for statistics.
+   *
+   * @param pc program counter of instruction that missed
+   * @param addr address that missed
+   */
+  void recordMiss(int pc, int addr) {
+    pcMisses.increment(pc);
+    lineMisses.increment(lineAddress(addr));
+  }
+
+  /**
+   * Chooses the slot a line should be filled in, according to replacement policy.
+   *
+   * @param addr address of line to fill
+   * @return victim slot
+   */
+  int victim(int addr) {
+    int base = setOf(addr) * ways;
+
+    // prefer empty slots
+    for (int slot = base; slot < base + ways; slot++) {
+      if (!valid[slot]) {
+        return slot;
+      }
+    }
+
+    if (config.replacement == Replacement.RANDOM) {
+      // xorshift
+      randomState ^= randomState << 13;
+      randomState ^= randomState >>> 17;
+      randomState ^= randomState << 5;
+      return base + (randomState & (ways - 1));
+    }
+
+    // evict oldest stamp
+    int victim = base;
+    for (int slot = base + 1; slot < base + ways; slot++) {
+      if (stamps[slot] < stamps[victim]) {
+        victim = slot;
+      }
+    }
+    return victim;
+  }
+
+  /**
+   * Checks if a slot holds a line that must be written back before eviction.
+   *
+   * @param slot slot to check
+   * @return is slot dirty?
+   */
+  boolean isDirty(int slot) {
+    return valid[slot] && dirty[slot];
+  }
+
+  /**
+   * Copies the line in a slot out, to be written back, and counts the write back.
+   *
+   * @param slot slot to copy
+   * @param buffer buffer to copy to
+   * @return address of line
+   */
+  int evict(int slot, int[] buffer) {
+    System.arraycopy(data, slot * lineWords, buffer, 0, lineWords);
+    writebacks++;
+    return tags[slot] << lineShift;
+  }
+
+  /**
+   * Fills a slot with a line.
+   *
+   * @param slot slot to fill
+   * @param addr address within line
+   * @param buffer line data
+   */
+  void fill(int slot, int addr, int[] buffer) {
+    System.arraycopy(buffer, 0, data, slot * lineWords, lineWords);
+    tags[slot] = addr >>> lineShift;
+    valid[slot] = true;
+    dirty[slot] = false;
+    stamps[slot] = ++clock;
+  }
+
+  /**
+   * Reads data from a slot. Data is zero-extended, as if read from the bus.
+   *
+   * @param slot slot holding address
+   * @param addr address to read
+   * @param byteSelect size of data
+   * @return data read
+   */
+  int read(int slot, int addr, int byteSelect) {
+    int offset = addr & (config.lineSize - 1);
+    int word = data[slot * lineWords + (offset >>> 2)];
+
+    // words are aligned as lines are, shift within word
+    int value = word >>> ((offset & 3) * 8);
+    return switch (byteSelect) {
+      case Bus.ByteSelect.WORD ->
+        (offset & 3) == 0 ? word : readUnaligned(slot, offset, 4);
+      case Bus.ByteSelect.HALF ->
+        (offset & 3) <= 2 ? value & 0xffff : readUnaligned(slot, offset, 2);
+      default ->
+        value & 0xff;
+    };
+  }
+
+  /**
+   * Reads data that spans two words of a slot, a byte at a time.
+   *
+   * @param slot slot holding data
+   * @param offset offset of data in line
+   * @param size size of data, in bytes
+   * @return data read
+   */
+  private int readUnaligned(int slot, int offset, int size) {
+    int value = 0;
+    for (int i = size - 1; i >= 0; i--) {
+      int o = offset + i;
+      value = (value << 8) | ((data[slot * lineWords + (o >>> 2)] >>> ((o & 3) * 8)) & 0xff);
+    }
+    return value;
+  }
+
+  /**
+   * Writes data to a slot, marking it dirty for write-back caches.
+   *
+   * @param slot slot holding address
+   * @param addr address to write
+   * @param byteSelect size of data
+   * @param value data to write
+   */
+  void write(int slot, int addr, int byteSelect, int value) {
+    int offset = addr & (config.lineSize - 1);
+    int size = Bus.byteSelectSize(byteSelect);
+
+    for (int i = 0; i < size; i++) {
+      int o = offset + i;
+      int idx = slot * lineWords + (o >>> 2);
+      int shift = (o & 3) * 8;
+      data[idx] = (data[idx] & ~(0xff << shift)) | (((value >>> (i * 8)) & 0xff) << shift);
+    }
+
+    if (config.writePolicy == WritePolicy.WRITE_BACK) {
+      dirty[slot] = true;
+    }
+  }
+
+  /**
+   * Writes all dirty lines back to memory and marks them clean. Lines are written to the memory
+   * space directly, with no bus transaction, and stay valid.
+   *
+   * @param memory memory space to write lines to
+   * @return number of lines written back
+   */
+  public int flush(MemorySpace memory) {
+    int flushed = 0;
+
+    for (int slot = 0; slot < valid.length; slot++) {
+      if (isDirty(slot)) {
+        writeBack(memory, slot);
+        flushed++;
+      }
+    }
+
+    return flushed;
+  }
+
+  /**
+   * Writes the dirty lines holding an address range back to memory and marks them clean, as
+   * {@link #flush(MemorySpace)} does for the whole cache.
+   *
+   * @param memory memory space to write lines to
+   * @param addr first address of range
+   * @param size size of range, in bytes
+   * @return number of lines written back
+   */
+  public int flush(MemorySpace memory, int addr, int size) {
+    int flushed = 0;
+
+    for (long line = lineAddress(addr) & 0xffffffffL; line < (addr & 0xffffffffL) + size;
+            line += config.lineSize) {
+      int slot = find((int) line);
+      if (slot >= 0 && isDirty(slot)) {
+        writeBack(memory, slot);
+        flushed++;
+      }
+    }
+
+    return flushed;
+  }
+
+  /**
+   * Writes the line in a slot back to memory, directly, and marks it clean.
+   *
+   * @param memory memory space to write line to
+   * @param slot slot of line
+   */
+  private void writeBack(MemorySpace memory, int slot) {
+    int addr = tags[slot] << lineShift;
+    for (int i = 0; i < config.lineSize; i++) {
+      int word = data[slot * lineWords + (i >>> 2)];
+      memory.writeMemory(addr + i, (byte) (word >>> ((i & 3) * 8)), true);
+    }
+    dirty[slot] = false;
+    writebacks++;
+  }
+
+  /**
+   * Finds the slot holding an address, without counting a hit or a miss.
+   *
+   * @param addr address to find
+   * @return slot holding the line, or -1 if no slot does
+   */
+  private int find(int addr) {
+    int tag = addr >>> lineShift;
+    int base = setOf(addr) * ways;
+
+    for (int slot = base; slot < base + ways; slot++) {
+      if (valid[slot] && tags[slot] == tag) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Drops all lines, so that the next accesses fill from memory. Dirty lines are lost: flush them
+   * first with {@link #flush(MemorySpace)} if memory should keep them.
+   */
+  public void invalidate() {
+    Arrays.fill(valid, false);
+    Arrays.fill(dirty, false);
+  }
+
+  /**
+   * Drops the lines holding an address range, as {@link #invalidate()} does for the whole cache.
+   * Dirty lines are lost: flush them first with {@link #flush(MemorySpace, int, int)} if memory
+   * should keep them.
+   *
+   * @param addr first address of range
+   * @param size size of range, in bytes
+   */
+  public void invalidate(int addr, int size) {
+    for (long line = lineAddress(addr) & 0xffffffffL; line < (addr & 0xffffffffL) + size;
+            line += config.lineSize) {
+      int slot = find((int) line);
+      if (slot >= 0) {
+        valid[slot] = false;
+        dirty[slot] = false;
+      }
+    }
+  }
+
+  /**
+   * Returns number of hits.
+   *
+   * @return hits
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns number of misses.
+   *
+   * @return misses
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns number of dirty lines written back.
+   *
+   * @return write backs
+   */
+  public long getWritebacks() {
+    return writebacks;
+  }
+
+  /**
+   * Returns hit rate.
+   *
+   * @return hits over accesses, 0 if no accesses were made
+   */
+  public double getHitRate() {
+    long accesses = hits + misses;
+    return accesses == 0 ? 0 : (double) hits / accesses;
+  }
+
+  /**
+   * Sorts a miss map by descending misses.
+   *
+   * @param map miss map
+   * @return sorted entries
+   */
+  private static List<Map.Entry<Integer, long[]>> sorted(Map<Integer, long[]> map) {
+    List<Map.Entry<Integer, long[]>> entries = new ArrayList<>(map.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+    return entries;
+  }
+
+  /**
+   * Exports miss statistics as CSV, with a row for each program counter and each line address that
+   * missed, sorted by descending misses. Columns are kind (pc or line), address and misses.
+   *
+   * @param path path of CSV file
+   * @throws IOException if file can't be written
+   */
+  public void exportMisses(Path path) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+      writer.write("kind,address,misses\n");
+      for (Map.Entry<Integer, long[]> entry : sorted(pcMisses.toMap())) {
+        writer.write("pc," + DebugShell.int32ToString(entry.getKey()) + ","
+                + entry.getValue()[0] + "\n");
+      }
+      for (Map.Entry<Integer, long[]> entry : sorted(lineMisses.toMap())) {
+        writer.write("line," + DebugShell.int32ToString(entry.getKey()) + ","
+                + entry.getValue()[0] + "\n");
+      }
+    }
+  }
+
+  /**
+   * Returns the program counters that missed the most.
+   *
+   * @param count number of entries to return
+   * @return program counters and their misses, by descending misses
+   */
+  public List<Map.Entry<Integer, long[]>> getTopMissPcs(int count) {
+    List<Map.Entry<Integer, long[]>> entries = sorted(pcMisses.toMap());
+    return entries.subList(0, Math.min(count, entries.size()));
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + config + "): hits: " + hits + ", misses: " + misses + ", write backs: "
+            + writebacks + ", hit rate: " + String.format("%.1f", getHitRate() * 100) + "%";
+  }
+}
@@ -313,6 +313,47 @@ public class Decoder {
    */
   static final Trie instTrie = new Trie();
 
+  /**
+   * Size of the decode cache in bits.
+   */
+  static final int DECODE_CACHE_SHIFT = 12;
+
+  /**
+   * Represents the microops an instruction decodes to. Immutable, so that decode cache entries can
+   * be shared by processors of concurrent simulations.
+   */
+  private static class DecodedInstruction {
+
+    /**
+     * Decoded instruction.
+     */
+    private final int inst;
+
+    /**
+     * Microops the instruction decodes to.
+     */
+    private final MicroOp[] ops;
+
+    /**
+     * Instantiates a decoded instruction.
+     *
+     * @param inst decoded instruction
+     * @param ops microops the instruction decodes to
+     */
+    private DecodedInstruction(int inst, MicroOp[] ops) {
+      this.inst = inst;
+      this.ops = ops;
+    }
+  }
+
+  /**
+   * Direct-mapped cache of decoded instructions, indexed by a hash of the instruction. Microops are
+   * immutable, so the same ones can be queued each time an instruction is executed, and decoding
+   * allocates nothing on hits.
+   */
+  private static final DecodedInstruction[] decodeCache
+          = new DecodedInstruction[1 << DECODE_CACHE_SHIFT];
+
   // setup trie
   static {
     // R format
@@ -490,15 +531,28 @@ public class Decoder {
    * @param inst instruction to decode
    */
   public static void decode(Processor proc, int inst) {
-    // get microops
-    List<OpType> opList = instTrie.get(inst);
-    if (opList == null) {
-      throw new RuntimeException("Unknown instruction " + DebugShell.int32ToString(inst));
+    // look instruction up in cache
+    int idx = (inst * 0x9e3779b9) >>> (32 - DECODE_CACHE_SHIFT);
+    DecodedInstruction decoded = decodeCache[idx];
+
+    if (decoded == null || decoded.inst != inst) {
+      // get microops
+      List<OpType> opList = instTrie.get(inst);
+      if (opList == null) {
+        throw new RuntimeException("Unknown instruction " + DebugShell.int32ToString(inst));
+      }
+
+      // complete microops and cache them
+      MicroOp[] ops = new MicroOp[opList.size()];
+      for (int i = 0; i < ops.length; i++) {
+        ops[i] = new MicroOp(opList.get(i), inst);
+      }
+      decoded = new DecodedInstruction(inst, ops);
+      decodeCache[idx] = decoded;
     }
 
-    // iterate completing microops and pushing to processor queue
-    for (OpType opType : opList) {
-      MicroOp op = new MicroOp(opType, inst);
+    // push microops to processor queue
+    for (MicroOp op : decoded.ops) {
       proc.opQueue.add(op);
     }
   }
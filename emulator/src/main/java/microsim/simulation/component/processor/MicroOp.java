@@ -189,6 +189,42 @@ public class MicroOp {
      * Step 1 of write routine
      */
     MEM_WRITE1,
+    /**
+     * Step 1 of burst read routine
+     */
+    BURST_READ1,
+    /**
+     * Reads a beat of burst read routine
+     */
+    BURST_READ_BEAT,
+    /**
+     * Drives a beat of burst write routine
+     */
+    BURST_WRITE_BEAT,
+    /**
+     * Starts a cache line fill after a write back
+     */
+    CACHE_FILL_START,
+    /**
+     * Installs a filled cache line and completes the access that missed
+     */
+    CACHE_FILL,
+    /**
+     * Starts the next bus burst of a burst read routine
+     */
+    BURST_READ_NEXT,
+    /**
+     * Starts the next bus burst of a burst write routine
+     */
+    BURST_WRITE_NEXT,
+    /**
+     * Installs a fetched block in the fetch buffer and completes the fetch
+     */
+    FETCH_FILL,
+    /**
+     * Installs a loaded block in the load buffer and completes the load
+     */
+    LOAD_FILL,
   }
 
   /**
@@ -220,6 +256,38 @@ public class MicroOp {
     return inst;
   }
 
+  /**
+   * Signals whether this microop starts a bus transaction or takes data from the bus, and should
+   * then be stalled while {@link microsim.simulation.component.bus.Bus#waitRequest} is high.
+   */
+  private final boolean waitsForBus;
+
+  /**
+   * Returns whether this microop should be stalled while a responder requests wait.
+   *
+   * @return does microop wait for bus?
+   */
+  public boolean waitsForBus() {
+    return waitsForBus;
+  }
+
+  /**
+   * Checks if microops of a type start a bus transaction or take data from the bus.
+   *
+   * @param type type of microop
+   * @return do microops of type wait for bus?
+   */
+  private static boolean waitsForBus(OpType type) {
+    return switch (type) {
+      case LOAD_BYTE, LOAD_HALF, LOAD_WORD, STORE_BYTE, STORE_HALF, STORE_WORD, MEM_READ2,
+              BURST_READ_BEAT, BURST_WRITE_BEAT, BURST_READ_NEXT, BURST_WRITE_NEXT,
+              CACHE_FILL_START ->
+        true;
+      default ->
+        false;
+    };
+  }
+
   /**
    * Constructs a microop from its type and the associated instruction.
    *
@@ -229,6 +297,7 @@ public class MicroOp {
   public MicroOp(OpType type, int inst) {
     this.type = type;
     this.inst = inst;
+    this.waitsForBus = waitsForBus(type);
   }
 
   /**
@@ -239,6 +308,7 @@ public class MicroOp {
   public MicroOp(OpType type) {
     this.type = type;
     this.inst = 0;
+    this.waitsForBus = waitsForBus(type);
   }
 
   /**
@@ -285,6 +355,24 @@ public class MicroOp {
     return immI(inst) & 0x1f;
   }
 
+  /**
+   * Writes buffered stores out before this microop if needed, queueing the microop again to run
+   * once they are written.
+   *
+   * @param proc processor instance to run on
+   * @param drain must buffered stores be written out first?
+   * @return were buffered stores written out first?
+   */
+  private boolean drainsFirst(Processor proc, boolean drain) {
+    if (!drain) {
+      return false;
+    }
+
+    proc.opQueue.addFirst(this);
+    BusInterface.drainRoutine(proc);
+    return true;
+  }
+
   /**
    * Executes a microop on a processor instance.
    *
@@ -376,13 +464,22 @@ public class MicroOp {
 
       // I format (load)
       case LOAD_BYTE -> {
-        BusInterface.doReadRoutine(proc, getAddrL(proc, inst), Bus.ByteSelect.BYTE);
+        int addr = getAddrL(proc, inst);
+        if (!drainsFirst(proc, BusInterface.mustDrain(proc, addr, Bus.ByteSelect.BYTE, false))) {
+          BusInterface.doCachedReadRoutine(proc, proc.dcache, addr, Bus.ByteSelect.BYTE);
+        }
       }
       case LOAD_HALF -> {
-        BusInterface.doReadRoutine(proc, getAddrL(proc, inst), Bus.ByteSelect.HALF);
+        int addr = getAddrL(proc, inst);
+        if (!drainsFirst(proc, BusInterface.mustDrain(proc, addr, Bus.ByteSelect.HALF, false))) {
+          BusInterface.doCachedReadRoutine(proc, proc.dcache, addr, Bus.ByteSelect.HALF);
+        }
       }
       case LOAD_WORD -> {
-        BusInterface.doReadRoutine(proc, getAddrL(proc, inst), Bus.ByteSelect.WORD);
+        int addr = getAddrL(proc, inst);
+        if (!drainsFirst(proc, BusInterface.mustDrain(proc, addr, Bus.ByteSelect.WORD, false))) {
+          BusInterface.doCachedReadRoutine(proc, proc.dcache, addr, Bus.ByteSelect.WORD);
+        }
       }
 
       case LOAD_POST -> {
@@ -408,16 +505,25 @@ public class MicroOp {
 
       // S format
       case STORE_BYTE -> {
-        BusInterface.doWriteRoutine(proc, getAddrS(proc, inst), proc.getRegister(rs2(inst)),
-                Bus.ByteSelect.BYTE);
+        int addr = getAddrS(proc, inst);
+        if (!drainsFirst(proc, BusInterface.mustDrain(proc, addr, Bus.ByteSelect.BYTE, true))) {
+          BusInterface.doCachedWriteRoutine(proc, proc.dcache, addr, proc.getRegister(rs2(inst)),
+                  Bus.ByteSelect.BYTE);
+        }
       }
       case STORE_HALF -> {
-        BusInterface.doWriteRoutine(proc, getAddrS(proc, inst), proc.getRegister(rs2(inst)),
-                Bus.ByteSelect.HALF);
+        int addr = getAddrS(proc, inst);
+        if (!drainsFirst(proc, BusInterface.mustDrain(proc, addr, Bus.ByteSelect.HALF, true))) {
+          BusInterface.doCachedWriteRoutine(proc, proc.dcache, addr, proc.getRegister(rs2(inst)),
+                  Bus.ByteSelect.HALF);
+        }
       }
       case STORE_WORD -> {
-        BusInterface.doWriteRoutine(proc, getAddrS(proc, inst), proc.getRegister(rs2(inst)),
-                Bus.ByteSelect.WORD);
+        int addr = getAddrS(proc, inst);
+        if (!drainsFirst(proc, BusInterface.mustDrain(proc, addr, Bus.ByteSelect.WORD, true))) {
+          BusInterface.doCachedWriteRoutine(proc, proc.dcache, addr, proc.getRegister(rs2(inst)),
+                  Bus.ByteSelect.WORD);
+        }
       }
 
       // B format
@@ -487,6 +593,11 @@ public class MicroOp {
 
       // I format (environment)
       case ENV -> {
+        // buffered stores are written out before the environment sees memory
+        if (drainsFirst(proc, proc.writeBeats > 0)) {
+          return;
+        }
+
         switch (immI(inst)) {
           case 0x00 -> { // ecall
             proc.raiseEvent(new HaltEvent(proc));
@@ -516,8 +627,7 @@ public class MicroOp {
         proc.temp = proc.bus.dataLine.read();
 
         // log read data
-        proc.raiseDebugEvent(new DebugEvent(proc, "Processor read routine finished and got value ",
-                proc.temp));
+        proc.raiseDebugEvent("Processor read routine finished and got value ", proc.temp);
       }
 
       // memory write routine (step 0 is done by bus interface)
@@ -529,14 +639,123 @@ public class MicroOp {
         proc.bus.dataLine.release(proc);
 
         // log data routine finished
-        proc.raiseDebugEvent(new DebugEvent(proc, "Processor write routine finished"));
+        proc.raiseDebugEvent("Processor write routine finished");
+      }
+
+      // burst read routine (step 0 is done by bus interface)
+      case BURST_READ1 -> {
+        // lower control lines, responder keeps streaming
+        proc.bus.readEnable.driveBool(proc, false);
+        proc.bus.burstLength.drive(proc, 0);
+      }
+      case BURST_READ_BEAT -> {
+        // read beat from bus
+        proc.burstBuffer[proc.burstIndex++] = proc.bus.dataLine.read();
+
+        // log burst finished
+        if (proc.burstIndex == proc.burstBeats) {
+          proc.raiseDebugEvent("Processor burst read routine finished");
+        }
+      }
+
+      // burst write routine (step 0 is done by bus interface)
+      case BURST_WRITE_BEAT -> {
+        // lower control lines on first beat, responder keeps taking beats
+        if (proc.burstIndex == proc.burstChunkStart + 1) {
+          proc.bus.writeEnable.driveBool(proc, false);
+          proc.bus.burstLength.drive(proc, 0);
+        }
+
+        // drive next beat
+        proc.bus.dataLine.drive(proc, proc.burstBuffer[proc.burstIndex++]);
+
+        // release data line on last beat
+        if (proc.burstIndex == proc.burstChunkEnd) {
+          proc.bus.dataLine.release(proc);
+
+          // log burst finished
+          if (proc.burstIndex == proc.burstBeats) {
+            proc.raiseDebugEvent("Processor burst write routine finished");
+          }
+        }
+      }
+
+      // next bus burst of long burst routines
+      case BURST_READ_NEXT -> {
+        BusInterface.burstReadChunk(proc);
+      }
+      case BURST_WRITE_NEXT -> {
+        BusInterface.burstWriteChunk(proc);
+      }
+
+      // cache line fill (started by bus interface)
+      case CACHE_FILL_START -> {
+        // write back is done, fill line
+        BusInterface.fillRoutine(proc);
+      }
+      case CACHE_FILL -> {
+        // line is in burst buffer
+        Cache cache = proc.fillCache;
+        cache.fill(proc.fillSlot, proc.fillAddr, proc.burstBuffer);
+
+        // complete access
+        if (proc.fillStore) {
+          cache.write(proc.fillSlot, proc.fillAddr, proc.fillByteSelect, proc.fillData);
+          proc.simulation.memory.observeCached(proc.fillAddr, proc.fillByteSelect, proc.fillData,
+                  true);
+        } else {
+          proc.temp = cache.read(proc.fillSlot, proc.fillAddr, proc.fillByteSelect);
+        }
+        proc.byteSelect = proc.fillByteSelect;
+
+        // log fill finished
+        proc.raiseDebugEvent("Processor filled cache line at address ",
+                cache.lineAddress(proc.fillAddr));
+      }
+
+      // fetch and load buffer fills (started by bus interface)
+      case FETCH_FILL -> {
+        // block is in burst buffer
+        System.arraycopy(proc.burstBuffer, 0, proc.fetchBuffer, 0, Processor.FETCH_BUFFER_WORDS);
+        proc.fetchValid = true;
+
+        // complete fetch
+        proc.byteSelect = ByteSelect.WORD;
+        proc.temp = proc.fetchBuffer[(proc.pc - proc.fetchBase) >>> 2];
+
+        // log fill finished
+        proc.raiseDebugEvent("Processor filled fetch buffer at address ", proc.fetchBase);
+      }
+      case LOAD_FILL -> {
+        // block is in burst buffer
+        System.arraycopy(proc.burstBuffer, 0, proc.loadBuffer, 0, Processor.LOAD_BUFFER_WORDS);
+        proc.loadValid = true;
+
+        // complete load
+        proc.byteSelect = proc.fillByteSelect;
+        proc.temp = BusInterface.loadBufferData(proc, proc.fillAddr, proc.fillByteSelect);
+
+        // log fill finished
+        proc.raiseDebugEvent("Processor filled load buffer at address ", proc.loadBase);
       }
     }
   }
 
+  /**
+   * Describes a microop from its type and instruction, as carried by
+   * {@link microsim.simulation.event.MicroOpEvent} events.
+   *
+   * @param type ordinal of microop type
+   * @param inst instruction microop translates, 0 if freestanding
+   * @return description of microop
+   */
+  public static String describe(int type, int inst) {
+    return OpType.values()[type].name() + " - ("
+            + (inst == 0 ? "freestanding" : DebugShell.int32ToString(inst)) + ")";
+  }
+
   @Override
   public String toString() {
-    return type.name() + " - (" + (inst == 0 ? "freestanding" : DebugShell.int32ToString(inst))
-            + ")";
+    return describe(type.ordinal(), inst);
   }
 }
@@ -1,11 +1,11 @@
 package microsim.simulation.component.processor;
 
+import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedList;
 import microsim.simulation.Simulation;
 import microsim.simulation.component.*;
 import microsim.simulation.component.bus.*;
-import microsim.simulation.event.*;
+import microsim.simulation.event.MicroOpEvent;
 
 /**
  * A processor implementing the RISC-V RV32I ISA. This comprises basic memory movement, arithmetic
@@ -163,6 +163,8 @@ public class Processor extends BusComponent {
     bus.readEnable.driveBool(this, false);
     bus.writeEnable.driveBool(this, false);
     bus.byteSelect.driveBool(this, false);
+    bus.burstLength.driveBool(this, false);
+    bus.burstMode.driveBool(this, false);
 
     // reset instruction pointer
     pc = RESET_INSTRUCTION_ADDRESS;
@@ -179,9 +181,256 @@ public class Processor extends BusComponent {
   int byteSelect;
 
   /**
-   * Queue of microops to execute.
+   * Buffer of beats read or to be written by burst routines.
    */
-  Deque<MicroOp> opQueue = new LinkedList<>();
+  int[] burstBuffer = new int[Bus.MAX_BURST_LENGTH];
+
+  /**
+   * Index of the next beat in {@link #burstBuffer}.
+   */
+  int burstIndex;
+
+  /**
+   * Number of beats of the current burst routine.
+   */
+  int burstBeats;
+
+  /**
+   * Address of the first beat of the current burst routine.
+   */
+  int burstAddr;
+
+  /**
+   * Address increment mode of the current burst routine (see
+   * {@link microsim.simulation.component.bus.Bus.BurstMode}).
+   */
+  int burstMode;
+
+  /**
+   * Index of the first beat of the bus burst being transferred. Burst routines longer than
+   * {@link microsim.simulation.component.bus.Bus#MAX_BURST_LENGTH} beats are split in several bus
+   * bursts.
+   */
+  int burstChunkStart;
+
+  /**
+   * Index past the last beat of the bus burst being transferred.
+   */
+  int burstChunkEnd;
+
+  /**
+   * Returns burst buffer, holding beats read by the last burst read routine.
+   *
+   * @return burst buffer
+   */
+  public int[] getBurstBuffer() {
+    return burstBuffer;
+  }
+
+  /**
+   * Number of words in the fetch buffer, read with a single burst when fetching outside it.
+   */
+  public static final int FETCH_BUFFER_WORDS = 4;
+
+  /**
+   * Size of the fetch buffer, in bytes. Buffered blocks are aligned to it.
+   */
+  static final int FETCH_BUFFER_SIZE = FETCH_BUFFER_WORDS * 4;
+
+  /**
+   * Fetch buffer, holding the instruction words of an aligned block of memory. Used when there's no
+   * instruction cache, so that sequential instructions are fetched a block at a time.
+   */
+  int[] fetchBuffer = new int[FETCH_BUFFER_WORDS];
+
+  /**
+   * Address of the block held in {@link #fetchBuffer}.
+   */
+  int fetchBase;
+
+  /**
+   * Signals whether {@link #fetchBuffer} holds a block.
+   */
+  boolean fetchValid;
+
+  /**
+   * Number of words in the load buffer, read with a single burst when loading outside it.
+   */
+  public static final int LOAD_BUFFER_WORDS = 4;
+
+  /**
+   * Size of the load buffer, in bytes. Buffered blocks are aligned to it.
+   */
+  static final int LOAD_BUFFER_SIZE = LOAD_BUFFER_WORDS * 4;
+
+  /**
+   * Load buffer, holding the words of an aligned block of memory. Used by loads that don't go
+   * through the data cache, so that sequential loads read memory a block at a time. Device ports
+   * are never buffered.
+   */
+  int[] loadBuffer = new int[LOAD_BUFFER_WORDS];
+
+  /**
+   * Address of the block held in {@link #loadBuffer}.
+   */
+  int loadBase;
+
+  /**
+   * Signals whether {@link #loadBuffer} holds a block.
+   */
+  boolean loadValid;
+
+  /**
+   * Maximum number of stores in the write buffer, written out with a single burst once reached.
+   */
+  public static final int WRITE_BUFFER_BEATS = 16;
+
+  /**
+   * Size of the aligned blocks runs of buffered stores to memory stay within, in bytes, so that
+   * their bursts never cross memory regions.
+   */
+  static final int WRITE_BUFFER_SIZE = WRITE_BUFFER_BEATS * 4;
+
+  /**
+   * Number of instructions after the last buffered store the write buffer is written out at, so
+   * that stores don't linger once a run is over.
+   */
+  static final int WRITE_BUFFER_IDLE = 32;
+
+  /**
+   * Write buffer, gathering a run of stores that don't go through the data cache, of the same size,
+   * to consecutive memory addresses or to the same port of a device that takes bursts. Runs are
+   * written out with a single burst.
+   */
+  int[] writeBuffer = new int[WRITE_BUFFER_BEATS];
+
+  /**
+   * Address of the first store in {@link #writeBuffer}.
+   */
+  int writeAddr;
+
+  /**
+   * Byte select of the stores in {@link #writeBuffer}.
+   */
+  int writeByteSelect;
+
+  /**
+   * Address increment mode of the run in {@link #writeBuffer} (see
+   * {@link microsim.simulation.component.bus.Bus.BurstMode}).
+   */
+  int writeMode;
+
+  /**
+   * Number of stores in {@link #writeBuffer}. 0 signals the buffer is empty.
+   */
+  int writeBeats;
+
+  /**
+   * Number of instructions fetched when the last store was buffered.
+   */
+  long writeInstruction;
+
+  /**
+   * Drops the fetch and load buffers if they hold any byte of an address range, so that data
+   * written by the processor, or by devices moving data to memory on their own, is read again.
+   *
+   * @param addr start of range
+   * @param size size of range, in bytes
+   */
+  public void invalidateBuffers(int addr, int size) {
+    if (fetchValid && addr < fetchBase + FETCH_BUFFER_SIZE && fetchBase < addr + size) {
+      fetchValid = false;
+    }
+    if (loadValid && addr < loadBase + LOAD_BUFFER_SIZE && loadBase < addr + size) {
+      loadValid = false;
+    }
+  }
+
+  /**
+   * Instruction cache. Null means fetches go through the fetch buffer.
+   */
+  Cache icache;
+
+  /**
+   * Data cache. Null means loads and stores go through the load and write buffers.
+   */
+  Cache dcache;
+
+  /**
+   * Attaches L1 caches to this processor. Either can be null to leave it disabled.
+   *
+   * @param icache instruction cache
+   * @param dcache data cache
+   */
+  public void attachCaches(Cache icache, Cache dcache) {
+    this.icache = icache;
+    this.dcache = dcache;
+
+    for (Cache cache : new Cache[]{icache, dcache}) {
+      if (cache != null) {
+        cache.attachMemory(simulation.memory);
+      }
+    }
+  }
+
+  /**
+   * Returns instruction cache.
+   *
+   * @return instruction cache, or null if disabled
+   */
+  public Cache getInstructionCache() {
+    return icache;
+  }
+
+  /**
+   * Returns data cache.
+   *
+   * @return data cache, or null if disabled
+   */
+  public Cache getDataCache() {
+    return dcache;
+  }
+
+  /**
+   * Cache being filled by the current line fill.
+   */
+  Cache fillCache;
+
+  /**
+   * Slot the current line fill goes to.
+   */
+  int fillSlot;
+
+  /**
+   * Address of the access that caused the current line fill, or load buffer fill.
+   */
+  int fillAddr;
+
+  /**
+   * Byte select of the access that caused the current line fill, or load buffer fill.
+   */
+  int fillByteSelect;
+
+  /**
+   * Signals whether the access that caused the current line fill is a store.
+   */
+  boolean fillStore;
+
+  /**
+   * Data of the store that caused the current line fill.
+   */
+  int fillData;
+
+  /**
+   * Queue of microops to execute. Sized to hold the microops of the longest burst routine, so that
+   * it never grows.
+   */
+  Deque<MicroOp> opQueue = new ArrayDeque<>(2 * Bus.MAX_BURST_LENGTH);
+
+  /**
+   * Decode microop, queued after each fetch.
+   */
+  private static final MicroOp DECODE = new MicroOp(MicroOp.OpType.DECODE);
 
   /**
    * Returns all current microops, used for debugging.
@@ -193,36 +442,88 @@ public class Processor extends BusComponent {
   }
 
   /**
-   * Sets processor up for a fetch execute cycle, called when microop queue is empty.
+   * Number of cycles the processor was stalled by wait states.
+   */
+  private long waitCycles;
+
+  /**
+   * Returns number of cycles the processor was stalled by wait states.
+   *
+   * @return stalled cycles
+   */
+  public long getWaitCycles() {
+    return waitCycles;
+  }
+
+  /**
+   * Number of instructions fetched.
+   */
+  private long instructions;
+
+  /**
+   * Returns number of instructions fetched, that is run or being run.
+   *
+   * @return instructions fetched
+   */
+  public long getInstructions() {
+    return instructions;
+  }
+
+  /**
+   * Sets processor up for a fetch execute cycle, called when microop queue is empty. If buffered
+   * stores must be written out first (see {@link BusInterface#mustDrainBeforeFetch(Processor)}),
+   * the fetch is left for when the queue is empty again.
    */
   private void fetchDecode() {
+    // write buffered stores out first if the fetch reads them, or if the run is over
+    if (BusInterface.mustDrainBeforeFetch(this)) {
+      BusInterface.drainRoutine(this);
+      return;
+    }
+
+    instructions++;
+
     // read next instruction word and move
-    BusInterface.doReadRoutine(this, pc, Bus.ByteSelect.WORD);
+    if (icache != null) {
+      BusInterface.doCachedReadRoutine(this, icache, pc, Bus.ByteSelect.WORD);
+    } else {
+      BusInterface.doFetchRoutine(this, pc);
+    }
 
     // decode instruction word
-    opQueue.add(new MicroOp(MicroOp.OpType.DECODE));
+    opQueue.add(DECODE);
   }
 
   /**
    * Steps by fetching the next microop and executing it, or filling the queue with
-   * {@link #fetchDecode} if it's empty
+   * {@link #fetchDecode} if it's empty. Fetches and microops that use the bus (see
+   * {@link microsim.simulation.component.processor.MicroOp#waitsForBus()}) are stalled while
+   * {@link microsim.simulation.component.bus.Bus#waitRequest} is high.
    */
   @Override
   public final void step() {
+    // stall if a responder requests wait
+    MicroOp nextOp = opQueue.peek();
+    if (bus.waitRequest.readBool() && (nextOp == null || nextOp.waitsForBus())) {
+      waitCycles++;
+      return;
+    }
+
     // poll next microop
-    MicroOp nextOp = opQueue.poll();
+    opQueue.poll();
 
     // fill the queue if empty, otherwise execute microop
     if (nextOp == null) {
       // log fetch and decode cycle
-      raiseDebugEvent(new DebugEvent(this,
-              "Processor found empty queue and started fetch-decode cycle"));
+      raiseDebugEvent("Processor found empty queue and started fetch-decode cycle");
 
       // actually fetch and decode
       fetchDecode();
     } else {
-      // log microop
-      raiseDebugEvent(new DebugEvent(this, "Processor found microop " + nextOp.toString()));
+      // log microop, formatted only when shown
+      if (isDebugging()) {
+        raiseEvent(new MicroOpEvent(this, nextOp.getType().ordinal(), nextOp.getInstruction()));
+      }
 
       // actually execute microop
       nextOp.execute(this);
@@ -0,0 +1,304 @@
+package microsim.simulation.event;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import microsim.simulation.SpscRing;
+
+/**
+ * Feeds events to a slow listener (windows, logging, exporters) on a thread of its own, so that
+ * threads raising events never block on it. Events are passed through lock-free single-producer
+ * rings ({@link microsim.simulation.SpscRing}): each thread raising events gets a ring of its own
+ * the first time it does, and the listener thread drains them all. Rings of threads that
+ * died are dropped once drained.
+ * <p>
+ * Rings are bounded: if the listener falls behind and a ring fills up, further events from that
+ * thread are dropped (and counted) until it catches up. Halt events are never dropped: they wait
+ * in an unbounded queue, and reach the listener after the events their thread queued before them.
+ * Events from different threads may reach the listener in a different order than they were raised.
+ */
+public class AsyncListener implements SimulationListener {
+
+  /**
+   * Default capacity of each ring, in events.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * Time the listener thread waits for events before checking rings again, in nanoseconds. Only
+   * bounds how long a missed wake up can delay events, producers wake the thread up otherwise.
+   */
+  private static final long PARK_NANOS = 10_000_000;
+
+  /**
+   * Listener events are fed to.
+   */
+  private final SimulationListener listener;
+
+  /**
+   * Capacity of each ring, in events.
+   */
+  private final int capacity;
+
+  /**
+   * Ring of events of a producer thread.
+   */
+  private static class ProducerRing {
+
+    /**
+     * Thread queueing events to the ring.
+     */
+    final Thread owner;
+
+    /**
+     * Positions of ring.
+     */
+    final SpscRing ring;
+
+    /**
+     * Slots of ring.
+     */
+    private final SimulationEvent[] events;
+
+    /**
+     * Instantiates the ring of a producer thread.
+     *
+     * @param owner producer thread
+     * @param capacity ring capacity, in events
+     */
+    ProducerRing(Thread owner, int capacity) {
+      this.owner = owner;
+      ring = new SpscRing(capacity);
+      events = new SimulationEvent[capacity];
+    }
+
+    /**
+     * Queues an event. Only called by the owner thread.
+     *
+     * @param e event to queue
+     * @return was the event queued? False if the ring is full
+     */
+    boolean offer(SimulationEvent e) {
+      long position = ring.claim(1);
+      if (position < 0) {
+        return false;
+      }
+
+      events[(int) position & ring.mask] = e;
+      ring.publish(position + 1);
+      return true;
+    }
+
+    /**
+     * Dequeues an event. Only called by the listener thread.
+     *
+     * @return oldest queued event, null if the ring is empty
+     */
+    SimulationEvent poll() {
+      long position = ring.peek();
+      if (position < 0) {
+        return null;
+      }
+
+      int slot = (int) position & ring.mask;
+      SimulationEvent e = events[slot];
+      events[slot] = null;
+      ring.free(position + 1);
+      return e;
+    }
+  }
+
+  /**
+   * Rings of producer threads. Replaced as a whole when a ring is added or dropped.
+   */
+  private volatile ProducerRing[] rings = new ProducerRing[0];
+
+  /**
+   * Events that must not be dropped, and didn't fit their ring.
+   */
+  private final ConcurrentLinkedQueue<SimulationEvent> overflow = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Thread feeding events to {@link #listener}.
+   */
+  private final Thread thread;
+
+  /**
+   * Is the listener thread about to park? Producers only wake it up if so.
+   */
+  private volatile boolean waiting = false;
+
+  /**
+   * Number of events dropped because a ring was full.
+   */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Instantiates an asynchronous listener with rings of default capacity, and starts its thread.
+   *
+   * @param name name of listener thread
+   * @param listener listener to feed events to
+   */
+  public AsyncListener(String name, SimulationListener listener) {
+    this(name, listener, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Instantiates an asynchronous listener, and starts its thread.
+   *
+   * @param name name of listener thread
+   * @param listener listener to feed events to
+   * @param capacity capacity of each ring, in events, must be a power of 2
+   */
+  public AsyncListener(String name, SimulationListener listener, int capacity) {
+    if (!SpscRing.isValidCapacity(capacity)) {
+      throw new RuntimeException("Event ring capacity must be a power of 2");
+    }
+
+    this.listener = listener;
+    this.capacity = capacity;
+
+    thread = new Thread(this::listenerThread);
+    thread.setName(name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the ring of the current thread, adding one to {@link #rings} if it has none yet.
+   *
+   * @return ring of current thread
+   */
+  private ProducerRing ring() {
+    Thread current = Thread.currentThread();
+    for (ProducerRing r : rings) {
+      if (r.owner == current) {
+        return r;
+      }
+    }
+
+    synchronized (this) {
+      ProducerRing newRing = new ProducerRing(current, capacity);
+      ProducerRing[] newRings = Arrays.copyOf(rings, rings.length + 1);
+      newRings[rings.length] = newRing;
+      rings = newRings;
+      return newRing;
+    }
+  }
+
+  /**
+   * Drops rings of threads that died, once drained. Called by the listener thread.
+   */
+  private synchronized void pruneRings() {
+    ProducerRing[] current = rings;
+    ProducerRing[] kept = null;
+    int count = 0;
+    for (ProducerRing r : current) {
+      if (r.owner.isAlive() || !r.ring.isEmpty()) {
+        if (kept != null) {
+          kept[count] = r;
+        }
+        count++;
+      } else if (kept == null) {
+        // first ring to drop, rings before it are kept
+        kept = Arrays.copyOf(current, current.length);
+      }
+    }
+
+    if (kept != null) {
+      rings = Arrays.copyOf(kept, count);
+    }
+  }
+
+  /**
+   * Queues an event for the listener thread, waking it up if needed. Never blocks.
+   *
+   * @param e event received
+   */
+  @Override
+  public void onSimulationEvent(SimulationEvent e) {
+    if (!ring().offer(e)) {
+      if (!(e instanceof HaltEvent)) {
+        dropped.incrementAndGet();
+        return;
+      }
+
+      // halts must get through
+      overflow.add(e);
+    }
+
+    if (waiting) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Implements the listener thread, that drains rings and feeds events to {@link #listener}.
+   */
+  private void listenerThread() {
+    while (true) {
+      if (drainRings()) {
+        continue;
+      }
+
+      // overflowing events go after what their thread queued before, drain rings again once seen
+      SimulationEvent e = overflow.poll();
+      if (e != null) {
+        drainRings();
+        listener.onSimulationEvent(e);
+        continue;
+      }
+
+      // rings are all empty, drop the ones of dead threads
+      pruneRings();
+
+      // announce wait, then check again for events queued before producers could see it
+      waiting = true;
+      if (allEmpty()) {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+      waiting = false;
+    }
+  }
+
+  /**
+   * Drains all rings, feeding events to {@link #listener}.
+   *
+   * @return were any events drained?
+   */
+  private boolean drainRings() {
+    boolean drained = false;
+    for (ProducerRing r : rings) {
+      SimulationEvent e;
+      while ((e = r.poll()) != null) {
+        listener.onSimulationEvent(e);
+        drained = true;
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * Returns whether all rings and the overflow queue are empty.
+   *
+   * @return are all rings empty?
+   */
+  private boolean allEmpty() {
+    for (ProducerRing r : rings) {
+      if (!r.ring.isEmpty()) {
+        return false;
+      }
+    }
+    return overflow.isEmpty();
+  }
+
+  /**
+   * Returns number of events dropped because the listener fell behind.
+   *
+   * @return dropped events
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
@@ -66,6 +66,33 @@ public class DebugEvent extends SimulationEvent {
     this.int1 = int1;
   }
 
+  /**
+   * Returns debug message, without ints.
+   *
+   * @return debug message
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * Returns first int.
+   *
+   * @return first int, null if the event has none
+   */
+  public Integer getInt0() {
+    return int0;
+  }
+
+  /**
+   * Returns second int.
+   *
+   * @return second int, null if the event has none
+   */
+  public Integer getInt1() {
+    return int1;
+  }
+
   /**
    * Returns information about the event.
    *
@@ -78,7 +105,7 @@ public class DebugEvent extends SimulationEvent {
 
     // lazy concatenate ints
     if (int0 != null) {
-      ret += " " + DebugShell.int32ToString(int1);
+      ret += " " + DebugShell.int32ToString(int0);
     }
     if (int1 != null) {
       ret += ", " + DebugShell.int32ToString(int1);
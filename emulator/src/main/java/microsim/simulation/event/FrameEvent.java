@@ -1,6 +1,6 @@
 package microsim.simulation.event;
 
-import java.awt.image.*;
+import microsim.simulation.component.device.video.FrameBuffers;
 import microsim.simulation.component.device.video.VideoDevice;
 
 /**
@@ -10,21 +10,22 @@ import microsim.simulation.component.device.video.VideoDevice;
 public class FrameEvent extends SimulationEvent {
 
   /**
-   * Frame buffer of the {@link microsim.simulation.component.device.video.VideoDevice} that
-   * finished rendering
+   * Buffers the {@link microsim.simulation.component.device.video.VideoDevice} that finished
+   * rendering published the frame to. Consumers take frames from them rather than reading the
+   * renderer's frame buffer, which keeps being drawn on.
    */
-  public BufferedImage frame;
+  public final FrameBuffers frames;
 
   /**
    * Instantiates frame event getting a reference to the video device that raised it. Also gets a
-   * reference to the frame buffer.
+   * reference to the buffers the frame was published to.
    *
    * @param owner video device that raised frame event
-   * @param frame rendered frame
+   * @param frames buffers the rendered frame was published to
    */
-  public FrameEvent(VideoDevice owner, BufferedImage frame) {
+  public FrameEvent(VideoDevice owner, FrameBuffers frames) {
     super(owner);
-    this.frame = frame;
+    this.frames = frames;
   }
 
   /**
@@ -0,0 +1,38 @@
+package microsim.simulation.event;
+
+import microsim.simulation.component.processor.MicroOp;
+import microsim.simulation.component.processor.Processor;
+
+/**
+ * DebugEvent that signals a processor executing a microop. Carries the microop type and
+ * instruction as ints, and only formats them when the debug message is asked for.
+ */
+public class MicroOpEvent extends DebugEvent {
+
+  /**
+   * Message of microop events, without microop.
+   */
+  public static final String MESSAGE = "Processor found microop";
+
+  /**
+   * Instantiates microop event.
+   *
+   * @param owner processor that executes the microop
+   * @param type ordinal of microop type, see
+   * {@link microsim.simulation.component.processor.MicroOp.OpType}
+   * @param inst instruction microop translates
+   */
+  public MicroOpEvent(Processor owner, int type, int inst) {
+    super(owner, MESSAGE, type, inst);
+  }
+
+  /**
+   * Returns information about the event.
+   *
+   * @return debug string
+   */
+  @Override
+  public String getDebugMessage() {
+    return MESSAGE + " " + MicroOp.describe(getInt0(), getInt1());
+  }
+}
@@ -0,0 +1,63 @@
+package microsim.simulation.event;
+
+import microsim.simulation.component.SimulationComponent;
+import microsim.simulation.component.bus.Watchpoints.Watchpoint;
+import microsim.ui.DebugShell;
+
+/**
+ * SimulationEvent that signals a watchpoint was hit. Like
+ * {@link microsim.simulation.event.BreakEvent}, it signals the simulation
+ * {@link microsim.ui.DebugShell} instance to activate.
+ */
+public class WatchEvent extends SimulationEvent {
+
+  /**
+   * Watchpoint that was hit.
+   */
+  public final Watchpoint watchpoint;
+
+  /**
+   * Address of the transaction that hit.
+   */
+  public final int addr;
+
+  /**
+   * Data of the transaction that hit.
+   */
+  public final int data;
+
+  /**
+   * Was the transaction a write?
+   */
+  public final boolean write;
+
+  /**
+   * Instantiates watch event.
+   *
+   * @param owner responder that served the transaction
+   * @param watchpoint watchpoint that was hit
+   * @param addr address of transaction
+   * @param data data of transaction
+   * @param write was the transaction a write?
+   */
+  public WatchEvent(SimulationComponent owner, Watchpoint watchpoint, int addr, int data,
+          boolean write) {
+    super(owner);
+    this.watchpoint = watchpoint;
+    this.addr = addr;
+    this.data = data;
+    this.write = write;
+  }
+
+  /**
+   * Returns information about the event.
+   *
+   * @return debug string
+   */
+  @Override
+  public String getDebugMessage() {
+    return "Watchpoint " + watchpoint.id + " (" + watchpoint.type.name().toLowerCase() + ") hit by "
+            + (write ? "write" : "read") + " at " + DebugShell.int32ToString(addr) + " of data "
+            + DebugShell.int32ToString(data);
+  }
+}
@@ -0,0 +1,52 @@
+package microsim.simulation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for an operation of a {@link microsim.simulation.component.device.block.BlockDevice},
+ * lasting from the command that begins it to the transfer of its last byte.
+ */
+@Name("microsim.DiskOperation")
+@Label("Disk Operation")
+@Category({"micro-sim", "Devices"})
+@Description("Disk operation, from command to last byte transferred")
+@StackTrace(false)
+public class DiskOperationEvent extends Event {
+
+  /**
+   * Name of simulation the disk belongs to.
+   */
+  @Label("Simulation")
+  public String simulation;
+
+  /**
+   * Type of operation, "read" or "write".
+   */
+  @Label("Operation")
+  public String operation;
+
+  /**
+   * First block of operation.
+   */
+  @Label("Block Address")
+  public int blockAddress;
+
+  /**
+   * Number of blocks the operation affects.
+   */
+  @Label("Blocks")
+  public int blocks;
+
+  /**
+   * Number of bytes transferred.
+   */
+  @Label("Size")
+  @DataAmount
+  public long size;
+}
@@ -0,0 +1,26 @@
+package microsim.simulation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a frame render of a
+ * {@link microsim.simulation.component.device.video.VideoRenderer}, lasting as long as the render.
+ */
+@Name("microsim.FrameRender")
+@Label("Frame Render")
+@Category({"micro-sim", "Video"})
+@Description("Rendering of a frame from VRAM")
+@StackTrace(false)
+public class FrameRenderEvent extends Event {
+
+  /**
+   * Name of simulation the frame belongs to.
+   */
+  @Label("Simulation")
+  public String simulation;
+}
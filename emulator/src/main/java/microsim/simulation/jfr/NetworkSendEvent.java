@@ -0,0 +1,56 @@
+package microsim.simulation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a frame sent by a
+ * {@link microsim.simulation.component.device.network.NetworkDevice}.
+ */
+@Name("microsim.NetworkSend")
+@Label("Network Send")
+@Category({"micro-sim", "Devices"})
+@Description("Frame sent by a network device")
+@StackTrace(false)
+public class NetworkSendEvent extends Event {
+
+  /**
+   * Name of simulation the sending device belongs to.
+   */
+  @Label("Simulation")
+  public String simulation;
+
+  /**
+   * Source address of frame.
+   */
+  @Label("Source Address")
+  public int source;
+
+  /**
+   * Destination address of frame.
+   */
+  @Label("Destination Address")
+  public int destination;
+
+  /**
+   * Length of frame, in words.
+   */
+  @Label("Words")
+  public int words;
+
+  /**
+   * Number of devices the frame was delivered to.
+   */
+  @Label("Receivers")
+  public int receivers;
+
+  /**
+   * Was the frame read from a transmit descriptor, in packet mode?
+   */
+  @Label("Packet Mode")
+  public boolean packet;
+}
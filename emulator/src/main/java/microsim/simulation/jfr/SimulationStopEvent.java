@@ -0,0 +1,43 @@
+package microsim.simulation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a halt or break signaled by the processor of a simulation.
+ */
+@Name("microsim.SimulationStop")
+@Label("Simulation Halt/Break")
+@Category({"micro-sim", "Simulation"})
+@Description("Halt or break signaled by the processor")
+@StackTrace(false)
+public class SimulationStopEvent extends Event {
+
+  /**
+   * Name of simulation.
+   */
+  @Label("Simulation")
+  public String simulation;
+
+  /**
+   * Reason of stop, "halt" or "break".
+   */
+  @Label("Reason")
+  public String reason;
+
+  /**
+   * Cycle the stop was signaled at.
+   */
+  @Label("Cycle")
+  public long cycle;
+
+  /**
+   * Program counter of the processor when the stop was signaled.
+   */
+  @Label("Program Counter")
+  public int pc;
+}
@@ -0,0 +1,158 @@
+package microsim.simulation.jfr;
+
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import microsim.simulation.Simulation;
+
+/**
+ * Periodic JFR event sampling the throughput of each running simulation, as cycles and
+ * instructions per second since the previous sample. Simulations are sampled from when they
+ * {@link #register(microsim.simulation.Simulation)} to when they
+ * {@link #unregister(microsim.simulation.Simulation)}. Samples are taken by JFR on its own
+ * thread, only while a recording has this event enabled.
+ */
+@Name("microsim.Throughput")
+@Label("Simulation Throughput")
+@Category({"micro-sim", "Simulation"})
+@Description("Cycles and instructions run per second by a simulation")
+@Period("1 s")
+@StackTrace(false)
+public class ThroughputEvent extends Event {
+
+  /**
+   * Name of simulation.
+   */
+  @Label("Simulation")
+  public String simulation;
+
+  /**
+   * Cycles run since simulation start.
+   */
+  @Label("Cycles")
+  public long cycles;
+
+  /**
+   * Instructions run since simulation start.
+   */
+  @Label("Instructions")
+  public long instructions;
+
+  /**
+   * Cycles run per second since the previous sample.
+   */
+  @Label("Cycles per Second")
+  @Frequency
+  public double cyclesPerSecond;
+
+  /**
+   * Instructions run per second since the previous sample.
+   */
+  @Label("Instructions per Second")
+  @Frequency
+  public double instructionsPerSecond;
+
+  /**
+   * Last sample of a simulation, to compute rates from.
+   */
+  private static class Sample {
+
+    /**
+     * Sampled simulation.
+     */
+    final Simulation simulation;
+
+    /**
+     * Cycles at last sample.
+     */
+    long cycles;
+
+    /**
+     * Instructions at last sample.
+     */
+    long instructions;
+
+    /**
+     * Time of last sample, in nanoseconds.
+     */
+    long time;
+
+    /**
+     * Instantiates sample, taking the current state of a simulation.
+     *
+     * @param simulation simulation to sample
+     */
+    Sample(Simulation simulation) {
+      this.simulation = simulation;
+      cycles = simulation.getCycle();
+      instructions = simulation.proc.getInstructions();
+      time = System.nanoTime();
+    }
+  }
+
+  /**
+   * Last samples of registered simulations.
+   */
+  private static final List<Sample> samples = new ArrayList<>();
+
+  static {
+    FlightRecorder.addPeriodicEvent(ThroughputEvent.class, ThroughputEvent::emit);
+  }
+
+  /**
+   * Starts sampling a simulation.
+   *
+   * @param simulation simulation to sample
+   */
+  public static void register(Simulation simulation) {
+    synchronized (samples) {
+      samples.add(new Sample(simulation));
+    }
+  }
+
+  /**
+   * Stops sampling a simulation.
+   *
+   * @param simulation simulation to stop sampling
+   */
+  public static void unregister(Simulation simulation) {
+    synchronized (samples) {
+      samples.removeIf(s -> s.simulation == simulation);
+    }
+  }
+
+  /**
+   * Commits an event for each registered simulation. Called by JFR once per period.
+   */
+  private static void emit() {
+    synchronized (samples) {
+      long now = System.nanoTime();
+
+      for (Sample s : samples) {
+        long cycles = s.simulation.getCycle();
+        long instructions = s.simulation.proc.getInstructions();
+        double seconds = (now - s.time) / 1e9;
+
+        ThroughputEvent event = new ThroughputEvent();
+        event.simulation = s.simulation.name;
+        event.cycles = cycles;
+        event.instructions = instructions;
+        event.cyclesPerSecond = seconds > 0 ? (cycles - s.cycles) / seconds : 0;
+        event.instructionsPerSecond = seconds > 0 ? (instructions - s.instructions) / seconds : 0;
+        event.commit();
+
+        s.cycles = cycles;
+        s.instructions = instructions;
+        s.time = now;
+      }
+    }
+  }
+}
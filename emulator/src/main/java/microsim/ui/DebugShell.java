@@ -1,13 +1,19 @@
 package microsim.ui;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Scanner;
 import microsim.Main;
 import microsim.simulation.*;
+import microsim.simulation.component.bus.Bus;
+import microsim.simulation.component.bus.Watchpoints;
+import microsim.simulation.component.device.DeviceScheduler;
+import microsim.simulation.component.device.IoDevice;
+import microsim.simulation.component.device.network.*;
 import microsim.simulation.component.device.video.*;
 import microsim.simulation.component.memory.*;
 import microsim.simulation.component.processor.*;
@@ -30,7 +36,12 @@ public class DebugShell implements SimulationListener {
     }
 
     /**
-     * Gives exception information and dumps event queues.
+     * Number of recorded events dumped per simulation.
+     */
+    private static final int DUMP_EVENTS = 256;
+
+    /**
+     * Gives exception information and dumps the last recorded events.
      *
      * @param t thread that crashed
      * @param e exception that made it crash
@@ -48,14 +59,9 @@ public class DebugShell implements SimulationListener {
         // get simulation
         Simulation instance = main.simulationInstances.get(i);
 
-        // get event queue
-        Queue<SimulationEvent> eventQueue = main.eventQueues.get(i);
-
-        // dump event queue
+        // dump last recorded events
         System.err.println("Event dump " + i + ", \"" + instance.name + "\":");
-        while (!eventQueue.isEmpty()) {
-          main.log(eventQueue.remove());
-        }
+        main.recorders.get(i).showLast(DUMP_EVENTS, message -> main.log(instance, message));
         System.err.println();
       }
 
@@ -117,9 +123,9 @@ public class DebugShell implements SimulationListener {
   public void deactivate() {
     debuggingEnabled = false;
 
-    // clear event queues
-    for (Queue<SimulationEvent> eventQueue : eventQueues) {
-      eventQueue.clear();
+    // drop pending events, they stay recorded for dumps
+    for (FlightRecorder recorder : recorders) {
+      recorder.skipPending();
     }
   }
 
@@ -184,25 +190,44 @@ public class DebugShell implements SimulationListener {
   private final List<Simulation> simulationInstances = new ArrayList<>();
 
   /**
-   * Event queues per simulation. Keep track of the events a simulation emitted: these will be
-   * displayed at the next cycle event of that simulation.
+   * Flight recorders per simulation. Keep track of the events a simulation emitted: these will be
+   * displayed at the next cycle event of that simulation, and the last ones are kept for dumps.
+   */
+  private final List<FlightRecorder> recorders = new ArrayList<>();
+
+  /**
+   * Number of events shown by the events command when no count is given.
+   */
+  private static final int DEFAULT_SHOWN_EVENTS = 32;
+
+  /**
+   * Attaches a new simulation instance to the debug shell, recording its events in a flight
+   * recorder of default capacity.
+   *
+   * @param simulationInstance simulation instance to attach
    */
-  private final List<Queue<SimulationEvent>> eventQueues = new ArrayList<>();
+  public void attachSimulation(Simulation simulationInstance) {
+    attachSimulation(simulationInstance, FlightRecorder.DEFAULT_CAPACITY);
+  }
 
   /**
    * Attaches a new simulation instance to the debug shell (basically makes self a listener and
    * takes a reference to show on demand information from shell).
    *
    * @param simulationInstance simulation instance to attach
+   * @param recorderCapacity capacity of the flight recorder of the simulation, in events
    */
-  public void attachSimulation(Simulation simulationInstance) {
-    // make self listener
+  public void attachSimulation(Simulation simulationInstance, int recorderCapacity) {
+    // make self listener of all events but video frames
     simulationInstances.add(simulationInstance);
-    simulationInstance.addListener(this);
-
-    // initialize simulation event queue
-    Queue<SimulationEvent> eventQueue = new LinkedList<>();
-    eventQueues.add(eventQueue);
+    simulationInstance.addListener(CycleEvent.class, this);
+    simulationInstance.addListener(DebugEvent.class, this);
+    simulationInstance.addListener(BreakEvent.class, this);
+    simulationInstance.addListener(WatchEvent.class, this);
+    simulationInstance.addListener(HaltEvent.class, this);
+
+    // initialize simulation flight recorder
+    recorders.add(new FlightRecorder(recorderCapacity));
   }
 
   /**
@@ -262,6 +287,199 @@ public class DebugShell implements SimulationListener {
     }
   }
 
+  /**
+   * Prints burst statistics of the memory space and devices of simulation at index.
+   *
+   * @param idx index of simulation
+   */
+  private void printBurstStatistics(int idx) {
+    Simulation instance = simulationInstances.get(idx);
+
+    System.out.println("\tmemory:\t" + instance.memory.getBurstStatistics());
+    for (IoDevice device : instance.getDevices()) {
+      System.out.println("\t" + device.getClass().getSimpleName() + ":\t"
+              + device.getBurstStatistics());
+    }
+  }
+
+  /**
+   * Prints wait states inserted by the bus responders of a simulation, and cycles the processor
+   * was stalled for.
+   *
+   * @param idx index of simulation
+   */
+  private void printWaitStatistics(int idx) {
+    Simulation instance = simulationInstances.get(idx);
+
+    System.out.println("\tmemory:\t" + instance.memory.getWaitCycles() + " wait states");
+    for (IoDevice device : instance.getDevices()) {
+      System.out.println("\t" + device.getClass().getSimpleName() + ":\t"
+              + device.getWaitCycles() + " wait states");
+    }
+    System.out.println("\tprocessor stalled for " + instance.proc.getWaitCycles() + " cycles");
+  }
+
+  /**
+   * Adds a watchpoint to simulation at index. Checks valid type, address and size. Change
+   * watchpoints on memory start from the value currently in memory.
+   *
+   * @param idx index of simulation
+   * @param type type of watchpoint (read, write or change)
+   * @param addr first address to watch
+   * @param size number of bytes to watch
+   */
+  private void addWatchpoint(int idx, String type, String addr, String size) {
+    Simulation instance = simulationInstances.get(idx);
+    Watchpoints.Type numType;
+    int numAddr;
+    int numSize;
+
+    // is type valid?
+    switch (type) {
+      case "r", "read" ->
+        numType = Watchpoints.Type.READ;
+      case "w", "write" ->
+        numType = Watchpoints.Type.WRITE;
+      case "c", "change" ->
+        numType = Watchpoints.Type.CHANGE;
+      default -> {
+        System.err.println("Invalid watchpoint type " + type);
+        return;
+      }
+    }
+
+    // are address and size valid?
+    try {
+      numAddr = (int) Long.parseLong(addr, 16);
+      numSize = Integer.parseInt(size);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid address or size. " + e.getMessage());
+      return;
+    }
+    if (numSize <= 0) {
+      System.err.println("Invalid size");
+      return;
+    }
+    if (numType == Watchpoints.Type.CHANGE && numSize > 4) {
+      System.err.println("Change watchpoints watch at most 4 bytes");
+      return;
+    }
+
+    // get initial value for memory change watchpoints
+    Integer initialValue = null;
+    MemorySpace memory = instance.memory;
+    if (numType == Watchpoints.Type.CHANGE && memory.inBounds(numAddr)
+            && memory.inBounds(numAddr + numSize - 1)) {
+      int value = 0;
+      for (int i = numSize - 1; i >= 0; i--) {
+        value = (value << 8) | (memory.readMemory(numAddr + i, true) & 0xff);
+      }
+      initialValue = value;
+    }
+
+    Watchpoints.Watchpoint w = instance.bus.watchpoints.add(numType, numAddr, numSize,
+            initialValue);
+    System.out.println("Added watchpoint " + w.id + " at address " + int32ToString(numAddr));
+  }
+
+  /**
+   * Prints watchpoints of simulation at index.
+   *
+   * @param idx index of simulation
+   */
+  private void printWatchpoints(int idx) {
+    List<Watchpoints.Watchpoint> watchpoints
+            = simulationInstances.get(idx).bus.watchpoints.getWatchpoints();
+
+    if (watchpoints.isEmpty()) {
+      System.out.println("\tNo watchpoints");
+      return;
+    }
+
+    for (Watchpoints.Watchpoint w : watchpoints) {
+      System.out.println("\t" + w.id + ":\t" + w.type.name().toLowerCase() + "\t"
+              + int32ToString(w.addr) + "-" + int32ToString(w.addr + w.size - 1) + "\t"
+              + w.getHits() + " hits");
+    }
+  }
+
+  /**
+   * Removes a watchpoint from simulation at index. Checks valid identifiers.
+   *
+   * @param idx index of simulation
+   * @param id identifier of watchpoint
+   */
+  private void removeWatchpoint(int idx, String id) {
+    int numId;
+
+    // is id valid?
+    try {
+      numId = Integer.parseInt(id);
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid watchpoint id. " + e.getMessage());
+      return;
+    }
+
+    if (simulationInstances.get(idx).bus.watchpoints.remove(numId)) {
+      System.out.println("Removed watchpoint " + numId);
+    } else {
+      System.err.println("No watchpoint with id " + numId);
+    }
+  }
+
+  /**
+   * Prints statistics of the caches of simulation at index, with the instructions that missed the
+   * most.
+   *
+   * @param idx index of simulation
+   */
+  private void printCacheStatistics(int idx) {
+    Processor proc = simulationInstances.get(idx).proc;
+    Cache[] caches = {proc.getInstructionCache(), proc.getDataCache()};
+
+    for (Cache cache : caches) {
+      if (cache == null) {
+        continue;
+      }
+
+      System.out.println("\t" + cache);
+      for (Map.Entry<Integer, long[]> entry : cache.getTopMissPcs(5)) {
+        System.out.println("\t\tpc " + int32ToString(entry.getKey()) + ":\t" + entry.getValue()[0]
+                + " misses");
+      }
+    }
+
+    if (caches[0] == null && caches[1] == null) {
+      System.out.println("\tNo caches attached");
+    }
+  }
+
+  /**
+   * Exports miss statistics of the caches of simulation at index, to files named after simulation
+   * and cache in given directory.
+   *
+   * @param idx index of simulation
+   * @param dir directory to export to
+   */
+  private void exportCacheStatistics(int idx, String dir) {
+    Simulation instance = simulationInstances.get(idx);
+    Cache[] caches = {instance.proc.getInstructionCache(), instance.proc.getDataCache()};
+
+    for (Cache cache : caches) {
+      if (cache == null) {
+        continue;
+      }
+
+      Path path = Path.of(dir, instance.name + "." + cache.name + ".csv");
+      try {
+        cache.exportMisses(path);
+        System.out.println("Exported " + cache.name + " misses to " + path);
+      } catch (IOException e) {
+        System.err.println("Couldn't export cache statistics. " + e.getMessage());
+      }
+    }
+  }
+
   /**
    * Prints all active instances, including index mappings and power state.
    */
@@ -351,6 +569,20 @@ public class DebugShell implements SimulationListener {
             + " to memory at address " + int32ToString(numAddr));
   }
 
+  /**
+   * Prints shared and private page counts of memory of simulation at index.
+   *
+   * @param idx index of simulation
+   */
+  private void printPages(int idx) {
+    MemorySpace memory = simulationInstances.get(idx).memory;
+
+    System.out.println("\tshared:\t" + memory.getSharedPages() + " pages");
+    System.out.println("\tprivate:\t" + memory.getPrivatePages() + " pages");
+    System.out.println("\t(" + MemorySpace.PAGE_SIZE + " bytes per page, " + PagePool.size()
+            + " distinct shared pages in pool)");
+  }
+
   /**
    * Receives a simulation event.
    *
@@ -359,17 +591,12 @@ public class DebugShell implements SimulationListener {
   @Override
   public void onSimulationEvent(SimulationEvent e) {
     // only respond if debugging
-    if (!debuggingEnabled && !(e instanceof BreakEvent)) {
-      return;
-    }
-
-    // ignore video frames
-    if (e instanceof FrameEvent) {
+    if (!debuggingEnabled && !(e instanceof BreakEvent) && !(e instanceof WatchEvent)) {
       return;
     }
 
     // activate shell if requested
-    if (e instanceof BreakEvent) {
+    if (e instanceof BreakEvent || e instanceof WatchEvent) {
       activate();
     }
 
@@ -387,46 +614,42 @@ public class DebugShell implements SimulationListener {
       }
     }
 
-    // normal event, queue it or enter shell. first obtain event queue:
+    // normal event, record it or enter shell. first obtain flight recorder:
     int idx = simulationInstances.indexOf(e.owner.simulation);
-    Queue<SimulationEvent> eventQueue = eventQueues.get(idx);
+    FlightRecorder recorder = recorders.get(idx);
 
-    // then check if is instance of a cycle event. event queue will be used anyways
+    // then check if is instance of a cycle event. flight recorder will be used anyways
     if (remainingCycles == 0 && e instanceof CycleEvent ce) {
       // greet if needed
       if (shouldGreet) {
         greet();
       }
 
-      // log buffered events
-      while (!eventQueue.isEmpty()) {
-        log(eventQueue.remove());
-      }
+      // log recorded events
+      recorder.showPending(message -> log(ce.owner.simulation, message));
 
       // log cycle event
-      log(ce);
+      log(ce.owner.simulation, ce.getDebugMessage());
 
       // enter shell (making sure world is stopped as we enter)
       stopTheWorld();
       shell();
       startTheWorld();
     } else {
-      // not cycle event, just queue it
-      eventQueue.add(e);
+      // not cycle event, just record it
+      recorder.record(e);
     }
   }
 
   /**
-   * Logs a debug event.
+   * Logs the debug message of an event.
    *
-   * @param event event to log
+   * @param simulation simulation that raised the event
+   * @param message debug message of event
    */
-  private void log(SimulationEvent event) {
-    String message = event.getDebugMessage();
-    String simulation = event.owner.simulation.name;
-
+  private void log(Simulation simulation, String message) {
     message = message.replace("\n", "\n\t");
-    System.out.println("\t" + "\"" + simulation + "\" -> " + message);
+    System.out.println("\t" + "\"" + simulation.name + "\" -> " + message);
   }
 
   /**
@@ -465,7 +688,23 @@ public class DebugShell implements SimulationListener {
     /**
      * Thread command reference.
      */
-    THREAD
+    THREAD,
+    /**
+     * Bus command reference.
+     */
+    BUS,
+    /**
+     * Watchpoint command reference.
+     */
+    WATCH,
+    /**
+     * Cache command reference.
+     */
+    CACHE,
+    /**
+     * Heatmap command reference.
+     */
+    HEAT
   }
 
   /**
@@ -484,6 +723,12 @@ public class DebugShell implements SimulationListener {
         System.out.println("\tmem:       offers memory information");
         System.out.println("\trender:    forces screen rendering");
         System.out.println("\tthread:    controls device threads");
+        System.out.println("\tbus:       offers bus information");
+        System.out.println("\twatch:     controls watchpoints");
+        System.out.println("\tcache:     offers cache information");
+        System.out.println("\theat:      offers memory access heatmaps");
+        System.out.println("\tevents:    shows last recorded events");
+        System.out.println("\tnet:       offers network device information");
         System.out.println("\tinstance:  shows current instances");
       }
       case PROC -> {
@@ -495,11 +740,37 @@ public class DebugShell implements SimulationListener {
         System.out.println("Available mem options:");
         System.out.println("\tread:      reads memory at address");
         System.out.println("\twrite:     reads memory at address");
+        System.out.println("\tpages:     prints shared and private page counts");
       }
       case THREAD -> {
         System.out.println("Available thread options:");
         System.out.println("\tstop:      stops all device threads");
         System.out.println("\tresume:    resumes all device threads");
+        System.out.println("\tstats:     prints device scheduler statistics");
+      }
+      case BUS -> {
+        System.out.println("Available bus options:");
+        System.out.println("\tbursts:    prints burst statistics of bus responders");
+        System.out.println("\twaits:     prints wait states inserted by bus responders");
+      }
+      case WATCH -> {
+        System.out.println("Available watch options:");
+        System.out.println("\tadd:       watches reads, writes or changes at address");
+        System.out.println("\tlist:      prints all watchpoints");
+        System.out.println("\tremove:    removes watchpoint");
+      }
+      case CACHE -> {
+        System.out.println("Available cache options:");
+        System.out.println("\tstats:     prints cache statistics and top missing instructions");
+        System.out.println("\texport:    exports miss statistics as CSV to directory");
+      }
+      case HEAT -> {
+        System.out.println("Available heat options:");
+        System.out.println("\tenable:    starts counting accesses");
+        System.out.println("\tshow:      shows memory heatmap (of reads, writes or both)");
+        System.out.println("\tports:     shows device port accesses");
+        System.out.println("\texport:    exports access counts as CSV to file");
+        System.out.println("\treset:     clears access counts");
       }
       default ->
         throw new RuntimeException("Unknown help page");
@@ -632,7 +903,7 @@ public class DebugShell implements SimulationListener {
             continue;
           }
           if (tokens.length < 3) {
-            System.out.println("\tUsage: mem [read|write] <simulation> <address> ?<data>");
+            System.out.println("\tUsage: mem [read|write|pages] <simulation> ?<address> ?<data>");
             continue;
           }
           int idx = getSimulationIndex(tokens[2]);
@@ -662,6 +933,10 @@ public class DebugShell implements SimulationListener {
               writeMemoryAtAddress(idx, addr, data);
               continue;
             }
+            case "p", "pages" -> {
+              printPages(idx);
+              continue;
+            }
 
             default -> {
               System.out.println("Unknown mem option: " + cmd);
@@ -704,6 +979,10 @@ public class DebugShell implements SimulationListener {
               startTheWorld();
               continue;
             }
+            case "st", "stats" -> {
+              System.out.println("\t" + DeviceScheduler.getInstance());
+              continue;
+            }
             default -> {
               System.out.println("Unknown thread option: " + cmd);
               continue;
@@ -711,6 +990,235 @@ public class DebugShell implements SimulationListener {
           }
         }
 
+        case "b":
+        case "bus": {
+          if (tokens.length < 2) {
+            help(HelpPage.BUS);
+            continue;
+          }
+          if (tokens.length < 3) {
+            System.out.println("\tUsage: bus [bursts|waits] <simulation>");
+            continue;
+          }
+          int idx = getSimulationIndex(tokens[2]);
+          if (idx == -1) {
+            continue;
+          }
+
+          switch (tokens[1]) {
+            case "b", "bursts" -> {
+              printBurstStatistics(idx);
+              continue;
+            }
+            case "w", "waits" -> {
+              printWaitStatistics(idx);
+              continue;
+            }
+            default -> {
+              System.out.println("Unknown bus option: " + cmd);
+              continue;
+            }
+          }
+        }
+
+        case "w":
+        case "watch": {
+          if (tokens.length < 2) {
+            help(HelpPage.WATCH);
+            continue;
+          }
+          if (tokens.length < 3) {
+            System.out.println("\tUsage: watch [add|list|remove] <simulation> ?<type> ?<address> "
+                    + "?<size> | ?<id>");
+            continue;
+          }
+          int idx = getSimulationIndex(tokens[2]);
+          if (idx == -1) {
+            continue;
+          }
+
+          switch (tokens[1]) {
+            case "a", "add" -> {
+              if (tokens.length < 5) {
+                System.out.println(
+                        "Please specify watchpoint type (read|write|change) and address");
+                continue;
+              }
+
+              String size = tokens.length > 5 ? tokens[5] : "1";
+              addWatchpoint(idx, tokens[3], tokens[4], size);
+              continue;
+            }
+            case "l", "list" -> {
+              printWatchpoints(idx);
+              continue;
+            }
+            case "r", "remove" -> {
+              if (tokens.length < 4) {
+                System.out.println("Please specify watchpoint id");
+                continue;
+              }
+
+              removeWatchpoint(idx, tokens[3]);
+              continue;
+            }
+            default -> {
+              System.out.println("Unknown watch option: " + cmd);
+              continue;
+            }
+          }
+        }
+
+        case "cache": {
+          if (tokens.length < 2) {
+            help(HelpPage.CACHE);
+            continue;
+          }
+          if (tokens.length < 3) {
+            System.out.println("\tUsage: cache [stats|export] <simulation> ?<directory>");
+            continue;
+          }
+          int idx = getSimulationIndex(tokens[2]);
+          if (idx == -1) {
+            continue;
+          }
+
+          switch (tokens[1]) {
+            case "s", "stats" -> {
+              printCacheStatistics(idx);
+              continue;
+            }
+            case "e", "export" -> {
+              if (tokens.length < 4) {
+                System.out.println("Please specify directory to export to");
+                continue;
+              }
+
+              exportCacheStatistics(idx, tokens[3]);
+              continue;
+            }
+            default -> {
+              System.out.println("Unknown cache option: " + cmd);
+              continue;
+            }
+          }
+        }
+
+        case "h":
+        case "heat": {
+          if (tokens.length < 2) {
+            help(HelpPage.HEAT);
+            continue;
+          }
+          if (tokens.length < 3) {
+            System.out.println("\tUsage: heat [enable|show|ports|export|reset] <simulation> "
+                    + "?<r|w> | ?<file>");
+            continue;
+          }
+          int idx = getSimulationIndex(tokens[2]);
+          if (idx == -1) {
+            continue;
+          }
+
+          Bus bus = simulationInstances.get(idx).bus;
+          if (!tokens[1].equals("e") && !tokens[1].equals("enable") && bus.heatmap == null) {
+            System.out.println("Heatmap not enabled, use heat enable <simulation>");
+            continue;
+          }
+
+          switch (tokens[1]) {
+            case "e", "enable" -> {
+              if (bus.heatmap == null) {
+                bus.attachHeatmap();
+              }
+              System.out.println("Counting accesses");
+              continue;
+            }
+            case "s", "show" -> {
+              String filter = tokens.length > 3 ? tokens[3] : "rw";
+              System.out.println(bus.heatmap.renderMemory(filter.contains("r"),
+                      filter.contains("w")));
+              continue;
+            }
+            case "p", "ports" -> {
+              System.out.println(bus.heatmap.renderPorts());
+              continue;
+            }
+            case "x", "export" -> {
+              if (tokens.length < 4) {
+                System.out.println("Please specify file to export to");
+                continue;
+              }
+
+              try {
+                bus.heatmap.exportCsv(Path.of(tokens[3]));
+                System.out.println("Exported access counts to " + tokens[3]);
+              } catch (IOException e) {
+                System.err.println("Couldn't export access counts. " + e.getMessage());
+              }
+              continue;
+            }
+            case "r", "reset" -> {
+              bus.heatmap.reset();
+              continue;
+            }
+            default -> {
+              System.out.println("Unknown heat option: " + cmd);
+              continue;
+            }
+          }
+        }
+
+        case "e":
+        case "events": {
+          if (tokens.length < 2) {
+            System.out.println("\tUsage: events <simulation> ?<count>");
+            continue;
+          }
+          int idx = getSimulationIndex(tokens[1]);
+          if (idx == -1) {
+            continue;
+          }
+
+          int count = DEFAULT_SHOWN_EVENTS;
+          if (tokens.length > 2) {
+            try {
+              count = Integer.parseInt(tokens[2]);
+            } catch (NumberFormatException e) {
+              System.out.println("Invalid event count. " + e.getMessage());
+              continue;
+            }
+          }
+
+          Simulation instance = simulationInstances.get(idx);
+          FlightRecorder recorder = recorders.get(idx);
+          System.out.println("\t" + recorder.getCount() + " events recorded, last "
+                  + recorder.getCapacity() + " kept");
+          recorder.showLast(count, message -> log(instance, message));
+          continue;
+        }
+
+        case "n":
+        case "net": {
+          if (tokens.length < 2) {
+            System.out.println("\tUsage: net <simulation>");
+            continue;
+          }
+          int idx = getSimulationIndex(tokens[1]);
+          if (idx == -1) {
+            continue;
+          }
+
+          NetworkDevice network = simulationInstances.get(idx).network;
+          System.out.println("\t" + network);
+          for (NetworkPort port : network.getSegment().getPorts()) {
+            if (port instanceof HubLink link) {
+              System.out.println("\t" + link);
+            }
+          }
+          continue;
+        }
+
         case "i":
         case "instance": {
           printInstances();
@@ -0,0 +1,309 @@
+package microsim.ui;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import microsim.simulation.component.bus.Watchpoints;
+import microsim.simulation.component.processor.MicroOp;
+import microsim.simulation.event.*;
+
+/**
+ * Records events raised by a simulation in an off-heap ring of fixed-size binary records, for the
+ * {@link microsim.ui.DebugShell}. Once {@link #capacity} records have been written, the oldest
+ * ones get overwritten, so memory use is bounded however long the shell steps without showing
+ * events, and the last records are always there for post-mortem dumps. Records are only formatted
+ * into text when shown. Layout (little-endian) of a record, {@link #RECORD_SIZE} bytes, is:
+ * <ul>
+ * <li>cycle, long;</li>
+ * <li>first int, int;</li>
+ * <li>second int, int;</li>
+ * <li>message index (or watchpoint id, on watch records), int;</li>
+ * <li>kind ({@link #KIND_MESSAGE}, {@link #KIND_CYCLE}, {@link #KIND_WATCH},
+ * {@link #KIND_MICROOP}), byte;</li>
+ * <li>flags ({@link #FLAG_INT0}, {@link #FLAG_INT1}, {@link #FLAG_WRITE}), byte;</li>
+ * <li>watchpoint type, byte;</li>
+ * <li>padding, 1 byte.</li>
+ * </ul>
+ * Messages are kept once in a table, and records refer to them by index.
+ */
+public class FlightRecorder {
+
+  /**
+   * Size of a record, in bytes.
+   */
+  public static final int RECORD_SIZE = 24;
+
+  /**
+   * Default ring capacity, in records (6 MiB of records).
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 18;
+
+  /**
+   * Maximum number of distinct messages. Messages past this are recorded as
+   * {@link #OVERFLOW_MESSAGE}.
+   */
+  public static final int MAX_MESSAGES = 1 << 16;
+
+  /**
+   * Message shown for records whose message didn't fit the message table.
+   */
+  private static final String OVERFLOW_MESSAGE = "(message table full)";
+
+  /**
+   * Record kind for events with a message and up to two ints.
+   */
+  private static final int KIND_MESSAGE = 0;
+
+  /**
+   * Record kind for {@link microsim.simulation.event.CycleEvent} events.
+   */
+  private static final int KIND_CYCLE = 1;
+
+  /**
+   * Record kind for {@link microsim.simulation.event.WatchEvent} events.
+   */
+  private static final int KIND_WATCH = 2;
+
+  /**
+   * Record kind for {@link microsim.simulation.event.MicroOpEvent} events, with the microop type
+   * as first int and its instruction as second int.
+   */
+  private static final int KIND_MICROOP = 3;
+
+  /**
+   * Record flag for records with a first int.
+   */
+  private static final int FLAG_INT0 = 0x1;
+
+  /**
+   * Record flag for records with a second int.
+   */
+  private static final int FLAG_INT1 = 0x2;
+
+  /**
+   * Record flag for watch records of write transactions (reads otherwise).
+   */
+  private static final int FLAG_WRITE = 0x4;
+
+  /**
+   * Off-heap ring of records.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Ring capacity, in records.
+   */
+  private final int capacity;
+
+  /**
+   * Total number of records written.
+   */
+  private long count = 0;
+
+  /**
+   * Number of records written before the oldest record that wasn't shown yet.
+   */
+  private long shown = 0;
+
+  /**
+   * Messages, indexed by message index.
+   */
+  private final List<String> messages = new ArrayList<>();
+
+  /**
+   * Message indices, by message.
+   */
+  private final Map<String, Integer> messageIndices = new HashMap<>();
+
+  /**
+   * Instantiates a recorder, allocating its ring.
+   *
+   * @param capacity ring capacity, in records
+   */
+  public FlightRecorder(int capacity) {
+    if (capacity <= 0 || capacity > Integer.MAX_VALUE / RECORD_SIZE) {
+      throw new RuntimeException("Invalid flight recorder capacity " + capacity);
+    }
+    this.capacity = capacity;
+
+    buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Records an event. Events are encoded right away, and not referenced after this returns.
+   *
+   * @param e event to record
+   */
+  public synchronized void record(SimulationEvent e) {
+    int position = (int) (count % capacity) * RECORD_SIZE;
+    long cycle = e.owner.simulation.getCycle();
+    int int0 = 0;
+    int int1 = 0;
+    int index = 0;
+    int kind = KIND_MESSAGE;
+    int flags = 0;
+    int type = 0;
+
+    // encode event fields, other events only have a message
+    if (e instanceof CycleEvent ce) {
+      kind = KIND_CYCLE;
+      cycle = ce.cycle;
+    } else if (e instanceof WatchEvent we) {
+      kind = KIND_WATCH;
+      int0 = we.addr;
+      int1 = we.data;
+      index = we.watchpoint.id;
+      type = we.watchpoint.type.ordinal();
+      flags = we.write ? FLAG_WRITE : 0;
+    } else if (e instanceof MicroOpEvent me) {
+      kind = KIND_MICROOP;
+      int0 = me.getInt0();
+      int1 = me.getInt1();
+    } else if (e instanceof DebugEvent de) {
+      index = messageIndex(de.getMessage());
+      if (de.getInt0() != null) {
+        int0 = de.getInt0();
+        flags |= FLAG_INT0;
+      }
+      if (de.getInt1() != null) {
+        int1 = de.getInt1();
+        flags |= FLAG_INT1;
+      }
+    } else {
+      index = messageIndex(e.getDebugMessage());
+    }
+
+    buffer.putLong(position, cycle);
+    buffer.putInt(position + 8, int0);
+    buffer.putInt(position + 12, int1);
+    buffer.putInt(position + 16, index);
+    buffer.put(position + 20, (byte) kind);
+    buffer.put(position + 21, (byte) flags);
+    buffer.put(position + 22, (byte) type);
+
+    count++;
+  }
+
+  /**
+   * Returns the index of a message, adding it to the message table if needed.
+   *
+   * @param message message
+   * @return message index, -1 if the message table is full
+   */
+  private int messageIndex(String message) {
+    Integer index = messageIndices.get(message);
+    if (index != null) {
+      return index;
+    }
+
+    if (messages.size() == MAX_MESSAGES) {
+      return -1;
+    }
+    messages.add(message);
+    messageIndices.put(message, messages.size() - 1);
+    return messages.size() - 1;
+  }
+
+  /**
+   * Formats a record as the debug message of the event it was recorded from.
+   *
+   * @param record number of record, counting from the first one ever written
+   * @return debug message
+   */
+  private String format(long record) {
+    int position = (int) (record % capacity) * RECORD_SIZE;
+    long cycle = buffer.getLong(position);
+    int int0 = buffer.getInt(position + 8);
+    int int1 = buffer.getInt(position + 12);
+    int index = buffer.getInt(position + 16);
+    int kind = buffer.get(position + 20);
+    int flags = buffer.get(position + 21);
+    int type = buffer.get(position + 22);
+
+    switch (kind) {
+      case KIND_CYCLE -> {
+        return "Cycle " + cycle;
+      }
+      case KIND_WATCH -> {
+        return "Watchpoint " + index + " ("
+                + Watchpoints.Type.values()[type].name().toLowerCase() + ") hit by "
+                + ((flags & FLAG_WRITE) != 0 ? "write" : "read") + " at "
+                + DebugShell.int32ToString(int0) + " of data " + DebugShell.int32ToString(int1);
+      }
+      case KIND_MICROOP -> {
+        return MicroOpEvent.MESSAGE + " " + MicroOp.describe(int0, int1);
+      }
+    }
+
+    String ret = index == -1 ? OVERFLOW_MESSAGE : messages.get(index);
+    if ((flags & FLAG_INT0) != 0) {
+      ret += " " + DebugShell.int32ToString(int0);
+    }
+    if ((flags & FLAG_INT1) != 0) {
+      ret += ", " + DebugShell.int32ToString(int1);
+    }
+    return ret;
+  }
+
+  /**
+   * Formats records that weren't shown yet, oldest first, and marks them as shown. If some were
+   * overwritten before being shown, a note saying how many comes first.
+   *
+   * @param out consumer of formatted records
+   */
+  public synchronized void showPending(Consumer<String> out) {
+    long first = Math.max(shown, count - capacity);
+    if (first > shown) {
+      out.accept("(" + (first - shown) + " events overwritten before being shown)");
+    }
+
+    for (long record = first; record < count; record++) {
+      out.accept(format(record));
+    }
+    shown = count;
+  }
+
+  /**
+   * Formats the last records, shown or not, oldest first. Meant for post-mortem dumps.
+   *
+   * @param records maximum number of records to format
+   * @param out consumer of formatted records
+   */
+  public synchronized void showLast(int records, Consumer<String> out) {
+    long first = Math.max(0, count - Math.min(records, capacity));
+    for (long record = first; record < count; record++) {
+      out.accept("[" + buffer.getLong((int) (record % capacity) * RECORD_SIZE) + "] "
+              + format(record));
+    }
+    shown = count;
+  }
+
+  /**
+   * Marks all records as shown.
+   */
+  public synchronized void skipPending() {
+    shown = count;
+  }
+
+  /**
+   * Returns total number of records written.
+   *
+   * @return records written
+   */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns ring capacity.
+   *
+   * @return capacity, in records
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+}
@@ -0,0 +1,194 @@
+package microsim.ui;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import microsim.simulation.component.bus.BusTracer;
+
+/**
+ * Command line tool that reads bus trace files written by
+ * {@link microsim.simulation.component.bus.BusTracer}. Records are read from oldest to newest,
+ * optionally filtered by an address range, and summarized per responder. Usage is:
+ * <pre>
+ * java -cp micro-sim-app.jar microsim.ui.TraceReader &lt;trace&gt;
+ *         [-r &lt;start&gt; &lt;end&gt;] [-d]
+ * </pre>
+ * where addresses are base-16 (end inclusive), and -d dumps every matching record.
+ */
+public class TraceReader {
+
+  /**
+   * Hide constructor.
+   */
+  private TraceReader() {
+  }
+
+  /**
+   * Prints usage and exits with user error.
+   */
+  private static void usage() {
+    System.err.println("Usage: TraceReader <trace> [-r <start> <end>] [-d]");
+    System.exit(1);
+  }
+
+  /**
+   * Tool entry point. Parses arguments, reads trace and prints summary.
+   *
+   * @param args tool arguments
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      usage();
+    }
+
+    // parse arguments
+    Path path = Path.of(args[0]);
+    long start = 0;
+    long end = 0xffffffffL;
+    boolean dump = false;
+
+    for (int i = 1; i < args.length; i++) {
+      switch (args[i]) {
+        case "-r" -> {
+          if (i + 2 >= args.length) {
+            usage();
+          }
+          try {
+            start = Long.parseLong(args[++i], 16);
+            end = Long.parseLong(args[++i], 16);
+          } catch (NumberFormatException e) {
+            System.err.println("Invalid address. " + e.getMessage());
+            System.exit(1);
+          }
+        }
+        case "-d" ->
+          dump = true;
+        default ->
+          usage();
+      }
+    }
+
+    try {
+      read(path, start, end, dump);
+    } catch (IOException e) {
+      System.err.println("Couldn't read trace. " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Reads a trace file and prints a summary of the records within an address range.
+   *
+   * @param path path of trace file
+   * @param start start of address range (unsigned)
+   * @param end end of address range (unsigned, inclusive)
+   * @param dump should every matching record be printed?
+   * @throws IOException if trace can't be read or is invalid
+   */
+  private static void read(Path path, long start, long end, boolean dump) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    // check header
+    if (buffer.limit() < BusTracer.HEADER_SIZE || buffer.getInt(0) != BusTracer.MAGIC) {
+      throw new IOException("Not a bus trace");
+    }
+    if (buffer.getInt(4) != BusTracer.VERSION) {
+      throw new IOException("Unsupported trace version " + buffer.getInt(4));
+    }
+    int recordSize = buffer.getInt(8);
+    int capacity = buffer.getInt(12);
+    long count = buffer.getLong(BusTracer.COUNT_OFFSET);
+
+    // read responder names
+    int pos = BusTracer.RESPONDERS_OFFSET;
+    String[] responders = new String[buffer.getInt(pos)];
+    pos += 4;
+    for (int i = 0; i < responders.length; i++) {
+      byte[] bytes = new byte[buffer.getShort(pos)];
+      buffer.get(pos + 2, bytes);
+      responders[i] = new String(bytes, StandardCharsets.UTF_8);
+      pos += 2 + bytes.length;
+    }
+
+    // find oldest record in ring
+    long records = Math.min(count, capacity);
+    long first = count - records;
+    System.out.println("Trace " + path + ": " + count + " records written, " + records
+            + " kept");
+
+    // per responder statistics
+    long[] reads = new long[responders.length];
+    long[] writes = new long[responders.length];
+    long[] bursts = new long[responders.length];
+    long[] cached = new long[responders.length];
+    long[] dma = new long[responders.length];
+    long matched = 0;
+
+    for (long r = first; r < count; r++) {
+      int off = BusTracer.HEADER_SIZE + (int) (r % capacity) * recordSize;
+
+      long cycle = buffer.getLong(off);
+      int addr = buffer.getInt(off + 8);
+      int data = buffer.getInt(off + 12);
+      int byteSelect = buffer.get(off + 16);
+      int flags = buffer.get(off + 17);
+      int responder = buffer.get(off + 18) & 0xff;
+
+      // filter by address
+      long uaddr = addr & 0xffffffffL;
+      if (uaddr < start || uaddr > end) {
+        continue;
+      }
+      matched++;
+
+      boolean write = (flags & BusTracer.FLAG_WRITE) != 0;
+      boolean burst = (flags & BusTracer.FLAG_BURST) != 0;
+      boolean hit = (flags & BusTracer.FLAG_CACHED) != 0;
+      boolean direct = (flags & BusTracer.FLAG_DMA) != 0;
+      if (responder < responders.length) {
+        if (write) {
+          writes[responder]++;
+        } else {
+          reads[responder]++;
+        }
+        if (burst) {
+          bursts[responder]++;
+        }
+        if (hit) {
+          cached[responder]++;
+        }
+        if (direct) {
+          dma[responder]++;
+        }
+      }
+
+      if (dump) {
+        System.out.println(String.format("%12d", cycle) + "  " + (write ? "W " : "R ")
+                + DebugShell.int32ToString(addr) + " " + DebugShell.int32ToString(data)
+                + " bs" + byteSelect
+                + (burst ? " burst  " : hit ? " cached " : direct ? " dma    " : "        ")
+                + (responder < responders.length ? responders[responder] : "?"));
+      }
+    }
+
+    // print summary
+    System.out.println(matched + " records in range " + DebugShell.int32ToString((int) start)
+            + "-" + DebugShell.int32ToString((int) end) + "\n");
+    System.out.println(String.format("%-16s %12s %12s %12s %12s %12s %8s", "responder",
+            "reads", "writes", "burst beats", "cached", "dma", "share"));
+    for (int i = 0; i < responders.length; i++) {
+      long total = reads[i] + writes[i];
+      System.out.println(String.format("%-16s %12d %12d %12d %12d %12d %7.1f%%", responders[i],
+              reads[i], writes[i], bursts[i], cached[i], dma[i],
+              matched == 0 ? 0 : 100.0 * total / matched));
+    }
+  }
+}
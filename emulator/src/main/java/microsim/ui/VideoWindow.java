@@ -19,8 +19,9 @@ class VideoPanel extends JPanel {
   private final int scale;
 
   /**
-   * The frame buffer to display. Gets updated on {@link #updateFrame(java.awt.image.BufferedImage)}
-   * and rendered to the panel on {@link #paint(java.awt.Graphics)} calls.
+   * The frame buffer to display. Gets updated on
+   * {@link #updateFrame(microsim.simulation.component.device.video.FrameBuffers)} and rendered to
+   * the panel on {@link #paint(java.awt.Graphics)} calls.
    */
   private BufferedImage frame;
 
@@ -60,14 +61,15 @@ class VideoPanel extends JPanel {
   /**
    * Updates the frame buffer. Gets called on FrameEvents raised by the
    * {@link microsim.simulation.component.device.video.VideoDevice} component attached to the main
-   * video window (which should be the same that the panel was initialized on).
+   * video window (which should be the same that the panel was initialized on). Frames are taken on
+   * the EDT thread, which is then the only consumer of the frame buffers.
    *
-   * @param frame the new frame buffer
+   * @param frames buffers holding the new frame
    */
-  public void updateFrame(BufferedImage frame) {
+  public void updateFrame(FrameBuffers frames) {
     // invoke from swing utilities to make sure updates happen on the EDT thread
     SwingUtilities.invokeLater(() -> {
-      this.frame = frame;
+      this.frame = frames.take();
       repaint();
     });
   }
@@ -160,7 +162,7 @@ public class VideoWindow implements SimulationListener {
     // check for frame event
     if (e instanceof FrameEvent f) {
       // have panel update frame
-      panel.updateFrame(f.frame);
+      panel.updateFrame(f.frames);
     }
 
     // check for halt event
@@ -0,0 +1,335 @@
+package microsim;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Minimal RV32I assembler for test programs. Instructions are appended in order, and branch and
+ * jump targets are given as absolute offsets from the start of the program (see {@link #pc()}).
+ * Programs are meant to be loaded at the start of EPROM, and end with {@link #ecall()}, that halts
+ * the simulation.
+ */
+public class Assembler {
+
+  /**
+   * Size of EPROM images built by {@link #eprom()}, in bytes.
+   */
+  public static final int EPROM_IMAGE_SIZE = 0x400;
+
+  /**
+   * Assembled instructions.
+   */
+  private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+  /**
+   * Returns offset of the next instruction.
+   *
+   * @return offset from start of program, in bytes
+   */
+  public int pc() {
+    return code.size();
+  }
+
+  /**
+   * Appends an instruction word.
+   *
+   * @param instruction instruction word
+   */
+  public void word(int instruction) {
+    for (int i = 0; i < 4; i++) {
+      code.write(instruction >>> (8 * i));
+    }
+  }
+
+  /**
+   * Encodes an I-type instruction.
+   *
+   * @param opcode opcode
+   * @param funct3 function field
+   * @param rd destination register
+   * @param rs1 source register
+   * @param imm 12 bit immediate
+   * @return instruction word
+   */
+  private static int itype(int opcode, int funct3, int rd, int rs1, int imm) {
+    return (imm << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | opcode;
+  }
+
+  /**
+   * Encodes an S-type instruction.
+   *
+   * @param funct3 function field
+   * @param rs1 base register
+   * @param rs2 source register
+   * @param imm 12 bit offset
+   * @return instruction word
+   */
+  private static int stype(int funct3, int rs1, int rs2, int imm) {
+    return ((imm >> 5) << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | ((imm & 0x1f) << 7)
+            | 0x23;
+  }
+
+  /**
+   * Appends a B-type instruction branching to a target.
+   *
+   * @param funct3 function field
+   * @param rs1 first register
+   * @param rs2 second register
+   * @param target target offset
+   */
+  private void branch(int funct3, int rs1, int rs2, int target) {
+    int off = target - pc();
+    word(((off >> 12) & 1) << 31 | ((off >> 5) & 0x3f) << 25 | rs2 << 20 | rs1 << 15
+            | funct3 << 12 | ((off >> 1) & 0xf) << 8 | ((off >> 11) & 1) << 7 | 0x63);
+  }
+
+  /**
+   * Appends addi.
+   *
+   * @param rd destination register
+   * @param rs source register
+   * @param imm immediate
+   */
+  public void addi(int rd, int rs, int imm) {
+    word(itype(0x13, 0, rd, rs, imm));
+  }
+
+  /**
+   * Appends andi.
+   *
+   * @param rd destination register
+   * @param rs source register
+   * @param imm immediate
+   */
+  public void andi(int rd, int rs, int imm) {
+    word(itype(0x13, 7, rd, rs, imm));
+  }
+  /**
+   * Appends srli.
+   *
+   * @param rd destination register
+   * @param rs source register
+   * @param shamt shift amount
+   */
+  public void srli(int rd, int rs, int shamt) {
+    word(itype(0x13, 5, rd, rs, shamt));
+  }
+
+
+  /**
+   * Appends add.
+   *
+   * @param rd destination register
+   * @param rs1 first source register
+   * @param rs2 second source register
+   */
+  public void add(int rd, int rs1, int rs2) {
+    word((rs2 << 20) | (rs1 << 15) | (rd << 7) | 0x33);
+  }
+
+  /**
+   * Appends lui.
+   *
+   * @param rd destination register
+   * @param imm20 upper 20 bits
+   */
+  public void lui(int rd, int imm20) {
+    word((imm20 << 12) | (rd << 7) | 0x37);
+  }
+
+  /**
+   * Appends lui and addi loading a 32 bit constant.
+   *
+   * @param rd destination register
+   * @param value constant
+   */
+  public void li(int rd, int value) {
+    int hi = (value + 0x800) >>> 12;
+    lui(rd, hi);
+    addi(rd, rd, value - (hi << 12));
+  }
+
+  /**
+   * Appends lw.
+   *
+   * @param rd destination register
+   * @param rs base register
+   * @param imm offset
+   */
+  public void lw(int rd, int rs, int imm) {
+    word(itype(0x03, 2, rd, rs, imm));
+  }
+
+  /**
+   * Appends lb.
+   *
+   * @param rd destination register
+   * @param rs base register
+   * @param imm offset
+   */
+  public void lb(int rd, int rs, int imm) {
+    word(itype(0x03, 0, rd, rs, imm));
+  }
+
+  /**
+   * Appends lbu.
+   *
+   * @param rd destination register
+   * @param rs base register
+   * @param imm offset
+   */
+  public void lbu(int rd, int rs, int imm) {
+    word(itype(0x03, 4, rd, rs, imm));
+  }
+  /**
+   * Appends lhu.
+   *
+   * @param rd destination register
+   * @param rs base register
+   * @param imm offset
+   */
+  public void lhu(int rd, int rs, int imm) {
+    word(itype(0x03, 5, rd, rs, imm));
+  }
+
+
+  /**
+   * Appends sw.
+   *
+   * @param rs2 source register
+   * @param rs1 base register
+   * @param imm offset
+   */
+  public void sw(int rs2, int rs1, int imm) {
+    word(stype(2, rs1, rs2, imm));
+  }
+
+  /**
+   * Appends sb.
+   *
+   * @param rs2 source register
+   * @param rs1 base register
+   * @param imm offset
+   */
+  public void sb(int rs2, int rs1, int imm) {
+    word(stype(0, rs1, rs2, imm));
+  }
+  /**
+   * Appends sh.
+   *
+   * @param rs2 source register
+   * @param rs1 base register
+   * @param imm offset
+   */
+  public void sh(int rs2, int rs1, int imm) {
+    word(stype(1, rs1, rs2, imm));
+  }
+
+
+  /**
+   * Appends beq.
+   *
+   * @param rs1 first register
+   * @param rs2 second register
+   * @param target target offset
+   */
+  public void beq(int rs1, int rs2, int target) {
+    branch(0, rs1, rs2, target);
+  }
+
+  /**
+   * Appends bne.
+   *
+   * @param rs1 first register
+   * @param rs2 second register
+   * @param target target offset
+   */
+  public void bne(int rs1, int rs2, int target) {
+    branch(1, rs1, rs2, target);
+  }
+  /**
+   * Appends jalr.
+   *
+   * @param rd link register
+   * @param rs base register
+   * @param imm offset
+   */
+  public void jalr(int rd, int rs, int imm) {
+    word(itype(0x67, 0, rd, rs, imm));
+  }
+
+
+  /**
+   * Appends ecall, that halts the simulation.
+   */
+  public void ecall() {
+    word(0x73);
+  }
+
+  /**
+   * Returns assembled program.
+   *
+   * @return program bytes
+   */
+  public byte[] bytes() {
+    return code.toByteArray();
+  }
+
+  /**
+   * Returns an EPROM image of {@link #EPROM_IMAGE_SIZE} bytes holding the program.
+   *
+   * @return EPROM image
+   */
+  public byte[] eprom() {
+    byte[] program = bytes();
+    if (program.length > EPROM_IMAGE_SIZE) {
+      throw new RuntimeException("Program doesn't fit in EPROM image");
+    }
+
+    byte[] image = new byte[EPROM_IMAGE_SIZE];
+    System.arraycopy(program, 0, image, 0, program.length);
+    return image;
+  }
+
+  /**
+   * Builds a workload that copies 256 bytes of EPROM data to RAM, sums them as words, and writes
+   * the sum to RAM and VRAM, a given number of times, then halts. The sum is left in x6 and at
+   * 0x10200.
+   *
+   * @param iterations number of iterations
+   * @return EPROM image
+   */
+  public static byte[] workload(int iterations) {
+    Assembler a = new Assembler();
+    a.li(20, iterations);
+    int outer = a.pc();
+    a.li(10, 0x10000);
+    a.li(11, 0x10100);
+    a.li(12, 0x200);
+    int copy = a.pc();
+    a.lb(5, 12, 0);
+    a.sb(5, 10, 0);
+    a.addi(10, 10, 1);
+    a.addi(12, 12, 1);
+    a.bne(10, 11, copy);
+    a.li(10, 0x10000);
+    a.li(6, 0);
+    int sum = a.pc();
+    a.lw(5, 10, 0);
+    a.add(6, 6, 5);
+    a.addi(10, 10, 4);
+    a.bne(10, 11, sum);
+    a.li(7, 0x10200);
+    a.sw(6, 7, 0);
+    a.li(7, 0x20000);
+    a.sb(6, 7, 0);
+    a.addi(20, 20, -1);
+    a.bne(20, 0, outer);
+    a.ecall();
+
+    byte[] image = a.eprom();
+    for (int i = 0x200; i < 0x300; i++) {
+      image[i] = (byte) (i * 7);
+    }
+    return image;
+  }
+}
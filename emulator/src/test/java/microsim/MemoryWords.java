@@ -0,0 +1,44 @@
+package microsim;
+
+import microsim.simulation.component.memory.MemorySpace;
+
+/**
+ * Reads and writes little-endian words of a memory space behind the bus, for tests that set up or
+ * check memory around a simulation.
+ */
+public class MemoryWords {
+
+  /**
+   * Hide constructor.
+   */
+  private MemoryWords() {
+  }
+
+  /**
+   * Reads a little-endian word from memory.
+   *
+   * @param memory memory space to read
+   * @param addr address of word
+   * @return word read
+   */
+  public static int readWord(MemorySpace memory, int addr) {
+    int word = 0;
+    for (int i = 3; i >= 0; i--) {
+      word = (word << 8) | (memory.readMemory(addr + i, true) & 0xff);
+    }
+    return word;
+  }
+
+  /**
+   * Writes a little-endian word to memory.
+   *
+   * @param memory memory space to write
+   * @param addr address of word
+   * @param data word to write
+   */
+  public static void writeWord(MemorySpace memory, int addr, int data) {
+    for (int i = 0; i < 4; i++) {
+      memory.writeMemory(addr + i, (byte) (data >>> (8 * i)), true);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package microsim.simulation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import microsim.Assembler;
+import microsim.simulation.component.processor.Cache;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that simulation cycles allocate nothing once warmed up, with debugging disabled.
+ */
+class AllocationTest {
+
+  /**
+   * Cycles run before measuring, so that lazily built state (decode cache, miss counters...) is
+   * in place.
+   */
+  private static final int WARMUP_CYCLES = 2_000_000;
+
+  /**
+   * Cycles measured.
+   */
+  private static final int CYCLES = 1_000_000;
+
+  /**
+   * Returns bytes allocated by the current thread while stepping a simulation.
+   *
+   * @param simulation simulation to step
+   * @return bytes allocated over {@link #CYCLES} cycles
+   */
+  private static long allocated(Simulation simulation) {
+    com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threads.isThreadAllocatedMemorySupported()
+            && threads.isThreadAllocatedMemoryEnabled());
+    long thread = Thread.currentThread().threadId();
+
+    for (int i = 0; i < WARMUP_CYCLES; i++) {
+      simulation.step();
+    }
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < CYCLES; i++) {
+      simulation.step();
+    }
+    return threads.getThreadAllocatedBytes(thread) - before;
+  }
+
+  /**
+   * Creates a simulation running a workload that doesn't halt while measured.
+   *
+   * @return simulation
+   */
+  private static Simulation create() {
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(Assembler.workload(100_000));
+    return simulation;
+  }
+
+  /**
+   * Event-driven stepping allocates nothing.
+   */
+  @Test
+  void scheduledCycles() {
+    assertEquals(0, allocated(create()));
+  }
+
+  /**
+   * Stepping every component on every cycle, with wait states, allocates nothing.
+   */
+  @Test
+  void lockstepCycles() {
+    Simulation simulation = create();
+    simulation.setEventScheduling(false);
+    simulation.setWaitStates(Map.of("eprom", 2, "ram", 1));
+    assertEquals(0, allocated(simulation));
+  }
+
+  /**
+   * Cached cycles allocate nothing, misses being counted in place.
+   */
+  @Test
+  void cachedCycles() {
+    Simulation simulation = create();
+    simulation.proc.attachCaches(new Cache("icache", Cache.Config.parse("64:2:16")),
+            new Cache("dcache", Cache.Config.parse("64:2:16:wb")));
+    assertEquals(0, allocated(simulation));
+  }
+}
@@ -0,0 +1,103 @@
+package microsim.simulation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import microsim.Assembler;
+import microsim.simulation.event.HaltEvent;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.EventScheduler} in lockstep against stepping every component on
+ * every cycle: both must see the same processor state on every cycle.
+ */
+class EventSchedulerTest {
+
+  /**
+   * Cycles after which the comparison gives up, if neither simulation halted.
+   */
+  private static final int MAX_CYCLES = 2_000_000;
+
+  /**
+   * Builds a program that mixes EPROM, RAM, VRAM and device port accesses in a loop, then halts.
+   *
+   * @return EPROM image
+   */
+  private static byte[] program() {
+    Assembler a = new Assembler();
+    a.li(7, Simulation.VIDEO_BASE);
+    a.li(8, Simulation.KEYBOARD_BASE);
+    a.li(10, 0x10300);
+    a.li(11, 0x20000);
+    a.li(9, 64);
+    int loop = a.pc();
+    a.sw(9, 7, 0);
+    a.sw(9, 7, 4);
+    a.lw(5, 8, 0);
+    a.lw(5, 8, 4);
+    a.lbu(6, 9, 0x100);
+    a.sw(6, 10, 0);
+    a.lbu(6, 10, 1);
+    a.sb(6, 11, 0);
+    a.addi(9, 9, -1);
+    a.bne(9, 0, loop);
+    a.ecall();
+    return a.eprom();
+  }
+
+  /**
+   * Creates a simulation running the test program.
+   *
+   * @param scheduled step responders only when they have pending work?
+   * @param waitStates wait states of regions and devices
+   * @return simulation
+   */
+  private static Simulation create(boolean scheduled, Map<String, Integer> waitStates) {
+    Simulation simulation = new Simulation("test");
+    simulation.setEventScheduling(scheduled);
+    simulation.setWaitStates(waitStates);
+    simulation.memory.loadEPROM(program());
+    return simulation;
+  }
+
+  /**
+   * Steps a scheduled and an unscheduled simulation side by side, comparing processor state on
+   * every cycle, until both halt.
+   *
+   * @param waitStates wait states of regions and devices
+   */
+  private static void compare(Map<String, Integer> waitStates) {
+    Simulation scheduled = create(true, waitStates);
+    Simulation stepped = create(false, waitStates);
+    boolean[] halted = new boolean[2];
+    scheduled.addListener(HaltEvent.class, e -> halted[0] = true);
+    stepped.addListener(HaltEvent.class, e -> halted[1] = true);
+
+    for (int cycle = 0; !(halted[0] && halted[1]); cycle++) {
+      assertTrue(cycle < MAX_CYCLES, "Simulations didn't halt");
+      scheduled.step();
+      stepped.step();
+
+      assertEquals(stepped.proc.getPc(), scheduled.proc.getPc(), "pc at cycle " + cycle);
+      assertArrayEquals(stepped.proc.getRegisters(), scheduled.proc.getRegisters(),
+              "registers at cycle " + cycle);
+      assertEquals(halted[1], halted[0], "halt at cycle " + cycle);
+    }
+  }
+
+  /**
+   * Scheduled stepping matches per-cycle stepping with no wait states.
+   */
+  @Test
+  void matchesPerCycleStepping() {
+    compare(Map.of());
+  }
+
+  /**
+   * Scheduled stepping matches per-cycle stepping when responders hold the bus in wait states.
+   */
+  @Test
+  void matchesPerCycleSteppingWithWaitStates() {
+    compare(Map.of("eprom", 1, "ram", 2, "vram", 1, "video", 3, "keyboard", 2));
+  }
+}
@@ -0,0 +1,140 @@
+package microsim.simulation;
+
+import microsim.Assembler;
+import microsim.simulation.component.SimulationComponent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures where parallel stepping starts to pay off on the host. Components doing a fixed amount
+ * of work per step are stepped sequentially and by a
+ * {@link microsim.simulation.ParallelStepper}, for growing amounts of work, then a full simulation
+ * is run both ways. Run with the bench profile.
+ */
+@Tag("benchmark")
+class ParallelStepperBenchmark {
+
+  /**
+   * Number of components stepped per cycle.
+   */
+  private static final int COMPONENTS = 8;
+
+  /**
+   * Cycles measured per configuration, after as many warmup cycles.
+   */
+  private static final int CYCLES = 20_000;
+
+  /**
+   * Component that does a fixed amount of work per step.
+   */
+  private static class LoadComponent extends SimulationComponent {
+
+    /**
+     * Iterations of work per step.
+     */
+    private final int work;
+
+    /**
+     * Result of work, kept so that it isn't optimized away.
+     */
+    long sink;
+
+    /**
+     * Instantiates component.
+     *
+     * @param simulation simulation the component belongs to
+     * @param work iterations of work per step
+     */
+    LoadComponent(Simulation simulation, int work) {
+      super(simulation);
+      this.work = work;
+    }
+
+    /**
+     * Steps by doing the work.
+     */
+    @Override
+    public void step() {
+      long x = sink;
+      for (int i = 0; i < work; i++) {
+        x = x * 31 + i;
+      }
+      sink = x;
+    }
+  }
+
+  /**
+   * Returns time per cycle of a stepper.
+   *
+   * @param stepper stepper to time
+   * @return nanoseconds per cycle
+   */
+  private static double time(ParallelStepper stepper) {
+    for (int i = 0; i < CYCLES; i++) {
+      stepper.step();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < CYCLES; i++) {
+      stepper.step();
+    }
+    return (System.nanoTime() - start) / (double) CYCLES;
+  }
+
+  /**
+   * Times synthetic components for growing work per step, and reports the first amount of work at
+   * which parallel stepping beats sequential stepping.
+   */
+  @Test
+  void breakEven() {
+    Simulation simulation = new Simulation("bench");
+    int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    System.out.println("Parallel stepping, " + COMPONENTS + " components, " + workers
+            + " workers on " + Runtime.getRuntime().availableProcessors() + " cores:");
+    System.out.println("\twork\tsequential ns/cycle\tparallel ns/cycle");
+
+    int breakEven = -1;
+    for (int work = 0; work <= 20_000; work = work == 0 ? 10 : work * 4) {
+      SimulationComponent[] components = new SimulationComponent[COMPONENTS];
+      for (int i = 0; i < COMPONENTS; i++) {
+        components[i] = new LoadComponent(simulation, work);
+      }
+
+      ParallelStepper sequential = new ParallelStepper("bench", simulation.bus, components, 1);
+      ParallelStepper parallel = new ParallelStepper("bench", simulation.bus, components, workers);
+      double seq = time(sequential);
+      double par = time(parallel);
+      parallel.shutdown();
+
+      System.out.printf("\t%d\t%.0f\t\t\t%.0f%n", work, seq, par);
+      if (breakEven < 0 && par < seq) {
+        breakEven = work;
+      }
+    }
+
+    System.out.println(breakEven < 0 ? "\tParallel stepping never paid off"
+            : "\tParallel stepping pays off from " + breakEven + " iterations per step");
+  }
+
+  /**
+   * Times a full simulation running a workload, stepped sequentially and in parallel.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void simulation() throws InterruptedException {
+    int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+    for (int w : new int[]{1, workers}) {
+      Simulation simulation = new Simulation("bench");
+      simulation.memory.loadEPROM(Assembler.workload(20));
+      if (w > 1) {
+        simulation.enableParallelStepping(w);
+      }
+
+      long start = System.nanoTime();
+      simulation.begin().join();
+      double time = (System.nanoTime() - start) / (double) simulation.getCycle();
+      System.out.printf("Simulation, %d workers: %.1f ns/cycle%n", w, time);
+    }
+  }
+}
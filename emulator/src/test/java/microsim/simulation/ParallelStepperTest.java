@@ -0,0 +1,157 @@
+package microsim.simulation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import microsim.simulation.component.BusComponent;
+import microsim.simulation.component.SimulationComponent;
+import microsim.simulation.component.bus.Watchpoints;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.ParallelStepper}.
+ */
+class ParallelStepperTest {
+
+  /**
+   * Component that throws on every step.
+   */
+  private static class FailingComponent extends SimulationComponent {
+
+    /**
+     * Message of thrown exceptions.
+     */
+    private final String message;
+
+    /**
+     * Instantiates component.
+     *
+     * @param simulation simulation the component belongs to
+     * @param message message of thrown exceptions
+     */
+    FailingComponent(Simulation simulation, String message) {
+      super(simulation);
+      this.message = message;
+    }
+
+    /**
+     * Steps by throwing.
+     */
+    @Override
+    public void step() {
+      throw new RuntimeException(message);
+    }
+  }
+
+  /**
+   * Component that drives the data line on every step.
+   */
+  private static class DrivingComponent extends BusComponent {
+
+    /**
+     * Instantiates component.
+     *
+     * @param simulation simulation the component belongs to, whose bus it drives
+     */
+    DrivingComponent(Simulation simulation) {
+      super(simulation.bus, simulation);
+    }
+
+    /**
+     * Steps by driving the data line.
+     */
+    @Override
+    public void step() {
+      bus.dataLine.drive(this, 1);
+    }
+  }
+
+  /**
+   * Builds a stepper over two components driving the data line, on a worker each.
+   *
+   * @param simulation simulation the components belong to
+   * @return stepper
+   */
+  private static ParallelStepper drivingStepper(Simulation simulation) {
+    return new ParallelStepper("test", simulation.bus, new SimulationComponent[]{
+      new DrivingComponent(simulation),
+      new DrivingComponent(simulation)
+    }, 2);
+  }
+
+  /**
+   * Counts exceptions suppressed by an exception, and by those, recursively.
+   *
+   * @param t exception to count from
+   * @return number of suppressed exceptions
+   */
+  private static int countSuppressed(Throwable t) {
+    int count = 0;
+    for (Throwable s : t.getSuppressed()) {
+      count += 1 + countSuppressed(s);
+    }
+    return count;
+  }
+
+  /**
+   * Failures of all workers in a phase are reported: the calling thread's first, with the others
+   * attached as suppressed.
+   */
+  @Test
+  void reportsAllFailuresOfPhase() {
+    Simulation simulation = new Simulation("test");
+    ParallelStepper stepper = new ParallelStepper("test", simulation.bus,
+            new SimulationComponent[]{
+              new FailingComponent(simulation, "worker 0"),
+              new FailingComponent(simulation, "worker 1"),
+              new FailingComponent(simulation, "worker 2")
+            }, 3);
+
+    for (int i = 0; i < 100; i++) {
+      RuntimeException e = assertThrows(RuntimeException.class, stepper::step);
+      assertEquals("worker 0", e.getMessage());
+      assertEquals(2, countSuppressed(e));
+    }
+    stepper.shutdown();
+  }
+
+  /**
+   * Two components driving the same line in a phase get the same conflict reported on every
+   * cycle, whichever touched the line first.
+   */
+  @Test
+  void reportsSameConflictEveryCycle() {
+    Simulation simulation = new Simulation("test");
+    ParallelStepper stepper = drivingStepper(simulation);
+    try {
+      String first = assertThrows(RuntimeException.class, stepper::step).getMessage();
+      assertTrue(first.startsWith("Conflict on data line"));
+      for (int i = 0; i < 100; i++) {
+        assertEquals(first, assertThrows(RuntimeException.class, stepper::step).getMessage());
+      }
+    } finally {
+      stepper.shutdown();
+    }
+  }
+
+  /**
+   * Components are stepped in sequence while the bus counts or watches transactions, so the second
+   * driver fails right away instead of conflicting.
+   */
+  @Test
+  void stepsSequentiallyWhileObserving() {
+    Simulation simulation = new Simulation("test");
+    ParallelStepper stepper = drivingStepper(simulation);
+    try {
+      simulation.bus.attachHeatmap();
+      RuntimeException e = assertThrows(RuntimeException.class, stepper::step);
+      assertTrue(e.getMessage().contains("trying to drive TSLine already driven"));
+
+      simulation.bus.heatmap = null;
+      simulation.bus.watchpoints.add(Watchpoints.Type.READ, 0, 1, null);
+      e = assertThrows(RuntimeException.class, stepper::step);
+      assertTrue(e.getMessage().contains("trying to drive TSLine already driven"));
+    } finally {
+      stepper.shutdown();
+    }
+  }
+}
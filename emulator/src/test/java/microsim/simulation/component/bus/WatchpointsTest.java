@@ -0,0 +1,99 @@
+package microsim.simulation.component.bus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import microsim.simulation.Simulation;
+import microsim.simulation.component.bus.Bus.ByteSelect;
+import microsim.simulation.component.bus.Watchpoints.Type;
+import microsim.simulation.component.bus.Watchpoints.Watchpoint;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.component.bus.Watchpoints}.
+ */
+class WatchpointsTest {
+
+  /**
+   * Simulation whose memory space serves checked transactions.
+   */
+  private final Simulation simulation = new Simulation("test");
+
+  /**
+   * Watchpoints under test.
+   */
+  private final Watchpoints watchpoints = simulation.bus.watchpoints;
+
+  /**
+   * Checks a transaction served by memory.
+   *
+   * @param addr address of transaction
+   * @param byteSelect byte select of transaction
+   * @param data data of transaction
+   */
+  private void access(int addr, int byteSelect, int data) {
+    watchpoints.check(simulation.memory, addr, byteSelect, data, true);
+  }
+
+  /**
+   * Byte accesses to a watched word only compare the byte they touch.
+   */
+  @Test
+  void changeComparesAccessedBytes() {
+    Watchpoint w = watchpoints.add(Type.CHANGE, 0x10100, 4, 0x11223344);
+
+    // same byte, then other width of same value
+    access(0x10102, ByteSelect.BYTE, 0x22);
+    access(0x10100, ByteSelect.HALF, 0x3344);
+    access(0x10100, ByteSelect.WORD, 0x11223344);
+    assertEquals(0, w.getHits());
+
+    // changed byte, then its new value seen in a word
+    access(0x10103, ByteSelect.BYTE, 0x55);
+    assertEquals(1, w.getHits());
+    access(0x10100, ByteSelect.WORD, 0x55223344);
+    assertEquals(1, w.getHits());
+  }
+
+  /**
+   * Accesses that only partly overlap the watched range compare the overlapping bytes only.
+   */
+  @Test
+  void changeComparesOverlappingBytes() {
+    Watchpoint w = watchpoints.add(Type.CHANGE, 0x10102, 2, 0xbeef);
+
+    // word from below, watched bytes are its upper half
+    access(0x10100, ByteSelect.WORD, 0xbeef0000);
+    access(0x10100, ByteSelect.WORD, 0xbeef1234);
+    assertEquals(0, w.getHits());
+
+    // word from above, watched bytes are its lower half
+    access(0x10103, ByteSelect.WORD, 0x123456be);
+    assertEquals(0, w.getHits());
+    access(0x10103, ByteSelect.WORD, 0x123456bf);
+    assertEquals(1, w.getHits());
+  }
+
+  /**
+   * Without an initial value, bytes are learned on first access and only hit once known.
+   */
+  @Test
+  void changeLearnsUnknownBytes() {
+    Watchpoint w = watchpoints.add(Type.CHANGE, 0x10100, 4, null);
+
+    access(0x10100, ByteSelect.BYTE, 0x01);
+    access(0x10101, ByteSelect.BYTE, 0x02);
+    access(0x10100, ByteSelect.WORD, 0x7f7f0201);
+    assertEquals(0, w.getHits());
+
+    access(0x10102, ByteSelect.HALF, 0x7f7e);
+    assertEquals(1, w.getHits());
+  }
+
+  /**
+   * Change watchpoints are limited to a word.
+   */
+  @Test
+  void changeWatchesAtMostWord() {
+    assertThrows(RuntimeException.class, () -> watchpoints.add(Type.CHANGE, 0x10100, 8, null));
+  }
+}
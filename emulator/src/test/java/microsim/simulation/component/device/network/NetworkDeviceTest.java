@@ -0,0 +1,399 @@
+package microsim.simulation.component.device.network;
+
+import static microsim.MemoryWords.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import microsim.Assembler;
+import microsim.simulation.Simulation;
+import microsim.simulation.component.bus.Watchpoints;
+import microsim.simulation.component.memory.MemorySpace;
+import microsim.simulation.component.processor.Cache;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.component.device.network.NetworkDevice}: receive buffers, and
+ * packet mode.
+ */
+class NetworkDeviceTest {
+
+  /**
+   * Address of the descriptor ring, in RAM.
+   */
+  private static final int RING = MemorySpace.RAM_START + 0x100;
+
+  /**
+   * Address of the packet buffer, in RAM.
+   */
+  private static final int BUFFER = MemorySpace.RAM_START + 0x200;
+
+  /**
+   * Sends a frame through TX, a byte per word.
+   *
+   * @param from device to send from
+   * @param to device to send to
+   * @param payload payload elements
+   */
+  private static void send(NetworkDevice from, NetworkDevice to, int... payload) {
+    int[] fields = new int[3 + payload.length];
+    fields[0] = from.getAddress();
+    fields[1] = to.getAddress();
+    fields[2] = payload.length;
+    System.arraycopy(payload, 0, fields, 3, payload.length);
+
+    for (int field : fields) {
+      for (int i = 0; i < 4; i++) {
+        from.setPort(0, (field >>> (8 * i)) & 0xff);
+      }
+    }
+  }
+
+  /**
+   * Reads a header field or payload element through RX, a byte per word.
+   *
+   * @param rx device to read from
+   * @return field value
+   */
+  private static int receive(NetworkDevice rx) {
+    int field = 0;
+    for (int i = 0; i < 4; i++) {
+      field |= (rx.getPort(2) & 0xff) << (8 * i);
+    }
+    return field;
+  }
+
+  /**
+   * Reads the rest of a frame through RX, after its source and destination fields.
+   *
+   * @param rx device to read from
+   * @param source source field, already read
+   * @param destination destination field, already read
+   * @return source, destination and payload elements of frame
+   */
+  private static int[] receiveRest(NetworkDevice rx, int source, int destination) {
+    int[] fields = new int[3 + receive(rx)];
+    fields[0] = source;
+    fields[1] = destination;
+    fields[2] = fields.length - 3;
+    for (int i = 3; i < fields.length; i++) {
+      fields[i] = receive(rx);
+    }
+    return fields;
+  }
+
+  /**
+   * Address of code run from RAM.
+   */
+  private static final int CODE = MemorySpace.RAM_START + 0x400;
+
+  /**
+   * Returns an EPROM image of a program that spins in place, so that simulations can be stepped
+   * while their devices handle descriptors.
+   *
+   * @return EPROM image
+   */
+  private static byte[] spin() {
+    Assembler a = new Assembler();
+    a.beq(0, 0, a.pc());
+    return a.eprom();
+  }
+
+  /**
+   * Steps a simulation for a number of cycles.
+   *
+   * @param simulation simulation to step
+   * @param cycles number of cycles
+   */
+  private static void run(Simulation simulation, int cycles) {
+    for (int i = 0; i < cycles; i++) {
+      simulation.step();
+    }
+  }
+
+  /**
+   * Appends the instructions that set the receive ring and enable packet mode, through the bus so
+   * that the device is stepped from then on.
+   *
+   * @param a assembler to append to
+   * @param ring address of receive descriptor ring
+   */
+  private static void enableReceive(Assembler a, int ring) {
+    a.li(8, Simulation.NETWORK_BASE);
+    a.li(6, ring);
+    a.sw(6, 8, 7 * 4);
+    a.li(6, NetworkDevice.CTRL_PACKET);
+    a.sw(6, 8, 5 * 4);
+  }
+
+  /**
+   * Sets up a simulation whose device takes received frames into a single owned descriptor, in
+   * packet mode, once stepped.
+   *
+   * @param simulation simulation to set up
+   * @param buffer address of packet buffer
+   */
+  private static void ownReceive(Simulation simulation, int buffer) {
+    writeWord(simulation.memory, RING, buffer);
+    writeWord(simulation.memory, RING + 4, NetworkDevice.DESC_OWN | 64);
+
+    Assembler a = new Assembler();
+    enableReceive(a, RING);
+    a.beq(0, 0, a.pc());
+    simulation.memory.loadEPROM(a.eprom());
+  }
+
+  /**
+   * Creates two simulations whose devices share a segment.
+   *
+   * @return simulations
+   */
+  private static Simulation[] pair() {
+    return segment(2);
+  }
+
+  /**
+   * Creates simulations whose devices share a segment.
+   *
+   * @param count number of simulations
+   * @return simulations
+   */
+  private static Simulation[] segment(int count) {
+    Simulation[] simulations = new Simulation[count];
+    NetworkSwitch segment = new NetworkSwitch();
+    for (int i = 0; i < count; i++) {
+      simulations[i] = new Simulation("test");
+      simulations[i].memory.loadEPROM(spin());
+      simulations[i].network.connect(segment);
+    }
+    return simulations;
+  }
+
+  /**
+   * Frames of different senders are read through RX whole, in turn, even when more frames come
+   * while one is being read.
+   */
+  @Test
+  void framesOfSendersArriveWhole() {
+    Simulation[] simulations = segment(3);
+    NetworkDevice a = simulations[0].network;
+    NetworkDevice b = simulations[1].network;
+    NetworkDevice rx = simulations[2].network;
+
+    send(a, rx, 1, 2);
+    send(b, rx, 3);
+
+    // more frames come from both senders while the first one is being read
+    int source = receive(rx);
+    int destination = receive(rx);
+    send(a, rx, 4);
+    send(b, rx, 5, 6, 7);
+
+    int to = rx.getAddress();
+    assertArrayEquals(new int[]{a.getAddress(), to, 2, 1, 2},
+            receiveRest(rx, source, destination));
+    assertArrayEquals(new int[]{b.getAddress(), to, 1, 3},
+            receiveRest(rx, receive(rx), receive(rx)));
+    assertArrayEquals(new int[]{a.getAddress(), to, 1, 4},
+            receiveRest(rx, receive(rx), receive(rx)));
+    assertArrayEquals(new int[]{b.getAddress(), to, 3, 5, 6, 7},
+            receiveRest(rx, receive(rx), receive(rx)));
+    assertEquals(0, rx.getPort(3));
+  }
+
+  /**
+   * Words of a frame read through RX before switching to packet mode don't misalign the frames
+   * received after.
+   */
+  @Test
+  void modeSwitchDrainsPartialFrame() {
+    Simulation[] simulations = pair();
+    NetworkDevice tx = simulations[0].network;
+    NetworkDevice rx = simulations[1].network;
+    MemorySpace memory = simulations[1].memory;
+
+    // read part of a frame in word mode
+    send(tx, rx, 7);
+    for (int i = 0; i < 5; i++) {
+      rx.getPort(2);
+    }
+
+    // switch to packet mode, with an owned descriptor
+    ownReceive(simulations[1], BUFFER);
+    run(simulations[1], 100);
+    assertEquals(0, rx.getPort(10));
+
+    send(tx, rx, 9);
+    run(simulations[1], 2 * NetworkDevice.RX_POLL_CYCLES);
+    assertEquals(NetworkDevice.STATUS_RXDONE, rx.getPort(10));
+    assertEquals(NetworkDevice.PACKET_HEADER + 1, readWord(memory, RING + 4));
+    assertEquals(tx.getAddress(), readWord(memory, BUFFER));
+    assertEquals(rx.getAddress(), readWord(memory, BUFFER + 4));
+    assertEquals(1, readWord(memory, BUFFER + 8));
+    assertEquals(9, memory.readMemory(BUFFER + NetworkDevice.PACKET_HEADER, true));
+  }
+
+  /**
+   * A receive descriptor in EPROM can't be written back, so its frame is dropped and completion
+   * is only signaled in STATUS.
+   */
+  @Test
+  void descriptorInEpromCompletesWithError() {
+    Simulation[] simulations = pair();
+    NetworkDevice tx = simulations[0].network;
+    NetworkDevice rx = simulations[1].network;
+
+    // owned descriptor in EPROM, past the program
+    int ring = MemorySpace.EPROM_START + 0x100;
+    Assembler a = new Assembler();
+    enableReceive(a, ring);
+    a.beq(0, 0, a.pc());
+    byte[] eprom = a.eprom();
+    int[] desc = {BUFFER, NetworkDevice.DESC_OWN | 64};
+    for (int i = 0; i < 8; i++) {
+      eprom[ring + i] = (byte) (desc[i / 4] >>> (8 * (i % 4)));
+    }
+    simulations[1].memory.loadEPROM(eprom);
+
+    run(simulations[1], 100);
+    send(tx, rx, 9);
+    run(simulations[1], 2 * NetworkDevice.RX_POLL_CYCLES);
+
+    assertEquals(NetworkDevice.STATUS_RXDONE | NetworkDevice.STATUS_ERR, rx.getPort(10));
+    assertEquals(0, simulations[1].memory.readMemory(BUFFER, true));
+  }
+
+  /**
+   * A packet and descriptor stored through a write-back data cache are sent, as the device flushes
+   * the lines it reads.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void transmitFlushesDataCache() throws InterruptedException {
+    Simulation[] simulations = pair();
+    NetworkDevice tx = simulations[0].network;
+    NetworkDevice rx = simulations[1].network;
+
+    // store packet and descriptor, then kick transmission
+    Assembler a = new Assembler();
+    a.li(5, BUFFER);
+    a.li(6, tx.getAddress());
+    a.sw(6, 5, 0);
+    a.li(6, rx.getAddress());
+    a.sw(6, 5, 4);
+    a.li(6, 1);
+    a.sw(6, 5, 8);
+    a.li(6, 42);
+    a.sb(6, 5, NetworkDevice.PACKET_HEADER);
+    a.li(7, RING);
+    a.sw(5, 7, 0);
+    a.li(6, NetworkDevice.DESC_OWN | 64);
+    a.sw(6, 7, 4);
+    a.li(8, Simulation.NETWORK_BASE);
+    a.li(6, NetworkDevice.CTRL_PACKET);
+    a.sw(6, 8, 5 * 4);
+    a.sw(7, 8, 6 * 4);
+    a.sw(6, 8, 9 * 4);
+    a.ecall();
+    simulations[0].memory.loadEPROM(a.eprom());
+    simulations[0].proc.attachCaches(null,
+            new Cache("dcache", Cache.Config.parse("4096:2:32:wb:lru")));
+
+    simulations[0].begin().join();
+
+    int[] expected = {tx.getAddress(), rx.getAddress(), 1, 42};
+    for (int field : expected) {
+      for (int i = 0; i < 4; i++) {
+        assertEquals(1, rx.getPort(3));
+        assertEquals((byte) (field >>> (8 * i)), (byte) rx.getPort(2));
+      }
+    }
+    assertEquals(0, rx.getPort(3));
+  }
+
+  /**
+   * Received frames are delivered as the device is stepped, without STATUS or RXHEAD reads, and
+   * their copies are checked against watchpoints and take the wait states of memory.
+   */
+  @Test
+  void receiveIsSteppedAndObserved() {
+    int[] cycles = new int[2];
+    for (int waitStates = 0; waitStates < 2; waitStates++) {
+      Simulation[] simulations = pair();
+      NetworkDevice tx = simulations[0].network;
+      NetworkDevice rx = simulations[1].network;
+      MemorySpace memory = simulations[1].memory;
+      memory.setWaitStates(0, waitStates, 0);
+      Watchpoints.Watchpoint watch = simulations[1].bus.watchpoints.add(Watchpoints.Type.WRITE,
+              BUFFER + NetworkDevice.PACKET_HEADER, 1, null);
+
+      ownReceive(simulations[1], BUFFER);
+      run(simulations[1], 100);
+      send(tx, rx, 5, 6, 7, 8, 9);
+      while (readWord(memory, RING + 4) != NetworkDevice.PACKET_HEADER + 5) {
+        assertTrue(cycles[waitStates]++ < 1000);
+        simulations[1].step();
+      }
+
+      assertEquals(1, watch.getHits());
+      assertEquals(9, memory.readMemory(BUFFER + NetworkDevice.PACKET_HEADER + 4, true));
+      assertEquals(NetworkDevice.STATUS_RXDONE, rx.getPort(10));
+    }
+
+    // 3 header words, 1 payload word and 1 byte, 2 descriptor reads and 1 write back
+    assertEquals(8, cycles[1] - cycles[0]);
+  }
+
+  /**
+   * A packet received over code the processor has fetched replaces it, as the device drops the
+   * fetch buffer.
+   */
+  @Test
+  void receiveDropsFetchedInstructions() {
+    Simulation[] simulations = pair();
+    NetworkDevice tx = simulations[0].network;
+    NetworkDevice rx = simulations[1].network;
+    MemorySpace memory = simulations[1].memory;
+
+    // RAM code spins on its first instruction, that the packet payload replaces
+    Assembler patch = new Assembler();
+    patch.addi(5, 0, 7);
+    int patched = ByteBuffer.wrap(patch.bytes()).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    Assembler ram = new Assembler();
+    ram.beq(0, 0, ram.pc());
+    ram.beq(0, 0, ram.pc());
+    byte[] code = ram.bytes();
+    for (int i = 0; i < code.length; i++) {
+      memory.writeMemory(CODE + i, code[i], true);
+    }
+    writeWord(memory, RING, CODE - NetworkDevice.PACKET_HEADER);
+    writeWord(memory, RING + 4, NetworkDevice.DESC_OWN | 64);
+    Assembler a = new Assembler();
+    enableReceive(a, RING);
+    a.li(7, CODE);
+    a.jalr(0, 7, 0);
+    memory.loadEPROM(a.eprom());
+
+    run(simulations[1], 100);
+    send(tx, rx, patched & 0xff, (patched >>> 8) & 0xff, (patched >>> 16) & 0xff,
+            patched >>> 24);
+    run(simulations[1], 100);
+
+    assertEquals(7, simulations[1].proc.getRegisters()[5]);
+  }
+
+  /**
+   * A ring length out of range is ignored, and signaled in STATUS.
+   */
+  @Test
+  void ringLengthOutOfRangeSetsError() {
+    NetworkDevice device = pair()[0].network;
+    device.setPort(5, NetworkDevice.CTRL_PACKET);
+    device.setPort(8, 4);
+    device.setPort(8, NetworkDevice.MAX_RING + 1);
+
+    assertEquals(4, device.getPort(8));
+    assertEquals(NetworkDevice.STATUS_ERR, device.getPort(10));
+  }
+}
@@ -0,0 +1,286 @@
+package microsim.simulation.component.device.network;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.component.device.network.NetworkHub}, running on a temporary
+ * socket, with switches linked to it through
+ * {@link microsim.simulation.component.device.network.HubLink}.
+ */
+class NetworkHubTest {
+
+  /**
+   * Flush latency of batching links, in nanoseconds.
+   */
+  private static final long FLUSH_LATENCY = 200_000_000;
+
+  /**
+   * Directory holding the hub socket.
+   */
+  private Path directory;
+
+  /**
+   * Path of hub socket.
+   */
+  private Path socket;
+
+  /**
+   * Hub under test.
+   */
+  private NetworkHub hub;
+
+  /**
+   * Thread running the hub.
+   */
+  private Thread thread;
+
+  /**
+   * Links opened by the test.
+   */
+  private final List<HubLink> links = new ArrayList<>();
+
+  /**
+   * Starts the hub on a temporary socket, in a background thread.
+   *
+   * @throws IOException if the socket can't be bound
+   */
+  private void startHub() throws IOException {
+    directory = Files.createTempDirectory("microsim-hub");
+    socket = directory.resolve("hub.sock");
+    hub = new NetworkHub(socket);
+
+    thread = new Thread(() -> {
+      try {
+        hub.run();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    thread.setName("Network hub");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Closes the links, then stops the hub and removes its socket.
+   *
+   * @throws IOException if the socket directory can't be removed
+   * @throws InterruptedException if interrupted while waiting for the hub
+   */
+  private void stopHub() throws IOException, InterruptedException {
+    for (HubLink link : links) {
+      link.close();
+    }
+    hub.close();
+    thread.join(RecordingPort.TIMEOUT);
+    assertFalse(Files.exists(socket));
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * Links a new switch to the hub.
+   *
+   * @param flushLatency flush latency of link, in nanoseconds
+   * @return linked switch
+   * @throws IOException if connecting to the hub fails
+   */
+  private NetworkSwitch connect(long flushLatency) throws IOException {
+    NetworkSwitch segment = new NetworkSwitch();
+    links.add(HubLink.connect(socket, segment, flushLatency));
+    return segment;
+  }
+
+  /**
+   * Reads from a socket until a buffer is full.
+   *
+   * @param channel socket to read from
+   * @param buffer buffer to fill
+   * @throws IOException if reading fails or the socket is closed
+   */
+  private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Hub closed connection");
+      }
+    }
+    buffer.flip();
+  }
+
+  /**
+   * Each link gets its own block of addresses.
+   *
+   * @throws Exception if the hub fails
+   */
+  @Test
+  void addressBlocksAreDisjoint() throws Exception {
+    startHub();
+    try {
+      NetworkSwitch first = connect(0);
+      NetworkSwitch second = connect(0);
+
+      Set<Integer> addresses = new HashSet<>();
+      for (int i = 0; i < NetworkSwitch.ADDR_POOL_SIZE; i++) {
+        addresses.add(first.nextAddress());
+        addresses.add(second.nextAddress());
+      }
+      assertEquals(2 * NetworkSwitch.ADDR_POOL_SIZE, addresses.size());
+    } finally {
+      stopHub();
+    }
+  }
+
+  /**
+   * Broadcast frames reach the switches of all other links.
+   *
+   * @throws Exception if the hub fails
+   */
+  @Test
+  void broadcastReachesAllLinks() throws Exception {
+    startHub();
+    try {
+      RecordingPort a = new RecordingPort(connect(0));
+      RecordingPort b = new RecordingPort(connect(0));
+      RecordingPort c = new RecordingPort(connect(0));
+
+      a.send(NetworkSwitch.BROADCAST, 1, 2);
+
+      assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 1, 2}, b.take());
+      assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 1, 2}, c.take());
+      assertEquals(0, a.pending());
+    } finally {
+      stopHub();
+    }
+  }
+
+  /**
+   * Frames to a learned address are sent to its link only.
+   *
+   * @throws Exception if the hub fails
+   */
+  @Test
+  void unicastReachesLearnedLinkOnly() throws Exception {
+    startHub();
+    try {
+      RecordingPort a = new RecordingPort(connect(0));
+      RecordingPort b = new RecordingPort(connect(0));
+      RecordingPort c = new RecordingPort(connect(0));
+
+      // hub and switches learn b
+      b.send(NetworkSwitch.BROADCAST, 1);
+      assertNotNull(a.take());
+      assertNotNull(c.take());
+
+      a.send(b.address, 2);
+      a.send(NetworkSwitch.BROADCAST, 3);
+
+      assertArrayEquals(new int[]{a.address, b.address, 2}, b.take());
+      assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 3}, b.take());
+      // frames of a link are sent on in order, so the unicast would have come first
+      assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 3}, c.take());
+      assertEquals(0, c.pending());
+      // c's switch would drop the unicast too, as it learned b, so check its link got only two
+      assertEquals(2, links.get(2).getFramesReceived());
+    } finally {
+      stopHub();
+    }
+  }
+
+  /**
+   * Frames sent within the flush latency go to the hub in a single batch.
+   *
+   * @throws Exception if the hub fails
+   */
+  @Test
+  void framesAreBatched() throws Exception {
+    startHub();
+    try {
+      RecordingPort a = new RecordingPort(connect(FLUSH_LATENCY));
+      RecordingPort b = new RecordingPort(connect(0));
+      HubLink link = links.get(0);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < 5; i++) {
+        a.send(NetworkSwitch.BROADCAST, i);
+      }
+
+      for (int i = 0; i < 5; i++) {
+        assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, i}, b.take());
+        if (i == 0) {
+          assertTrue(System.nanoTime() - start >= FLUSH_LATENCY);
+        }
+      }
+
+      // batch is counted once written
+      long deadline = System.currentTimeMillis() + RecordingPort.TIMEOUT;
+      while (link.getBatchesSent() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(1);
+      }
+      assertEquals(5, link.getFramesSent());
+      assertEquals(1, link.getBatchesSent());
+    } finally {
+      stopHub();
+    }
+  }
+
+  /**
+   * A link gets no frames before its handshake was answered, and frames after it.
+   *
+   * @throws Exception if the hub fails
+   */
+  @Test
+  void noFramesBeforeHandshake() throws Exception {
+    startHub();
+    try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+      // accepted before the switches' links
+      channel.connect(UnixDomainSocketAddress.of(socket));
+      RecordingPort a = new RecordingPort(connect(0));
+      RecordingPort b = new RecordingPort(connect(0));
+
+      // forwarded while the raw link is connected, but didn't greet
+      a.send(NetworkSwitch.BROADCAST, 1);
+      assertNotNull(b.take());
+
+      ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES);
+      buffer.putInt(NetworkHub.MAGIC).flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+      readFully(channel, buffer);
+      assertEquals(NetworkHub.MAGIC, buffer.getInt());
+      int base = buffer.getInt();
+      for (int address : new int[]{a.address, b.address}) {
+        assertTrue(address < base || address >= base + NetworkSwitch.ADDR_POOL_SIZE);
+      }
+
+      a.send(NetworkSwitch.BROADCAST, 2);
+
+      // first batch holds the later frame only
+      buffer = ByteBuffer.allocate(Integer.BYTES);
+      readFully(channel, buffer);
+      assertEquals(NetworkHub.recordSize(1), buffer.getInt());
+      buffer = ByteBuffer.allocate(NetworkHub.recordSize(1));
+      readFully(channel, buffer);
+      assertEquals(1, buffer.getInt());
+      assertEquals(a.address, buffer.getInt());
+      assertEquals(NetworkSwitch.BROADCAST, buffer.getInt());
+      assertEquals(2, buffer.getInt());
+    } finally {
+      stopHub();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package microsim.simulation.component.device.network;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.component.device.network.NetworkSwitch}, with three ports on a
+ * segment and one on a separate segment.
+ */
+class NetworkSwitchTest {
+
+  /**
+   * Segment under test.
+   */
+  private final NetworkSwitch segment = new NetworkSwitch();
+
+  /**
+   * Ports on the segment under test.
+   */
+  private final RecordingPort a = new RecordingPort(segment);
+  private final RecordingPort b = new RecordingPort(segment);
+  private final RecordingPort c = new RecordingPort(segment);
+
+  /**
+   * Port on a separate segment.
+   */
+  private final RecordingPort other = new RecordingPort(new NetworkSwitch());
+
+  /**
+   * Checks that a port got exactly one frame, and returns it.
+   *
+   * @param port port to check
+   * @return source, destination and words of frame
+   */
+  private static int[] only(RecordingPort port) {
+    assertEquals(1, port.pending());
+    try {
+      return port.take();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Makes the segment learn the addresses of all its ports, and drops the broadcasts.
+   */
+  private void learnAll() {
+    for (RecordingPort port : new RecordingPort[]{a, b, c}) {
+      port.send(NetworkSwitch.BROADCAST, 0);
+    }
+    for (RecordingPort port : new RecordingPort[]{a, b, c}) {
+      port.clear();
+    }
+    assertEquals(3, segment.getLearnedCount());
+  }
+
+  /**
+   * Addresses are handed out once, from the segment's own block.
+   */
+  @Test
+  void addressesComeFromPool() {
+    Set<Integer> addresses = new HashSet<>(Set.of(a.address, b.address, c.address));
+    for (int i = 3; i < NetworkSwitch.ADDR_POOL_SIZE; i++) {
+      addresses.add(segment.nextAddress());
+    }
+
+    assertEquals(NetworkSwitch.ADDR_POOL_SIZE, addresses.size());
+    for (int address : addresses) {
+      assertTrue(address >= 1 && address <= NetworkSwitch.ADDR_POOL_SIZE);
+    }
+    assertThrows(RuntimeException.class, segment::nextAddress);
+  }
+
+  /**
+   * Broadcast frames reach all other ports of the segment.
+   */
+  @Test
+  void broadcastReachesAllOtherPorts() {
+    assertEquals(2, a.send(NetworkSwitch.BROADCAST, 1, 2));
+
+    assertEquals(0, a.pending());
+    assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 1, 2}, only(b));
+    assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 1, 2}, only(c));
+    assertEquals(0, other.pending());
+  }
+
+  /**
+   * Frames to an address that wasn't learned are flooded, and frames to a learned one reach its
+   * port only.
+   */
+  @Test
+  void learnedUnicastReachesDestinationOnly() {
+    // b isn't known yet
+    assertEquals(2, a.send(b.address, 3));
+    only(b);
+    only(c);
+
+    learnAll();
+    assertEquals(1, a.send(b.address, 4));
+
+    assertArrayEquals(new int[]{a.address, b.address, 4}, only(b));
+    assertEquals(0, a.pending());
+    assertEquals(0, c.pending());
+    assertEquals(0, other.pending());
+  }
+
+  /**
+   * The switch learns the address it assigned to a sending port, whatever source a frame claims,
+   * and hands that address to receivers.
+   */
+  @Test
+  void learnsAssignedAddress() {
+    // a claims to be b
+    assertEquals(2, segment.forward(a, new int[]{1}, 1, b.address, NetworkSwitch.BROADCAST));
+    assertArrayEquals(new int[]{a.address, NetworkSwitch.BROADCAST, 1}, only(b));
+    only(c);
+    assertEquals(1, segment.getLearnedCount());
+
+    // b wasn't learned on a, so its frames are still flooded
+    assertEquals(2, c.send(b.address, 2));
+    assertArrayEquals(new int[]{c.address, b.address, 2}, only(b));
+    only(a);
+  }
+
+  /**
+   * Detached ports get no more frames, and their addresses are forgotten.
+   */
+  @Test
+  void detachForgetsAddresses() {
+    learnAll();
+    segment.detach(b);
+
+    assertEquals(2, segment.getPortCount());
+    assertEquals(2, segment.getLearnedCount());
+
+    // b is unknown again, so its frames are flooded to the remaining ports
+    assertEquals(1, a.send(b.address, 5));
+    assertEquals(0, b.pending());
+    assertArrayEquals(new int[]{a.address, b.address, 5}, only(c));
+  }
+
+  /**
+   * Traffic of a segment never reaches a separate segment, even to an address both hand out.
+   */
+  @Test
+  void separateSegmentSeesNoTraffic() {
+    learnAll();
+    assertEquals(0, other.send(NetworkSwitch.BROADCAST, 6));
+    assertEquals(0, other.send(b.address, 7));
+    assertEquals(0, a.pending() + b.pending() + c.pending());
+
+    a.send(NetworkSwitch.BROADCAST, 8);
+    a.send(other.address, 9);
+    a.send(b.address, 10);
+    assertEquals(0, other.pending());
+  }
+}
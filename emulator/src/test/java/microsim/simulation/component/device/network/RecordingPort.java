@@ -0,0 +1,111 @@
+package microsim.simulation.component.device.network;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network port that records the frames delivered to it, unfiltered, so that tests see exactly what
+ * a switch forwards. Takes its address from the pool of the switch it's attached to.
+ */
+class RecordingPort implements NetworkPort {
+
+  /**
+   * Time waited for a frame, in milliseconds.
+   */
+  static final long TIMEOUT = 5000;
+
+  /**
+   * Switch the port is attached to.
+   */
+  private final NetworkSwitch segment;
+
+  /**
+   * Address of the port.
+   */
+  final int address;
+
+  /**
+   * Frames received, as source, destination, then words.
+   */
+  private final BlockingQueue<int[]> frames = new LinkedBlockingQueue<>();
+
+  /**
+   * Instantiates port, attaching it to a switch.
+   *
+   * @param segment switch to attach to
+   */
+  RecordingPort(NetworkSwitch segment) {
+    this.segment = segment;
+    address = segment.nextAddress();
+    segment.attach(this);
+  }
+
+  /**
+   * Returns address of the port.
+   *
+   * @return address
+   */
+  @Override
+  public int getAddress() {
+    return address;
+  }
+
+  /**
+   * Sends a frame through the switch.
+   *
+   * @param destination destination address
+   * @param words frame words
+   * @return number of ports that accepted the frame
+   */
+  int send(int destination, int... words) {
+    return segment.forward(this, words, words.length, address, destination);
+  }
+
+  /**
+   * Records a frame.
+   *
+   * @param from port that sent the frame
+   * @param frame array holding frame words
+   * @param length number of words in frame
+   * @param source source address of frame
+   * @param destination destination address of frame
+   * @return always true
+   */
+  @Override
+  public boolean receive(NetworkPort from, int[] frame, int length, int source,
+          int destination) {
+    int[] record = new int[2 + length];
+    record[0] = source;
+    record[1] = destination;
+    System.arraycopy(frame, 0, record, 2, length);
+    frames.add(record);
+    return true;
+  }
+
+  /**
+   * Takes the oldest recorded frame, waiting for one up to {@link #TIMEOUT}.
+   *
+   * @return source, destination and words of frame, or null if none came
+   * @throws InterruptedException if interrupted while waiting
+   */
+  int[] take() throws InterruptedException {
+    return frames.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns number of recorded frames not taken yet.
+   *
+   * @return recorded frames
+   */
+  int pending() {
+    return frames.size();
+  }
+
+  /**
+   * Drops all recorded frames.
+   */
+  void clear() {
+    frames.clear();
+  }
+}
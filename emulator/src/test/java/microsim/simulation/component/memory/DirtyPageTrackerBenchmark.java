@@ -0,0 +1,81 @@
+package microsim.simulation.component.memory;
+
+import microsim.simulation.Simulation;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures what dirty page tracking adds to memory writes: byte writes through a memory space,
+ * which mark their page, are timed against marking pages alone. Run with the bench profile.
+ */
+@Tag("benchmark")
+class DirtyPageTrackerBenchmark {
+
+  /**
+   * Writes measured per run.
+   */
+  private static final int WRITES = 50_000_000;
+
+  /**
+   * Runs per measure, the best one is kept.
+   */
+  private static final int RUNS = 6;
+
+  /**
+   * Size of RAM region written, in bytes.
+   */
+  private static final int RAM_SIZE = MemorySpace.RAM_END - MemorySpace.RAM_START + 1;
+
+  /**
+   * Returns best time per write of byte writes through a memory space.
+   *
+   * @param memory memory space to write
+   * @return nanoseconds per write
+   */
+  private static double timeWrites(MemorySpace memory) {
+    double best = Double.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < WRITES; i++) {
+        memory.writeMemory(MemorySpace.RAM_START + (i * 61 & (RAM_SIZE - 1)), (byte) i, false);
+      }
+      best = Math.min(best, (System.nanoTime() - start) / (double) WRITES);
+    }
+    return best;
+  }
+
+  /**
+   * Returns best time per mark of marking pages alone.
+   *
+   * @param tracker tracker to mark
+   * @return nanoseconds per mark
+   */
+  private static double timeMarks(DirtyPageTracker tracker) {
+    int base = MemorySpace.RAM_START - MemorySpace.EPROM_START;
+    double best = Double.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < WRITES; i++) {
+        tracker.mark(base + (i * 61 & (RAM_SIZE - 1)));
+      }
+      best = Math.min(best, (System.nanoTime() - start) / (double) WRITES);
+    }
+    return best;
+  }
+
+  /**
+   * Times writes and marks, and reports the share of write time spent tracking.
+   */
+  @Test
+  void writeOverhead() {
+    Simulation simulation = new Simulation("bench");
+    DirtyPageTracker.Consumer consumer = simulation.memory.getDirtyPages().newConsumer();
+    consumer.reset();
+
+    double write = timeWrites(simulation.memory);
+    double mark = timeMarks(new DirtyPageTracker(MemorySpace.SIZE));
+
+    System.out.printf("Dirty page tracking: %.2f ns/write, of which marking %.2f ns (%.0f%%)%n",
+            write, mark, 100 * mark / write);
+  }
+}
@@ -0,0 +1,87 @@
+package microsim.simulation.component.memory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import microsim.simulation.Simulation;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.component.memory.PagePool}.
+ */
+class PagePoolTest {
+
+  /**
+   * Returns page content no other test interns.
+   *
+   * @param seed byte filling the page
+   * @return page content
+   */
+  private static byte[] content(int seed) {
+    byte[] content = new byte[MemorySpace.PAGE_SIZE];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (seed + i * 31);
+    }
+    return content;
+  }
+
+  /**
+   * Equal content maps the same page, which leaves the pool with its last reference.
+   */
+  @Test
+  void pagesAreReferenceCounted() {
+    int before = PagePool.size();
+
+    ByteBuffer first = PagePool.intern(content(0x5a));
+    ByteBuffer second = PagePool.intern(content(0x5a));
+    assertSame(first, second);
+    assertEquals(before + 1, PagePool.size());
+
+    PagePool.release(first);
+    assertEquals(before + 1, PagePool.size());
+    PagePool.release(second);
+    assertEquals(before, PagePool.size());
+
+    assertThrows(RuntimeException.class, () -> PagePool.release(first));
+  }
+
+  /**
+   * Shared pages can't be written through.
+   */
+  @Test
+  void pagesAreReadOnly() {
+    ByteBuffer page = PagePool.intern(content(0x33));
+
+    assertTrue(page.isReadOnly());
+    assertThrows(ReadOnlyBufferException.class, () -> page.put(0, (byte) 1));
+    PagePool.release(page);
+  }
+
+  /**
+   * Memory spaces drop their reference when they copy a page on write, and when they release their
+   * pages.
+   */
+  @Test
+  void memorySpacesReleasePages() {
+    Simulation simulation = new Simulation("test");
+    Simulation other = new Simulation("test");
+    int before = PagePool.size();
+
+    byte[] eprom = content(0x77);
+    simulation.memory.loadEPROM(eprom);
+    assertEquals(before + 1, PagePool.size());
+
+    // a second memory space with the same EPROM shares its page
+    other.memory.loadEPROM(eprom);
+    assertEquals(before + 1, PagePool.size());
+
+    simulation.memory.writeMemory(MemorySpace.EPROM_START, (byte) 1, true);
+    assertEquals(before + 1, PagePool.size());
+    other.memory.releasePages();
+    assertEquals(before, PagePool.size());
+
+    // released pages stay readable
+    assertEquals(eprom[1], other.memory.readMemory(MemorySpace.EPROM_START + 1, true));
+  }
+}
@@ -0,0 +1,195 @@
+package microsim.simulation.component.processor;
+
+import static microsim.MemoryWords.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import microsim.Assembler;
+import microsim.simulation.Simulation;
+import microsim.simulation.component.bus.BurstStatistics;
+import microsim.simulation.component.device.block.BlockDevice;
+import microsim.simulation.component.memory.MemorySpace;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the bursts issued by {@link microsim.simulation.component.processor.BusInterface} through
+ * the fetch, load and write buffers, on byte copy loops and sector transfers through the disk data
+ * port.
+ */
+class BurstTest {
+
+  /**
+   * Sector moved by sector transfer programs.
+   */
+  private static final int SECTOR = 3;
+
+  /**
+   * RAM buffer moved by sector transfer programs.
+   */
+  private static final int BUFFER = MemorySpace.RAM_START + 0x100;
+
+  /**
+   * Number of halfwords in a sector.
+   */
+  private static final int HALVES = BlockDevice.BLOCK_SIZE / 2;
+
+  /**
+   * Appends the instructions that start a single sector disk command, leaving the disk base address
+   * in x5.
+   *
+   * @param a assembler to append to
+   * @param command disk command
+   */
+  private static void diskCommand(Assembler a, int command) {
+    a.li(5, Simulation.DISK_BASE);
+    a.li(6, SECTOR);
+    a.sw(6, 5, 8);
+    a.li(6, 1);
+    a.sw(6, 5, 12);
+    a.li(6, command);
+    a.sw(6, 5, 16);
+  }
+
+  /**
+   * Sequential instructions and loads read memory a block at a time, and byte copies write it a
+   * run at a time, giving the same result.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void sequentialAccessesBurst() throws InterruptedException {
+    byte[] image = Assembler.workload(2);
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(image);
+
+    simulation.begin().join();
+
+    ByteBuffer data = ByteBuffer.wrap(image, 0x200, 0x100).order(ByteOrder.LITTLE_ENDIAN);
+    int sum = 0;
+    while (data.hasRemaining()) {
+      sum += data.getInt();
+    }
+    assertEquals(sum, simulation.proc.getRegisters()[6]);
+    assertEquals(sum, readWord(simulation.memory, 0x10200));
+
+    // the sum and VRAM stores of each iteration are alone in their runs
+    BurstStatistics stats = simulation.memory.getBurstStatistics();
+    assertEquals(2 * 2, stats.getSingleTransfers());
+    assertTrue(stats.getBursts() > 0);
+  }
+
+  /**
+   * Stores to the fetched block drop it, so that the instructions they write are fetched.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void storesDropFetchedInstructions() throws InterruptedException {
+    Assembler patch = new Assembler();
+    patch.addi(5, 0, 2);
+    int patched = ByteBuffer.wrap(patch.bytes()).order(ByteOrder.LITTLE_ENDIAN).getInt();
+
+    // RAM code overwrites its third instruction, in the same fetched block
+    Assembler ram = new Assembler();
+    ram.sw(6, 7, 8);
+    ram.addi(0, 0, 0);
+    ram.addi(5, 0, 1);
+    ram.ecall();
+
+    Assembler a = new Assembler();
+    a.li(6, patched);
+    a.li(7, MemorySpace.RAM_START);
+    a.jalr(0, 7, 0);
+
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(a.eprom());
+    byte[] code = ram.bytes();
+    for (int i = 0; i < code.length; i++) {
+      simulation.memory.writeMemory(MemorySpace.RAM_START + i, code[i], true);
+    }
+
+    simulation.begin().join();
+
+    assertEquals(2, simulation.proc.getRegisters()[5]);
+  }
+
+  /**
+   * A sector read through the data port a halfword at a time is stored to memory in runs, and the
+   * data port is never read ahead.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void sectorReadStoresRuns() throws InterruptedException {
+    Assembler a = new Assembler();
+    diskCommand(a, BlockDevice.READ_COMMAND);
+    a.li(10, BUFFER);
+    a.li(11, BUFFER + BlockDevice.BLOCK_SIZE);
+    int loop = a.pc();
+    a.lhu(6, 5, 0);
+    a.sb(6, 10, 0);
+    a.srli(6, 6, 8);
+    a.sb(6, 10, 1);
+    a.addi(10, 10, 2);
+    a.bne(10, 11, loop);
+    a.ecall();
+
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(a.eprom());
+    byte[] storage = simulation.disk.getStorage();
+    for (int i = 0; i < BlockDevice.BLOCK_SIZE; i++) {
+      storage[SECTOR * BlockDevice.BLOCK_SIZE + i] = (byte) (i * 13 + 5);
+    }
+
+    simulation.begin().join();
+
+    for (int i = 0; i < BlockDevice.BLOCK_SIZE; i++) {
+      assertEquals(storage[SECTOR * BlockDevice.BLOCK_SIZE + i],
+              simulation.memory.readMemory(BUFFER + i, true));
+    }
+
+    // three command stores, then one read per halfword
+    BurstStatistics disk = simulation.disk.getBurstStatistics();
+    assertEquals(3 + HALVES, disk.getSingleTransfers());
+    assertEquals(0, disk.getBursts());
+  }
+
+  /**
+   * A sector written through the data port a halfword at a time reaches the port with fixed
+   * bursts of a full write buffer.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void sectorWriteBurstsDataPort() throws InterruptedException {
+    Assembler a = new Assembler();
+    diskCommand(a, BlockDevice.WRITE_COMMAND);
+    a.li(10, BUFFER);
+    a.li(11, BUFFER + BlockDevice.BLOCK_SIZE);
+    int loop = a.pc();
+    a.lhu(6, 10, 0);
+    a.sh(6, 5, 0);
+    a.addi(10, 10, 2);
+    a.bne(10, 11, loop);
+    a.ecall();
+
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(a.eprom());
+    for (int i = 0; i < BlockDevice.BLOCK_SIZE; i++) {
+      simulation.memory.writeMemory(BUFFER + i, (byte) (i * 7 + 1), true);
+    }
+
+    simulation.begin().join();
+
+    byte[] storage = simulation.disk.getStorage();
+    for (int i = 0; i < BlockDevice.BLOCK_SIZE; i++) {
+      assertEquals((byte) (i * 7 + 1), storage[SECTOR * BlockDevice.BLOCK_SIZE + i]);
+    }
+
+    BurstStatistics disk = simulation.disk.getBurstStatistics();
+    assertEquals(3, disk.getSingleTransfers());
+    assertEquals(HALVES / Processor.WRITE_BUFFER_BEATS, disk.getBursts());
+    assertEquals(HALVES, disk.getBurstBeats());
+  }
+}
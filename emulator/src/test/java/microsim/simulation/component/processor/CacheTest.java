@@ -0,0 +1,196 @@
+package microsim.simulation.component.processor;
+
+import static microsim.MemoryWords.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import microsim.Assembler;
+import microsim.simulation.Simulation;
+import microsim.simulation.component.bus.Bus;
+import microsim.simulation.component.bus.Watchpoints;
+import microsim.simulation.component.memory.MemorySpace;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.component.processor.Cache}.
+ */
+class CacheTest {
+
+  /**
+   * Returns a write-back cache large enough never to evict the workload's lines.
+   *
+   * @return cache
+   */
+  private static Cache writeBackCache() {
+    return new Cache("dcache", Cache.Config.parse("4096:2:32:wb:lru"));
+  }
+
+  /**
+   * Dirty lines reach memory when the simulation halts.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void dirtyLinesAreFlushedAtHalt() throws InterruptedException {
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(Assembler.workload(5));
+    Cache dcache = writeBackCache();
+    simulation.proc.attachCaches(null, dcache);
+
+    simulation.begin().join();
+
+    assertTrue(dcache.getWritebacks() > 0);
+    assertEquals(simulation.proc.getRegisters()[6], readWord(simulation.memory, 0x10200));
+  }
+
+  /**
+   * Flushing writes dirty lines once and keeps them valid, invalidating drops them.
+   */
+  @Test
+  void flushAndInvalidate() {
+    Simulation simulation = new Simulation("test");
+    Cache cache = writeBackCache();
+    int addr = MemorySpace.RAM_START + 0x40;
+
+    // bring a line in, then dirty it
+    int slot = cache.victim(addr);
+    cache.fill(slot, addr, new int[cache.lineWords]);
+    cache.write(slot, addr, Bus.ByteSelect.WORD, 0x12345678);
+    assertEquals(0, readWord(simulation.memory, addr));
+
+    assertEquals(1, cache.flush(simulation.memory));
+    assertEquals(0x12345678, readWord(simulation.memory, addr));
+    assertEquals(0, cache.flush(simulation.memory));
+    assertEquals(slot, cache.lookup(addr));
+
+    cache.invalidate();
+    assertEquals(-1, cache.lookup(addr));
+  }
+
+  /**
+   * Ranged flushing and invalidating only touch the lines holding the range.
+   */
+  @Test
+  void rangedFlushAndInvalidate() {
+    Simulation simulation = new Simulation("test");
+    Cache cache = writeBackCache();
+    int first = MemorySpace.RAM_START + 0x40;
+    int second = first + cache.config.lineSize;
+
+    // dirty two adjacent lines
+    for (int addr : new int[]{first, second}) {
+      int slot = cache.victim(addr);
+      cache.fill(slot, addr, new int[cache.lineWords]);
+      cache.write(slot, addr, Bus.ByteSelect.WORD, addr);
+    }
+
+    // range ending right before the second line
+    assertEquals(1, cache.flush(simulation.memory, first + 4, cache.config.lineSize - 4));
+    assertEquals(first, readWord(simulation.memory, first));
+    assertEquals(0, readWord(simulation.memory, second));
+
+    // range straddling both lines
+    cache.invalidate(second - 1, 2);
+    assertEquals(-1, cache.lookup(first));
+    assertEquals(-1, cache.lookup(second));
+    assertEquals(0, cache.flush(simulation.memory));
+  }
+
+  /**
+   * Counts the watchpoint hits of the workload on the loaded EPROM byte it copies first and on the
+   * stored sum.
+   *
+   * @param dcache data cache to attach, can be null
+   * @return read hits, then write hits
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  private static long[] workloadWatchHits(Cache dcache) throws InterruptedException {
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(Assembler.workload(5));
+    simulation.proc.attachCaches(null, dcache);
+    Watchpoints.Watchpoint read = simulation.bus.watchpoints.add(Watchpoints.Type.READ, 0x200, 1,
+            null);
+    Watchpoints.Watchpoint write = simulation.bus.watchpoints.add(Watchpoints.Type.WRITE, 0x10200,
+            4, null);
+
+    simulation.begin().join();
+
+    return new long[]{read.getHits(), write.getHits()};
+  }
+
+  /**
+   * Accesses served by cache hits are checked against watchpoints, as if they were transactions.
+   *
+   * @throws InterruptedException if interrupted while waiting for the simulation
+   */
+  @Test
+  void cacheHitsAreWatched() throws InterruptedException {
+    assertArrayEquals(new long[]{5, 5}, workloadWatchHits(null));
+    assertArrayEquals(new long[]{5, 5}, workloadWatchHits(writeBackCache()));
+  }
+
+  /**
+   * Runs a simulation until it fails.
+   *
+   * @param simulation simulation to run
+   * @return failure
+   */
+  private static RuntimeException runUntilFailure(Simulation simulation) {
+    return assertThrows(RuntimeException.class, () -> {
+      for (int i = 0; i < 1000; i++) {
+        simulation.step();
+      }
+    });
+  }
+
+  /**
+   * Builds a simulation running a program that loads from an EPROM word, then stores to it.
+   *
+   * @param dcache data cache to attach, can be null
+   * @return simulation
+   */
+  private static Simulation epromStore(Cache dcache) {
+    Assembler a = new Assembler();
+    a.li(5, MemorySpace.EPROM_START + 0x200);
+    a.lw(6, 5, 0);
+    a.sw(6, 5, 0);
+    a.ecall();
+
+    Simulation simulation = new Simulation("test");
+    simulation.memory.loadEPROM(a.eprom());
+    simulation.proc.attachCaches(null, dcache);
+    return simulation;
+  }
+
+  /**
+   * Stores to EPROM go on the bus through a write-back cache, and fail like they do uncached.
+   */
+  @Test
+  void cachedEpromStoreFails() {
+    Simulation uncached = epromStore(null);
+    RuntimeException expected = runUntilFailure(uncached);
+
+    Cache dcache = writeBackCache();
+    Simulation cached = epromStore(dcache);
+    RuntimeException failure = runUntilFailure(cached);
+
+    assertEquals(expected.getMessage(), failure.getMessage());
+    assertEquals(uncached.proc.getPc(), cached.proc.getPc());
+    assertTrue(dcache.isCacheable(MemorySpace.EPROM_START + 0x200, Bus.ByteSelect.WORD, false));
+    assertFalse(dcache.isCacheable(MemorySpace.EPROM_START + 0x200, Bus.ByteSelect.WORD, true));
+    assertEquals(0, dcache.flush(cached.memory));
+  }
+
+  /**
+   * Extended RAM is only cacheable as far as it's mapped.
+   */
+  @Test
+  void onlyMappedExtendedRamIsCacheable() {
+    Simulation simulation = new Simulation("test");
+    Cache dcache = writeBackCache();
+    simulation.proc.attachCaches(null, dcache);
+
+    assertTrue(dcache.isCacheable(MemorySpace.RAM_START, Bus.ByteSelect.WORD, false));
+    assertFalse(dcache.isCacheable(MemorySpace.VRAM_START, Bus.ByteSelect.WORD, false));
+    assertFalse(dcache.isCacheable(MemorySpace.XRAM_START, Bus.ByteSelect.WORD, false));
+  }
+}
@@ -0,0 +1,66 @@
+package microsim.simulation.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import microsim.simulation.Simulation;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link microsim.simulation.event.AsyncListener}.
+ */
+class AsyncListenerTest {
+
+  /**
+   * Invalid capacities are refused by the constructor, not by the first producer.
+   */
+  @Test
+  void capacityIsValidatedUpFront() {
+    assertThrows(RuntimeException.class, () -> new AsyncListener("test", e -> {
+    }, 1000));
+    assertThrows(RuntimeException.class, () -> new AsyncListener("test", e -> {
+    }, 0));
+  }
+
+  /**
+   * A halt raised while the ring is full still reaches the listener, after the events queued
+   * before it.
+   *
+   * @throws InterruptedException if interrupted while waiting for the listener
+   */
+  @Test
+  void haltsAreNeverDropped() throws InterruptedException {
+    Simulation simulation = new Simulation("test");
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch halted = new CountDownLatch(1);
+    List<SimulationEvent> seen = new ArrayList<>();
+
+    AsyncListener listener = new AsyncListener("test", e -> {
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        throw new RuntimeException(ex);
+      }
+      seen.add(e);
+      if (e instanceof HaltEvent) {
+        halted.countDown();
+      }
+    }, 4);
+
+    // fill the ring while the listener is held up, then halt
+    int offered = 16;
+    for (int i = 0; i < offered; i++) {
+      listener.onSimulationEvent(new DebugEvent(simulation.proc, "event", i));
+    }
+    listener.onSimulationEvent(new HaltEvent(simulation.proc));
+    release.countDown();
+
+    assertTrue(halted.await(5, TimeUnit.SECONDS));
+    assertTrue(listener.getDropped() > 0);
+    assertEquals(offered - listener.getDropped() + 1, seen.size());
+    assertInstanceOf(HaltEvent.class, seen.get(seen.size() - 1));
+  }
+}
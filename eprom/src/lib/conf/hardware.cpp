@@ -2,11 +2,18 @@
 
 #define _64K 64 * 1024
 
+// extended RAM bounds, from memory map
+extern "C" uint8_t __xram_start[];
+extern "C" uint8_t __xram_end[];
+
 namespace hwr {
 	namespace mem {
 		volatile uint8_t vram[_64K] __attribute__((section(".video")));
 		uint32_t vram_size = sizeof(vram);
 
+		volatile uint8_t* xram = __xram_start;
+		uint32_t xram_size = __xram_end - __xram_start;
+
 		bool vram_reads_allowed = true;
 	} // mem::
 
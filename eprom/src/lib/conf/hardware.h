@@ -41,6 +41,16 @@ namespace hwr {
 		 */
 		extern uint32_t vram_size;
 
+		/**
+		 * Extended RAM byte array, empty unless built with XRAM_SIZE.
+		 */
+		extern volatile uint8_t* xram;
+
+		/**
+		 * Size of extended RAM byte array.
+		 */
+		extern uint32_t xram_size;
+
 		/**
 		 * Does hardware allow EPROM writes?
 		 */